@@ -83,4 +83,15 @@ public interface EZBManageableContainer {
      */
     boolean isAvailable();
 
+    /**
+     * Waits until the container is available.
+     * @param timeout the maximum time to wait in milliseconds (0 to wait
+     *        without limit)
+     * @return true if the container is available, false if the time has
+     *         elapsed before.
+     * @throws InterruptedException if the current thread is interrupted while
+     *         waiting
+     */
+    boolean waitAvailable(long timeout) throws InterruptedException;
+
 }
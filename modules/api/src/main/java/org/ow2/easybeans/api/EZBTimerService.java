@@ -53,4 +53,17 @@ public interface EZBTimerService extends TimerService {
      */
     public Timer createCalendarTimer(final ScheduleExpression schedule, final TimerConfig timerConfig, final IMethodInfo methodInfo)
             throws IllegalArgumentException, IllegalStateException, EJBException;
+
+    /**
+     * Cancels all the timers of the bean, persistent timers included.
+     * @throws EJBException If this method could not complete due to a system-level failure.
+     */
+    void cancelTimers() throws EJBException;
+
+    /**
+     * Unschedules all the timers of the bean when it is stopped. Persistent
+     * timers kept by the job store are scheduled again when the bean is started.
+     * @throws EJBException If this method could not complete due to a system-level failure.
+     */
+    void detachTimers() throws EJBException;
 }
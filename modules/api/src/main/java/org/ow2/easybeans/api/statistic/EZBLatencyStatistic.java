@@ -0,0 +1,59 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.api.statistic;
+
+/**
+ * Statistic recording the distribution of a latency.
+ * @author Florent Benoit
+ */
+public interface EZBLatencyStatistic extends EZBStatistic {
+
+    /**
+     * Get the number of recorded values.
+     * @return The number of recorded values.
+     */
+    long getCount();
+
+    /**
+     * Get the value (in the statistic unit) below which the given percentage of the recorded values fall.
+     * @param percentile The percentile (between 0 and 100).
+     * @return The value at the given percentile.
+     */
+    long getValueAtPercentile(final double percentile);
+
+    /**
+     * Get the highest recorded value (in the statistic unit).
+     * @return The highest recorded value.
+     */
+    long getMaxValue();
+
+    /**
+     * Get the statistic String representation for the values recorded since the previous call of this method.<br>
+     * The first call returns the values recorded since the start (or the reset) of the statistic.
+     * @return The statistic String representation for the last interval.
+     */
+    String getIntervalValue();
+}
@@ -63,6 +63,20 @@ public interface EZBEventComponent extends EZBComponent {
      */
     void unregisterEventListener(EZBEventListener eventListener);
 
+    /**
+     * Checks if a listener registered with {@link #registerEventListener(EZBEventListener)} has
+     * a filter matching the given event provider.<br>
+     * Listeners registered directly on the event service are not taken into account.
+     * @param eventProviderId the id of the event provider
+     * @return true if at least one listener matches the given provider id
+     */
+    boolean hasEventListener(String eventProviderId);
+
+    /**
+     * @return a version number which is incremented each time a listener is registered or unregistered.
+     */
+    long getListenersVersion();
+
     /**
      * @return the event service used to associate Dispatcher and Listener.
      */
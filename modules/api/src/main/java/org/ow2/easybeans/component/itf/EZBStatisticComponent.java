@@ -266,4 +266,22 @@ public interface EZBStatisticComponent extends EZBComponent {
      * @throws EZBComponentException If an error occurs.
      */
     long getStatisticLastSampleTime(final String statisticId) throws EZBComponentException;
+
+    /**
+     * Get the value at the given percentile for the given latency statistic.
+     * @param statisticId The statistic id.
+     * @param percentile The percentile (between 0 and 100).
+     * @return The value at the given percentile.
+     * @throws EZBComponentException If an error occurs or if the statistic is not a latency statistic.
+     */
+    long getStatisticPercentile(final String statisticId, final double percentile) throws EZBComponentException;
+
+    /**
+     * Get the statistic value for the values recorded since the previous call of this method for the given latency
+     * statistic.
+     * @param statisticId The statistic id.
+     * @return The statistic value for the last interval.
+     * @throws EZBComponentException If an error occurs or if the statistic is not a latency statistic.
+     */
+    String getStatisticIntervalValue(final String statisticId) throws EZBComponentException;
 }
@@ -25,15 +25,21 @@
 
 package org.ow2.easybeans.component.audit;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ow2.carol.util.configuration.ConfigurationException;
 import org.ow2.carol.util.configuration.ConfigurationRepository;
 import org.ow2.easybeans.api.EZBJ2EEManagedObject;
 import org.ow2.easybeans.api.audit.EZBAuditComponent;
+import org.ow2.easybeans.api.event.EZBEventListener;
 import org.ow2.easybeans.component.api.EZBComponentException;
 import org.ow2.easybeans.component.audit.jmx.JMXNotifier;
+import org.ow2.easybeans.component.audit.journal.AuditJournal;
+import org.ow2.easybeans.component.audit.journal.JournalAuditor;
 import org.ow2.easybeans.component.audit.report.InvocationAuditReportFactory;
 import org.ow2.easybeans.component.audit.rmi.interceptor.jrmp.Initializer;
 import org.ow2.easybeans.component.itf.EZBEventComponent;
@@ -59,9 +65,9 @@ public class AuditComponent implements EZBAuditComponent {
     private EZBEventComponent eventComponent;
 
     /**
-     * List of audited objects.
+     * Audited objects with their listener.
      */
-    private Vector<EZBJ2EEManagedObject> auditedObjects;
+    private Map<EZBJ2EEManagedObject, EZBEventListener> auditedObjects;
 
     /**
      * The logger of the class.
@@ -78,6 +84,46 @@ public class AuditComponent implements EZBAuditComponent {
      */
     private ICurrentInvocationID currentInvocationID = null;
 
+    /**
+     * Path of the audit journal. If set, the invocations are written in this journal instead of being sent as reports.
+     */
+    private String journal = null;
+
+    /**
+     * Number of records of the audit journal.
+     */
+    private int journalRecords = AuditJournal.DEFAULT_RECORDS;
+
+    /**
+     * Maximum number of strings of the audit journal dictionary.
+     */
+    private int journalDictionaryStrings = AuditJournal.DEFAULT_DICTIONARY_STRINGS;
+
+    /**
+     * Maximum size (in bytes) of the audit journal dictionary.
+     */
+    private long journalDictionarySize = AuditJournal.DEFAULT_DICTIONARY_SIZE;
+
+    /**
+     * Write the size of the serialized arguments in the audit journal ?
+     */
+    private boolean journalArgumentsSize = false;
+
+    /**
+     * Write the stack of the callers in the audit journal ?
+     */
+    private boolean journalStack = false;
+
+    /**
+     * Write the memory and the garbage collections in the audit journal ?
+     */
+    private boolean journalMemory = false;
+
+    /**
+     * The opened audit journal (if enabled).
+     */
+    private AuditJournal auditJournal = null;
+
     /**
      * Default constructor.
      */
@@ -92,7 +138,7 @@ public class AuditComponent implements EZBAuditComponent {
      */
     public void init() throws EZBComponentException {
         this.jmxNotifier = new JMXNotifier();
-        this.auditedObjects = new Vector<EZBJ2EEManagedObject>();
+        this.auditedObjects = new ConcurrentHashMap<EZBJ2EEManagedObject, EZBEventListener>();
     }
 
     /**
@@ -105,6 +151,16 @@ public class AuditComponent implements EZBAuditComponent {
         } catch (ConfigurationException e) {
             logger.error("Cannot add JRMP interceptor", e);
         }
+        if (this.journal != null) {
+            try {
+                this.auditJournal = new AuditJournal(new File(this.journal), this.journalRecords,
+                        this.journalDictionaryStrings, this.journalDictionarySize);
+            } catch (IOException e) {
+                throw new EZBComponentException("Cannot open the audit journal '" + this.journal + "'", e);
+            }
+            logger.info("Audit component started with the journal ''{0}''.", this.journal);
+            return;
+        }
         logger.info("Audit component started.");
     }
 
@@ -119,11 +175,15 @@ public class AuditComponent implements EZBAuditComponent {
             logger.error("Cannot delete JRMP interceptor", e);
         }
 
-        LinkedList<EZBJ2EEManagedObject> tmpLinkedList = new LinkedList<EZBJ2EEManagedObject>(this.auditedObjects);
+        LinkedList<EZBJ2EEManagedObject> tmpLinkedList = new LinkedList<EZBJ2EEManagedObject>(this.auditedObjects.keySet());
         for (EZBJ2EEManagedObject object : tmpLinkedList) {
             unregisterJ2EEManagedObject(object);
         }
         this.auditedObjects.clear();
+        if (this.auditJournal != null) {
+            this.auditJournal.close();
+            this.auditJournal = null;
+        }
         logger.info("Audit component stopped.");
     }
 
@@ -141,12 +201,19 @@ public class AuditComponent implements EZBAuditComponent {
      */
     public void registerJ2EEManagedObject(final EZBJ2EEManagedObject object) {
         logger.debug("Audit on " + object.getJ2EEManagedObjectId());
-        if (this.auditedObjects.contains(object)) {
+        if (this.auditedObjects.containsKey(object)) {
             unregisterJ2EEManagedObject(object);
         }
-        this.auditedObjects.add(object);
-        this.eventComponent.registerEventListener(new Auditor(object.getJ2EEManagedObjectId(), this.jmxNotifier,
-                this.invocationAuditReportFactory, this.eventComponent.getEventService()));
+        EZBEventListener auditor;
+        if (this.auditJournal != null) {
+            auditor = new JournalAuditor(object.getJ2EEManagedObjectId(), this.auditJournal, this.journalArgumentsSize,
+                    this.journalStack, this.journalMemory);
+        } else {
+            auditor = new Auditor(object.getJ2EEManagedObjectId(), this.jmxNotifier, this.invocationAuditReportFactory,
+                    this.eventComponent.getEventService());
+        }
+        this.auditedObjects.put(object, auditor);
+        this.eventComponent.registerEventListener(auditor);
     }
 
     /**
@@ -155,11 +222,83 @@ public class AuditComponent implements EZBAuditComponent {
      */
     public void unregisterJ2EEManagedObject(final EZBJ2EEManagedObject object) {
         logger.debug(object.getJ2EEManagedObjectId() + " not audited anymore");
-        if (this.auditedObjects.contains(object)) {
-            this.auditedObjects.remove(object);
-            this.eventComponent.unregisterEventListener(new Auditor(object.getJ2EEManagedObjectId(), this.jmxNotifier,
-                    this.invocationAuditReportFactory, this.eventComponent.getEventService()));
+        // Listeners are unregistered by identity
+        EZBEventListener auditor = this.auditedObjects.remove(object);
+        if (auditor != null) {
+            this.eventComponent.unregisterEventListener(auditor);
+        }
+    }
+
+    /**
+     * Sets the path of the audit journal.<br>
+     * When set, the invocations are written in this journal (read with
+     * {@link org.ow2.easybeans.component.audit.journal.AuditJournalReader})
+     * instead of being sent as audit reports.
+     * @param journal the path of the journal
+     */
+    public void setJournal(final String journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the number of records of the audit journal. Oldest records are overwritten when it's full.
+     * @param journalRecords the number of records
+     */
+    public void setJournalRecords(final int journalRecords) {
+        if (journalRecords <= 0) {
+            throw new IllegalArgumentException("Invalid number of records '" + journalRecords + "' for the audit journal");
         }
+        this.journalRecords = journalRecords;
+    }
+
+    /**
+     * Sets the maximum number of strings of the audit journal dictionary. New strings are no longer recorded once
+     * the dictionary is full.
+     * @param journalDictionaryStrings the number of strings
+     */
+    public void setJournalDictionaryStrings(final int journalDictionaryStrings) {
+        if (journalDictionaryStrings <= 0) {
+            throw new IllegalArgumentException("Invalid number of strings '" + journalDictionaryStrings
+                    + "' for the audit journal dictionary");
+        }
+        this.journalDictionaryStrings = journalDictionaryStrings;
+    }
+
+    /**
+     * Sets the maximum size (in bytes) of the audit journal dictionary. New strings are no longer recorded once
+     * the dictionary is full.
+     * @param journalDictionarySize the size of the dictionary
+     */
+    public void setJournalDictionarySize(final long journalDictionarySize) {
+        if (journalDictionarySize <= 0) {
+            throw new IllegalArgumentException("Invalid size '" + journalDictionarySize
+                    + "' for the audit journal dictionary");
+        }
+        this.journalDictionarySize = journalDictionarySize;
+    }
+
+    /**
+     * Enables the size of the serialized arguments in the audit journal (the arguments are serialized for each call).
+     * @param journalArgumentsSize true to write the size of the arguments
+     */
+    public void setJournalArgumentsSize(final boolean journalArgumentsSize) {
+        this.journalArgumentsSize = journalArgumentsSize;
+    }
+
+    /**
+     * Enables the stack of the callers in the audit journal (if captured by the factories).
+     * @param journalStack true to write the stack
+     */
+    public void setJournalStack(final boolean journalStack) {
+        this.journalStack = journalStack;
+    }
+
+    /**
+     * Enables the memory and the garbage collections in the audit journal.
+     * @param journalMemory true to write the memory and the garbage collections
+     */
+    public void setJournalMemory(final boolean journalMemory) {
+        this.journalMemory = journalMemory;
     }
 
     /**
@@ -0,0 +1,565 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.audit.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Journal of the audited invocations.<br>
+ * The journal is a memory-mapped file used as a ring buffer of fixed-size
+ * records: once it is full, the oldest records are overwritten. Each record
+ * is written at its own place (absolute puts) by the calling thread, its
+ * sequence number is written last so that a reader can check that a record
+ * is complete. Strings (methods, threads, roles, stacks...) are only written
+ * once in a dictionary file (journal name + {@link #DICTIONARY_EXTENSION})
+ * and records store their id. The dictionary is bounded (number of strings
+ * and size of the file): once it is full, new strings are no longer recorded.
+ * @author Florent Benoit
+ */
+public class AuditJournal {
+
+    /**
+     * Magic number of the journal files.
+     */
+    public static final int MAGIC = 0x455A424A;
+
+    /**
+     * Version of the layout.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Extension of the dictionary file.
+     */
+    public static final String DICTIONARY_EXTENSION = ".dict";
+
+    /**
+     * Default number of records of a journal.
+     */
+    public static final int DEFAULT_RECORDS = 65536;
+
+    /**
+     * Default maximum number of strings of the dictionary.
+     */
+    public static final int DEFAULT_DICTIONARY_STRINGS = 65536;
+
+    /**
+     * Default maximum size (in bytes) of the dictionary file.
+     */
+    public static final long DEFAULT_DICTIONARY_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Size of the header (magic, version, record size, number of records).
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Size of a record.
+     */
+    public static final int RECORD_SIZE = 160;
+
+    /**
+     * Record of the beginning of an invocation.
+     */
+    public static final byte BEGIN = 1;
+
+    /**
+     * Record of the end of an invocation.
+     */
+    public static final byte END = 2;
+
+    /**
+     * Record of the failure of an invocation.
+     */
+    public static final byte ERROR = 3;
+
+    /**
+     * Flag set when the memory has been captured.
+     */
+    public static final byte MEMORY_CAPTURED = 1;
+
+    /**
+     * Flag set when the garbage collections have been captured.
+     */
+    public static final byte GC_CAPTURED = 2;
+
+    /**
+     * Flag set when the size of the arguments has been captured.
+     */
+    public static final byte ARGUMENTS_SIZE_CAPTURED = 4;
+
+    /**
+     * Flag set when the stack has been captured.
+     */
+    public static final byte STACK_CAPTURED = 8;
+
+    /**
+     * Id used when there is no string.
+     */
+    public static final int NO_STRING = -1;
+
+    /**
+     * Offset of the sequence number (+1, 0 for an empty record).
+     */
+    static final int SEQUENCE = 0;
+
+    /**
+     * Offset of the record type.
+     */
+    static final int TYPE = 8;
+
+    /**
+     * Offset of the flags.
+     */
+    static final int FLAGS = 9;
+
+    /**
+     * Offset of the event provider id (dictionary).
+     */
+    static final int PROVIDER = 12;
+
+    /**
+     * Offset of the invocation number.
+     */
+    static final int INVOCATION = 16;
+
+    /**
+     * Offset of the event time (ms).
+     */
+    static final int TIME = 24;
+
+    /**
+     * Offset of the nano time.
+     */
+    static final int NANO_TIME = 32;
+
+    /**
+     * Offset of the thread name (dictionary).
+     */
+    static final int THREAD = 40;
+
+    /**
+     * Offset of the caller name (dictionary).
+     */
+    static final int CALLER = 44;
+
+    /**
+     * Offset of the caller roles (dictionary).
+     */
+    static final int ROLES = 48;
+
+    /**
+     * Offset of the size of the arguments.
+     */
+    static final int ARGUMENTS_SIZE = 52;
+
+    /**
+     * Offset of the stack (dictionary).
+     */
+    static final int STACK = 56;
+
+    /**
+     * Offset of the free memory.
+     */
+    static final int FREE_MEMORY = 64;
+
+    /**
+     * Offset of the total memory.
+     */
+    static final int TOTAL_MEMORY = 72;
+
+    /**
+     * Offset of the number of garbage collections.
+     */
+    static final int GC_COUNT = 80;
+
+    /**
+     * Offset of the time spent in garbage collections.
+     */
+    static final int GC_TIME = 88;
+
+    /**
+     * Offset of the length of the key id.
+     */
+    static final int KEY_ID_LENGTH = 96;
+
+    /**
+     * Offset of the key id (ISO-8859-1 characters).
+     */
+    static final int KEY_ID = 98;
+
+    /**
+     * Maximum length of a key id.
+     */
+    static final int KEY_ID_MAX_LENGTH = RECORD_SIZE - KEY_ID;
+
+    /**
+     * Maximum length of a string of the dictionary.
+     */
+    static final int MAX_STRING_LENGTH = 16384;
+
+    /**
+     * Separator of the roles and of the stack elements in the dictionary.
+     */
+    static final char LINE_SEPARATOR = '\n';
+
+    /**
+     * Separator of the fields of a stack element in the dictionary.
+     */
+    static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(AuditJournal.class);
+
+    /**
+     * File of the records.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Mapped records.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Number of records of the ring.
+     */
+    private final int records;
+
+    /**
+     * Next sequence number.
+     */
+    private final AtomicLong sequence;
+
+    /**
+     * Ids of the strings already written in the dictionary.
+     */
+    private final Map<String, Integer> dictionary = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Stream of the dictionary file.
+     */
+    private final DataOutputStream dictionaryStream;
+
+    /**
+     * Next id of the dictionary (guarded by the dictionary stream).
+     */
+    private int nextStringId = 0;
+
+    /**
+     * Maximum number of strings of the dictionary.
+     */
+    private final int maxStrings;
+
+    /**
+     * Maximum size of the dictionary file.
+     */
+    private final long maxDictionarySize;
+
+    /**
+     * Current size of the dictionary file (guarded by the dictionary stream).
+     */
+    private long dictionarySize = 0L;
+
+    /**
+     * Set once the dictionary is full (guarded by the dictionary stream).
+     */
+    private boolean dictionaryFull = false;
+
+    /**
+     * Opens (or creates) a journal with the default limits of the dictionary.<br>
+     * An existing journal with the same number of records is continued.
+     * @param journalFile the file of the journal
+     * @param records the number of records of the ring
+     * @throws IOException if the journal can't be opened
+     */
+    public AuditJournal(final File journalFile, final int records) throws IOException {
+        this(journalFile, records, DEFAULT_DICTIONARY_STRINGS, DEFAULT_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Opens (or creates) a journal.<br>
+     * An existing journal with the same number of records is continued.
+     * @param journalFile the file of the journal
+     * @param records the number of records of the ring
+     * @param maxStrings the maximum number of strings of the dictionary
+     * @param maxDictionarySize the maximum size (in bytes) of the dictionary file
+     * @throws IOException if the journal can't be opened
+     */
+    public AuditJournal(final File journalFile, final int records, final int maxStrings, final long maxDictionarySize)
+            throws IOException {
+        this.maxStrings = maxStrings;
+        this.maxDictionarySize = maxDictionarySize;
+        File parent = journalFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create the directory '" + parent + "'");
+        }
+
+        // Existing journal with another layout is replaced
+        File dictionaryFile = new File(journalFile.getPath() + DICTIONARY_EXTENSION);
+        AuditJournalReader existing = null;
+        if (journalFile.exists()) {
+            existing = new AuditJournalReader(journalFile);
+            if (!existing.isCompatible(records)) {
+                logger.warn("Replacing the audit journal ''{0}'' which has another layout", journalFile);
+                existing = null;
+                if (!journalFile.delete() || (dictionaryFile.exists() && !dictionaryFile.delete())) {
+                    throw new IOException("Cannot replace the audit journal '" + journalFile + "'");
+                }
+            }
+        }
+
+        long next = 0;
+        if (existing != null) {
+            next = existing.getLastSequence() + 1;
+            this.dictionary.putAll(existing.readDictionaryIds());
+            this.nextStringId = this.dictionary.size();
+            this.dictionarySize = dictionaryFile.length();
+        } else if (dictionaryFile.exists() && !dictionaryFile.delete()) {
+            throw new IOException("Cannot replace the dictionary '" + dictionaryFile + "'");
+        }
+        this.sequence = new AtomicLong(next);
+        this.records = records;
+
+        this.file = new RandomAccessFile(journalFile, "rw");
+        long size = HEADER_SIZE + (long) records * RECORD_SIZE;
+        this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, VERSION);
+        this.buffer.putInt(8, RECORD_SIZE);
+        this.buffer.putInt(12, records);
+
+        this.dictionaryStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dictionaryFile, true)));
+    }
+
+    /**
+     * Gets the id of the given string, the string is written in the dictionary if it's a new one.
+     * @param value the string (may be null)
+     * @return the id of the string or {@link #NO_STRING}
+     */
+    public int getStringId(final String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = this.dictionary.get(value);
+        if (id != null) {
+            return id.intValue();
+        }
+        synchronized (this.dictionaryStream) {
+            id = this.dictionary.get(value);
+            if (id != null) {
+                return id.intValue();
+            }
+            if (this.dictionaryFull) {
+                return NO_STRING;
+            }
+            int newId = this.nextStringId;
+            String written = value;
+            if (written.length() > MAX_STRING_LENGTH) {
+                written = written.substring(0, MAX_STRING_LENGTH);
+            }
+            // id + length of the value + value (modified UTF-8)
+            long entrySize = 4 + 2 + getUTFLength(written);
+            if (newId >= this.maxStrings || this.dictionarySize + entrySize > this.maxDictionarySize) {
+                this.dictionaryFull = true;
+                logger.warn("The audit journal dictionary is full ({0} strings, {1} bytes), new strings are no longer"
+                        + " recorded", Integer.valueOf(newId), Long.valueOf(this.dictionarySize));
+                return NO_STRING;
+            }
+            try {
+                this.dictionaryStream.writeInt(newId);
+                this.dictionaryStream.writeUTF(written);
+                this.dictionaryStream.flush();
+            } catch (IOException e) {
+                logger.error("Cannot write the string ''{0}'' in the audit journal dictionary", written, e);
+                return NO_STRING;
+            }
+            this.dictionarySize += entrySize;
+            this.nextStringId++;
+            this.dictionary.put(value, Integer.valueOf(newId));
+            return newId;
+        }
+    }
+
+    /**
+     * Computes the length of the modified UTF-8 encoding of a string.
+     * @param value the string
+     * @return the number of bytes written by {@link DataOutputStream#writeUTF(String)}
+     */
+    private static long getUTFLength(final String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Reserves the place of a new record.
+     * @return the record to fill and commit
+     */
+    Record newRecord() {
+        long seq = this.sequence.getAndIncrement();
+        int offset = HEADER_SIZE + (int) (seq % this.records) * RECORD_SIZE;
+        // Previous record of this place is no longer valid
+        this.buffer.putLong(offset + SEQUENCE, 0L);
+        return new Record(this.buffer, offset, seq + 1);
+    }
+
+    /**
+     * Writes the records on the disk and closes the journal.
+     */
+    public void close() {
+        this.buffer.force();
+        try {
+            this.file.close();
+        } catch (IOException e) {
+            logger.error("Cannot close the audit journal", e);
+        }
+        synchronized (this.dictionaryStream) {
+            try {
+                this.dictionaryStream.close();
+            } catch (IOException e) {
+                logger.error("Cannot close the audit journal dictionary", e);
+            }
+        }
+    }
+
+    /**
+     * Record being written in the journal.
+     */
+    static final class Record {
+
+        /**
+         * Mapped records.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Offset of the record.
+         */
+        private final int offset;
+
+        /**
+         * Sequence number of the record (+1).
+         */
+        private final long sequence;
+
+        /**
+         * Builds a record.
+         * @param buffer the mapped records
+         * @param offset the offset of the record
+         * @param sequence the sequence number of the record (+1)
+         */
+        private Record(final ByteBuffer buffer, final int offset, final long sequence) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Writes a byte.
+         * @param field the offset of the field
+         * @param value the value
+         * @return this record
+         */
+        public Record put(final int field, final byte value) {
+            this.buffer.put(this.offset + field, value);
+            return this;
+        }
+
+        /**
+         * Writes an int.
+         * @param field the offset of the field
+         * @param value the value
+         * @return this record
+         */
+        public Record putInt(final int field, final int value) {
+            this.buffer.putInt(this.offset + field, value);
+            return this;
+        }
+
+        /**
+         * Writes a long.
+         * @param field the offset of the field
+         * @param value the value
+         * @return this record
+         */
+        public Record putLong(final int field, final long value) {
+            this.buffer.putLong(this.offset + field, value);
+            return this;
+        }
+
+        /**
+         * Writes the key id (truncated if it's too long).
+         * @param keyID the key id (may be null)
+         * @return this record
+         */
+        public Record putKeyID(final String keyID) {
+            if (keyID == null) {
+                this.buffer.putShort(this.offset + KEY_ID_LENGTH, (short) -1);
+                return this;
+            }
+            int length = Math.min(keyID.length(), KEY_ID_MAX_LENGTH);
+            for (int i = 0; i < length; i++) {
+                this.buffer.put(this.offset + KEY_ID + i, (byte) keyID.charAt(i));
+            }
+            this.buffer.putShort(this.offset + KEY_ID_LENGTH, (short) length);
+            return this;
+        }
+
+        /**
+         * Marks the record as complete.
+         */
+        public void commit() {
+            this.buffer.putLong(this.offset + SEQUENCE, this.sequence);
+        }
+    }
+
+}
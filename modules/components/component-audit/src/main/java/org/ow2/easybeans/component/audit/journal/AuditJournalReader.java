@@ -0,0 +1,484 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.audit.journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ow2.util.auditreport.impl.GenericAuditReport;
+import org.ow2.util.auditreport.impl.InvocationAuditReport;
+import org.ow2.util.auditreport.impl.event.Event;
+import org.ow2.util.event.impl.EventDispatcher;
+
+/**
+ * Offline reader of an {@link AuditJournal}.<br>
+ * The begin and end records of the invocations are joined to rebuild the
+ * {@link InvocationAuditReport} that the live auditor would have sent.
+ * Values that were not captured in the journal are left empty. Memory values
+ * are recorded as longs but the reports only accept ints, so they're capped
+ * to {@link Integer#MAX_VALUE}.
+ * @author Florent Benoit
+ */
+public class AuditJournalReader {
+
+    /**
+     * Name of the thread of the invocations when it has not been recorded.
+     */
+    private static final String UNKNOWN_THREAD = "unknown";
+
+    /**
+     * File of the records.
+     */
+    private final File journalFile;
+
+    /**
+     * File of the dictionary.
+     */
+    private final File dictionaryFile;
+
+    /**
+     * Build a reader of the given journal.
+     * @param journalFile the file of the journal
+     */
+    public AuditJournalReader(final File journalFile) {
+        this.journalFile = journalFile;
+        this.dictionaryFile = new File(journalFile.getPath() + AuditJournal.DICTIONARY_EXTENSION);
+    }
+
+    /**
+     * Checks if the journal can be continued with the given number of records.
+     * @param records the number of records
+     * @return true if the journal has the same layout
+     * @throws IOException if the journal can't be read
+     */
+    public boolean isCompatible(final int records) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.journalFile, "r");
+        try {
+            if (file.length() != AuditJournal.HEADER_SIZE + (long) records * AuditJournal.RECORD_SIZE) {
+                return false;
+            }
+            return file.readInt() == AuditJournal.MAGIC && file.readInt() == AuditJournal.VERSION
+                    && file.readInt() == AuditJournal.RECORD_SIZE && file.readInt() == records;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Gets the highest sequence number of the complete records.
+     * @return the sequence number or -1 if there is no record
+     * @throws IOException if the journal can't be read
+     */
+    public long getLastSequence() throws IOException {
+        long last = -1;
+        for (RawRecord record : readRecords()) {
+            last = Math.max(last, record.sequence);
+        }
+        return last;
+    }
+
+    /**
+     * Reads the ids of the dictionary.
+     * @return the id of each string
+     * @throws IOException if the dictionary can't be read
+     */
+    public Map<String, Integer> readDictionaryIds() throws IOException {
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        for (Map.Entry<Integer, String> entry : readDictionary().entrySet()) {
+            ids.put(entry.getValue(), entry.getKey());
+        }
+        return ids;
+    }
+
+    /**
+     * Reads the dictionary.
+     * @return the string of each id
+     * @throws IOException if the dictionary can't be read
+     */
+    public Map<Integer, String> readDictionary() throws IOException {
+        Map<Integer, String> strings = new HashMap<Integer, String>();
+        if (!this.dictionaryFile.exists()) {
+            return strings;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.dictionaryFile)));
+        try {
+            while (true) {
+                int id;
+                String value;
+                try {
+                    id = in.readInt();
+                    value = in.readUTF();
+                } catch (EOFException e) {
+                    // End of the dictionary (or of a truncated entry)
+                    break;
+                }
+                strings.put(Integer.valueOf(id), value);
+            }
+        } finally {
+            in.close();
+        }
+        return strings;
+    }
+
+    /**
+     * Reads the invocations of the journal.
+     * @return the reports of the invocations which have a begin and an end record, sorted by end
+     * @throws IOException if the journal can't be read
+     */
+    public List<InvocationAuditReport> readReports() throws IOException {
+        Map<Integer, String> strings = readDictionary();
+        List<RawRecord> records = readRecords();
+        Collections.sort(records, new Comparator<RawRecord>() {
+            public int compare(final RawRecord r1, final RawRecord r2) {
+                return r1.sequence < r2.sequence ? -1 : (r1.sequence == r2.sequence ? 0 : 1);
+            }
+        });
+
+        List<InvocationAuditReport> reports = new ArrayList<InvocationAuditReport>();
+        Map<Long, RawRecord> begins = new HashMap<Long, RawRecord>();
+        for (RawRecord record : records) {
+            Long invocation = Long.valueOf(record.invocation);
+            if (record.type == AuditJournal.BEGIN) {
+                begins.put(invocation, record);
+                continue;
+            }
+            // End record of an invocation whose begin has been overwritten is dropped
+            RawRecord begin = begins.remove(invocation);
+            if (begin != null) {
+                reports.add(buildReport(begin, record, strings));
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Sends the reports of the journal to the given dispatcher, as the live auditor.
+     * @param dispatcher the dispatcher of the audit reports.
+     * @return the number of reports sent
+     * @throws IOException if the journal can't be read
+     */
+    public int dispatchReports(final EventDispatcher dispatcher) throws IOException {
+        List<InvocationAuditReport> reports = readReports();
+        for (InvocationAuditReport report : reports) {
+            dispatcher.dispatch(new Event((GenericAuditReport) report));
+        }
+        return reports.size();
+    }
+
+    /**
+     * Builds the report of an invocation.
+     * @param begin the begin record
+     * @param end the end (or error) record
+     * @param strings the dictionary
+     * @return the report
+     */
+    private static InvocationAuditReport buildReport(final RawRecord begin, final RawRecord end,
+            final Map<Integer, String> strings) {
+        String providerId = strings.get(Integer.valueOf(begin.provider));
+        String method = null;
+        if (providerId != null) {
+            method = providerId.substring(providerId.lastIndexOf("/") + 1, providerId.length());
+        }
+
+        String threadName = strings.get(Integer.valueOf(begin.thread));
+        if (threadName == null) {
+            threadName = UNKNOWN_THREAD;
+        }
+        // Only used to carry the name of the thread
+        Thread thread = new Thread(threadName);
+
+        String[] roles = null;
+        String rolesValue = strings.get(Integer.valueOf(begin.roles));
+        if (rolesValue != null) {
+            if (rolesValue.length() == 0) {
+                roles = new String[0];
+            } else {
+                roles = rolesValue.split(String.valueOf(AuditJournal.LINE_SEPARATOR));
+            }
+        }
+
+        int argumentsSize = 0;
+        if ((begin.flags & AuditJournal.ARGUMENTS_SIZE_CAPTURED) != 0) {
+            argumentsSize = begin.argumentsSize;
+        }
+
+        int freeMemoryBefore = 0;
+        int totalMemoryBefore = 0;
+        if ((begin.flags & AuditJournal.MEMORY_CAPTURED) != 0) {
+            freeMemoryBefore = toReportMemory(begin.freeMemory);
+            totalMemoryBefore = toReportMemory(begin.totalMemory);
+        }
+
+        InvocationAuditReport report = new InvocationAuditReport(begin.time, begin.time, method, providerId, null,
+                thread, freeMemoryBefore, totalMemoryBefore, roles, strings.get(Integer.valueOf(begin.caller)),
+                argumentsSize);
+        if ((begin.flags & AuditJournal.STACK_CAPTURED) != 0) {
+            report.setMethodStackTrace(splitStack(strings.get(Integer.valueOf(begin.stack))));
+        }
+        report.setKeyID(begin.keyID);
+
+        if ((end.flags & AuditJournal.MEMORY_CAPTURED) != 0) {
+            report.setFreeMemoryAfter(toReportMemory(end.freeMemory));
+            report.setTotalMemoryAfter(toReportMemory(end.totalMemory));
+        }
+        report.setRequestStop(end.time);
+        if (end.type == AuditJournal.END && (end.flags & AuditJournal.GC_CAPTURED) != 0) {
+            report.setSweepMarkTime(end.gcCount);
+            report.setScavengeTime(end.gcTime);
+        }
+        return report;
+    }
+
+    /**
+     * Converts a memory value for a report.
+     * @param memory the recorded value
+     * @return the value, capped to {@link Integer#MAX_VALUE}
+     */
+    private static int toReportMemory(final long memory) {
+        return (int) Math.min(memory, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Rebuilds the elements of a stack.
+     * @param value the elements, one per line (may be null)
+     * @return the elements or null
+     */
+    private static StackTraceElement[] splitStack(final String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length() == 0) {
+            return new StackTraceElement[0];
+        }
+        String separator = String.valueOf(AuditJournal.FIELD_SEPARATOR);
+        List<StackTraceElement> elements = new ArrayList<StackTraceElement>();
+        for (String line : value.split(String.valueOf(AuditJournal.LINE_SEPARATOR))) {
+            String[] fields = line.split(separator, -1);
+            // Last line may have been truncated
+            if (fields.length != 4) {
+                break;
+            }
+            String fileName = null;
+            if (fields[2].length() > 0) {
+                fileName = fields[2];
+            }
+            int lineNumber;
+            try {
+                lineNumber = Integer.parseInt(fields[3]);
+            } catch (NumberFormatException e) {
+                break;
+            }
+            elements.add(new StackTraceElement(fields[0], fields[1], fileName, lineNumber));
+        }
+        return elements.toArray(new StackTraceElement[elements.size()]);
+    }
+
+    /**
+     * Reads the complete records of the journal.
+     * @return the records (unsorted)
+     * @throws IOException if the journal can't be read
+     */
+    private List<RawRecord> readRecords() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(this.journalFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < AuditJournal.HEADER_SIZE || buffer.getInt(0) != AuditJournal.MAGIC) {
+                throw new IOException("The file '" + this.journalFile + "' is not an audit journal");
+            }
+            if (buffer.getInt(4) != AuditJournal.VERSION || buffer.getInt(8) != AuditJournal.RECORD_SIZE) {
+                throw new IOException("Unsupported version of the audit journal '" + this.journalFile + "'");
+            }
+            int records = buffer.getInt(12);
+            List<RawRecord> list = new ArrayList<RawRecord>();
+            for (int i = 0; i < records; i++) {
+                int offset = AuditJournal.HEADER_SIZE + i * AuditJournal.RECORD_SIZE;
+                if (offset + AuditJournal.RECORD_SIZE > buffer.capacity()) {
+                    break;
+                }
+                long sequence = buffer.getLong(offset + AuditJournal.SEQUENCE);
+                // Empty or incomplete record
+                if (sequence <= 0) {
+                    continue;
+                }
+                list.add(new RawRecord(buffer, offset, sequence - 1));
+            }
+            return list;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Prints the reports of a journal.
+     * @param args the path of the journal
+     * @throws IOException if the journal can't be read
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: " + AuditJournalReader.class.getName() + " <journal file>");
+            return;
+        }
+        for (InvocationAuditReport report : new AuditJournalReader(new File(args[0])).readReports()) {
+            System.out.println(report);
+        }
+    }
+
+    /**
+     * Record read from the journal.
+     */
+    private static final class RawRecord {
+
+        /**
+         * Sequence number.
+         */
+        private final long sequence;
+
+        /**
+         * Type (begin, end, error).
+         */
+        private final byte type;
+
+        /**
+         * Captured values.
+         */
+        private final byte flags;
+
+        /**
+         * Event provider id (dictionary).
+         */
+        private final int provider;
+
+        /**
+         * Invocation number.
+         */
+        private final long invocation;
+
+        /**
+         * Time of the event.
+         */
+        private final long time;
+
+        /**
+         * Thread name (dictionary).
+         */
+        private final int thread;
+
+        /**
+         * Caller name (dictionary).
+         */
+        private final int caller;
+
+        /**
+         * Caller roles (dictionary).
+         */
+        private final int roles;
+
+        /**
+         * Size of the arguments.
+         */
+        private final int argumentsSize;
+
+        /**
+         * Stack (dictionary).
+         */
+        private final int stack;
+
+        /**
+         * Number of garbage collections.
+         */
+        private final long gcCount;
+
+        /**
+         * Time spent in garbage collections.
+         */
+        private final long gcTime;
+
+        /**
+         * Free memory.
+         */
+        private final long freeMemory;
+
+        /**
+         * Total memory.
+         */
+        private final long totalMemory;
+
+        /**
+         * Key id.
+         */
+        private final String keyID;
+
+        /**
+         * Reads a record.
+         * @param buffer the mapped records
+         * @param offset the offset of the record
+         * @param sequence the sequence number
+         */
+        private RawRecord(final ByteBuffer buffer, final int offset, final long sequence) {
+            this.sequence = sequence;
+            this.type = buffer.get(offset + AuditJournal.TYPE);
+            this.flags = buffer.get(offset + AuditJournal.FLAGS);
+            this.provider = buffer.getInt(offset + AuditJournal.PROVIDER);
+            this.invocation = buffer.getLong(offset + AuditJournal.INVOCATION);
+            this.time = buffer.getLong(offset + AuditJournal.TIME);
+            this.thread = buffer.getInt(offset + AuditJournal.THREAD);
+            this.caller = buffer.getInt(offset + AuditJournal.CALLER);
+            this.roles = buffer.getInt(offset + AuditJournal.ROLES);
+            this.argumentsSize = buffer.getInt(offset + AuditJournal.ARGUMENTS_SIZE);
+            this.stack = buffer.getInt(offset + AuditJournal.STACK);
+            this.gcCount = buffer.getLong(offset + AuditJournal.GC_COUNT);
+            this.gcTime = buffer.getLong(offset + AuditJournal.GC_TIME);
+            this.freeMemory = buffer.getLong(offset + AuditJournal.FREE_MEMORY);
+            this.totalMemory = buffer.getLong(offset + AuditJournal.TOTAL_MEMORY);
+            int keyLength = buffer.getShort(offset + AuditJournal.KEY_ID_LENGTH);
+            if (keyLength < 0 || this.type != AuditJournal.BEGIN) {
+                this.keyID = null;
+            } else {
+                char[] chars = new char[Math.min(keyLength, AuditJournal.KEY_ID_MAX_LENGTH)];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = (char) (buffer.get(offset + AuditJournal.KEY_ID + i) & 0xFF);
+                }
+                this.keyID = new String(chars);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.audit.journal;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.security.Principal;
+import java.util.List;
+
+import org.ow2.easybeans.api.event.EZBEvent;
+import org.ow2.easybeans.api.event.EZBEventListener;
+import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocation;
+import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocationBegin;
+import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocationError;
+import org.ow2.easybeans.component.audit.report.InvocationAuditReportFactory;
+import org.ow2.util.event.api.EventPriority;
+import org.ow2.util.event.api.IEvent;
+
+/**
+ * Listener writing the invocations of its audited bean in an audit journal.<br>
+ * Unlike the {@link org.ow2.easybeans.component.audit.Auditor}, no report is
+ * built (and kept until the end of the invocation): the begin and the end of
+ * the invocations are written as two records, synchronously, by the thread
+ * of the invocation. Reports are built offline by the
+ * {@link AuditJournalReader}. The values that are expensive to capture are
+ * only written if enabled.
+ * @author Florent Benoit
+ */
+public class JournalAuditor implements EZBEventListener {
+
+    /**
+     * The event provider filter.
+     */
+    private final String eventProviderFilter;
+
+    /**
+     * The journal.
+     */
+    private final AuditJournal journal;
+
+    /**
+     * Capture the size of the serialized arguments ?
+     */
+    private final boolean argumentsSizeCaptured;
+
+    /**
+     * Capture the stack of the callers ?
+     */
+    private final boolean stackCaptured;
+
+    /**
+     * Garbage collectors if the memory and the garbage collections are captured, else null.
+     */
+    private final List<GarbageCollectorMXBean> garbageCollectors;
+
+    /**
+     * The constructor of the auditor.
+     * @param filter the filter of the listener.
+     * @param journal the journal receiving the records.
+     * @param argumentsSizeCaptured capture the size of the serialized arguments.
+     * @param stackCaptured capture the stack of the callers (if provided by the invocation event).
+     * @param memoryCaptured capture the memory and the garbage collections.
+     */
+    public JournalAuditor(final String filter, final AuditJournal journal, final boolean argumentsSizeCaptured,
+            final boolean stackCaptured, final boolean memoryCaptured) {
+        this.eventProviderFilter = filter;
+        this.journal = journal;
+        this.argumentsSizeCaptured = argumentsSizeCaptured;
+        this.stackCaptured = stackCaptured;
+        if (memoryCaptured) {
+            this.garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+        } else {
+            this.garbageCollectors = null;
+        }
+    }
+
+    /**
+     * The handle method of the listener. Called any time an event is received.
+     * @param event the handled event.
+     */
+    public void handle(final IEvent event) {
+        EZBEventBeanInvocation invocationEvent = (EZBEventBeanInvocation) event;
+        AuditJournal.Record record = this.journal.newRecord();
+        byte flags = 0;
+        if (invocationEvent instanceof EZBEventBeanInvocationBegin) {
+            EZBEventBeanInvocationBegin beginEvent = (EZBEventBeanInvocationBegin) invocationEvent;
+            record.put(AuditJournal.TYPE, AuditJournal.BEGIN);
+            record.putInt(AuditJournal.THREAD, this.journal.getStringId(Thread.currentThread().getName()));
+            Principal caller = beginEvent.getCallerPrincipal();
+            if (caller != null) {
+                record.putInt(AuditJournal.CALLER, this.journal.getStringId(caller.getName()));
+            } else {
+                record.putInt(AuditJournal.CALLER, AuditJournal.NO_STRING);
+            }
+            record.putInt(AuditJournal.ROLES, this.journal.getStringId(joinRoles(beginEvent.getCallerRoles())));
+            if (this.argumentsSizeCaptured) {
+                flags |= AuditJournal.ARGUMENTS_SIZE_CAPTURED;
+                record.putInt(AuditJournal.ARGUMENTS_SIZE, InvocationAuditReportFactory.lengthArgs(beginEvent
+                        .getArguments()));
+            }
+            StackTraceElement[] stack = null;
+            if (this.stackCaptured) {
+                stack = beginEvent.getStackTraceElements();
+            }
+            if (stack != null) {
+                flags |= AuditJournal.STACK_CAPTURED;
+                record.putInt(AuditJournal.STACK, this.journal.getStringId(joinStack(InvocationAuditReportFactory
+                        .cleanupStackTrace(stack))));
+            }
+            record.putKeyID(beginEvent.getKeyID());
+        } else if (invocationEvent instanceof EZBEventBeanInvocationError) {
+            record.put(AuditJournal.TYPE, AuditJournal.ERROR);
+        } else {
+            record.put(AuditJournal.TYPE, AuditJournal.END);
+        }
+
+        if (this.garbageCollectors != null) {
+            flags |= AuditJournal.MEMORY_CAPTURED | AuditJournal.GC_CAPTURED;
+            long totalGarbageCollections = 0;
+            long garbageCollectionTime = 0;
+            for (GarbageCollectorMXBean gc : this.garbageCollectors) {
+                long count = gc.getCollectionCount();
+                if (count >= 0) {
+                    totalGarbageCollections += count;
+                }
+                long time = gc.getCollectionTime();
+                if (time >= 0) {
+                    garbageCollectionTime += time;
+                }
+            }
+            Runtime runtime = Runtime.getRuntime();
+            record.putLong(AuditJournal.FREE_MEMORY, runtime.freeMemory());
+            record.putLong(AuditJournal.TOTAL_MEMORY, runtime.totalMemory());
+            record.putLong(AuditJournal.GC_COUNT, totalGarbageCollections);
+            record.putLong(AuditJournal.GC_TIME, garbageCollectionTime);
+        }
+
+        record.put(AuditJournal.FLAGS, flags);
+        record.putInt(AuditJournal.PROVIDER, this.journal.getStringId(invocationEvent.getEventProviderId()));
+        record.putLong(AuditJournal.INVOCATION, invocationEvent.getInvocationNumber());
+        record.putLong(AuditJournal.TIME, invocationEvent.getTime());
+        record.putLong(AuditJournal.NANO_TIME, System.nanoTime());
+        record.commit();
+    }
+
+    /**
+     * Joins the names of the roles.
+     * @param callerRoles the roles (may be null)
+     * @return the names of the roles, one per line or null
+     */
+    private static String joinRoles(final Principal[] callerRoles) {
+        if (callerRoles == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Principal role : callerRoles) {
+            if (sb.length() > 0) {
+                sb.append(AuditJournal.LINE_SEPARATOR);
+            }
+            sb.append(role.getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Joins the elements of a stack.
+     * @param stack the stack
+     * @return the elements, one per line
+     */
+    private static String joinStack(final StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement element : stack) {
+            if (sb.length() > 0) {
+                sb.append(AuditJournal.LINE_SEPARATOR);
+            }
+            sb.append(element.getClassName());
+            sb.append(AuditJournal.FIELD_SEPARATOR);
+            sb.append(element.getMethodName());
+            sb.append(AuditJournal.FIELD_SEPARATOR);
+            if (element.getFileName() != null) {
+                sb.append(element.getFileName());
+            }
+            sb.append(AuditJournal.FIELD_SEPARATOR);
+            sb.append(element.getLineNumber());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the event provider filter.<br>
+     * The event provider filter is a regular expression that define which event
+     * provider the listener needs to listen.
+     * @return The event provider filter.
+     */
+    public String getEventProviderFilter() {
+        return this.eventProviderFilter;
+    }
+
+    /**
+     * Check whether the listener wants to handle this event.
+     * @param event The event to check.
+     * @return True if the listener wants to handle this event, false otherwise.
+     */
+    public boolean accept(final IEvent event) {
+        return event instanceof EZBEventBeanInvocation
+                && ((EZBEvent) event).getEventProviderId().contains(this.eventProviderFilter);
+    }
+
+    /**
+     * Get the listener priority.<br>
+     * Records are written by the thread of the invocation, this avoids queuing the events.
+     * @return The listener priority.
+     */
+    public EventPriority getPriority() {
+        return EventPriority.SYNC_NORM;
+    }
+
+}
@@ -31,8 +31,9 @@ import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.security.Principal;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocationBegin;
 import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocationEnd;
@@ -65,13 +66,13 @@ public final class InvocationAuditReportFactory {
     /**
      * The report created but not endded.
      */
-    private HashMap<Long, InvocationAuditReport> waitingReports;
+    private Map<Long, InvocationAuditReport> waitingReports;
 
     /**
      * The constructor of the factory.
      */
     public InvocationAuditReportFactory() {
-        this.waitingReports = new HashMap<Long, InvocationAuditReport>();
+        this.waitingReports = new ConcurrentHashMap<Long, InvocationAuditReport>();
     }
 
     /**
@@ -124,7 +125,11 @@ public final class InvocationAuditReportFactory {
      * @param stackTrace the given stack
      * @return the cleanup stack
      */
-    protected static StackTraceElement[] cleanupStackTrace(final StackTraceElement[] stackTrace) {
+    public static StackTraceElement[] cleanupStackTrace(final StackTraceElement[] stackTrace) {
+        // Stack may not have been captured (depends on the factory capture policy)
+        if (stackTrace == null) {
+            return null;
+        }
         List<StackTraceElement> cleanList = new ArrayList<StackTraceElement>();
         boolean inEasyBeansCode = false;
         boolean afterEasyBeansCode = false;
@@ -153,7 +158,7 @@ public final class InvocationAuditReportFactory {
      * @param arguments the array of arguments (may be null)
      * @return the size of arguments
      */
-    private static int lengthArgs(final Object[] arguments) {
+    public static int lengthArgs(final Object[] arguments) {
         if (arguments == null) {
             return 0;
         }
@@ -0,0 +1,212 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.audit.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Writes records in an audit journal and reads them back.
+ * @author Florent Benoit
+ */
+public class TestAuditJournal {
+
+    /**
+     * Memory values which don't fit in an int.
+     */
+    private static final long FREE_MEMORY = 3L * 1024 * 1024 * 1024;
+
+    /**
+     * Memory values which don't fit in an int.
+     */
+    private static final long TOTAL_MEMORY = 6L * 1024 * 1024 * 1024;
+
+    /**
+     * Number of records of the journals.
+     */
+    private static final int RECORDS = 16;
+
+    /**
+     * Directory of the journals.
+     */
+    private File directory = null;
+
+    /**
+     * Creates the directory of the journals.
+     */
+    @BeforeClass
+    protected void init() {
+        this.directory = new File(System.getProperty("java.io.tmpdir") + File.separator + System.getProperty("user.name")
+                + File.separator + "easybeans-audit-journal-" + System.nanoTime());
+        Assert.assertTrue(this.directory.mkdirs());
+    }
+
+    /**
+     * Memory values are written as longs and an invocation is rebuilt from
+     * its begin and end records.
+     * @throws IOException if the journal can't be written or read
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        File journalFile = new File(this.directory, "roundtrip.journal");
+        AuditJournal journal = new AuditJournal(journalFile, RECORDS);
+        int provider = journal.getStringId("container/factory/method");
+        writeRecord(journal, AuditJournal.BEGIN, provider, 1L);
+        writeRecord(journal, AuditJournal.END, provider, 1L);
+        // End without begin is dropped
+        writeRecord(journal, AuditJournal.END, provider, 2L);
+        journal.close();
+
+        AuditJournalReader reader = new AuditJournalReader(journalFile);
+        Assert.assertTrue(reader.isCompatible(RECORDS));
+        Assert.assertEquals(reader.getLastSequence(), 2L);
+        Assert.assertEquals(reader.readDictionary().get(Integer.valueOf(provider)), "container/factory/method");
+        Assert.assertEquals(reader.readReports().size(), 1);
+
+        RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+        try {
+            file.seek(AuditJournal.HEADER_SIZE + AuditJournal.FREE_MEMORY);
+            Assert.assertEquals(file.readLong(), FREE_MEMORY);
+            file.seek(AuditJournal.HEADER_SIZE + AuditJournal.TOTAL_MEMORY);
+            Assert.assertEquals(file.readLong(), TOTAL_MEMORY);
+        } finally {
+            file.close();
+        }
+
+        // Journal is continued when reopened
+        journal = new AuditJournal(journalFile, RECORDS);
+        Assert.assertEquals(journal.getStringId("container/factory/method"), provider);
+        writeRecord(journal, AuditJournal.BEGIN, provider, 3L);
+        writeRecord(journal, AuditJournal.ERROR, provider, 3L);
+        journal.close();
+        Assert.assertEquals(reader.getLastSequence(), 4L);
+        Assert.assertEquals(reader.readReports().size(), 2);
+    }
+
+    /**
+     * A journal written with another version is replaced.
+     * @throws IOException if the journal can't be written or read
+     */
+    @Test
+    public void testOtherVersion() throws IOException {
+        File journalFile = new File(this.directory, "version.journal");
+        AuditJournal journal = new AuditJournal(journalFile, RECORDS);
+        writeRecord(journal, AuditJournal.BEGIN, journal.getStringId("provider"), 1L);
+        journal.close();
+
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.seek(4);
+            file.writeInt(AuditJournal.VERSION - 1);
+        } finally {
+            file.close();
+        }
+        AuditJournalReader reader = new AuditJournalReader(journalFile);
+        Assert.assertFalse(reader.isCompatible(RECORDS));
+
+        journal = new AuditJournal(journalFile, RECORDS);
+        journal.close();
+        Assert.assertTrue(reader.isCompatible(RECORDS));
+        Assert.assertEquals(reader.getLastSequence(), -1L);
+        Assert.assertTrue(reader.readDictionary().isEmpty());
+    }
+
+    /**
+     * New strings are no longer recorded once the dictionary has reached
+     * its maximum number of strings, even after a restart.
+     * @throws IOException if the journal can't be written or read
+     */
+    @Test
+    public void testDictionaryStrings() throws IOException {
+        File journalFile = new File(this.directory, "strings.journal");
+        AuditJournal journal = new AuditJournal(journalFile, RECORDS, 2, AuditJournal.DEFAULT_DICTIONARY_SIZE);
+        Assert.assertEquals(journal.getStringId("first"), 0);
+        Assert.assertEquals(journal.getStringId("second"), 1);
+        Assert.assertEquals(journal.getStringId("third"), AuditJournal.NO_STRING);
+        Assert.assertEquals(journal.getStringId("first"), 0);
+        journal.close();
+
+        journal = new AuditJournal(journalFile, RECORDS, 2, AuditJournal.DEFAULT_DICTIONARY_SIZE);
+        Assert.assertEquals(journal.getStringId("second"), 1);
+        Assert.assertEquals(journal.getStringId("third"), AuditJournal.NO_STRING);
+        journal.close();
+        Assert.assertEquals(new AuditJournalReader(journalFile).readDictionary().size(), 2);
+    }
+
+    /**
+     * New strings are no longer recorded once the dictionary file has reached
+     * its maximum size.
+     * @throws IOException if the journal can't be written or read
+     */
+    @Test
+    public void testDictionarySize() throws IOException {
+        File journalFile = new File(this.directory, "size.journal");
+        File dictionaryFile = new File(journalFile.getPath() + AuditJournal.DICTIONARY_EXTENSION);
+        // id (4) + length (2) + 10 characters
+        long entrySize = 16;
+        AuditJournal journal = new AuditJournal(journalFile, RECORDS, Integer.MAX_VALUE, 2 * entrySize + 1);
+        Assert.assertEquals(journal.getStringId("0123456789"), 0);
+        Assert.assertEquals(journal.getStringId("abcdefghij"), 1);
+        Assert.assertEquals(journal.getStringId("ABCDEFGHIJ"), AuditJournal.NO_STRING);
+        journal.close();
+        Assert.assertEquals(dictionaryFile.length(), 2 * entrySize);
+
+        journal = new AuditJournal(journalFile, RECORDS, Integer.MAX_VALUE, 2 * entrySize + 1);
+        Assert.assertEquals(journal.getStringId("ABCDEFGHIJ"), AuditJournal.NO_STRING);
+        journal.close();
+        Assert.assertEquals(dictionaryFile.length(), 2 * entrySize);
+    }
+
+    /**
+     * Writes a record with memory values.
+     * @param journal the journal
+     * @param type the type of the record
+     * @param provider the id of the event provider
+     * @param invocation the invocation number
+     */
+    private static void writeRecord(final AuditJournal journal, final byte type, final int provider,
+            final long invocation) {
+        AuditJournal.Record record = journal.newRecord();
+        record.put(AuditJournal.TYPE, type);
+        record.put(AuditJournal.FLAGS, AuditJournal.MEMORY_CAPTURED);
+        record.putInt(AuditJournal.PROVIDER, provider);
+        record.putInt(AuditJournal.THREAD, AuditJournal.NO_STRING);
+        record.putInt(AuditJournal.CALLER, AuditJournal.NO_STRING);
+        record.putInt(AuditJournal.ROLES, AuditJournal.NO_STRING);
+        record.putLong(AuditJournal.INVOCATION, invocation);
+        record.putLong(AuditJournal.TIME, System.currentTimeMillis());
+        record.putLong(AuditJournal.FREE_MEMORY, FREE_MEMORY);
+        record.putLong(AuditJournal.TOTAL_MEMORY, TOTAL_MEMORY);
+        record.putKeyID("key-" + invocation);
+        record.commit();
+    }
+
+}
@@ -27,6 +27,7 @@ package org.ow2.easybeans.component.event;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.EZBJ2EEManagedObject;
@@ -70,6 +71,11 @@ public class EventComponent implements EZBEventComponent {
      */
     private LinkedList<EZBJ2EEManagedObject> objects = new LinkedList<EZBJ2EEManagedObject>();
 
+    /**
+     * Version of the listeners, incremented on each registration/unregistration.
+     */
+    private volatile long listenersVersion = 0;
+
     /**
      * Init method.<br/> This method is called before the start method.
      * @throws EZBComponentException if the initialization has failed.
@@ -105,6 +111,7 @@ public class EventComponent implements EZBEventComponent {
         }
 
         this.listeners.clear();
+        this.listenersVersion++;
         this.objects.clear();
         logger.info("stopped.");
     }
@@ -162,6 +169,7 @@ public class EventComponent implements EZBEventComponent {
     public synchronized void registerEventListener(final EZBEventListener eventListener) {
         this.service.registerListener(eventListener, eventListener.getEventProviderFilter());
         this.listeners.add(eventListener);
+        this.listenersVersion++;
     }
 
     /**
@@ -171,6 +179,38 @@ public class EventComponent implements EZBEventComponent {
     public synchronized void unregisterEventListener(final EZBEventListener eventListener) {
         this.service.unregisterListener(eventListener);
         this.listeners.remove(eventListener);
+        this.listenersVersion++;
+    }
+
+    /**
+     * Checks if a listener registered with {@link #registerEventListener(EZBEventListener)} has
+     * a filter matching the given event provider.
+     * @param eventProviderId the id of the event provider
+     * @return true if at least one listener matches the given provider id
+     */
+    public synchronized boolean hasEventListener(final String eventProviderId) {
+        for (IEventListener listener : this.listeners) {
+            if (listener instanceof EZBEventListener) {
+                String filter = ((EZBEventListener) listener).getEventProviderFilter();
+                try {
+                    if (filter != null && eventProviderId.matches(filter)) {
+                        return true;
+                    }
+                } catch (PatternSyntaxException e) {
+                    // Unable to know, consider that the listener is interested
+                    logger.debug("Invalid filter ''{0}'' for the listener ''{1}''", filter, listener, e);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a version number which is incremented each time a listener is registered or unregistered.
+     */
+    public long getListenersVersion() {
+        return this.listenersVersion;
     }
 
     /**
@@ -25,6 +25,10 @@
 
 package org.ow2.easybeans.component.jca.workmanager;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.resource.spi.work.ExecutionContext;
 import javax.resource.spi.work.Work;
 import javax.resource.spi.work.WorkListener;
@@ -34,16 +38,36 @@ import org.ow2.util.log.LogFactory;
 
 /**
  * This class defines a work of the JCA API by adding some properties around
- * this work.
+ * this work. It is the task submitted to the executor of the work manager.
  * @author Philippe Durieux (JOnAS)
  * @author Florent Benoit (EasyBeans)
  */
-public class ResourceWork {
+public class ResourceWork implements Runnable {
+
+    /**
+     * Work waiting to be started.
+     */
+    private static final int PENDING = 0;
+
+    /**
+     * Work started by a thread of the pool.
+     */
+    private static final int STARTED = 1;
+
+    /**
+     * Work removed before being started (start timeout).
+     */
+    private static final int CANCELLED = 2;
 
     /**
      * Logger.
      */
-    private static Log logger = LogFactory.getLog(ResourceWorkThread.class);
+    private static Log logger = LogFactory.getLog(ResourceWork.class);
+
+    /**
+     * Work manager executing this work.
+     */
+    private ResourceWorkManagerComponent workManager;
 
     /**
      * Work object that is wrapped.
@@ -72,20 +96,27 @@ public class ResourceWork {
     private long creationTime;
 
     /**
-     * This work has been started or not ? (default = false).
+     * State of this work (pending, started or cancelled).
      */
-    private boolean started = false;
+    private AtomicInteger state = new AtomicInteger(PENDING);
+
+    /**
+     * Released when the work is started.
+     */
+    private CountDownLatch startLatch = new CountDownLatch(1);
 
     /**
      * Default constructor : build a wrapper around the given work.
+     * @param workManager the work manager executing this work
      * @param work the given work
      * @param timeout the timeout of this work
      * @param executionContext the context for the given work
      * @param workListener the listener on this work object
      */
     @SuppressWarnings("boxing")
-    public ResourceWork(final Work work, final long timeout, final ExecutionContext executionContext,
-            final WorkListener workListener) {
+    public ResourceWork(final ResourceWorkManagerComponent workManager, final Work work, final long timeout,
+            final ExecutionContext executionContext, final WorkListener workListener) {
+        this.workManager = workManager;
         this.work = work;
         this.timeout = timeout;
         this.executionContext = executionContext;
@@ -131,17 +162,47 @@ public class ResourceWork {
         return this.creationTime;
     }
 
+    /**
+     * Executes the work (called by a thread of the pool).
+     */
+    public void run() {
+        this.workManager.runWork(this);
+    }
+
     /**
      * @return true if the work has been started, else false.
      */
     public boolean isStarted() {
-        return this.started;
+        return this.state.get() == STARTED;
+    }
+
+    /**
+     * Sets the started mode to true if the work has not been cancelled.
+     * @return true if the work has been started, false if it was cancelled
+     */
+    public boolean setStarted() {
+        if (!this.state.compareAndSet(PENDING, STARTED)) {
+            return false;
+        }
+        this.startLatch.countDown();
+        return true;
+    }
+
+    /**
+     * Cancels the work if it has not been started.
+     * @return true if the work has been cancelled, false if it was already started
+     */
+    public boolean cancel() {
+        return this.state.compareAndSet(PENDING, CANCELLED);
     }
 
     /**
-     * Sets the started mode to true.
+     * Waits until the work is started.
+     * @param waitTime the maximum time to wait (in milliseconds)
+     * @return true if the work has been started
+     * @throws InterruptedException if the thread is interrupted while waiting
      */
-    public void setStarted() {
-        this.started = true;
+    public boolean awaitStart(final long waitTime) throws InterruptedException {
+        return this.startLatch.await(waitTime, TimeUnit.MILLISECONDS);
     }
 }
@@ -0,0 +1,47 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.jca.workmanager;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Thread of the work-stealing pool executing works for the work manager.
+ * @author Florent Benoit
+ */
+public class ResourceWorkForkJoinThread extends ForkJoinWorkerThread {
+
+    /**
+     * Build a thread doing the works of the given pool.
+     * @param pool the pool of the work manager
+     * @param workManagerNumber identifier of the work manager instance
+     * @param threadNumber the thread number for this thread (debug info)
+     */
+    ResourceWorkForkJoinThread(final ForkJoinPool pool, final int workManagerNumber, final int threadNumber) {
+        super(pool);
+        setName(this.getClass().getName() + "- wm number (" + workManagerNumber + "), Thread Number (" + threadNumber + ")");
+    }
+}
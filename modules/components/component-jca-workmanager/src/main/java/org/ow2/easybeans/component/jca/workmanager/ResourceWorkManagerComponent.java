@@ -25,7 +25,15 @@
 
 package org.ow2.easybeans.component.jca.workmanager;
 
-import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.resource.spi.work.ExecutionContext;
 import javax.resource.spi.work.Work;
@@ -46,7 +54,15 @@ import org.ow2.util.log.Log;
 import org.ow2.util.log.LogFactory;
 
 /**
- * Implementation of the Resource Work Manager API.
+ * Implementation of the Resource Work Manager API.<br>
+ * Works are executed by a {@link ThreadPoolExecutor} keeping the minimum
+ * number of threads and growing up to the maximum number of threads before
+ * queuing the works. The queue may be bounded, works are then rejected with a
+ * {@link WorkRejectedException} when it is full.<br>
+ * The {@link #ENGINE_FORK_JOIN} engine executes the works on a work-stealing
+ * {@link ForkJoinPool} of maxPoolSize threads instead. It suits many short
+ * non-blocking works; works blocking their thread for a long time should
+ * keep the default {@link #ENGINE_THREAD_POOL} engine.
  * @author Philippe Durieux (JOnAS)
  * @author Florent Benoit (EasyBeans)
  */
@@ -57,6 +73,16 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
      */
     public static final long ONE_SECOND = 1000L;
 
+    /**
+     * Engine executing the works on a {@link ThreadPoolExecutor} (default).
+     */
+    public static final String ENGINE_THREAD_POOL = "threadpool";
+
+    /**
+     * Engine executing the works on a work-stealing {@link ForkJoinPool}.
+     */
+    public static final String ENGINE_FORK_JOIN = "forkjoin";
+
     /**
      * Default waiting time.
      */
@@ -78,50 +104,75 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
     private static Log logger = LogFactory.getLog(ResourceWorkManagerComponent.class);
 
     /**
-     * List of ResourceWork (which wrap Work object).
+     * Counter of the pools.
      */
-    private LinkedList<ResourceWork> workList = new LinkedList<ResourceWork>();
+    private static AtomicInteger poolCounter = new AtomicInteger();
 
     /**
      * Identifier of this pool.
      */
-    private static int poolnumber = 0;
+    private final int poolnumber;
 
     /**
      * Thread number (when building ResourceWorkThread, it assigns a new thread
      * number).
      */
-    private static int threadnumber = 0;
+    private final AtomicInteger threadnumber = new AtomicInteger();
 
     /**
-     * The maximum size of the pool.
+     * Executor of the works (null if the component is not started).
      */
-    private int maxpoolsz = DEFAULT_MAX;
+    private volatile ExecutorService executor = null;
 
     /**
-     * The minimum size of the pool.
+     * Engine executing the works.
      */
-    private int minpoolsz = DEFAULT_MIN;
+    private String engine = ENGINE_THREAD_POOL;
 
     /**
-     * The current size of thread pool.
+     * Maximum number of works waiting for a thread (0 = unbounded).
      */
-    private int poolsz;
+    private int queueSize = 0;
 
     /**
-     * Threads that are ready to work.
+     * Works submitted to the executor and not yet finished.
      */
-    private int freeThreads = 0;
+    private final AtomicInteger pendingWorks = new AtomicInteger();
 
     /**
-     * The time to wait (in millisec).
+     * Number of works started by the threads of the pool.
      */
-    private long waitingTime = DEFAULT_WAIT_TIME;
+    private final AtomicLong startedWorks = new AtomicLong();
+
+    /**
+     * Total time waited by the works before being started (in millisec).
+     */
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    /**
+     * Maximum time waited by a work before being started (in millisec).
+     */
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * Number of rejected works (queue full, start timeout, manager stopped).
+     */
+    private final AtomicLong rejectedWorks = new AtomicLong();
+
+    /**
+     * The maximum size of the pool.
+     */
+    private int maxpoolsz = DEFAULT_MAX;
 
     /**
-     * Pool status : by default, it is not stopped.
+     * The minimum size of the pool.
      */
-    private boolean stopped = false;
+    private int minpoolsz = DEFAULT_MIN;
+
+    /**
+     * The time to wait (in millisec).
+     */
+    private long waitingTime = DEFAULT_WAIT_TIME;
 
     /**
      * Wait few more seconds when waiting.
@@ -138,14 +189,21 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
      */
     public ResourceWorkManagerComponent() {
         // new identifier
-        poolnumber++;
+        this.poolnumber = poolCounter.incrementAndGet();
     }
 
     /**
      * @return current pool size
      */
     public int getCurrentPoolSize() {
-        return this.poolsz;
+        ExecutorService current = this.executor;
+        if (current instanceof ForkJoinPool) {
+            return ((ForkJoinPool) current).getPoolSize();
+        }
+        if (current instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) current).getPoolSize();
+        }
+        return 0;
     }
 
     /**
@@ -178,6 +236,107 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
         this.maxpoolsz = maxsz;
     }
 
+    /**
+     * @return the maximum number of works waiting for a thread (0 = unbounded)
+     */
+    public int getQueueSize() {
+        return this.queueSize;
+    }
+
+    /**
+     * Sets the maximum number of works waiting for a thread. Works are
+     * rejected when the pool is at its maximum size and the queue is full.
+     * @param queueSize the size of the queue (0 = unbounded)
+     */
+    public void setQueueSize(final int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @return the engine executing the works
+     */
+    public String getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Sets the engine executing the works, {@link #ENGINE_THREAD_POOL} or
+     * {@link #ENGINE_FORK_JOIN}. It is used when the component is started.
+     * @param engine the engine
+     */
+    public void setEngine(final String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return the number of works waiting for a thread
+     */
+    public int getWaitingWorks() {
+        ExecutorService current = this.executor;
+        if (current instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) current;
+            return (int) (pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        }
+        if (current instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) current).getQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of threads executing a work
+     */
+    public int getActiveThreads() {
+        ExecutorService current = this.executor;
+        if (current instanceof ForkJoinPool) {
+            return ((ForkJoinPool) current).getActiveThreadCount();
+        }
+        if (current instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) current).getActiveCount();
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of works accepted and not yet finished (running or
+     *         waiting for a thread)
+     */
+    public int getPendingWorks() {
+        return this.pendingWorks.get();
+    }
+
+    /**
+     * @return the number of works started by the threads of the pool
+     */
+    public long getStartedWorks() {
+        return this.startedWorks.get();
+    }
+
+    /**
+     * @return the average time waited by the works before being started (in millisec)
+     */
+    public long getAverageWaitTime() {
+        long started = this.startedWorks.get();
+        if (started == 0) {
+            return 0;
+        }
+        return this.totalWaitTime.get() / started;
+    }
+
+    /**
+     * @return the maximum time waited by a work before being started (in millisec)
+     */
+    public long getMaxWaitTime() {
+        return this.maxWaitTime.get();
+    }
+
+    /**
+     * @return the number of rejected works
+     */
+    public long getRejectedWorks() {
+        return this.rejectedWorks.get();
+    }
+
     /**
      * Accepts a Work instance for processing. This call blocks until the Work
      * instance completes execution. There is no guarantee on when the accepted
@@ -265,51 +424,47 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
     public long startWork(final Work work, final long timeout, final ExecutionContext executionContext,
             final WorkListener workListener) throws WorkRejectedException, WorkException {
 
-        ResourceWork resourceWork = new ResourceWork(work, timeout, executionContext, workListener);
+        ResourceWork resourceWork = new ResourceWork(this, work, timeout, executionContext, workListener);
         if (workListener != null) {
             workListener.workAccepted(new WorkEvent(this, WorkEvent.WORK_ACCEPTED, work, null));
         }
         long starttime = System.currentTimeMillis();
-        long duration = 0;
-        synchronized (this.workList) {
-            this.workList.add(resourceWork);
-            if (this.poolsz < this.maxpoolsz && this.workList.size() > this.freeThreads) {
-                // We need one more thread.
-                this.poolsz++;
-                ResourceWorkThread resourceWorkThread = new ResourceWorkThread(this, threadnumber++, poolnumber);
-                resourceWorkThread.start();
-            } else {
-                this.workList.notify();
-            }
-        }
+        submit(resourceWork);
+
         // Wait until my work is started.
+        // No need to wait after timeout is elapsed
+        long waittime = this.waitingTime;
+        if (timeout < waittime) {
+            waittime = timeout + FEW_MORE_SECONDS;
+        }
         boolean started = false;
-        synchronized (resourceWork) {
-            if (!resourceWork.isStarted()) {
-                try {
-                    // No need to wait after timeout is elapsed
-                    long waittime = this.waitingTime;
-                    if (timeout < waittime) {
-                        waittime = timeout + FEW_MORE_SECONDS;
-                    }
-                    resourceWork.wait(waittime);
-                } catch (InterruptedException e) {
-                    throw new WorkRejectedException("Interrupted");
-                }
-            }
-            started = resourceWork.isStarted();
+        boolean interrupted = false;
+        try {
+            started = resourceWork.awaitStart(waittime);
+        } catch (InterruptedException e) {
+            interrupted = true;
         }
-        duration = System.currentTimeMillis() - starttime;
-        if (!started) {
-            synchronized (this.workList) {
-                // Remove the work in the list
-                if (!this.workList.remove(resourceWork)) {
-                    logger.debug("Cannot remove the work");
-                }
-                throw new WorkRejectedException(WorkException.START_TIMED_OUT);
+        // The work may be started by a thread while it is cancelled
+        if (!started && resourceWork.cancel()) {
+            // A fork/join pool cannot remove a work, the cancelled work is
+            // skipped by runWork() when a thread takes it
+            ExecutorService current = this.executor;
+            if (current instanceof ThreadPoolExecutor && ((ThreadPoolExecutor) current).remove(resourceWork)) {
+                this.pendingWorks.decrementAndGet();
+            } else {
+                logger.debug("Cannot remove the work");
+            }
+            this.rejectedWorks.incrementAndGet();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new WorkRejectedException("Interrupted");
             }
+            throw new WorkRejectedException(WorkException.START_TIMED_OUT);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
-        return duration;
+        return System.currentTimeMillis() - starttime;
     }
 
     /**
@@ -351,21 +506,93 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
     public void scheduleWork(final Work work, final long timeout, final ExecutionContext executionContext,
             final WorkListener workListener) throws WorkRejectedException, WorkException {
 
-        ResourceWork resourceWork = new ResourceWork(work, timeout, executionContext, workListener);
+        ResourceWork resourceWork = new ResourceWork(this, work, timeout, executionContext, workListener);
         if (workListener != null) {
             workListener.workAccepted(new WorkEvent(this, WorkEvent.WORK_ACCEPTED, work, null));
         }
-        synchronized (this.workList) {
-            this.workList.add(resourceWork);
-            if (this.poolsz < this.maxpoolsz && this.workList.size() > this.freeThreads) {
-                // We need one more thread.
-                this.poolsz++;
-                ResourceWorkThread resourceWorkThread = new ResourceWorkThread(this, threadnumber++, poolnumber);
-                resourceWorkThread.start();
-            } else {
-                // Just wake up a thread waiting for work.
-                this.workList.notify();
+        submit(resourceWork);
+    }
+
+    /**
+     * Gives the work to the executor.
+     * @param resourceWork the work to execute
+     * @throws WorkRejectedException if the manager is not started or if the queue is full
+     */
+    private void submit(final ResourceWork resourceWork) throws WorkRejectedException {
+        ExecutorService current = this.executor;
+        if (current == null) {
+            this.rejectedWorks.incrementAndGet();
+            rejected(resourceWork);
+            throw new WorkRejectedException("The work manager is not started");
+        }
+        int pending = this.pendingWorks.incrementAndGet();
+        // The queues of a fork/join pool are unbounded
+        if (current instanceof ForkJoinPool && this.queueSize > 0 && pending > this.maxpoolsz + this.queueSize) {
+            this.pendingWorks.decrementAndGet();
+            this.rejectedWorks.incrementAndGet();
+            rejected(resourceWork);
+            throw new WorkRejectedException("The queue of the work manager is full (" + this.queueSize + " works)");
+        }
+        try {
+            current.execute(resourceWork);
+        } catch (RejectedExecutionException e) {
+            this.pendingWorks.decrementAndGet();
+            this.rejectedWorks.incrementAndGet();
+            rejected(resourceWork);
+            throw new WorkRejectedException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Notifies the listener of a work that it has been rejected.
+     * @param resourceWork the rejected work
+     */
+    private void rejected(final ResourceWork resourceWork) {
+        WorkListener workListener = resourceWork.getWorkListener();
+        if (workListener != null) {
+            workListener.workRejected(new WorkEvent(this, WorkEvent.WORK_REJECTED, resourceWork.getWork(), null));
+        }
+    }
+
+    /**
+     * Checks if a new thread should be created for a submitted work.
+     * @return true if there are more pending works than threads and less threads than the maximum
+     */
+    boolean needsNewThread() {
+        ExecutorService current = this.executor;
+        if (!(current instanceof ThreadPoolExecutor)) {
+            return false;
+        }
+        int threads = ((ThreadPoolExecutor) current).getPoolSize();
+        return threads < this.maxpoolsz && this.pendingWorks.get() > threads;
+    }
+
+    /**
+     * Executes a work given to the executor (called by a thread of the pool).
+     * @param resourceWork the work
+     */
+    void runWork(final ResourceWork resourceWork) {
+        try {
+            // Cancelled by startWork() after a timeout
+            if (!resourceWork.setStarted()) {
+                return;
             }
+            logger.debug("Starting a new work");
+            long waitTime = System.currentTimeMillis() - resourceWork.getCreationTime();
+            this.startedWorks.incrementAndGet();
+            this.totalWaitTime.addAndGet(waitTime);
+            long max = this.maxWaitTime.get();
+            while (waitTime > max && !this.maxWaitTime.compareAndSet(max, waitTime)) {
+                max = this.maxWaitTime.get();
+            }
+            try {
+                doMyWork(resourceWork.getWork(), resourceWork.getTimeout(), resourceWork.getExecutionContext(),
+                        resourceWork.getWorkListener(), resourceWork.getCreationTime());
+            } catch (WorkException e) {
+                logger.error("Exception during work run", e);
+            }
+        } finally {
+            this.pendingWorks.decrementAndGet();
         }
     }
 
@@ -451,53 +678,22 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
      */
     public void setWaitingTime(final long waitingTime) {
         this.waitingTime = waitingTime;
-    }
-
-    /**
-     * Do the next JWork object to be run.
-     * @throws WorkException if work is not done
-     * @throws InterruptedException if one object can't wait.
-     * @throws ResourceWorkManagerStoppedException if the manager is stopped.
-     */
-    public void nextWork() throws WorkException, InterruptedException, ResourceWorkManagerStoppedException {
-        ResourceWork run = null;
-        boolean haswait = false;
-        synchronized (this.workList) {
-            while (this.workList.isEmpty()) {
-                if ((haswait && this.freeThreads > this.minpoolsz) || this.stopped) {
-                    this.poolsz--;
-                    throw new ResourceWorkManagerStoppedException("Manager is stopped");
-                }
-                try {
-                    this.freeThreads++;
-                    this.workList.wait(this.waitingTime);
-                    this.freeThreads--;
-                    haswait = true;
-                } catch (InterruptedException e) {
-                    this.freeThreads--;
-                    this.poolsz--;
-                    throw e;
-                }
-            }
-            run = this.workList.removeFirst();
-            // In case startWork() was called
-            synchronized (run) {
-                logger.debug("Starting a new work");
-                run.setStarted();
-                run.notify();
-            }
+        ExecutorService current = this.executor;
+        if (current instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) current).setKeepAliveTime(waitingTime, TimeUnit.MILLISECONDS);
         }
-        doMyWork(run.getWork(), run.getTimeout(), run.getExecutionContext(), run.getWorkListener(), run
-                .getCreationTime());
     }
 
     /**
-     * Remove this WorkManager : Stop all threads.
+     * Remove this WorkManager : Stop all threads.<br>
+     * Works already accepted are still executed.
      */
     public synchronized void stopThreads() {
-        this.stopped = true;
-        notifyAll();
-        poolnumber--;
+        ExecutorService current = this.executor;
+        if (current != null) {
+            this.executor = null;
+            current.shutdown();
+        }
     }
 
     /**
@@ -523,14 +719,58 @@ public class ResourceWorkManagerComponent implements EZBWorkManagerComponent, Wo
             return;
         }
 
-        // Build threads for work.
-        for (this.poolsz = 0; this.poolsz < this.minpoolsz; this.poolsz++) {
-            ResourceWorkThread resourceWorkThread = new ResourceWorkThread(this, poolnumber, threadnumber++);
-            resourceWorkThread.setDaemon(true);
-            resourceWorkThread.start();
+        if (this.minpoolsz < 0 || this.maxpoolsz <= 0 || this.maxpoolsz < this.minpoolsz) {
+            throw new EZBComponentException("Invalid pool sizes: min=" + this.minpoolsz + ", max=" + this.maxpoolsz);
+        }
+        if (ENGINE_FORK_JOIN.equals(this.engine)) {
+            this.executor = newForkJoinPool();
+        } else if (ENGINE_THREAD_POOL.equals(this.engine)) {
+            this.executor = newThreadPoolExecutor();
+        } else {
+            throw new EZBComponentException("Invalid engine '" + this.engine + "', expected '" + ENGINE_THREAD_POOL
+                    + "' or '" + ENGINE_FORK_JOIN + "'");
+        }
+        logger.info("Settings: engine={0},minThreads={1},maxThreads={2},queueSize={3},txTimeout={4}s", this.engine,
+                Integer.valueOf(this.minpoolsz), Integer.valueOf(this.maxpoolsz), Integer.valueOf(this.queueSize),
+                Long.valueOf(this.waitingTime / ONE_SECOND));
+    }
+
+    /**
+     * Builds the thread pool executing the works, with its minimum threads started.
+     * @return the executor
+     */
+    private ThreadPoolExecutor newThreadPoolExecutor() {
+        int capacity = Integer.MAX_VALUE;
+        if (this.queueSize > 0) {
+            capacity = this.queueSize;
         }
-        logger.info("Settings: minThreads={0},maxThreads={1},txTimeout={2}s", Integer.valueOf(this.minpoolsz), Integer
-                .valueOf(this.maxpoolsz), Long.valueOf(this.waitingTime / ONE_SECOND));
+        ResourceWorkQueue queue = new ResourceWorkQueue(this, capacity);
+        ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(final Runnable target) {
+                return new ResourceWorkThread(target, ResourceWorkManagerComponent.this.poolnumber,
+                        ResourceWorkManagerComponent.this.threadnumber.getAndIncrement());
+            }
+        };
+        ThreadPoolExecutor newExecutor = new ThreadPoolExecutor(this.minpoolsz, this.maxpoolsz, this.waitingTime,
+                TimeUnit.MILLISECONDS, queue, threadFactory, queue);
+        // Build threads for work.
+        newExecutor.prestartAllCoreThreads();
+        return newExecutor;
+    }
+
+    /**
+     * Builds the work-stealing pool executing the works with maxPoolSize
+     * threads. Works are taken in submission order (async mode).
+     * @return the executor
+     */
+    private ForkJoinPool newForkJoinPool() {
+        ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                return new ResourceWorkForkJoinThread(pool, ResourceWorkManagerComponent.this.poolnumber,
+                        ResourceWorkManagerComponent.this.threadnumber.getAndIncrement());
+            }
+        };
+        return new ForkJoinPool(this.maxpoolsz, threadFactory, null, true);
     }
 
     /**
@@ -1,94 +0,0 @@
-/**
- * EasyBeans
- * Copyright (C) 2006 Bull S.A.S.
- * Contact: easybeans@ow2.org
- *
- * This library is free software; you can redistribute it and/or
- * modify it under the terms of the GNU Lesser General Public
- * License as published by the Free Software Foundation; either
- * version 2.1 of the License, or any later version.
- *
- * This library is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
- * Lesser General Public License for more details.
- *
- * You should have received a copy of the GNU Lesser General Public
- * License along with this library; if not, write to the Free Software
- * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
- * USA
- *
- * --------------------------------------------------------------------------
- * $Id: ResourceWorkManagerStoppedException.java 5369 2010-02-24 14:58:19Z benoitf $
- * --------------------------------------------------------------------------
- */
-
-package org.ow2.easybeans.component.jca.workmanager;
-
-/**
- * Exception that means the resource work manager is being stopped.
- * @author Florent Benoit
- */
-public class ResourceWorkManagerStoppedException extends Exception {
-
-    /**
-     * Id for serializable class.
-     */
-    private static final long serialVersionUID = 8497352952901390868L;
-
-    /**
-     * Constructs a new runtime exception with <code>null</code> as its detail
-     * message. The cause is not initialized, and may subsequently be
-     * initialized by a call to {@link #initCause}.
-     */
-    public ResourceWorkManagerStoppedException() {
-        super();
-    }
-
-    /**
-     * Constructs a new runtime exception with the specified detail message. The
-     * cause is not initialized, and may subsequently be initialized by a call
-     * to {@link #initCause}.
-     * @param message the detail message. The detail message is saved for later
-     *        retrieval by the {@link #getMessage()} method.
-     */
-    public ResourceWorkManagerStoppedException(final String message) {
-        super(message);
-    }
-
-    /**
-     * Constructs a new runtime exception with the specified detail message and
-     * cause.
-     * <p>
-     * Note that the detail message associated with <code>cause</code> is
-     * <i>not</i> automatically incorporated in this runtime exception's detail
-     * message.
-     * @param message the detail message (which is saved for later retrieval by
-     *        the {@link #getMessage()} method).
-     * @param cause the cause (which is saved for later retrieval by the
-     *        {@link #getCause()} method). (A <tt>null</tt> value is
-     *        permitted, and indicates that the cause is nonexistent or
-     *        unknown.)
-     */
-    public ResourceWorkManagerStoppedException(final String message, final Throwable cause) {
-        super(message, cause);
-    }
-
-    /**
-     * Constructs a new exception with the specified cause and a detail message
-     * of <tt>(cause==null ? null : cause.toString())</tt> (which typically
-     * contains the class and detail message of <tt>cause</tt>). This
-     * constructor is useful for exceptions that are little more than wrappers
-     * for other throwables (for example, {@link
-     * java.security.PrivilegedActionException}).
-     * @param cause the cause (which is saved for later retrieval by the
-     *        {@link #getCause()} method). (A <tt>null</tt> value is
-     *        permitted, and indicates that the cause is nonexistent or
-     *        unknown.)
-     * @since 1.4
-     */
-    public ResourceWorkManagerStoppedException(final Throwable cause) {
-        super(cause);
-    }
-
-}
@@ -0,0 +1,92 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.jca.workmanager;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Queue of the works waiting for a thread.<br>
+ * A {@link ThreadPoolExecutor} only creates threads above its core size when
+ * its queue is full. This queue refuses the works while there are more
+ * pending works than threads and the maximum size has not been reached, so
+ * that the pool grows before queuing the works. Works refused when the pool
+ * is at its maximum size are then queued by the rejection handler, which
+ * only rejects them when the queue is full.
+ * @author Florent Benoit
+ */
+public class ResourceWorkQueue extends LinkedBlockingQueue<Runnable> implements RejectedExecutionHandler {
+
+    /**
+     * Id for serializable class.
+     */
+    private static final long serialVersionUID = -6404372155512187463L;
+
+    /**
+     * Work manager using this queue.
+     */
+    private final transient ResourceWorkManagerComponent workManager;
+
+    /**
+     * Build a queue for the given work manager.
+     * @param workManager the work manager using this queue
+     * @param capacity the maximum number of waiting works
+     */
+    public ResourceWorkQueue(final ResourceWorkManagerComponent workManager, final int capacity) {
+        super(capacity);
+        this.workManager = workManager;
+    }
+
+    /**
+     * Refuses the work if a new thread should be created for it.
+     * @param work the work
+     * @return true if the work has been queued
+     */
+    @Override
+    public boolean offer(final Runnable work) {
+        if (this.workManager.needsNewThread()) {
+            return false;
+        }
+        return super.offer(work);
+    }
+
+    /**
+     * Queues a work refused by {@link #offer(Runnable)} when no thread can be added.
+     * @param work the work
+     * @param executor the executor of the work manager
+     * @throws RejectedExecutionException if the executor is stopped or if the queue is full
+     */
+    public void rejectedExecution(final Runnable work, final ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The work manager is stopped");
+        }
+        if (!super.offer(work)) {
+            throw new RejectedExecutionException("The queue of the work manager is full (" + size() + " works)");
+        }
+    }
+}
@@ -25,57 +25,22 @@
 
 package org.ow2.easybeans.component.jca.workmanager;
 
-import javax.resource.spi.work.WorkException;
-
-import org.ow2.util.log.Log;
-import org.ow2.util.log.LogFactory;
-
 /**
- * Thread executing works for the work manager.
+ * Thread of the pool executing works for the work manager.
  * @author Philippe Durieux (JOnAS)
  * @author Florent Benoit (EasyBeans)
  */
 public class ResourceWorkThread extends Thread {
 
     /**
-     * Logger.
-     */
-    private Log logger = LogFactory.getLog(ResourceWorkThread.class);
-
-    /**
-     * Resource WorkManager used by this worker thread.
-     */
-    private ResourceWorkManagerComponent workManager;
-
-    /**
-     * Build a thread doing the work.
-     * @param workManager The implementation of WorkManager API.
-     * @param threadNumber the thread number for this thread (debug info)
+     * Build a thread doing the works.
+     * @param target the loop of the executor taking the works
      * @param workManagerNumber identifier of the work manager instance
+     * @param threadNumber the thread number for this thread (debug info)
      */
-    ResourceWorkThread(final ResourceWorkManagerComponent workManager, final  int workManagerNumber, final int threadNumber) {
-        this.workManager = workManager;
+    ResourceWorkThread(final Runnable target, final int workManagerNumber, final int threadNumber) {
+        super(target);
         setName(this.getClass().getName() + "- wm number (" + workManagerNumber + "), Thread Number (" + threadNumber + ")");
-    }
-
-    /**
-     * Start the thread work.
-     */
-    @Override
-    public void run() {
-
-        while (true) {
-            try {
-                this.workManager.nextWork();
-            } catch (InterruptedException e) {
-                this.logger.error("Exception while waiting during a work", e);
-                return;
-            } catch (WorkException e) {
-                this.logger.error("Exception during work run", e);
-            } catch (ResourceWorkManagerStoppedException e) {
-                this.logger.debug("Manager has been stopped", e);
-                return;
-            }
-        }
+        setDaemon(true);
     }
 }
@@ -0,0 +1,329 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+
+package org.ow2.easybeans.component.jca.workmanager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkAdapter;
+import javax.resource.spi.work.WorkEvent;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+import javax.resource.spi.work.WorkRejectedException;
+
+import org.ow2.easybeans.component.api.EZBComponentException;
+import org.ow2.easybeans.component.itf.TMComponent;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the scheduling of the works by the work manager.
+ * @author Florent Benoit
+ */
+public class TestResourceWorkManagerComponent {
+
+    /**
+     * Maximum time (in ms) to wait for a state in the tests.
+     */
+    private static final long WAIT_TIME = 10000L;
+
+    /**
+     * Work manager of the current test.
+     */
+    private ResourceWorkManagerComponent workManager = null;
+
+    /**
+     * Releases the works blocked by the current test.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Releases the blocked works and stops the work manager.
+     * @throws EZBComponentException if the work manager cannot be stopped
+     */
+    @AfterMethod
+    public void stopWorkManager() throws EZBComponentException {
+        this.release.countDown();
+        if (this.workManager != null) {
+            this.workManager.stop();
+        }
+    }
+
+    /**
+     * startWork() fails when the work is not started before the waiting time.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testStartWorkTimeout() throws Exception {
+        startWorkManager(ResourceWorkManagerComponent.ENGINE_THREAD_POOL, 1, 1, 0);
+        this.workManager.setWaitingTime(500L);
+        BlockingWork busy = new BlockingWork(1);
+        this.workManager.scheduleWork(busy);
+        busy.awaitStarted();
+
+        BlockingWork late = new BlockingWork(1);
+        try {
+            this.workManager.startWork(late, WorkManager.INDEFINITE, null, null);
+            Assert.fail("The work should not be started");
+        } catch (WorkRejectedException e) {
+            Assert.assertEquals(e.getMessage(), WorkException.START_TIMED_OUT);
+        }
+        // The work has been removed from the queue
+        Assert.assertEquals(this.workManager.getRejectedWorks(), 1L);
+        Assert.assertEquals(this.workManager.getWaitingWorks(), 0);
+        Assert.assertEquals(this.workManager.getPendingWorks(), 1);
+
+        this.release.countDown();
+        waitForPendingWorks(0);
+        Assert.assertEquals(late.getStarted(), 0);
+        Assert.assertEquals(this.workManager.getStartedWorks(), 1L);
+    }
+
+    /**
+     * Works given to scheduleWork() or startWork() are rejected once the pool
+     * is at its maximum size and the queue is full.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testScheduleWorkRejected() throws Exception {
+        startWorkManager(ResourceWorkManagerComponent.ENGINE_THREAD_POOL, 1, 1, 1);
+        BlockingWork busy = new BlockingWork(1);
+        this.workManager.scheduleWork(busy);
+        busy.awaitStarted();
+        this.workManager.scheduleWork(new BlockingWork(1));
+        Assert.assertEquals(this.workManager.getWaitingWorks(), 1);
+
+        assertRejected();
+        try {
+            this.workManager.startWork(new BlockingWork(1));
+            Assert.fail("The work should be rejected");
+        } catch (WorkRejectedException e) {
+            Assert.assertEquals(this.workManager.getRejectedWorks(), 2L);
+        }
+
+        this.release.countDown();
+        waitForPendingWorks(0);
+        Assert.assertEquals(this.workManager.getStartedWorks(), 2L);
+    }
+
+    /**
+     * The fork/join engine rejects the works above the maximum size of the pool and the queue size.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testForkJoinRejected() throws Exception {
+        startWorkManager(ResourceWorkManagerComponent.ENGINE_FORK_JOIN, 1, 1, 1);
+        BlockingWork busy = new BlockingWork(1);
+        this.workManager.scheduleWork(busy);
+        busy.awaitStarted();
+        this.workManager.scheduleWork(new BlockingWork(1));
+
+        assertRejected();
+
+        this.release.countDown();
+        waitForPendingWorks(0);
+        Assert.assertEquals(this.workManager.getStartedWorks(), 2L);
+    }
+
+    /**
+     * The pool grows up to its maximum size before queuing the works.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPoolGrowth() throws Exception {
+        startWorkManager(ResourceWorkManagerComponent.ENGINE_THREAD_POOL, 1, 4, 0);
+        Assert.assertEquals(this.workManager.getCurrentPoolSize(), 1);
+
+        BlockingWork works = new BlockingWork(4);
+        for (int i = 0; i < 6; i++) {
+            this.workManager.scheduleWork(works);
+        }
+        works.awaitStarted();
+        Assert.assertEquals(this.workManager.getCurrentPoolSize(), 4);
+        Assert.assertEquals(this.workManager.getActiveThreads(), 4);
+        Assert.assertEquals(this.workManager.getWaitingWorks(), 2);
+        Assert.assertEquals(this.workManager.getPendingWorks(), 6);
+
+        this.release.countDown();
+        waitForPendingWorks(0);
+        Assert.assertEquals(works.getStarted(), 6);
+        Assert.assertEquals(this.workManager.getCurrentPoolSize(), 4);
+    }
+
+    /**
+     * Works accepted before the stop are still executed and counted, works
+     * submitted after the stop are rejected.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPendingWorksOnStop() throws Exception {
+        startWorkManager(ResourceWorkManagerComponent.ENGINE_THREAD_POOL, 1, 1, 0);
+        BlockingWork works = new BlockingWork(1);
+        for (int i = 0; i < 3; i++) {
+            this.workManager.scheduleWork(works);
+        }
+        works.awaitStarted();
+        Assert.assertEquals(this.workManager.getPendingWorks(), 3);
+
+        this.workManager.stop();
+        assertRejected();
+        Assert.assertEquals(this.workManager.getPendingWorks(), 3);
+
+        this.release.countDown();
+        waitForPendingWorks(0);
+        Assert.assertEquals(works.getStarted(), 3);
+    }
+
+    /**
+     * Starts a work manager.
+     * @param engine the engine executing the works
+     * @param min the minimum size of the pool
+     * @param max the maximum size of the pool
+     * @param queueSize the size of the queue (0 = unbounded)
+     * @throws EZBComponentException if the work manager cannot be started
+     */
+    private void startWorkManager(final String engine, final int min, final int max, final int queueSize)
+            throws EZBComponentException {
+        this.workManager = new ResourceWorkManagerComponent();
+        this.workManager.setEngine(engine);
+        this.workManager.setMinPoolSize(min);
+        this.workManager.setMaxPoolSize(max);
+        this.workManager.setQueueSize(queueSize);
+        this.workManager.setTransactionComponent((TMComponent) Proxy.newProxyInstance(
+                TestResourceWorkManagerComponent.class.getClassLoader(), new Class<?>[] {TMComponent.class},
+                new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+        this.workManager.init();
+        this.workManager.start();
+    }
+
+    /**
+     * Checks that a new work is rejected and that its listener is notified.
+     * @throws WorkException if the work fails for another reason
+     */
+    private void assertRejected() throws WorkException {
+        long rejected = this.workManager.getRejectedWorks();
+        int pending = this.workManager.getPendingWorks();
+        final AtomicInteger notified = new AtomicInteger();
+        BlockingWork work = new BlockingWork(1);
+        try {
+            this.workManager.scheduleWork(work, WorkManager.INDEFINITE, null, new WorkAdapter() {
+                @Override
+                public void workRejected(final WorkEvent event) {
+                    notified.incrementAndGet();
+                }
+            });
+            Assert.fail("The work should be rejected");
+        } catch (WorkRejectedException e) {
+            Assert.assertEquals(notified.get(), 1);
+        }
+        Assert.assertEquals(this.workManager.getRejectedWorks(), rejected + 1);
+        Assert.assertEquals(this.workManager.getPendingWorks(), pending);
+        Assert.assertEquals(work.getStarted(), 0);
+    }
+
+    /**
+     * Waits until the number of pending works reaches the given value.
+     * @param count the number of pending works
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void waitForPendingWorks(final int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIME;
+        while (this.workManager.getPendingWorks() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(this.workManager.getPendingWorks(), count);
+    }
+
+    /**
+     * Work blocked until the end of the test.
+     */
+    private class BlockingWork implements Work {
+
+        /**
+         * Counts down when the expected number of executions have started.
+         */
+        private final CountDownLatch startedLatch;
+
+        /**
+         * Number of executions started.
+         */
+        private final AtomicInteger started = new AtomicInteger();
+
+        /**
+         * Builds a work.
+         * @param expected the number of executions to wait for in {@link #awaitStarted()}
+         */
+        public BlockingWork(final int expected) {
+            this.startedLatch = new CountDownLatch(expected);
+        }
+
+        /**
+         * Waits until the end of the test.
+         */
+        public void run() {
+            this.started.incrementAndGet();
+            this.startedLatch.countDown();
+            try {
+                TestResourceWorkManagerComponent.this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Nothing to release.
+         */
+        public void release() {
+        }
+
+        /**
+         * Waits until the expected number of executions have started.
+         * @throws InterruptedException if the thread is interrupted
+         */
+        public void awaitStarted() throws InterruptedException {
+            Assert.assertTrue(this.startedLatch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * @return the number of executions started
+         */
+        public int getStarted() {
+            return this.started.get();
+        }
+    }
+
+}
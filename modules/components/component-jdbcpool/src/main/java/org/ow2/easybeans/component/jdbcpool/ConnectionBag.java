@@ -0,0 +1,270 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.jdbcpool;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free container of the managed connections of a pool. Each connection
+ * is either free, in use or removed; the state is changed with a
+ * compare-and-set so a free connection can only be borrowed once.<br>
+ * Free connections are kept in a LIFO queue and each thread first tries to
+ * borrow back the last connection that it has released.
+ * @author Florent Benoit
+ */
+public class ConnectionBag {
+
+    /**
+     * Connection is free.
+     */
+    private static final int FREE = 0;
+
+    /**
+     * Connection is used.
+     */
+    private static final int IN_USE = 1;
+
+    /**
+     * Connection has been removed from the bag.
+     */
+    private static final int REMOVED = 2;
+
+    /**
+     * All the connections of the bag, by identifier.
+     */
+    private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+    /**
+     * Queue of free connections (may contain entries that have been borrowed
+     * through the thread affinity, they're skipped).
+     */
+    private final ConcurrentLinkedDeque<Entry> freeEntries = new ConcurrentLinkedDeque<Entry>();
+
+    /**
+     * Last connection released by each thread.
+     */
+    private final ThreadLocal<WeakReference<Entry>> lastReleased = new ThreadLocal<WeakReference<Entry>>();
+
+    /**
+     * Number of free connections.
+     */
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    /**
+     * Adds a connection in the bag.
+     * @param mc the connection
+     * @param free true if the connection is free, false if it is used
+     */
+    public void add(final IManagedConnection mc, final boolean free) {
+        Entry entry = new Entry(mc, free ? FREE : IN_USE);
+        this.entries.put(Integer.valueOf(mc.getIdentifier()), entry);
+        if (free) {
+            this.freeCount.incrementAndGet();
+            enqueue(entry);
+        }
+    }
+
+    /**
+     * Borrows a free connection.
+     * @return a connection or null if there is no free connection
+     */
+    public IManagedConnection borrow() {
+        // Try the last connection used by this thread
+        WeakReference<Entry> reference = this.lastReleased.get();
+        if (reference != null) {
+            Entry entry = reference.get();
+            if (entry != null && claim(entry, IN_USE)) {
+                return entry.mc;
+            }
+        }
+
+        // Then the most recently released connections
+        Entry entry = this.freeEntries.pollFirst();
+        while (entry != null) {
+            entry.queued.set(false);
+            if (claim(entry, IN_USE)) {
+                return entry.mc;
+            }
+            entry = this.freeEntries.pollFirst();
+        }
+        return null;
+    }
+
+    /**
+     * Gives back a used connection.
+     * @param mc the connection
+     * @return false if the connection is not in the bag or is already free
+     */
+    public boolean requite(final IManagedConnection mc) {
+        Entry entry = this.entries.get(Integer.valueOf(mc.getIdentifier()));
+        if (entry == null || !entry.state.compareAndSet(IN_USE, FREE)) {
+            return false;
+        }
+        this.freeCount.incrementAndGet();
+        this.lastReleased.set(new WeakReference<Entry>(entry));
+        enqueue(entry);
+        return true;
+    }
+
+    /**
+     * Takes a given free connection, for example to check it. The connection
+     * is given back with {@link #requite(IManagedConnection)}.
+     * @param mc the connection
+     * @return true if the connection was free and is now used
+     */
+    public boolean take(final IManagedConnection mc) {
+        Entry entry = this.entries.get(Integer.valueOf(mc.getIdentifier()));
+        return entry != null && claim(entry, IN_USE);
+    }
+
+    /**
+     * Reserves a free connection so that it can be removed.
+     * @param mc the connection
+     * @return true if the connection was free and is now reserved
+     */
+    public boolean reserve(final IManagedConnection mc) {
+        Entry entry = this.entries.get(Integer.valueOf(mc.getIdentifier()));
+        return entry != null && claim(entry, REMOVED);
+    }
+
+    /**
+     * Removes a connection from the bag.
+     * @param mc the connection
+     * @return true if the connection was in use (not free nor reserved)
+     */
+    public boolean remove(final IManagedConnection mc) {
+        Entry entry = this.entries.remove(Integer.valueOf(mc.getIdentifier()));
+        if (entry == null) {
+            return false;
+        }
+        int previousState = entry.state.getAndSet(REMOVED);
+        if (previousState == FREE) {
+            this.freeCount.decrementAndGet();
+        }
+        return previousState == IN_USE;
+    }
+
+    /**
+     * @return a snapshot of the free connections
+     */
+    public List<IManagedConnection> getFreeConnections() {
+        List<IManagedConnection> free = new ArrayList<IManagedConnection>();
+        for (Entry entry : this.entries.values()) {
+            if (entry.state.get() == FREE) {
+                free.add(entry.mc);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * @return a snapshot of all the connections of the bag
+     */
+    public List<IManagedConnection> getConnections() {
+        List<IManagedConnection> connections = new ArrayList<IManagedConnection>();
+        for (Entry entry : this.entries.values()) {
+            connections.add(entry.mc);
+        }
+        return connections;
+    }
+
+    /**
+     * @return the number of connections in the bag
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of free connections
+     */
+    public int getFreeCount() {
+        return this.freeCount.get();
+    }
+
+    /**
+     * Changes the state of a free entry.
+     * @param entry the entry
+     * @param newState the new state
+     * @return true if the entry was free
+     */
+    private boolean claim(final Entry entry, final int newState) {
+        if (entry.state.compareAndSet(FREE, newState)) {
+            this.freeCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Puts a free entry in the queue if it is not already there.
+     * @param entry the entry
+     */
+    private void enqueue(final Entry entry) {
+        if (entry.queued.compareAndSet(false, true)) {
+            this.freeEntries.offerFirst(entry);
+        }
+    }
+
+    /**
+     * Connection with its state.
+     */
+    private static final class Entry {
+
+        /**
+         * The managed connection.
+         */
+        private final IManagedConnection mc;
+
+        /**
+         * State of the connection.
+         */
+        private final AtomicInteger state;
+
+        /**
+         * True if the entry is in the queue of free entries.
+         */
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        /**
+         * Builds an entry.
+         * @param mc the managed connection
+         * @param state the initial state
+         */
+        private Entry(final IManagedConnection mc, final int state) {
+            this.mc = mc;
+            this.state = new AtomicInteger(state);
+        }
+    }
+
+}
@@ -26,16 +26,18 @@
 package org.ow2.easybeans.component.jdbcpool;
 
 import java.io.PrintWriter;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import javax.naming.NamingException;
@@ -103,6 +105,23 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      */
     private static final int DEFAULT_SAMPLING = 60;
 
+    /**
+     * Default period between two validations of the free connections (in
+     * sec).
+     */
+    private static final int DEFAULT_VALIDATION_PERIOD = 30;
+
+    /**
+     * Default idle time after which a connection is checked when it is got
+     * from the pool (in sec).
+     */
+    private static final int DEFAULT_VALIDATION_THRESHOLD = 1;
+
+    /**
+     * Timeout given to the driver when checking a connection (in sec).
+     */
+    private static final int VALIDATION_TIMEOUT = 5;
+
     /**
      * List of all datasources.
      */
@@ -114,22 +133,23 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     private TransactionManager tm = null;
 
     /**
-     * List of IManagedConnection not currently used. This avoids closing and
-     * reopening physical connections. We try to keep a minimum of minConPool
-     * elements here.
+     * All the IManagedConnection physically opened, with the ones not
+     * currently used. This avoids closing and reopening physical connections.
+     * We try to keep a minimum of minConPool free elements here.
      */
-    private final TreeSet<IManagedConnection> freeList = new TreeSet<IManagedConnection>();
+    private final ConnectionBag bag = new ConnectionBag();
 
     /**
-     * Total list of IManagedConnection physically opened.
+     * Permits for the connections in use, limited by the maximum size of the
+     * pool. Waiters are served in order.
      */
-    private final LinkedList<IManagedConnection> mcList = new LinkedList<IManagedConnection>();
+    private final PoolSemaphore permits = new PoolSemaphore(NO_LIMIT);
 
     /**
-     * This HashMap gives the IManagedConnection from its transaction Requests
+     * This Map gives the IManagedConnection from its transaction Requests
      * with same tx get always the same connection.
      */
-    private final Map<Transaction, IManagedConnection> tx2mc = new HashMap<Transaction, IManagedConnection>();
+    private final Map<Transaction, IManagedConnection> tx2mc = new ConcurrentHashMap<Transaction, IManagedConnection>();
 
     /**
      * Login timeout (DataSource impl).
@@ -333,22 +353,22 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * count max waiters during current period.
      */
-    private int waiterCount = 0;
+    private final AtomicInteger waiterCount = new AtomicInteger();
 
     /**
      * count max waiting time during current period.
      */
-    private long waitingTime = 0;
+    private final AtomicLong waitingTime = new AtomicLong();
 
     /**
      * count max busy connection during current period.
      */
-    private int busyMax = 0;
+    private final AtomicInteger busyMax = new AtomicInteger();
 
     /**
      * count min busy connection during current period.
      */
-    private int busyMin = 0;
+    private final AtomicInteger busyMin = new AtomicInteger();
 
     /**
      * High Value for no limit for the connection pool.
@@ -391,7 +411,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * maximum size of the connection pool. default value is "NO LIMIT".
      */
-    private int poolMax = NO_LIMIT;
+    private volatile int poolMax = NO_LIMIT;
 
     /**
      * @return actual max pool size
@@ -405,16 +425,19 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      */
     public synchronized void setPoolMax(final int max) {
         if (this.poolMax != max) {
+            int newMax = max;
             if (max < 0 || max > NO_LIMIT) {
-                if (this.currentWaiters > 0) {
-                    notify();
-                }
-                this.poolMax = NO_LIMIT;
-            } else {
-                if (this.currentWaiters > 0 && this.poolMax < max) {
-                    notify();
-                }
-                this.poolMax = max;
+                newMax = NO_LIMIT;
+            }
+            // Waiters get the new permits
+            int delta = newMax - this.poolMax;
+            if (delta > 0) {
+                this.permits.release(delta);
+            } else if (delta < 0) {
+                this.permits.reducePermits(-delta);
+            }
+            this.poolMax = newMax;
+            if (newMax != NO_LIMIT) {
                 adjust();
             }
         }
@@ -587,8 +610,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     public void setPstmtMax(final int nb) {
         this.pstmtMax = nb;
         // Set the value in each connection.
-        for (Iterator<IManagedConnection> i = this.mcList.iterator(); i.hasNext();) {
-            IManagedConnection mc = i.next();
+        for (IManagedConnection mc : this.bag.getConnections()) {
             mc.setPstmtMax(this.pstmtMax);
         }
     }
@@ -612,6 +634,96 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
         this.testStatement = s;
     }
 
+    /**
+     * Period between two validations of the free connections, in sec.
+     */
+    private volatile int validationPeriod = DEFAULT_VALIDATION_PERIOD;
+
+    /**
+     * @return period between two validations of the free connections (in
+     *         sec).
+     */
+    public int getValidationPeriod() {
+        return this.validationPeriod;
+    }
+
+    /**
+     * @param sec period between two validations of the free connections.
+     */
+    public void setValidationPeriod(final int sec) {
+        if (sec > 0) {
+            this.validationPeriod = sec;
+        }
+    }
+
+    /**
+     * Idle time after which a connection is checked when it is got from the
+     * pool, in millisec.
+     */
+    private long validationThreshold = DEFAULT_VALIDATION_THRESHOLD * MILLI;
+
+    /**
+     * @return idle time after which a connection is checked when it is got
+     *         from the pool (in sec).
+     */
+    public int getValidationThreshold() {
+        return (int) (this.validationThreshold / MILLI);
+    }
+
+    /**
+     * @param sec idle time after which a connection is checked when it is got
+     *        from the pool.
+     */
+    public void setValidationThreshold(final int sec) {
+        this.validationThreshold = sec * MILLI;
+    }
+
+    /**
+     * Idle time after which a free connection is closed (if the pool is bigger
+     * than poolMin), in millisec. 0 means never.
+     */
+    private long idleTimeout = 0;
+
+    /**
+     * @return idle time after which a free connection is closed (in sec).
+     */
+    public int getIdleTimeout() {
+        return (int) (this.idleTimeout / MILLI);
+    }
+
+    /**
+     * @param sec idle time after which a free connection is closed. 0 means
+     *        never.
+     */
+    public void setIdleTimeout(final int sec) {
+        this.idleTimeout = sec * MILLI;
+    }
+
+    /**
+     * Thread maintaining the pool in background.
+     */
+    private PoolKeeper poolKeeper = null;
+
+    /**
+     * Starts the thread maintaining the pool in background.
+     */
+    public synchronized void startPoolKeeper() {
+        if (this.poolKeeper == null) {
+            this.poolKeeper = new PoolKeeper(this);
+            this.poolKeeper.start();
+        }
+    }
+
+    /**
+     * Stops the thread maintaining the pool in background.
+     */
+    public synchronized void stopPoolKeeper() {
+        if (this.poolKeeper != null) {
+            this.poolKeeper.stopKeeper();
+            this.poolKeeper = null;
+        }
+    }
+
     /**
      * Configure the Connection pool. Called by the Container at init.
      * Configuration can be set in datasource.properties files.
@@ -661,7 +773,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * maximum nb of busy connections in last sampling period.
      */
-    private int busyMaxRecent = 0;
+    private volatile int busyMaxRecent = 0;
 
     /**
      * @return maximum nb of busy connections in last sampling period.
@@ -673,7 +785,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * minimum nb of busy connections in last sampling period.
      */
-    private int busyMinRecent = 0;
+    private volatile int busyMinRecent = 0;
 
     /**
      * @return minimum nb of busy connections in last sampling period.
@@ -685,113 +797,195 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * nb of threads waiting for a Connection.
      */
-    private int currentWaiters = 0;
+    private final AtomicInteger currentWaiters = new AtomicInteger();
 
     /**
      * @return current number of connection waiters.
      */
     public int getCurrentWaiters() {
-        return this.currentWaiters;
+        return this.currentWaiters.get();
     }
 
     /**
      * total number of opened physical connections since the datasource
      * creation.
      */
-    private int openedCount = 0;
+    private final AtomicInteger openedCount = new AtomicInteger();
 
     /**
      * @return int number of physical jdbc connection opened.
      */
     public int getOpenedCount() {
-        return this.openedCount;
+        return this.openedCount.get();
     }
 
     /**
      * total nb of physical connection failures.
      */
-    private int connectionFailures = 0;
+    private final AtomicInteger connectionFailures = new AtomicInteger();
 
     /**
      * @return int number of xa connection failures on open.
      */
     public int getConnectionFailures() {
-        return this.connectionFailures;
+        return this.connectionFailures.get();
     }
 
     /**
      * total nb of connection leaks. A connection leak occurs when the caller
      * never issues a close method on the connection.
      */
-    private int connectionLeaks = 0;
+    private final AtomicInteger connectionLeaks = new AtomicInteger();
 
     /**
      * @return int number of connection leaks.
      */
     public int getConnectionLeaks() {
-        return this.connectionLeaks;
+        return this.connectionLeaks.get();
     }
 
     /**
      * total number of opened connections since the datasource creation.
      */
-    private int servedOpen = 0;
+    private final AtomicInteger servedOpen = new AtomicInteger();
 
     /**
      * @return int number of xa connection served.
      */
     public int getServedOpen() {
-        return this.servedOpen;
+        return this.servedOpen.get();
     }
 
     /**
      * total nb of open connection failures because waiter overflow.
      */
-    private int rejectedFull = 0;
+    private final AtomicInteger rejectedFull = new AtomicInteger();
 
     /**
      * @return int number of open calls that were rejected due to waiter
      *         overflow.
      */
     public int getRejectedFull() {
-        return this.rejectedFull;
+        return this.rejectedFull.get();
     }
 
     /**
      * total nb of open connection failures because timeout.
      */
-    private int rejectedTimeout = 0;
+    private final AtomicInteger rejectedTimeout = new AtomicInteger();
 
     /**
      * @return int number of open calls that were rejected by timeout.
      */
     public int getRejectedTimeout() {
-        return this.rejectedTimeout;
+        return this.rejectedTimeout.get();
     }
 
     /**
      * total nb of open connection failures for any other reason.
      */
-    private int rejectedOther = 0;
+    private final AtomicInteger rejectedOther = new AtomicInteger();
 
     /**
      * @return int number of open calls that were rejected.
      */
     public int getRejectedOther() {
-        return this.rejectedOther;
+        return this.rejectedOther.get();
     }
 
     /**
      * @return int number of open calls that were rejected.
      */
     public int getRejectedOpen() {
-        return this.rejectedFull + this.rejectedTimeout + this.rejectedOther;
+        return this.rejectedFull.get() + this.rejectedTimeout.get() + this.rejectedOther.get();
+    }
+
+    /**
+     * total nb of connections found invalid.
+     */
+    private final AtomicInteger validationFailures = new AtomicInteger();
+
+    /**
+     * @return int number of connections that were closed because invalid.
+     */
+    public int getValidationFailures() {
+        return this.validationFailures.get();
+    }
+
+    /**
+     * total nb of connections closed because idle for too long time.
+     */
+    private final AtomicInteger idleEvictions = new AtomicInteger();
+
+    /**
+     * @return int number of connections that were closed because idle.
+     */
+    public int getIdleEvictions() {
+        return this.idleEvictions.get();
+    }
+
+    /**
+     * total nb of prepared statements found in the statement caches.
+     */
+    private final AtomicLong statementCacheHits = new AtomicLong();
+
+    /**
+     * @return number of prepared statements reused from the statement caches.
+     */
+    public long getStatementCacheHits() {
+        return this.statementCacheHits.get();
+    }
+
+    /**
+     * A prepared statement has been found in the cache of a connection.
+     */
+    void statementCacheHit() {
+        this.statementCacheHits.incrementAndGet();
+    }
+
+    /**
+     * total nb of prepared statements not found in the statement caches.
+     */
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    /**
+     * @return number of prepared statements that had to be prepared on the
+     *         database.
+     */
+    public long getStatementCacheMisses() {
+        return this.statementCacheMisses.get();
+    }
+
+    /**
+     * A prepared statement was not found in the cache of a connection.
+     */
+    void statementCacheMiss() {
+        this.statementCacheMisses.incrementAndGet();
+    }
+
+    /**
+     * total nb of prepared statements evicted from the statement caches.
+     */
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+    /**
+     * @return number of prepared statements evicted from the statement caches.
+     */
+    public long getStatementCacheEvictions() {
+        return this.statementCacheEvictions.get();
+    }
+
+    /**
+     * A prepared statement has been evicted from the cache of a connection.
+     */
+    void statementCacheEviction() {
+        this.statementCacheEvictions.incrementAndGet();
     }
 
     /**
      * maximum nb of waiters since datasource creation.
      */
-    private int waitersHigh = 0;
+    private volatile int waitersHigh = 0;
 
     /**
      * @return maximum nb of waiters since the datasource creation.
@@ -803,7 +997,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * maximum nb of waiters in last sampling period.
      */
-    private int waitersHighRecent = 0;
+    private volatile int waitersHighRecent = 0;
 
     /**
      * @return maximum nb of waiters in last sampling period.
@@ -815,31 +1009,31 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * total nb of waiters since datasource creation.
      */
-    private int totalWaiterCount = 0;
+    private final AtomicInteger totalWaiterCount = new AtomicInteger();
 
     /**
      * @return total nb of waiters since the datasource creation.
      */
     public int getWaiterCount() {
-        return this.totalWaiterCount;
+        return this.totalWaiterCount.get();
     }
 
     /**
      * total waiting time in milliseconds.
      */
-    private long totalWaitingTime = 0;
+    private final AtomicLong totalWaitingTime = new AtomicLong();
 
     /**
      * @return total waiting time since the datasource creation.
      */
     public long getWaitingTime() {
-        return this.totalWaitingTime;
+        return this.totalWaitingTime.get();
     }
 
     /**
      * max waiting time in milliseconds.
      */
-    private long waitingHigh = 0;
+    private volatile long waitingHigh = 0;
 
     /**
      * @return max waiting time since the datasource creation.
@@ -851,7 +1045,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * max waiting time in milliseconds in last sampling period.
      */
-    private long waitingHighRecent = 0;
+    private volatile long waitingHighRecent = 0;
 
     /**
      * @return max waiting time in last sampling period.
@@ -1029,8 +1223,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
         }
 
         // Create the IManagedConnection object
-        IManagedConnection mc = (IManagedConnection) Proxy.newProxyInstance(IManagedConnection.class.getClassLoader(),
-                new Class[] {IManagedConnection.class}, new JManagedConnection(conn, this));
+        IManagedConnection mc = new JManagedConnection(conn, this);
 
         // return the XAConnection
         return mc;
@@ -1115,14 +1308,14 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      * @return int number of xa connection
      */
     public int getCurrentOpened() {
-        return this.mcList.size();
+        return this.bag.size();
     }
 
     /**
      * @return int number of busy xa connection.
      */
     public int getCurrentBusy() {
-        return this.mcList.size() - this.freeList.size();
+        return this.bag.size() - this.bag.getFreeCount();
     }
 
     /**
@@ -1130,12 +1323,8 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      */
     public void recomputeBusy() {
         int busy = getCurrentBusy();
-        if (this.busyMax < busy) {
-            this.busyMax = busy;
-        }
-        if (this.busyMin > busy) {
-            this.busyMin = busy;
-        }
+        updateMax(this.busyMax, busy);
+        updateMin(this.busyMin, busy);
     }
 
     /**
@@ -1149,22 +1338,20 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      * make samples with some monitoring values.
      */
     public synchronized void sampling() {
-        this.waitingHighRecent = this.waitingTime;
-        if (this.waitingHigh < this.waitingTime) {
-            this.waitingHigh = this.waitingTime;
+        long waiting = this.waitingTime.getAndSet(0);
+        this.waitingHighRecent = waiting;
+        if (this.waitingHigh < waiting) {
+            this.waitingHigh = waiting;
         }
-        this.waitingTime = 0;
 
-        this.waitersHighRecent = this.waiterCount;
-        if (this.waitersHigh < this.waiterCount) {
-            this.waitersHigh = this.waiterCount;
+        int waiters = this.waiterCount.getAndSet(0);
+        this.waitersHighRecent = waiters;
+        if (this.waitersHigh < waiters) {
+            this.waitersHigh = waiters;
         }
-        this.waiterCount = 0;
 
-        this.busyMaxRecent = this.busyMax;
-        this.busyMax = getCurrentBusy();
-        this.busyMinRecent = this.busyMin;
-        this.busyMin = getCurrentBusy();
+        this.busyMaxRecent = this.busyMax.getAndSet(getCurrentBusy());
+        this.busyMinRecent = this.busyMin.getAndSet(getCurrentBusy());
     }
 
     /**
@@ -1178,19 +1365,17 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
         // Remove max aged elements in freelist
         // - Not more than MAX_REMOVE_FREELIST
         // - Don't reduce pool size less than poolMin
-        int count = this.mcList.size() - this.poolMin;
+        int count = this.bag.size() - this.poolMin;
         // In case count is null, a new connection will be
         // recreated just after
         if (count >= 0) {
             if (count > MAX_REMOVE_FREELIST) {
                 count = MAX_REMOVE_FREELIST;
             }
-            for (Iterator<IManagedConnection> i = this.freeList.iterator(); i.hasNext();) {
-                IManagedConnection mc = i.next();
-                if (mc.isAged()) {
+            for (IManagedConnection mc : this.bag.getFreeConnections()) {
+                if (mc.isAged() && this.bag.reserve(mc)) {
                     this.logger.debug("remove a timed out connection");
-                    i.remove();
-                    destroyItem(mc);
+                    destroyItem(mc, false);
                     count--;
                     if (count <= 0) {
                         break;
@@ -1201,47 +1386,142 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
         recomputeBusy();
 
         // Close (physically) connections lost (opened for too long time)
-        for (Iterator<IManagedConnection> i = this.mcList.iterator(); i.hasNext();) {
-            IManagedConnection mc = i.next();
+        for (IManagedConnection mc : this.bag.getConnections()) {
             if (mc.inactive()) {
                 if (this.logger.isWarnEnabled()) {
                     this.logger.warn("close a timed out open connection {0}", mc.getIdentifier());
                 }
-                i.remove();
-                // destroy mc
-                mc.remove();
-                this.connectionLeaks++;
-                // Notify 1 thread waiting for a Connection.
-                if (this.currentWaiters > 0) {
-                    notify();
-                }
+                // destroy mc and give its permit to a thread waiting for a Connection.
+                destroyItem(mc, true);
+                this.connectionLeaks.incrementAndGet();
             }
         }
 
         // Shrink the pool in case of max pool size
         // This occurs when max pool size has been reduced by admin console.
         if (this.poolMax != NO_LIMIT) {
-            while (this.freeList.size() > this.poolMin && this.mcList.size() > this.poolMax) {
-                IManagedConnection mc = this.freeList.first();
-                this.freeList.remove(mc);
-                destroyItem(mc);
+            Iterator<IManagedConnection> it = this.bag.getFreeConnections().iterator();
+            while (it.hasNext() && this.bag.getFreeCount() > this.poolMin && this.bag.size() > this.poolMax) {
+                IManagedConnection mc = it.next();
+                if (this.bag.reserve(mc)) {
+                    destroyItem(mc, false);
+                }
             }
         }
         recomputeBusy();
 
         // Recreate more Connections while poolMin is not reached
-        while (this.mcList.size() < this.poolMin) {
+        while (this.bag.size() < this.poolMin) {
             IManagedConnection mc = null;
             try {
                 mc = (IManagedConnection) getXAConnection();
-                this.openedCount++;
+                this.openedCount.incrementAndGet();
             } catch (SQLException e) {
                 throw new IllegalStateException("Could not create " + this.poolMin + " mcs in the pool : ", e);
             }
             // tx = null. Assumes maxage already configured.
-            this.freeList.add(mc);
-            this.mcList.add(mc);
             mc.addConnectionEventListener(this);
+            this.bag.add(mc, true);
+        }
+    }
+
+    /**
+     * Maintains the pool, called periodically by the pool keeper: checks the
+     * free connections, closes the idle ones and adjusts the pool size.
+     */
+    public void maintain() {
+        if (this.checkLevel > 1) {
+            validateFreeConnections();
+        }
+        if (this.idleTimeout > 0) {
+            evictIdleConnections();
+        }
+        adjust();
+    }
+
+    /**
+     * Runs the test statement on the free connections that have not been used
+     * since the validation threshold. A connection being checked is taken
+     * from the free list (without permit) and given back if valid.
+     */
+    private void validateFreeConnections() {
+        long now = System.currentTimeMillis();
+        for (IManagedConnection mc : this.bag.getFreeConnections()) {
+            if (now - mc.getLastAccessTime() <= this.validationThreshold || !this.bag.take(mc)) {
+                continue;
+            }
+            if (validate(mc, true, true)) {
+                this.bag.requite(mc);
+            } else {
+                destroyItem(mc, false);
+            }
+        }
+    }
+
+    /**
+     * Closes the free connections idle for more than the idle timeout, while
+     * the pool is bigger than poolMin.
+     */
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (IManagedConnection mc : this.bag.getFreeConnections()) {
+            if (this.bag.size() <= this.poolMin) {
+                break;
+            }
+            if (now - mc.getLastAccessTime() > this.idleTimeout && this.bag.reserve(mc)) {
+                this.logger.debug("remove an idle connection {0}", Integer.valueOf(mc.getIdentifier()));
+                destroyItem(mc, false);
+                this.idleEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Checks that a connection can still be used.
+     * @param mc the connection to check
+     * @param checkValid true to check the connection on the database, else
+     *        only checks that it is not closed
+     * @param useTestStatement true to check with the test statement, false to
+     *        use the isValid() method of the driver (if available)
+     * @return true if the connection is valid
+     */
+    private boolean validate(final IManagedConnection mc, final boolean checkValid, final boolean useTestStatement) {
+        try {
+            IConnection conn = (IConnection) mc.getConnection();
+            if (conn.isPhysicallyClosed()) {
+                this.logger.warn("The JDBC connection has been closed!");
+                this.validationFailures.incrementAndGet();
+                return false;
+            }
+            if (!checkValid) {
+                return true;
+            }
+            Connection physicalConnection = conn.getConnection();
+            if (!useTestStatement) {
+                try {
+                    if (physicalConnection.isValid(VALIDATION_TIMEOUT)) {
+                        return true;
+                    }
+                    this.logger.warn("DataSource " + getDatasourceName() + " error: removing invalid mc");
+                    this.validationFailures.incrementAndGet();
+                    return false;
+                } catch (SQLFeatureNotSupportedException e) {
+                    this.logger.debug("isValid() not supported, use the test statement");
+                } catch (AbstractMethodError e) {
+                    this.logger.debug("isValid() not implemented, use the test statement");
+                }
+            }
+            java.sql.Statement stmt = physicalConnection.createStatement();
+            try {
+                stmt.execute(this.testStatement);
+            } finally {
+                stmt.close();
+            }
+            return true;
+        } catch (Exception e) {
+            this.logger.error("DataSource " + getDatasourceName() + " error: removing invalid mc", e);
+            this.validationFailures.incrementAndGet();
+            return false;
         }
     }
 
@@ -1253,8 +1533,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      * @throws SQLException Cannot open a connection because the pool's max size
      *         is reached
      */
-    @SuppressWarnings("boxing")
-    public synchronized IManagedConnection openConnection(final String user, final Transaction tx) throws SQLException {
+    public IManagedConnection openConnection(final String user, final Transaction tx) throws SQLException {
         IManagedConnection mc = null;
         // If a Connection exists already for this tx, just return it.
         // If no transaction, never reuse a connection already used.
@@ -1263,120 +1542,21 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
             if (mc != null) {
                 this.logger.debug("Reuse a Connection for same tx");
                 mc.hold();
-                this.servedOpen++;
+                this.servedOpen.incrementAndGet();
                 return mc;
             }
         }
-        // Loop until a valid mc is found
-        long timetowait = this.waiterTimeout;
-        long starttime = 0;
-        while (mc == null) {
-            // try to find an mc in the free list
-            if (this.freeList.isEmpty()) {
-                // In case we have reached the maximum limit of the pool,
-                // we must wait until a connection is released.
-                if (this.mcList.size() >= this.poolMax) {
-                    boolean stoplooping = true;
-                    // If a timeout has been specified, wait, unless maxWaiters
-                    // is reached.
-                    if (timetowait > 0) {
-                        if (this.currentWaiters < this.maxWaiters) {
-                            this.currentWaiters++;
-                            // Store the maximum concurrent waiters
-                            if (this.waiterCount < this.currentWaiters) {
-                                this.waiterCount = this.currentWaiters;
-                            }
-                            if (starttime == 0) {
-                                starttime = System.currentTimeMillis();
-                                this.logger.debug("Wait for a free Connection, {0}", this.mcList.size());
-                            }
-                            try {
-                                wait(timetowait);
-                            } catch (InterruptedException ign) {
-                                this.logger.warn("Interrupted");
-                            } finally {
-                                this.currentWaiters--;
-                            }
-                            long stoptime = System.currentTimeMillis();
-                            long stillwaited = stoptime - starttime;
-                            timetowait = this.waiterTimeout - stillwaited;
-                            stoplooping = (timetowait <= 0);
-                            if (stoplooping) {
-                                // We have been waked up by the timeout.
-                                this.totalWaiterCount++;
-                                this.totalWaitingTime += stillwaited;
-                                if (this.waitingTime < stillwaited) {
-                                    this.waitingTime = stillwaited;
-                                }
-                            } else {
-                                if (!this.freeList.isEmpty() || this.mcList.size() < this.poolMax) {
-                                    // We have been notified by a connection
-                                    // released.
-                                    this.logger.debug("Notified after {0}", stillwaited);
-                                    this.totalWaiterCount++;
-                                    this.totalWaitingTime += stillwaited;
-                                    if (this.waitingTime < stillwaited) {
-                                        this.waitingTime = stillwaited;
-                                    }
-                                }
-                                continue;
-                            }
-                        }
-                    }
-                    if (stoplooping && this.freeList.isEmpty() && this.mcList.size() >= this.poolMax) {
-                        if (starttime > 0) {
-                            this.rejectedTimeout++;
-                            this.logger.warn("Cannot create a Connection - timeout");
-                        } else {
-                            this.rejectedFull++;
-                            this.logger.warn("Cannot create a Connection");
-                        }
-                        throw new SQLException("No more connections in " + getDatasourceName());
-                    }
-                    continue;
-                }
-                this.logger.debug("empty free list: Create a new Connection");
-                try {
-                    // create a new XA Connection
-                    mc = (IManagedConnection) getXAConnection();
-                    this.openedCount++;
-                } catch (SQLException e) {
-                    this.connectionFailures++;
-                    this.rejectedOther++;
-                    this.logger.warn("Cannot create new Connection for tx", e);
-                    throw e;
-                }
-                // Register the connection manager as a ConnectionEventListener
-                mc.addConnectionEventListener(this);
-                this.mcList.add(mc);
-            } else {
-                mc = this.freeList.last();
-                this.freeList.remove(mc);
-                // Check the connection before reusing it
-                if (this.checkLevel > 0) {
-                    try {
-                        IConnection conn = (IConnection) mc.getConnection();
-                        if (conn.isPhysicallyClosed()) {
-                            this.logger.warn("The JDBC connection has been closed!");
-                            destroyItem(mc);
-                            starttime = 0;
-                            mc = null;
-                            continue;
-                        }
-                        if (this.checkLevel > 1) {
-                            java.sql.Statement stmt = conn.createStatement();
-                            stmt.execute(this.testStatement);
-                            stmt.close();
-                        }
-                    } catch (Exception e) {
-                        this.logger.error("DataSource " + getDatasourceName() + " error: removing invalid mc", e);
-                        destroyItem(mc);
-                        starttime = 0;
-                        mc = null;
-                        continue;
-                    }
-                }
-            }
+
+        // Get the right to use a connection, then a free or a new connection
+        acquirePermit();
+        try {
+            mc = borrowConnection();
+        } catch (SQLException e) {
+            this.permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
         }
         recomputeBusy();
         mc.setTx(tx);
@@ -1401,16 +1581,113 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
             }
         }
         mc.hold();
-        this.servedOpen++;
+        this.servedOpen.incrementAndGet();
         return mc;
     }
 
+    /**
+     * Gets a permit to use a connection. If the maximum size of the pool is
+     * reached, wait until a connection is released, unless maxWaiters is
+     * reached.
+     * @throws SQLException if no permit has been obtained
+     */
+    @SuppressWarnings("boxing")
+    private void acquirePermit() throws SQLException {
+        try {
+            // Fast path, respecting the order of the waiters
+            if (this.permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.rejectedOther.incrementAndGet();
+            throw new SQLException("Interrupted while getting a connection in " + getDatasourceName());
+        }
+
+        // If a timeout has been specified, wait, unless maxWaiters is reached.
+        long timetowait = this.waiterTimeout;
+        int waiters = this.currentWaiters.incrementAndGet();
+        try {
+            if (timetowait <= 0 || waiters > this.maxWaiters) {
+                this.rejectedFull.incrementAndGet();
+                this.logger.warn("Cannot create a Connection");
+                throw new SQLException("No more connections in " + getDatasourceName());
+            }
+            // Store the maximum concurrent waiters
+            updateMax(this.waiterCount, waiters);
+            this.logger.debug("Wait for a free Connection, {0}", this.bag.size());
+
+            long starttime = System.currentTimeMillis();
+            boolean acquired = false;
+            try {
+                acquired = this.permits.tryAcquire(timetowait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ign) {
+                this.logger.warn("Interrupted");
+                Thread.currentThread().interrupt();
+            }
+            long stillwaited = System.currentTimeMillis() - starttime;
+            this.totalWaiterCount.incrementAndGet();
+            this.totalWaitingTime.addAndGet(stillwaited);
+            updateMax(this.waitingTime, stillwaited);
+            if (!acquired) {
+                this.rejectedTimeout.incrementAndGet();
+                this.logger.warn("Cannot create a Connection - timeout");
+                throw new SQLException("No more connections in " + getDatasourceName());
+            }
+            this.logger.debug("Notified after {0}", stillwaited);
+        } finally {
+            this.currentWaiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets a free connection or creates a new one. The caller owns a permit.
+     * @return a valid connection
+     * @throws SQLException if a new connection cannot be created
+     */
+    private IManagedConnection borrowConnection() throws SQLException {
+        // Loop until a valid mc is found
+        while (true) {
+            // try to find an mc in the free list
+            IManagedConnection mc = this.bag.borrow();
+            if (mc == null) {
+                this.logger.debug("empty free list: Create a new Connection");
+                try {
+                    // create a new XA Connection
+                    mc = (IManagedConnection) getXAConnection();
+                    this.openedCount.incrementAndGet();
+                } catch (SQLException e) {
+                    this.connectionFailures.incrementAndGet();
+                    this.rejectedOther.incrementAndGet();
+                    this.logger.warn("Cannot create new Connection for tx", e);
+                    throw e;
+                }
+                // Register the connection manager as a ConnectionEventListener
+                mc.addConnectionEventListener(this);
+                this.bag.add(mc, false);
+                return mc;
+            }
+
+            // Check the connection before reusing it (the permit is kept). The
+            // test statement is run by the pool keeper, only a connection idle
+            // for some time is checked by the driver.
+            if (this.checkLevel > 0) {
+                boolean idle = System.currentTimeMillis() - mc.getLastAccessTime() > this.validationThreshold;
+                if (!validate(mc, this.checkLevel > 1 && idle, false)) {
+                    destroyItem(mc, false);
+                    continue;
+                }
+            }
+            return mc;
+        }
+    }
+
     /**
      * The transaction has committed (or rolled back). We can return its
      * connections to the pool of available connections.
      * @param tx the non null transaction
      */
-    public synchronized void freeConnections(final Transaction tx) {
+    public void freeConnections(final Transaction tx) {
         this.logger.debug("free connection for Tx = " + tx);
         IManagedConnection mc = this.tx2mc.remove(tx);
         if (mc == null) {
@@ -1431,7 +1708,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      */
     public synchronized void closeAllConnection() {
         // Close physically all connections
-        Iterator<IManagedConnection> it = this.mcList.iterator();
+        Iterator<IManagedConnection> it = this.bag.getConnections().iterator();
         try {
             while (it.hasNext()) {
                 IManagedConnection mc = it.next();
@@ -1490,19 +1767,17 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
      * Free item and return it in the free list.
      * @param item The item to be freed
      */
-    private synchronized void freeItem(final IManagedConnection item) {
+    private void freeItem(final IManagedConnection item) {
         // Add it to the free list
         // Even if maxage is reached, because we avoids going under min pool
         // size.
         // PoolKeeper will manage aged connections.
-        this.freeList.add(item);
-        if (this.logger.isDebugEnabled()) {
-            this.logger.debug("item added to freeList: " + item.getIdentifier());
-        }
-
-        // Notify 1 thread waiting for a Connection.
-        if (this.currentWaiters > 0) {
-            notify();
+        if (this.bag.requite(item)) {
+            if (this.logger.isDebugEnabled()) {
+                this.logger.debug("item added to freeList: " + item.getIdentifier());
+            }
+            // Give the permit to a thread waiting for a Connection.
+            this.permits.release();
         }
         recomputeBusy();
     }
@@ -1510,13 +1785,15 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
     /**
      * Destroy an mc because connection closed or error occured.
      * @param mc The mc to be destroyed
+     * @param releasePermit true if the permit of the mc (if it was in use)
+     *        has to be given back, false if the caller keeps it
      */
-    private synchronized void destroyItem(final IManagedConnection mc) {
-        this.mcList.remove(mc);
+    private void destroyItem(final IManagedConnection mc, final boolean releasePermit) {
+        boolean inUse = this.bag.remove(mc);
         mc.remove();
-        // Notify 1 thread waiting for a Connection.
-        if (this.currentWaiters > 0) {
-            notify();
+        if (inUse && releasePermit) {
+            // Give the permit to a thread waiting for a Connection.
+            this.permits.release();
         }
         recomputeBusy();
     }
@@ -1533,9 +1810,9 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
         String noError = testStatement;
         IManagedConnection mc = null;
         boolean jmcCreated = false;
-        if (!this.freeList.isEmpty()) {
+        if (this.bag.getFreeCount() > 0) {
             // find a connection to test in the freeList
-            Iterator<IManagedConnection> it = this.freeList.iterator();
+            Iterator<IManagedConnection> it = this.bag.getFreeConnections().iterator();
             while (it.hasNext()) {
                 mc = it.next();
                 try {
@@ -1563,8 +1840,7 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
             }
 
             // Create the IManagedConnection object
-            mc = (IManagedConnection) Proxy.newProxyInstance(IManagedConnection.class.getClassLoader(),
-                    new Class[] {IManagedConnection.class}, new JManagedConnection(conn, this));
+            mc = new JManagedConnection(conn, this);
             jmcCreated = true;
         }
         if (mc != null) {
@@ -1650,4 +1926,69 @@ public class ConnectionManager implements DataSource, XADataSource, Referenceabl
         throw new SQLFeatureNotSupportedException("Feature not supported");
     }
 
+    /**
+     * Sets the value if it is greater than the current one.
+     * @param value the current value
+     * @param newValue the new value
+     */
+    private static void updateMax(final AtomicInteger value, final int newValue) {
+        int current = value.get();
+        while (current < newValue && !value.compareAndSet(current, newValue)) {
+            current = value.get();
+        }
+    }
+
+    /**
+     * Sets the value if it is lower than the current one.
+     * @param value the current value
+     * @param newValue the new value
+     */
+    private static void updateMin(final AtomicInteger value, final int newValue) {
+        int current = value.get();
+        while (current > newValue && !value.compareAndSet(current, newValue)) {
+            current = value.get();
+        }
+    }
+
+    /**
+     * Sets the value if it is greater than the current one.
+     * @param value the current value
+     * @param newValue the new value
+     */
+    private static void updateMax(final AtomicLong value, final long newValue) {
+        long current = value.get();
+        while (current < newValue && !value.compareAndSet(current, newValue)) {
+            current = value.get();
+        }
+    }
+
+    /**
+     * Fair semaphore whose number of permits can be reduced when the maximum
+     * size of the pool is changed.
+     */
+    private static final class PoolSemaphore extends Semaphore {
+
+        /**
+         * Id for serializable class.
+         */
+        private static final long serialVersionUID = -4411487853524719186L;
+
+        /**
+         * Builds a fair semaphore.
+         * @param permits the initial number of permits
+         */
+        private PoolSemaphore(final int permits) {
+            super(permits, true);
+        }
+
+        /**
+         * Shrinks the number of available permits.
+         * @param reduction the number of permits to remove
+         */
+        @Override
+        public void reducePermits(final int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
 }
@@ -107,6 +107,7 @@ public class DSDefinitionExtensionListener implements IEventListener {
                 connectionManager.setPoolMax(dataSourceDefinition.getMaxPoolSize());
                 connectionManager.setPoolMin(dataSourceDefinition.getMinPoolSize());
                 connectionManager.setPstmtMax(dataSourceDefinition.getMaxStatements());
+                connectionManager.startPoolKeeper();
 
                 //Register connection manager globally
                 globalContext.rebind(globalJndiName, connectionManager);
@@ -136,6 +137,10 @@ public class DSDefinitionExtensionListener implements IEventListener {
 
     public void clearAllGlobalDataSources() {
         for (String globalDataSourcesName : globalDataSourcesNames) {
+            ConnectionManager connectionManager = ConnectionManager.getConnectionManager(globalDataSourcesName);
+            if (connectionManager != null) {
+                connectionManager.stopPoolKeeper();
+            }
             try {
                 globalContext.unbind(globalDataSourcesName);
             } catch (NamingException e) {
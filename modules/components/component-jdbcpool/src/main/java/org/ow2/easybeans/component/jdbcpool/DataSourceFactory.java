@@ -90,6 +90,7 @@ public class DataSourceFactory implements ObjectFactory {
                         (String) ref.get("minconpool").getContent(), (String) ref.get("maxconpool").getContent(),
                         (String) ref.get("maxwaittime").getContent(), (String) ref.get("maxwaiters").getContent(),
                         (String) ref.get("samplingperiod").getContent());
+                ds.startPoolKeeper();
             } catch (Exception e) {
                 logger.error("DataSourceFactory error", e);
             }
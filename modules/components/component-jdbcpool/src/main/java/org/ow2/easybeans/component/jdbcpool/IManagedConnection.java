@@ -67,6 +67,12 @@ public interface IManagedConnection extends Comparable<IManagedConnection>, XACo
      */
     int getOpenCount();
 
+    /**
+     * @return the last time (in millisec) the connection has been opened or
+     *         closed by a user.
+     */
+    long getLastAccessTime();
+
     /**
      * @return the Transaction
      */
@@ -130,4 +136,12 @@ public interface IManagedConnection extends Comparable<IManagedConnection>, XACo
      */
     PreparedStatement prepareStatement(final String sql) throws SQLException;
 
+    /**
+     * Try to find a PreparedStatement with the given shape in the pool.
+     * @param key the shape of the statement (sql and options).
+     * @throws SQLException if an error in the database occurs.
+     * @return a given prepared statement.
+     */
+    PreparedStatement prepareStatement(final StatementKey key) throws SQLException;
+
 }
@@ -25,10 +25,25 @@
 
 package org.ow2.easybeans.component.jdbcpool;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
 
 import org.ow2.util.log.Log;
 import org.ow2.util.log.LogFactory;
@@ -37,10 +52,14 @@ import org.ow2.util.log.LogFactory;
  * This class represent a connection linked to the physical and XA connections.
  * All errors are reported to the managed connection. This connection is
  * returned to the client.
+ * Each method is delegated to the physical connection except the
+ * <code>close()</code> method (which notifies the managed connection) and the
+ * <code>prepareStatement</code> methods that can be pooled (which use the
+ * prepared statement pool of the managed connection).
  * @author Philippe Durieux
  * @author Florent Benoit
  */
-public class JConnection extends AbsProxy {
+public class JConnection implements IConnection {
 
     /**
      * Logger used for debug.
@@ -57,11 +76,6 @@ public class JConnection extends AbsProxy {
      */
     private IManagedConnection xaConnection = null;
 
-    /**
-     * PreparedStatement method of xaConnection.
-     */
-    private static Method prepareStatementMethod = null;
-
 
     /**
      * Buils a Connection (viewed by the user) which rely on a Managed
@@ -91,95 +105,616 @@ public class JConnection extends AbsProxy {
     }
 
     /**
-     * Processes a method invocation on a proxy instance and returns the result.
-     * This method will be invoked on an invocation handler when a method is
-     * invoked on a proxy instance that it is associated with.
-     * @param proxy the proxy instance that the method was invoked on
-     * @param method the <code>Method</code> instance corresponding to the
-     *        interface method invoked on the proxy instance.
-     * @param args an array of objects containing the values of the arguments
-     *        passed in the method invocation on the proxy instance, or
-     *        <code>null</code> if interface method takes no arguments.
-     * @return the value to return from the method invocation on the proxy
-     *         instance.
-     * @throws Throwable the exception to throw from the method invocation on
-     *         the proxy instance. The exception's type must be assignable
-     *         either to any of the exception types declared in the
-     *         <code>throws</code> clause of the interface method or to the
-     *         unchecked exception types <code>java.lang.RuntimeException</code>
-     *         or <code>java.lang.Error</code>. If a checked exception is
-     *         thrown by this method that is not assignable to any of the
-     *         exception types declared in the <code>throws</code> clause of
-     *         the interface method, then an UndeclaredThrowableException
-     *         containing the exception that was thrown by this method will be
-     *         thrown by the method invocation on the proxy instance.
-     */
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-
-        // Methods on the Object.class are not send on the connection impl
-        if (method.getDeclaringClass().getName().equals("java.lang.Object")) {
-            return handleObjectMethods(method, args);
-        }
-
-        // Methods that are part of the IConnection interface
-        if ("getConnection".equals(method.getName())) {
-            return getConnection();
-        } else if ("isPhysicallyClosed".equals(method.getName())) {
-            return Boolean.valueOf(isPhysicallyClosed());
-        } else if ("close".equals(method.getName())) {
-            xaConnection.notifyClose();
-            return null;
-        } else if ("prepareStatement".equals(method.getName()) && method.getParameterTypes().length == 1) {
-            // Use the xaConnection Object (which allow to have the preparedstatement pool) but only for method with SQL
-            try {
-                return getPrepareStatementMethod().invoke(xaConnection, args);
-            } catch (InvocationTargetException e) {
-                // Check if it is an SQLException
-                Throwable targetException = e.getTargetException();
-                if (targetException instanceof SQLException) {
-                    logger.debug("Exception while calling method {0} on object {1}", method, xaConnection);
-                    xaConnection.notifyError((SQLException) targetException);
-                }
-                // Rethrow Exception
-                throw targetException;
-            }
-        } else {
-            // Else delegate to the physicalConnection object
-            try {
-                return method.invoke(physicalConnection, args);
-            } catch (InvocationTargetException e) {
-                // Check if it is an SQLException
-                Throwable targetException = e.getTargetException();
-                if (targetException instanceof SQLException) {
-                    logger.debug("Exception while calling method {0} on object {1}", method, physicalConnection);
-                    xaConnection.notifyError((SQLException) targetException);
-                }
-                // Rethrow Exception
-                throw targetException;
-            }
-
-        }
-    }
-
-    /**
-     * @return the prepared statement method of the XAConnection interface.
-     */
-    protected static Method getPrepareStatementMethod() {
-        if (prepareStatementMethod != null) {
-            return prepareStatementMethod;
-        }
-
-        try {
-            prepareStatementMethod = IManagedConnection.class.getMethod("prepareStatement", String.class);
-        } catch (SecurityException e) {
-            throw new IllegalStateException("Cannot find the prepareStatement method on XAConnection interface", e);
-        } catch (NoSuchMethodException e) {
-            throw new IllegalStateException("Cannot find the prepareStatement method on XAConnection interface", e);
-        }
-
-        return prepareStatementMethod;
+     * Reports the given exception to the managed connection.
+     * @param e the exception thrown by the database
+     * @param <E> the type of the exception
+     * @return the given exception so that it can be rethrown
+     */
+    protected <E extends SQLException> E notifyError(final E e) {
+        logger.debug("Exception while calling a method on object {0}", physicalConnection, e);
+        xaConnection.notifyError(e);
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Statement createStatement() throws SQLException {
+        try {
+            return physicalConnection.createStatement();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PreparedStatement prepareStatement(final String sql) throws SQLException {
+        try {
+            return xaConnection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CallableStatement prepareCall(final String sql) throws SQLException {
+        try {
+            return physicalConnection.prepareCall(sql);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String nativeSQL(final String sql) throws SQLException {
+        try {
+            return physicalConnection.nativeSQL(sql);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setAutoCommit(final boolean autoCommit) throws SQLException {
+        try {
+            physicalConnection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean getAutoCommit() throws SQLException {
+        try {
+            return physicalConnection.getAutoCommit();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void commit() throws SQLException {
+        try {
+            physicalConnection.commit();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void rollback() throws SQLException {
+        try {
+            physicalConnection.rollback();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() throws SQLException {
+        xaConnection.notifyClose();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isClosed() throws SQLException {
+        try {
+            return physicalConnection.isClosed();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public DatabaseMetaData getMetaData() throws SQLException {
+        try {
+            return physicalConnection.getMetaData();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setReadOnly(final boolean readOnly) throws SQLException {
+        try {
+            physicalConnection.setReadOnly(readOnly);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isReadOnly() throws SQLException {
+        try {
+            return physicalConnection.isReadOnly();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCatalog(final String catalog) throws SQLException {
+        try {
+            physicalConnection.setCatalog(catalog);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getCatalog() throws SQLException {
+        try {
+            return physicalConnection.getCatalog();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTransactionIsolation(final int level) throws SQLException {
+        try {
+            physicalConnection.setTransactionIsolation(level);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getTransactionIsolation() throws SQLException {
+        try {
+            return physicalConnection.getTransactionIsolation();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SQLWarning getWarnings() throws SQLException {
+        try {
+            return physicalConnection.getWarnings();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clearWarnings() throws SQLException {
+        try {
+            physicalConnection.clearWarnings();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        try {
+            return physicalConnection.createStatement(resultSetType, resultSetConcurrency);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency)
+            throws SQLException {
+        try {
+            return xaConnection.prepareStatement(new StatementKey(sql, resultSetType, resultSetConcurrency,
+                    StatementKey.DEFAULT, StatementKey.DEFAULT));
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency)
+            throws SQLException {
+        try {
+            return physicalConnection.prepareCall(sql, resultSetType, resultSetConcurrency);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        try {
+            return physicalConnection.getTypeMap();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTypeMap(final Map<String, Class<?>> map) throws SQLException {
+        try {
+            physicalConnection.setTypeMap(map);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setHoldability(final int holdability) throws SQLException {
+        try {
+            physicalConnection.setHoldability(holdability);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getHoldability() throws SQLException {
+        try {
+            return physicalConnection.getHoldability();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Savepoint setSavepoint() throws SQLException {
+        try {
+            return physicalConnection.setSavepoint();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Savepoint setSavepoint(final String name) throws SQLException {
+        try {
+            return physicalConnection.setSavepoint(name);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void rollback(final Savepoint savepoint) throws SQLException {
+        try {
+            physicalConnection.rollback(savepoint);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void releaseSavepoint(final Savepoint savepoint) throws SQLException {
+        try {
+            physicalConnection.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency,
+            final int resultSetHoldability)
+            throws SQLException {
+        try {
+            return physicalConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType,
+            final int resultSetConcurrency, final int resultSetHoldability)
+            throws SQLException {
+        try {
+            return xaConnection.prepareStatement(new StatementKey(sql, resultSetType, resultSetConcurrency,
+                    resultSetHoldability, StatementKey.DEFAULT));
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CallableStatement prepareCall(final String sql, final int resultSetType,
+            final int resultSetConcurrency, final int resultSetHoldability)
+            throws SQLException {
+        try {
+            return physicalConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+        try {
+            return xaConnection.prepareStatement(new StatementKey(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY, StatementKey.DEFAULT, autoGeneratedKeys));
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+        try {
+            return physicalConnection.prepareStatement(sql, columnIndexes);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+        try {
+            return physicalConnection.prepareStatement(sql, columnNames);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Clob createClob() throws SQLException {
+        try {
+            return physicalConnection.createClob();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Blob createBlob() throws SQLException {
+        try {
+            return physicalConnection.createBlob();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public NClob createNClob() throws SQLException {
+        try {
+            return physicalConnection.createNClob();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SQLXML createSQLXML() throws SQLException {
+        try {
+            return physicalConnection.createSQLXML();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isValid(final int timeout) throws SQLException {
+        try {
+            return physicalConnection.isValid(timeout);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setClientInfo(final String name, final String value) throws SQLClientInfoException {
+        try {
+            physicalConnection.setClientInfo(name, value);
+        } catch (SQLClientInfoException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setClientInfo(final Properties properties) throws SQLClientInfoException {
+        try {
+            physicalConnection.setClientInfo(properties);
+        } catch (SQLClientInfoException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getClientInfo(final String name) throws SQLException {
+        try {
+            return physicalConnection.getClientInfo(name);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Properties getClientInfo() throws SQLException {
+        try {
+            return physicalConnection.getClientInfo();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException {
+        try {
+            return physicalConnection.createArrayOf(typeName, elements);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Struct createStruct(final String typeName, final Object[] attributes) throws SQLException {
+        try {
+            return physicalConnection.createStruct(typeName, attributes);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setSchema(final String schema) throws SQLException {
+        try {
+            physicalConnection.setSchema(schema);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getSchema() throws SQLException {
+        try {
+            return physicalConnection.getSchema();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void abort(final Executor executor) throws SQLException {
+        try {
+            physicalConnection.abort(executor);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException {
+        try {
+            physicalConnection.setNetworkTimeout(executor, milliseconds);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getNetworkTimeout() throws SQLException {
+        try {
+            return physicalConnection.getNetworkTimeout();
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        try {
+            return physicalConnection.unwrap(iface);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        try {
+            return physicalConnection.isWrapperFor(iface);
+        } catch (SQLException e) {
+            throw notifyError(e);
+        }
     }
 
 }
@@ -78,6 +78,23 @@ public class JDBCPoolComponent implements EZBComponent {
      */
     private static final int DEFAULT_CHECK_LEVEL = 0;
 
+    /**
+     * Default idle timeout (in sec): idle connections are never closed.
+     */
+    private static final int DEFAULT_IDLE_TIMEOUT = 0;
+
+    /**
+     * Default period between two validations of the free connections (in
+     * sec).
+     */
+    private static final int DEFAULT_VALIDATION_PERIOD = 30;
+
+    /**
+     * Default idle time after which a connection is checked when it is got
+     * from the pool (in sec).
+     */
+    private static final int DEFAULT_VALIDATION_THRESHOLD = 1;
+
     /**
      * Default test statement.
      */
@@ -147,6 +164,22 @@ public class JDBCPoolComponent implements EZBComponent {
      */
     private String testStatement = DEFAULT_TEST_STATEMENT_HSQLDB;
 
+    /**
+     * Idle time after which a free connection is closed (in sec).
+     */
+    private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /**
+     * Period between two validations of the free connections (in sec).
+     */
+    private int validationPeriod = DEFAULT_VALIDATION_PERIOD;
+
+    /**
+     * Idle time after which a connection is checked when it is got from the
+     * pool (in sec).
+     */
+    private int validationThreshold = DEFAULT_VALIDATION_THRESHOLD;
+
     /**
      * Transaction component.
      */
@@ -195,6 +228,9 @@ public class JDBCPoolComponent implements EZBComponent {
         this.connectionManager.setPstmtMax(this.pstmtMax);
         this.connectionManager.setCheckLevel(this.checkLevel);
         this.connectionManager.setTestStatement(this.testStatement);
+        this.connectionManager.setIdleTimeout(this.idleTimeout);
+        this.connectionManager.setValidationPeriod(this.validationPeriod);
+        this.connectionManager.setValidationThreshold(this.validationThreshold);
 
     }
 
@@ -237,6 +273,7 @@ public class JDBCPoolComponent implements EZBComponent {
         }
         this.connectionManager.setPoolMin(this.poolMin);
         this.connectionManager.setPoolMax(this.poolMax);
+        this.connectionManager.startPoolKeeper();
 
         // Something is there ?
         try {
@@ -270,6 +307,8 @@ public class JDBCPoolComponent implements EZBComponent {
      * @throws EZBComponentException if the stop is failing.
      */
     public void stop() throws EZBComponentException {
+        this.connectionManager.stopPoolKeeper();
+
         // Unbind the resource.
         try {
             new InitialContext().unbind(this.jndiName);
@@ -372,6 +411,39 @@ public class JDBCPoolComponent implements EZBComponent {
         return this.poolMax;
     }
 
+    /**
+     * @return the number of prepared statements reused from the statement
+     *         caches of the pool.
+     */
+    public long getStatementCacheHits() {
+        if (this.connectionManager == null) {
+            return 0;
+        }
+        return this.connectionManager.getStatementCacheHits();
+    }
+
+    /**
+     * @return the number of prepared statements that were not found in the
+     *         statement caches of the pool.
+     */
+    public long getStatementCacheMisses() {
+        if (this.connectionManager == null) {
+            return 0;
+        }
+        return this.connectionManager.getStatementCacheMisses();
+    }
+
+    /**
+     * @return the number of prepared statements evicted from the statement
+     *         caches of the pool.
+     */
+    public long getStatementCacheEvictions() {
+        if (this.connectionManager == null) {
+            return 0;
+        }
+        return this.connectionManager.getStatementCacheEvictions();
+    }
+
     /**
      * Sets the connection's URL.
      *
@@ -452,6 +524,58 @@ public class JDBCPoolComponent implements EZBComponent {
         this.testStatement = testStatement;
     }
 
+    /**
+     * @return the idle time (in sec) after which a free connection is closed.
+     */
+    public int getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Sets the idle time after which a free connection is closed (if the pool
+     * is bigger than poolMin).
+     *
+     * @param idleTimeout the timeout in sec, 0 means never.
+     */
+    public void setIdleTimeout(final int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return the period (in sec) between two validations of the free
+     *         connections.
+     */
+    public int getValidationPeriod() {
+        return this.validationPeriod;
+    }
+
+    /**
+     * Sets the period between two validations of the free connections.
+     *
+     * @param validationPeriod the period in sec.
+     */
+    public void setValidationPeriod(final int validationPeriod) {
+        this.validationPeriod = validationPeriod;
+    }
+
+    /**
+     * @return the idle time (in sec) after which a connection is checked when
+     *         it is got from the pool.
+     */
+    public int getValidationThreshold() {
+        return this.validationThreshold;
+    }
+
+    /**
+     * Sets the idle time after which a connection is checked when it is got
+     * from the pool.
+     *
+     * @param validationThreshold the idle time in sec.
+     */
+    public void setValidationThreshold(final int validationThreshold) {
+        this.validationThreshold = validationThreshold;
+    }
+
 
     /**
      * @return transaction component.
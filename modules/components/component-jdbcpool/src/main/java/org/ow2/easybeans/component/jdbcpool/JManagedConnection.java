@@ -25,20 +25,18 @@
 
 package org.ow2.easybeans.component.jdbcpool;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
+import javax.sql.StatementEventListener;
 import javax.transaction.Transaction;
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -53,7 +51,7 @@ import org.ow2.util.log.LogFactory;
  * @author Philippe Durieux
  * @author Florent Benoit
  */
-public class JManagedConnection extends AbsProxy {
+public class JManagedConnection implements IManagedConnection {
 
     /**
      * Logger.
@@ -103,7 +101,7 @@ public class JManagedConnection extends AbsProxy {
     /**
      * Counter of all managed connections created.
      */
-    private static int objcount = 0;
+    private static final AtomicInteger OBJCOUNT = new AtomicInteger();
 
     /**
      * Identifier of this connection.
@@ -116,9 +114,10 @@ public class JManagedConnection extends AbsProxy {
     private int reUsedPreparedStatements = 0;
 
     /**
-     * List of PreparedStatement in the pool.
+     * List of PreparedStatement in the pool, by shape. The map is in access
+     * order so that the least recently used statements are evicted first.
      */
-    private Map<String, IPreparedStatement> psList = null;
+    private Map<StatementKey, JStatement> psList = null;
 
     /**
      * Link to the connection manager.
@@ -135,6 +134,11 @@ public class JManagedConnection extends AbsProxy {
      */
     private long closeTime = 0;
 
+    /**
+     * Last time the connection has been opened or closed.
+     */
+    private volatile long lastAccessTime = 0;
+
     /**
      * Builds a new managed connection on a JDBC connection.
      * @param physicalConnection the physical JDBC Connection.
@@ -144,184 +148,35 @@ public class JManagedConnection extends AbsProxy {
         this.physicalConnection = physicalConnection;
         this.ds = ds;
 
-        // make a proxy on our object.
-        IManagedConnection managedConnectionProxy = (IManagedConnection) Proxy.newProxyInstance(IManagedConnection.class
-                .getClassLoader(), new Class[] {IManagedConnection.class}, this);
-
         // An XAConnection holds 2 objects: 1 Connection + 1 XAResource
-        this.implConn = (IConnection) Proxy.newProxyInstance(IConnection.class.getClassLoader(), new Class[] {IConnection.class},
-                new JConnection(managedConnectionProxy, physicalConnection));
+        this.implConn = new JConnection(this, physicalConnection);
 
         open = 0;
-        deathTime = System.currentTimeMillis() + ds.getMaxAgeMilli();
+        lastAccessTime = System.currentTimeMillis();
+        deathTime = lastAccessTime + ds.getMaxAgeMilli();
 
-        identifier = objcount++;
+        identifier = OBJCOUNT.getAndIncrement();
 
         // Prepared statement.
         pstmtmax = ds.getPstmtMax();
         psOpenNb = 0;
-        psList = Collections.synchronizedMap(new HashMap<String, IPreparedStatement>());
+        psList = new LinkedHashMap<StatementKey, JStatement>(16, 0.75f, true);
 
     }
 
-
-
     /**
-     * Processes a method invocation on a proxy instance and returns the result.
-     * This method will be invoked on an invocation handler when a method is
-     * invoked on a proxy instance that it is associated with.
-     * @param proxy the proxy instance that the method was invoked on
-     * @param method the <code>Method</code> instance corresponding to the
-     *        interface method invoked on the proxy instance.
-     * @param args an array of objects containing the values of the arguments
-     *        passed in the method invocation on the proxy instance, or
-     *        <code>null</code> if interface method takes no arguments.
-     * @return the value to return from the method invocation on the proxy
-     *         instance.
-     * @throws Throwable the exception to throw from the method invocation on
-     *         the proxy instance. The exception's type must be assignable
-     *         either to any of the exception types declared in the
-     *         <code>throws</code> clause of the interface method or to the
-     *         unchecked exception types <code>java.lang.RuntimeException</code>
-     *         or <code>java.lang.Error</code>. If a checked exception is
-     *         thrown by this method that is not assignable to any of the
-     *         exception types declared in the <code>throws</code> clause of
-     *         the interface method, then an UndeclaredThrowableException
-     *         containing the exception that was thrown by this method will be
-     *         thrown by the method invocation on the proxy instance.
+     * @return The identifier of this JManagedConnection
      */
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-
-        // Methods on the Object.class are not send on the connection impl
-        if (method.getDeclaringClass().getName().equals("java.lang.Object")) {
-            return handleObjectMethods(method, args);
-        }
-
-        String methodName = method.getName();
-
-        // Methods that are part of the IManagedConnection interface
-        if ("getIdentifier".equals(methodName)) {
-            // return the identifier
-            return Integer.valueOf(getIdentifier());
-        } else if ("getXAResource".equals(methodName)) {
-            // the XAResource is the proxy
-            return proxy;
-        } else if ("commit".equals(methodName)) {
-            // commit
-            commit((Xid) args[0], ((Boolean) args[1]).booleanValue(), (IManagedConnection) proxy);
-            return null;
-        } else if ("end".equals(methodName)) {
-            // end
-            end((Xid) args[0], ((Integer) args[1]).intValue());
-            return null;
-        } else if ("forget".equals(methodName)) {
-            // forget
-            forget((Xid) args[0]);
-            return null;
-        } else if ("prepare".equals(methodName)) {
-            // prepare
-            return Integer.valueOf(prepare((Xid) args[0]));
-        } else if ("getTransactionTimeout".equals(methodName)) {
-            return Integer.valueOf(getTransactionTimeout());
-        } else if ("isSameRM".equals(methodName)) {
-            // Compare object
-            return Boolean.valueOf(isSameRM(args[0]));
-        } else if ("recover".equals(methodName)) {
-            // recover
-            return recover(((Integer) args[0]).intValue());
-        } else if ("rollback".equals(methodName)) {
-            // forget
-            rollback((Xid) args[0], (IManagedConnection)  proxy);
-            return null;
-        } else if ("setTransactionTimeout".equals(methodName)) {
-            // setTransactionTimeout
-            setTransactionTimeout(((Integer) args[0]).intValue());
-            return null;
-        } else if ("start".equals(methodName)) {
-            // start
-            start((Xid) args[0], ((Integer) args[1]).intValue());
-            return null;
-        } else if ("getXAResource".equals(methodName)) {
-            // return the proxy object as it's the XA Resource
-            return proxy;
-        } else if ("notifyClose".equals(methodName)) {
-            notifyClose((IManagedConnection) proxy);
-            return null;
-        } else if ("notifyError".equals(methodName)) {
-            notifyError((IManagedConnection) proxy, (SQLException) args[0]);
-            return null;
-        } else if ("compareTo".equals(methodName)) {
-            return Integer.valueOf(compareTo((IManagedConnection) proxy, (IManagedConnection) args[0]));
-        } else if ("getReUsedPreparedStatements".equals(methodName)) {
-            return Integer.valueOf(getReUsedPreparedStatements());
-        } else if ("setPstmtMax".equals(methodName)) {
-            setPstmtMax(((Integer) args[0]).intValue());
-            return null;
-        } else if ("getConnection".equals(methodName)) {
-            return getConnection();
-        } else if ("close".equals(methodName)) {
-            close();
-            return null;
-        } else if ("addConnectionEventListener".equals(methodName)) {
-            addConnectionEventListener((ConnectionEventListener) args[0]);
-            return null;
-        } else if ("removeConnectionEventListener".equals(methodName)) {
-            removeConnectionEventListener((ConnectionEventListener) args[0]);
-            return null;
-        } else if ("beforeCompletion".equals(methodName)) {
-            beforeCompletion();
-            return null;
-        } else if ("afterCompletion".equals(methodName)) {
-            afterCompletion(((Integer) args[0]).intValue());
-            return null;
-        } else if ("isAged".equals(methodName)) {
-            return Boolean.valueOf(isAged());
-        } else if ("isOpen".equals(methodName)) {
-            return Boolean.valueOf(isOpen());
-        } else if ("getOpenCount".equals(methodName)) {
-            return Integer.valueOf(getOpenCount());
-        } else if ("inactive".equals(methodName)) {
-            return Boolean.valueOf(inactive());
-        } else if ("isClosed".equals(methodName)) {
-            return Boolean.valueOf(isClosed());
-        } else if ("hold".equals(methodName)) {
-            hold();
-            return null;
-        } else if ("release".equals(methodName)) {
-            return Boolean.valueOf(release());
-        } else if ("setTx".equals(methodName)) {
-            setTx(((Transaction) args[0]));
-            return null;
-        } else if ("getTx".equals(methodName)) {
-            return getTx();
-        } else if ("remove".equals(methodName)) {
-            remove();
-            return null;
-        } else if ("addStatementEventListener".equals(methodName) || "removeStatementEventListener".equals(methodName)) {
-            throw new UnsupportedOperationException("JDK 6.0 / JDBC 4.0 API Not supported");
-        } else if ("notifyPsClose".equals(methodName)) {
-            notifyPsClose((JStatement) args[0]);
-        } else if ("prepareStatement".equals(methodName)) {
-            // Single arg method
-            if (args.length == 1) {
-                return prepareStatement((String) args[0]);
-            }
-            // multiple arg method
-            return prepareStatement((String) args[0], ((Integer) args[1]).intValue(), ((Integer) args[2]).intValue());
-        }
-
-
-        // Should not go here as we should have redirected all methods
-        logger.error("Method ''{0}'' not handled by the proxy", method);
-        return null;
+    public int getIdentifier() {
+        return identifier;
     }
 
-
     /**
-     * @return The identifier of this JManagedConnection
+     * The XAResource is the managed connection itself.
+     * @return this managed connection
      */
-    public int getIdentifier() {
-        return identifier;
+    public XAResource getXAResource() {
+        return this;
     }
 
     /**
@@ -329,9 +184,9 @@ public class JManagedConnection extends AbsProxy {
      * @param max the maximum of prepared statement.
      */
     public void setPstmtMax(final int max) {
-        pstmtmax = max;
-        if (psList == null) {
-            psList = Collections.synchronizedMap(new HashMap<String, IPreparedStatement>(pstmtmax));
+        synchronized (psList) {
+            pstmtmax = max;
+            evictClosedStatements();
         }
     }
 
@@ -339,10 +194,9 @@ public class JManagedConnection extends AbsProxy {
      * Commit the global transaction specified by xid.
      * @param xid transaction xid
      * @param onePhase true if one phase commit
-     * @param proxy the proxy used to notify errors
      * @throws XAException XA protocol error
      */
-    public void commit(final Xid xid, final boolean onePhase, final IManagedConnection proxy) throws XAException {
+    public void commit(final Xid xid, final boolean onePhase) throws XAException {
         logger.debug("XA-COMMIT for {0}", xid);
 
         // Commit the transaction
@@ -350,7 +204,7 @@ public class JManagedConnection extends AbsProxy {
             physicalConnection.commit();
         } catch (SQLException e) {
             logger.error("Cannot commit transaction", e);
-            notifyError(proxy, e);
+            notifyError(e);
             throw new XAException("Error on commit");
         }
     }
@@ -394,7 +248,7 @@ public class JManagedConnection extends AbsProxy {
      * @return True if same RM instance, otherwise false.
      * @throws XAException XA protocol error
      */
-    public boolean isSameRM(final Object xares) throws XAException {
+    public boolean isSameRM(final XAResource xares) throws XAException {
 
         // In this pseudo-driver, we must return true only if
         // both objects refer to the same XAResource, and not
@@ -438,10 +292,9 @@ public class JManagedConnection extends AbsProxy {
      * Inform the resource manager to roll back work done on behalf of a
      * transaction branch.
      * @param xid transaction xid
-     * @param proxy the proxy used to notify errors
      * @throws XAException XA protocol error
      */
-    public void rollback(final Xid xid, final IManagedConnection proxy) throws XAException {
+    public void rollback(final Xid xid) throws XAException {
         logger.debug("XA-ROLLBACK for {0}", xid);
 
         // Make sure that we are not in AutoCommit mode
@@ -452,7 +305,7 @@ public class JManagedConnection extends AbsProxy {
             }
         } catch (SQLException e) {
             logger.error("Cannot getAutoCommit", e);
-            notifyError(proxy, e);
+            notifyError(e);
             throw (new XAException("Error on getAutoCommit"));
         }
 
@@ -461,7 +314,7 @@ public class JManagedConnection extends AbsProxy {
             physicalConnection.rollback();
         } catch (SQLException e) {
             logger.error("Cannot rollback transaction", e);
-            notifyError(proxy, e);
+            notifyError(e);
             throw (new XAException("Error on rollback"));
         }
     }
@@ -491,14 +344,13 @@ public class JManagedConnection extends AbsProxy {
 
     /**
      * Compares this object with another specified object.
-     * @param current the current managed connection (proxy)
      * @param other the object to compare
      * @return a value detecting if these objects are matching or not.
      */
-    public int compareTo(final IManagedConnection current, final IManagedConnection other) {
-        int diff = current.getReUsedPreparedStatements() - other.getReUsedPreparedStatements();
+    public int compareTo(final IManagedConnection other) {
+        int diff = getReUsedPreparedStatements() - other.getReUsedPreparedStatements();
         if (diff == 0) {
-            return current.getIdentifier() - other.getIdentifier();
+            return getIdentifier() - other.getIdentifier();
         }
         return diff;
     }
@@ -552,6 +404,22 @@ public class JManagedConnection extends AbsProxy {
         eventListeners.removeElement(listener);
     }
 
+    /**
+     * Statement events are not supported.
+     * @param listener event listener
+     */
+    public void addStatementEventListener(final StatementEventListener listener) {
+        throw new UnsupportedOperationException("JDK 6.0 / JDBC 4.0 API Not supported");
+    }
+
+    /**
+     * Statement events are not supported.
+     * @param listener event listener
+     */
+    public void removeStatementEventListener(final StatementEventListener listener) {
+        throw new UnsupportedOperationException("JDK 6.0 / JDBC 4.0 API Not supported");
+    }
+
     /**
      * synchronization implementation. {@inheritDoc}
      */
@@ -591,6 +459,14 @@ public class JManagedConnection extends AbsProxy {
         return open;
     }
 
+    /**
+     * @return the last time (in millisec) the connection has been opened or
+     *         closed by a user.
+     */
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
     /**
      * Check if the connection has been unused for too long time. This occurs
      * usually when the caller forgot to call close().
@@ -612,7 +488,8 @@ public class JManagedConnection extends AbsProxy {
      */
     public void hold() {
         open++;
-        closeTime = System.currentTimeMillis() + ds.getMaxOpenTimeMilli();
+        lastAccessTime = System.currentTimeMillis();
+        closeTime = lastAccessTime + ds.getMaxOpenTimeMilli();
     }
 
     /**
@@ -620,6 +497,7 @@ public class JManagedConnection extends AbsProxy {
      * @return true if normal close.
      */
     public boolean release() {
+        lastAccessTime = System.currentTimeMillis();
         open--;
         if (open < 0) {
             logger.warn("connection was already closed");
@@ -669,36 +547,38 @@ public class JManagedConnection extends AbsProxy {
     // -----------------------------------------------------------------
 
     /**
-     * Try to find a PreparedStatement in the pool for the given options.
-     * @param sql the sql of the prepared statement
-     * @param resultSetType the type of resultset
-     * @param resultSetConcurrency the concurrency of this resultset
+     * Try to find a PreparedStatement in the pool for the given shape.
+     * @param key the shape of the prepared statement
      * @return a preparestatement object
      * @throws SQLException if an errors occurs on the database.
      */
-    private PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency)
-            throws SQLException {
+    public PreparedStatement prepareStatement(final StatementKey key) throws SQLException {
 
-        logger.debug("sql = {0}", sql);
+        logger.debug("statement = {0}", key);
         if (pstmtmax == 0) {
-            return physicalConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            return key.prepare(physicalConnection);
         }
-        IPreparedStatement ps = null;
+        JStatement ps = null;
         synchronized (psList) {
-            ps = psList.get(sql);
+            ps = psList.get(key);
             if (ps != null) {
                 if (!ps.isClosed()) {
-                    logger.warn("reuse an open pstmt");
+                    // Already used by the caller, don't share it
+                    logger.debug("Statement ''{0}'' is already open, prepare a new one", key);
+                    ds.statementCacheMiss();
+                    return key.prepare(physicalConnection);
                 }
                 ps.reuse();
                 reUsedPreparedStatements++;
+                ds.statementCacheHit();
             } else {
                 // Not found in cache. Create a new one.
-                PreparedStatement aps = physicalConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
-                ps = (IPreparedStatement) Proxy.newProxyInstance(IPreparedStatement.class.getClassLoader(),
-                        new Class[] {IPreparedStatement.class}, new JStatement(aps, this, sql));
+                PreparedStatement aps = key.prepare(physicalConnection);
+                ps = new JStatement(aps, this, key);
 
-                psList.put(sql, ps);
+                psList.put(key, ps);
+                ds.statementCacheMiss();
+                evictClosedStatements();
             }
             psOpenNb++;
         }
@@ -712,7 +592,7 @@ public class JManagedConnection extends AbsProxy {
      * @return a given prepared statement.
      */
     public PreparedStatement prepareStatement(final String sql) throws SQLException {
-        return prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        return prepareStatement(new StatementKey(sql));
     }
 
     /**
@@ -723,37 +603,40 @@ public class JManagedConnection extends AbsProxy {
         logger.debug(ps.getSql());
         synchronized (psList) {
             psOpenNb--;
-            if (psList.size() >= pstmtmax) {
-                // Choose a closed element to remove.
-                IPreparedStatement lru = null;
-                Iterator<IPreparedStatement> i = psList.values().iterator();
-                while (i.hasNext()) {
-                    lru = i.next();
-                    if (lru.isClosed()) {
-                        // actually, remove the first closed element.
-                        i.remove();
-                        lru.forget();
-                        break;
-                    }
-                }
+            evictClosedStatements();
+        }
+    }
+
+    /**
+     * Physically closes the least recently used closed statements until the
+     * pool fits in its maximum size. Opened statements are never evicted.
+     * Must be called with the lock on psList.
+     */
+    private void evictClosedStatements() {
+        Iterator<JStatement> i = psList.values().iterator();
+        while (psList.size() > pstmtmax && i.hasNext()) {
+            JStatement lru = i.next();
+            if (lru.isClosed()) {
+                i.remove();
+                lru.forget();
+                ds.statementCacheEviction();
             }
         }
     }
 
     /**
      * Notify a Close event on Connection.
-     * @param proxy the proxy used to create events
      */
     @SuppressWarnings("boxing")
-    public void notifyClose(final IManagedConnection proxy) {
+    public void notifyClose() {
 
         // Close all PreparedStatement not already closed
         // When a Connection has been closed, no PreparedStatement should
         // remain open. This can avoids lack of cursor on some databases.
         synchronized (psList) {
             if (psOpenNb > 0) {
-                IPreparedStatement jst = null;
-                Iterator<IPreparedStatement> i = psList.values().iterator();
+                JStatement jst = null;
+                Iterator<JStatement> i = psList.values().iterator();
                 while (i.hasNext()) {
                     jst = i.next();
                     if (jst.forceClose()) {
@@ -765,25 +648,25 @@ public class JManagedConnection extends AbsProxy {
                     psOpenNb = 0;
                 }
             }
+            evictClosedStatements();
         }
 
         // Notify event to listeners
         for (int i = 0; i < eventListeners.size(); i++) {
             ConnectionEventListener l = eventListeners.elementAt(i);
-            l.connectionClosed(new ConnectionEvent(proxy));
+            l.connectionClosed(new ConnectionEvent(this));
         }
     }
 
     /**
      * Notify an Error event on Connection.
-     * @param proxy the proxy used to create events
      * @param ex the given exception
      */
-    public void notifyError(final IManagedConnection proxy, final SQLException ex) {
+    public void notifyError(final SQLException ex) {
         // Notify event to listeners
         for (int i = 0; i < eventListeners.size(); i++) {
             ConnectionEventListener l = eventListeners.elementAt(i);
-            l.connectionErrorOccurred(new ConnectionEvent(proxy, ex));
+            l.connectionErrorOccurred(new ConnectionEvent(this, ex));
         }
     }
 
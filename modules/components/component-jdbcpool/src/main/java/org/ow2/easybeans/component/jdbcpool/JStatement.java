@@ -25,11 +25,28 @@
 
 package org.ow2.easybeans.component.jdbcpool;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
+import java.sql.Ref;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
 import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
 
 import org.ow2.util.log.Log;
 import org.ow2.util.log.LogFactory;
@@ -37,10 +54,11 @@ import org.ow2.util.log.LogFactory;
 /**
  * Wrapper on a PreparedStatement. This wrapper is used to track close method in
  * order to avoid closing the statement, and putting it instead in a pool.
+ * Other methods are delegated to the physical prepared statement.
  * @author Philippe Durieux
  * @author Florent Benoit
  */
-public class JStatement extends AbsProxy {
+public class JStatement implements IPreparedStatement {
 
     /**
      * Properties of this statement has been changed ? Needs to be be cleared
@@ -69,14 +87,9 @@ public class JStatement extends AbsProxy {
     private JManagedConnection mc;
 
     /**
-     * Hashcode computed in constructor.
+     * Shape of the statement (SQL and options).
      */
-    private int hashCode;
-
-    /**
-     * SQL used as statement.
-     */
-    private String sql;
+    private StatementKey key;
 
     /**
      * Logger.
@@ -85,16 +98,15 @@ public class JStatement extends AbsProxy {
 
     /**
      * Builds a new statement with the given wrapped statement of given
-     * connection and given sql query.
+     * connection and given statement shape.
      * @param ps the prepared statement.
      * @param mc managed connection
-     * @param sql query.
+     * @param key the shape of the statement.
      */
-    public JStatement(final PreparedStatement ps, final JManagedConnection mc, final String sql) {
+    public JStatement(final PreparedStatement ps, final JManagedConnection mc, final StatementKey key) {
         this.ps = ps;
         this.mc = mc;
-        this.sql = sql;
-        hashCode = sql.hashCode();
+        this.key = key;
         opened = true;
     }
 
@@ -102,7 +114,14 @@ public class JStatement extends AbsProxy {
      * @return Sql query used.
      */
     public String getSql() {
-        return sql;
+        return key.getSql();
+    }
+
+    /**
+     * @return the shape of this statement.
+     */
+    public StatementKey getKey() {
+        return key;
     }
 
     /**
@@ -118,7 +137,7 @@ public class JStatement extends AbsProxy {
      */
     @Override
     public int hashCode() {
-        return hashCode;
+        return key.hashCode();
     }
 
     /**
@@ -127,109 +146,10 @@ public class JStatement extends AbsProxy {
      */
     @Override
     public boolean equals(final Object stmt) {
-        if (stmt == null) {
-            return false;
-        }
-        // different hashcode, cannot be equals
-        if (this.hashCode != stmt.hashCode()) {
-            return false;
-        }
-
-        // if got same hashcode, try to see if cast is ok.
         if (!(stmt instanceof JStatement)) {
-            logger.warn("Bad class {0}", stmt);
-            return false;
-        }
-
-        // Cast object
-        JStatement psw = (JStatement) stmt;
-        if (sql == null && psw.getSql() != null) {
-            return false;
-        }
-        if (sql != null && !sql.equals(psw.getSql())) {
-            return false;
-        }
-        try {
-            if (psw.getInternalPreparedStatement().getResultSetType() != ps.getResultSetType()) {
-                return false;
-            }
-            if (psw.getInternalPreparedStatement().getResultSetConcurrency() != ps.getResultSetConcurrency()) {
-                return false;
-            }
-        } catch (SQLException e) {
-            logger.warn("Cannot compare statements", e);
             return false;
         }
-        logger.debug("Found");
-        return true;
-    }
-
-    /**
-     * Processes a method invocation on a proxy instance and returns the result.
-     * This method will be invoked on an invocation handler when a method is
-     * invoked on a proxy instance that it is associated with.
-     * @param proxy the proxy instance that the method was invoked on
-     * @param method the <code>Method</code> instance corresponding to the
-     *        interface method invoked on the proxy instance.
-     * @param args an array of objects containing the values of the arguments
-     *        passed in the method invocation on the proxy instance, or
-     *        <code>null</code> if interface method takes no arguments.
-     * @return the value to return from the method invocation on the proxy
-     *         instance.
-     * @throws Throwable the exception to throw from the method invocation on
-     *         the proxy instance. The exception's type must be assignable
-     *         either to any of the exception types declared in the
-     *         <code>throws</code> clause of the interface method or to the
-     *         unchecked exception types <code>java.lang.RuntimeException</code>
-     *         or <code>java.lang.Error</code>. If a checked exception is
-     *         thrown by this method that is not assignable to any of the
-     *         exception types declared in the <code>throws</code> clause of
-     *         the interface method, then an UndeclaredThrowableException
-     *         containing the exception that was thrown by this method will be
-     *         thrown by the method invocation on the proxy instance.
-     */
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-
-        // Methods on the Object.class are not send on the connection impl
-        if (method.getDeclaringClass().getName().equals("java.lang.Object")) {
-            return handleObjectMethods(method, args);
-        }
-
-        String methodName = method.getName();
-
-        // Methods that are part of the IPreparedStatement interface
-        if ("forceClose".equals(methodName)) {
-            return Boolean.valueOf(forceClose());
-        } else if ("reuse".equals(methodName)) {
-            reuse();
-            return null;
-        } else if ("isClosed".equals(methodName)) {
-            return Boolean.valueOf(isClosed());
-        } else if ("forget".equals(methodName)) {
-            forget();
-            return null;
-        } else if ("close".equals(methodName)) {
-            close();
-            return null;
-        }
-
-        // If there are some properties changes on the prepared statement, flag them to
-        // avoid to loose time when resetting it
-        if ("addBatch".equals(methodName) || "execute".equals(methodName) || "executeUpdate".equals(methodName)
-                || "setFetchDirection".equals(methodName) || "setFetchSize".equals(methodName)
-                || "setMaxFieldSize".equals(methodName) || "setMaxRows".equals(methodName)
-                || "setQueryTimeout".equals(methodName)) {
-            changed = true;
-        }
-
-        // Delegate to the prepared statement object
-        try {
-            return method.invoke(this.ps, args);
-        } catch (InvocationTargetException e) {
-            // Throw the inner exception
-            Throwable targetException = e.getTargetException();
-            throw targetException;
-        }
+        return key.equals(((JStatement) stmt).getKey());
     }
 
     /**
@@ -298,4 +218,706 @@ public class JStatement extends AbsProxy {
         closing = false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ResultSet executeQuery() throws SQLException {
+        return ps.executeQuery();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int executeUpdate() throws SQLException {
+        changed = true;
+        return ps.executeUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNull(final int parameterIndex, final int sqlType) throws SQLException {
+        ps.setNull(parameterIndex, sqlType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBoolean(final int parameterIndex, final boolean x) throws SQLException {
+        ps.setBoolean(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setByte(final int parameterIndex, final byte x) throws SQLException {
+        ps.setByte(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setShort(final int parameterIndex, final short x) throws SQLException {
+        ps.setShort(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setInt(final int parameterIndex, final int x) throws SQLException {
+        ps.setInt(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setLong(final int parameterIndex, final long x) throws SQLException {
+        ps.setLong(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setFloat(final int parameterIndex, final float x) throws SQLException {
+        ps.setFloat(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setDouble(final int parameterIndex, final double x) throws SQLException {
+        ps.setDouble(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException {
+        ps.setBigDecimal(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setString(final int parameterIndex, final String x) throws SQLException {
+        ps.setString(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBytes(final int parameterIndex, final byte[] x) throws SQLException {
+        ps.setBytes(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setDate(final int parameterIndex, final Date x) throws SQLException {
+        ps.setDate(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTime(final int parameterIndex, final Time x) throws SQLException {
+        ps.setTime(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException {
+        ps.setTimestamp(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setAsciiStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        ps.setAsciiStream(parameterIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Deprecated
+    public void setUnicodeStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        ps.setUnicodeStream(parameterIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBinaryStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        ps.setBinaryStream(parameterIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clearParameters() throws SQLException {
+        ps.clearParameters();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException {
+        ps.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setObject(final int parameterIndex, final Object x) throws SQLException {
+        ps.setObject(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean execute() throws SQLException {
+        changed = true;
+        return ps.execute();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addBatch() throws SQLException {
+        changed = true;
+        ps.addBatch();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final int length)
+            throws SQLException {
+        ps.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setRef(final int parameterIndex, final Ref x) throws SQLException {
+        ps.setRef(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBlob(final int parameterIndex, final Blob x) throws SQLException {
+        ps.setBlob(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setClob(final int parameterIndex, final Clob x) throws SQLException {
+        ps.setClob(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setArray(final int parameterIndex, final Array x) throws SQLException {
+        ps.setArray(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return ps.getMetaData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException {
+        ps.setDate(parameterIndex, x, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException {
+        ps.setTime(parameterIndex, x, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException {
+        ps.setTimestamp(parameterIndex, x, cal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
+        ps.setNull(parameterIndex, sqlType, typeName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setURL(final int parameterIndex, final URL x) throws SQLException {
+        ps.setURL(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return ps.getParameterMetaData();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setRowId(final int parameterIndex, final RowId x) throws SQLException {
+        ps.setRowId(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNString(final int parameterIndex, final String value) throws SQLException {
+        ps.setNString(parameterIndex, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNCharacterStream(final int parameterIndex, final Reader value, final long length)
+            throws SQLException {
+        ps.setNCharacterStream(parameterIndex, value, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNClob(final int parameterIndex, final NClob value) throws SQLException {
+        ps.setNClob(parameterIndex, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        ps.setClob(parameterIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBlob(final int parameterIndex, final InputStream inputStream, final long length)
+            throws SQLException {
+        ps.setBlob(parameterIndex, inputStream, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        ps.setNClob(parameterIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setSQLXML(final int parameterIndex, final SQLXML xmlObject) throws SQLException {
+        ps.setSQLXML(parameterIndex, xmlObject);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength)
+            throws SQLException {
+        ps.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setAsciiStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
+        ps.setAsciiStream(parameterIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBinaryStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
+        ps.setBinaryStream(parameterIndex, x, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final long length)
+            throws SQLException {
+        ps.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setAsciiStream(final int parameterIndex, final InputStream x) throws SQLException {
+        ps.setAsciiStream(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBinaryStream(final int parameterIndex, final InputStream x) throws SQLException {
+        ps.setBinaryStream(parameterIndex, x);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException {
+        ps.setCharacterStream(parameterIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNCharacterStream(final int parameterIndex, final Reader value) throws SQLException {
+        ps.setNCharacterStream(parameterIndex, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setClob(final int parameterIndex, final Reader reader) throws SQLException {
+        ps.setClob(parameterIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException {
+        ps.setBlob(parameterIndex, inputStream);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setNClob(final int parameterIndex, final Reader reader) throws SQLException {
+        ps.setNClob(parameterIndex, reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResultSet executeQuery(final String sql) throws SQLException {
+        return ps.executeQuery(sql);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int executeUpdate(final String sql) throws SQLException {
+        changed = true;
+        return ps.executeUpdate(sql);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getMaxFieldSize() throws SQLException {
+        return ps.getMaxFieldSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setMaxFieldSize(final int max) throws SQLException {
+        changed = true;
+        ps.setMaxFieldSize(max);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getMaxRows() throws SQLException {
+        return ps.getMaxRows();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setMaxRows(final int max) throws SQLException {
+        changed = true;
+        ps.setMaxRows(max);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setEscapeProcessing(final boolean enable) throws SQLException {
+        ps.setEscapeProcessing(enable);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getQueryTimeout() throws SQLException {
+        return ps.getQueryTimeout();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setQueryTimeout(final int seconds) throws SQLException {
+        changed = true;
+        ps.setQueryTimeout(seconds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void cancel() throws SQLException {
+        ps.cancel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SQLWarning getWarnings() throws SQLException {
+        return ps.getWarnings();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clearWarnings() throws SQLException {
+        ps.clearWarnings();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setCursorName(final String name) throws SQLException {
+        ps.setCursorName(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean execute(final String sql) throws SQLException {
+        changed = true;
+        return ps.execute(sql);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResultSet getResultSet() throws SQLException {
+        return ps.getResultSet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getUpdateCount() throws SQLException {
+        return ps.getUpdateCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean getMoreResults() throws SQLException {
+        return ps.getMoreResults();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setFetchDirection(final int direction) throws SQLException {
+        changed = true;
+        ps.setFetchDirection(direction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getFetchDirection() throws SQLException {
+        return ps.getFetchDirection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setFetchSize(final int rows) throws SQLException {
+        changed = true;
+        ps.setFetchSize(rows);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getFetchSize() throws SQLException {
+        return ps.getFetchSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getResultSetConcurrency() throws SQLException {
+        return ps.getResultSetConcurrency();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getResultSetType() throws SQLException {
+        return ps.getResultSetType();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addBatch(final String sql) throws SQLException {
+        changed = true;
+        ps.addBatch(sql);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clearBatch() throws SQLException {
+        ps.clearBatch();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int[] executeBatch() throws SQLException {
+        return ps.executeBatch();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Connection getConnection() throws SQLException {
+        return ps.getConnection();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean getMoreResults(final int current) throws SQLException {
+        return ps.getMoreResults(current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return ps.getGeneratedKeys();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        changed = true;
+        return ps.executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        changed = true;
+        return ps.executeUpdate(sql, columnIndexes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        changed = true;
+        return ps.executeUpdate(sql, columnNames);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+        changed = true;
+        return ps.execute(sql, autoGeneratedKeys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+        changed = true;
+        return ps.execute(sql, columnIndexes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+        changed = true;
+        return ps.execute(sql, columnNames);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getResultSetHoldability() throws SQLException {
+        return ps.getResultSetHoldability();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setPoolable(final boolean poolable) throws SQLException {
+        ps.setPoolable(poolable);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isPoolable() throws SQLException {
+        return ps.isPoolable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void closeOnCompletion() throws SQLException {
+        ps.closeOnCompletion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isCloseOnCompletion() throws SQLException {
+        return ps.isCloseOnCompletion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        return ps.unwrap(iface);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return ps.isWrapperFor(iface);
+    }
+
 }
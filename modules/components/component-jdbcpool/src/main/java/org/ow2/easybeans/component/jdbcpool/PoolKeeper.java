@@ -0,0 +1,100 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+package org.ow2.easybeans.component.jdbcpool;
+
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Background thread maintaining the connections of a pool: validates the free
+ * connections, closes the idle and aged ones and recreates connections until
+ * the minimum size of the pool is reached. This work is done outside of the
+ * threads asking for connections.
+ * @author Florent Benoit
+ */
+public class PoolKeeper extends Thread {
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(PoolKeeper.class);
+
+    /**
+     * Number of milliseconds in a second.
+     */
+    private static final long MILLI = 1000L;
+
+    /**
+     * Pool to maintain.
+     */
+    private final ConnectionManager connectionManager;
+
+    /**
+     * Keeper has been stopped ?
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Builds a keeper for the given pool.
+     * @param connectionManager the pool to maintain
+     */
+    public PoolKeeper(final ConnectionManager connectionManager) {
+        super("PoolKeeper-" + connectionManager.getDSName());
+        this.connectionManager = connectionManager;
+        setDaemon(true);
+    }
+
+    /**
+     * Maintains the pool at each validation period until the keeper is
+     * stopped.
+     */
+    @Override
+    public void run() {
+        while (!this.stopped) {
+            try {
+                Thread.sleep(this.connectionManager.getValidationPeriod() * MILLI);
+            } catch (InterruptedException e) {
+                // Stopped or period changed
+                continue;
+            }
+            try {
+                this.connectionManager.maintain();
+            } catch (RuntimeException e) {
+                logger.error("Cannot maintain the connections of the datasource ''{0}''",
+                        this.connectionManager.getDSName(), e);
+            }
+        }
+        logger.debug("PoolKeeper of ''{0}'' stopped", this.connectionManager.getDSName());
+    }
+
+    /**
+     * Stops this keeper.
+     */
+    public void stopKeeper() {
+        this.stopped = true;
+        interrupt();
+    }
+
+}
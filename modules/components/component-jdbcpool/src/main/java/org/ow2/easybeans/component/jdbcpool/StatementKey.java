@@ -0,0 +1,195 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+package org.ow2.easybeans.component.jdbcpool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Shape of a prepared statement: the SQL query and all the options given when
+ * the statement has been prepared. Two statements can only be shared if they
+ * have the same shape.
+ * @author Florent Benoit
+ */
+public class StatementKey {
+
+    /**
+     * Value used when the holdability or the generated keys mode has not been
+     * given.
+     */
+    public static final int DEFAULT = 0;
+
+    /**
+     * SQL query.
+     */
+    private final String sql;
+
+    /**
+     * Type of the resultset.
+     */
+    private final int resultSetType;
+
+    /**
+     * Concurrency of the resultset.
+     */
+    private final int resultSetConcurrency;
+
+    /**
+     * Holdability of the resultset (or DEFAULT).
+     */
+    private final int resultSetHoldability;
+
+    /**
+     * Generated keys mode (or DEFAULT).
+     */
+    private final int autoGeneratedKeys;
+
+    /**
+     * Hashcode computed in constructor.
+     */
+    private final int hashCode;
+
+    /**
+     * Builds a key for a statement using the default options.
+     * @param sql the SQL query
+     */
+    public StatementKey(final String sql) {
+        this(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, DEFAULT, DEFAULT);
+    }
+
+    /**
+     * Builds a key for the given statement shape.
+     * @param sql the SQL query
+     * @param resultSetType the type of resultset
+     * @param resultSetConcurrency the concurrency of the resultset
+     * @param resultSetHoldability the holdability of the resultset or DEFAULT
+     * @param autoGeneratedKeys the generated keys mode or DEFAULT
+     */
+    public StatementKey(final String sql, final int resultSetType, final int resultSetConcurrency,
+            final int resultSetHoldability, final int autoGeneratedKeys) {
+        this.sql = sql;
+        this.resultSetType = resultSetType;
+        this.resultSetConcurrency = resultSetConcurrency;
+        this.resultSetHoldability = resultSetHoldability;
+        this.autoGeneratedKeys = autoGeneratedKeys;
+        int hash = sql.hashCode();
+        hash = 31 * hash + resultSetType;
+        hash = 31 * hash + resultSetConcurrency;
+        hash = 31 * hash + resultSetHoldability;
+        hash = 31 * hash + autoGeneratedKeys;
+        this.hashCode = hash;
+    }
+
+    /**
+     * Prepares a new physical statement with this shape.
+     * @param connection the physical connection
+     * @return a new prepared statement
+     * @throws SQLException if the statement can't be prepared
+     */
+    public PreparedStatement prepare(final Connection connection) throws SQLException {
+        if (this.autoGeneratedKeys != DEFAULT) {
+            return connection.prepareStatement(this.sql, this.autoGeneratedKeys);
+        }
+        if (this.resultSetHoldability != DEFAULT) {
+            return connection.prepareStatement(this.sql, this.resultSetType, this.resultSetConcurrency,
+                    this.resultSetHoldability);
+        }
+        return connection.prepareStatement(this.sql, this.resultSetType, this.resultSetConcurrency);
+    }
+
+    /**
+     * @return the SQL query.
+     */
+    public String getSql() {
+        return this.sql;
+    }
+
+    /**
+     * @return the type of resultset.
+     */
+    public int getResultSetType() {
+        return this.resultSetType;
+    }
+
+    /**
+     * @return the concurrency of the resultset.
+     */
+    public int getResultSetConcurrency() {
+        return this.resultSetConcurrency;
+    }
+
+    /**
+     * @return the holdability of the resultset or DEFAULT.
+     */
+    public int getResultSetHoldability() {
+        return this.resultSetHoldability;
+    }
+
+    /**
+     * @return the generated keys mode or DEFAULT.
+     */
+    public int getAutoGeneratedKeys() {
+        return this.autoGeneratedKeys;
+    }
+
+    /**
+     * @return hashcode of the object
+     */
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    /**
+     * @param obj given object for comparing it
+     * @return true if given object has the same shape
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StatementKey)) {
+            return false;
+        }
+        StatementKey other = (StatementKey) obj;
+        return this.hashCode == other.hashCode && this.resultSetType == other.resultSetType
+                && this.resultSetConcurrency == other.resultSetConcurrency
+                && this.resultSetHoldability == other.resultSetHoldability
+                && this.autoGeneratedKeys == other.autoGeneratedKeys && this.sql.equals(other.sql);
+    }
+
+    /**
+     * @return string representation of this key.
+     */
+    @Override
+    public String toString() {
+        return this.sql + "[type=" + this.resultSetType + ", concurrency=" + this.resultSetConcurrency + ", holdability="
+                + this.resultSetHoldability + ", generatedKeys=" + this.autoGeneratedKeys + "]";
+    }
+
+}
@@ -29,6 +29,7 @@ import javax.ejb.Timer;
 
 import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.EZBServer;
+import org.ow2.easybeans.api.EZBTimerService;
 import org.ow2.easybeans.api.EmbeddedManager;
 import org.ow2.easybeans.api.Factory;
 import org.quartz.Job;
@@ -62,6 +63,10 @@ public class EasyBeansJob implements Job {
 
         // Get the container
         EZBContainer container = server.getContainer(data.getContainerId());
+        if (container == null) {
+            // Timer restored by the job store, ids of containers change on each start
+            container = findContainer(server, data.getFactoryName());
+        }
         if (container == null) {
             throw new JobExecutionException("Cannot find the container with the id '" + data.getContainerId() + "'.");
         }
@@ -75,11 +80,46 @@ public class EasyBeansJob implements Job {
         // Get the timer
         Timer timer = data.getTimer();
         if (timer == null) {
-            throw new JobExecutionException("No timer found in the given JobExecutionContext.");
+            // Timer restored by the job store, use the live timer of the factory or build it again
+            timer = getTimer(factory, context);
+            data.setContainerId(container.getId());
+            data.setTimer(timer);
         }
 
-        // Invoke the timer method
+        // Invoke the timer method (expired timers are removed by the TimerServiceListener)
         factory.notifyTimeout(timer, data.getMethodInfo());
 
     }
+
+    /**
+     * Gets the timer of a job restored by the job store.
+     * @param factory the factory of the timer
+     * @param context the context of the job
+     * @return the live timer of the factory or a new timer
+     */
+    private Timer getTimer(final Factory<?, ?> factory, final JobExecutionContext context) {
+        EZBTimerService timerService = factory.getTimerService();
+        if (timerService instanceof QuartzTimerService) {
+            EasyBeansTimer timer = ((QuartzTimerService) timerService).getTimer(context.getJobDetail().getKey());
+            if (timer != null) {
+                return timer;
+            }
+        }
+        return new EasyBeansTimer(context.getJobDetail(), context.getTrigger(), context.getScheduler(), factory);
+    }
+
+    /**
+     * Finds the container providing the given factory.
+     * @param server the EasyBeans server
+     * @param factoryName the name of the factory
+     * @return the container or null if not found
+     */
+    private EZBContainer findContainer(final EZBServer server, final String factoryName) {
+        for (EZBContainer container : server.getContainers().values()) {
+            if (container.getFactory(factoryName) != null) {
+                return container;
+            }
+        }
+        return null;
+    }
 }
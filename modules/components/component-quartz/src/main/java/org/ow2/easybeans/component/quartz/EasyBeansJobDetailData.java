@@ -25,8 +25,14 @@
 
 package org.ow2.easybeans.component.quartz;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import javax.ejb.EJBException;
 import javax.ejb.ScheduleExpression;
 import javax.ejb.Timer;
 
@@ -63,7 +69,14 @@ public class EasyBeansJobDetailData implements Serializable {
      * Application information to be delivered along with the timer expiration
      * notification.
      */
-    private Serializable info = null;
+    private transient Serializable info = null;
+
+    /**
+     * Serialized form of the info. The classes of the info are the classes of
+     * the application, they can only be loaded when the application is
+     * deployed (it may be after the timers are read by the job store).
+     */
+    private byte[] serializedInfo = null;
 
     /**
      * The timer object (that is transient).
@@ -90,7 +103,23 @@ public class EasyBeansJobDetailData implements Serializable {
     /**
      * @return the serializable info used for the timer expiration notification.
      */
-    public Serializable getInfo() {
+    public synchronized Serializable getInfo() {
+        if (this.info == null && this.serializedInfo != null) {
+            // Read with the classloader of the application calling the timer
+            try {
+                ObjectInputStream in = new TimerObjectInputStream(new ByteArrayInputStream(this.serializedInfo), Thread
+                        .currentThread().getContextClassLoader());
+                try {
+                    this.info = (Serializable) in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new EJBException("Cannot read the info of the timer", e);
+            } catch (ClassNotFoundException e) {
+                throw new EJBException("Cannot read the info of the timer", e);
+            }
+        }
         return this.info;
     }
 
@@ -98,8 +127,9 @@ public class EasyBeansJobDetailData implements Serializable {
      * Sets the serializable info used for the timer expiration notification.
      * @param info the given info
      */
-    public void setInfo(final Serializable info) {
+    public synchronized void setInfo(final Serializable info) {
         this.info = info;
+        this.serializedInfo = null;
     }
 
     /**
@@ -212,4 +242,23 @@ public class EasyBeansJobDetailData implements Serializable {
         return this.isPersistent;
     }
 
+    /**
+     * Serializes the data with the info in its serialized form.
+     * @param out the stream to write to
+     * @throws IOException if the data cannot be written
+     */
+    private synchronized void writeObject(final ObjectOutputStream out) throws IOException {
+        if (this.info != null && this.serializedInfo == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream infoOut = new ObjectOutputStream(bytes);
+            try {
+                infoOut.writeObject(this.info);
+            } finally {
+                infoOut.close();
+            }
+            this.serializedInfo = bytes.toByteArray();
+        }
+        out.defaultWriteObject();
+    }
+
 }
@@ -25,9 +25,12 @@
 
 package org.ow2.easybeans.component.quartz;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import javax.ejb.ScheduleExpression;
 
@@ -53,12 +56,12 @@ public class EasyBeansScheduleTrigger extends CronTriggerImpl implements CoreTri
     /**
      * Schedule expression parser.
      */
-    private ScheduleExpressionParser parser = null;
+    private transient ScheduleExpressionParser parser = null;
 
     /**
-     * The schedule expression.
+     * The schedule expression (parsed again when the trigger is deserialized).
      */
-    private EasyBeansScheduleExpression easyBeansScheduleExpression;
+    private transient EasyBeansScheduleExpression easyBeansScheduleExpression;
 
     /**
      * max loop before trying to find a timeout date.
@@ -84,9 +87,27 @@ public class EasyBeansScheduleTrigger extends CronTriggerImpl implements CoreTri
         // now we will get schedule values for each part of the expression
         this.easyBeansScheduleExpression = this.parser.parse(this.scheduleExpression);
 
+        // Values of the expression are expressed in its time zone (default time zone if not set)
+        String timezoneID = this.scheduleExpression.getTimezone();
+        if (timezoneID != null) {
+            setTimeZone(TimeZone.getTimeZone(timezoneID));
+        }
+
     }
 
 
+    /**
+     * Parses the expression again when the trigger is read from a job store.
+     * @param in the stream to read from
+     * @throws IOException if the trigger cannot be read
+     * @throws ClassNotFoundException if a class is not found
+     */
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.parser = new ScheduleExpressionParser();
+        init();
+    }
+
     /**
      * Find the next occurence after the given date.
      * @param afterTime the time after which we've to find a new date
@@ -405,7 +426,9 @@ public class EasyBeansScheduleTrigger extends CronTriggerImpl implements CoreTri
         }
         // It will never expires
         if (end.before(fireTime)) {
-            this.easyBeansTimer.setInvalid();
+            if (this.easyBeansTimer != null) {
+                this.easyBeansTimer.setInvalid();
+            }
             return null;
         }
         return fireTime;
@@ -442,7 +465,7 @@ public class EasyBeansScheduleTrigger extends CronTriggerImpl implements CoreTri
     }
 
 
-    private EasyBeansTimer easyBeansTimer = null;
+    private transient EasyBeansTimer easyBeansTimer = null;
 
     public EasyBeansTimer getEasyBeansTimer() {
         return this.easyBeansTimer;
@@ -70,6 +70,10 @@ public class EasyBeansTimer implements Timer {
      */
     private Factory<?, ?> factory = null;
 
+    /**
+     * Timer service keeping the live timers of the factory (optional).
+     */
+    private QuartzTimerService timerService = null;
 
     /**
      * This timer has been cancelled ?
@@ -121,6 +125,7 @@ public class EasyBeansTimer implements Timer {
 
         // Timer is cancelled
         this.cancelled = true;
+        unregister();
     }
 
     /**
@@ -336,6 +341,23 @@ public class EasyBeansTimer implements Timer {
         return this.trigger;
     }
 
+    /**
+     * Sets the timer service keeping the live timers of the factory.
+     * @param timerService the given timer service
+     */
+    protected void setTimerService(final QuartzTimerService timerService) {
+        this.timerService = timerService;
+    }
+
+    /**
+     * Removes this timer from the live timers of the factory (cancelled or expired timer).
+     */
+    protected void unregister() {
+        if (this.timerService != null) {
+            this.timerService.removeTimer(this.jobDetail.getKey());
+        }
+    }
+
     /**
      * Checks that the current timer has not be cancelled else throws an exception.
      * @throws NoSuchObjectLocalException if the timer has been cancelled.
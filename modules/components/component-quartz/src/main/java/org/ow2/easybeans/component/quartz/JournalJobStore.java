@@ -0,0 +1,804 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerKey;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredResult;
+
+/**
+ * Quartz job store keeping the persistent EJB timers in a local journal.<br/>
+ * Jobs and triggers are held in memory like in the {@link RAMJobStore}. Each
+ * change on a persistent timer is also appended to a {@link TimerJournal}
+ * which is read again when the scheduler is initialized, so timers survive a
+ * restart without a database access on each timeout.<br/>
+ * The jobs read from the journal, and the jobs detached when their bean is
+ * stopped, are kept apart and scheduled again when the timer service of their
+ * bean is created (see {@link #attachJobs(String)}). Only an explicit removal
+ * of the job deletes it from the journal.<br/>
+ * It is enabled with the Quartz property
+ * <code>org.quartz.jobStore.class</code> and configured with
+ * <code>org.quartz.jobStore.directory</code>, <code>syncInterval</code>,
+ * <code>compactionSize</code> and <code>snapshotInterval</code>. The directory
+ * is required: the timers would be lost with a temporary directory. It must
+ * belong to the user running EasyBeans (see {@link TimerJournal#open()}).<br/>
+ * Only the classes of the jobs and triggers are read back from the journal
+ * (see {@link TimerJournalInputStream}).
+ * @author Florent Benoit
+ */
+public class JournalJobStore extends RAMJobStore {
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog(JournalJobStore.class);
+
+    /**
+     * Default delay in ms between two fsync of the journal.
+     */
+    public static final long DEFAULT_SYNC_INTERVAL = 100L;
+
+    /**
+     * Default size of the journal (4 MB) after which a snapshot is done.
+     */
+    public static final long DEFAULT_COMPACTION_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * Default delay (10 minutes) after which a snapshot is done.
+     */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 10L * 60 * 1000;
+
+    /**
+     * State of a trigger that is not paused.
+     */
+    private static final byte STATE_NORMAL = 0;
+
+    /**
+     * State of a paused trigger.
+     */
+    private static final byte STATE_PAUSED = 1;
+
+    /**
+     * Directory of the journal (no default, it has to be durable).
+     */
+    private String directory = null;
+
+    /**
+     * Delay in ms between two fsync (0 = fsync at each change).
+     */
+    private long syncInterval = DEFAULT_SYNC_INTERVAL;
+
+    /**
+     * Size of the journal after which a snapshot is done.
+     */
+    private long compactionSize = DEFAULT_COMPACTION_SIZE;
+
+    /**
+     * Delay after which a snapshot is done.
+     */
+    private long snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+
+    /**
+     * The journal (null if it cannot be opened).
+     */
+    private TimerJournal journal = null;
+
+    /**
+     * Error while opening the journal, reported when the scheduler is started.
+     */
+    private IOException openFailure = null;
+
+    /**
+     * Classloader used to read the jobs and triggers.
+     */
+    private ClassLoader classLoader = null;
+
+    /**
+     * Jobs stored in the journal.
+     */
+    private final Set<JobKey> journaledJobs = new HashSet<JobKey>();
+
+    /**
+     * Triggers stored in the journal.
+     */
+    private final Set<TriggerKey> journaledTriggers = new HashSet<TriggerKey>();
+
+    /**
+     * Job stores by name of scheduler.
+     */
+    private static final Map<String, JournalJobStore> JOB_STORES = new ConcurrentHashMap<String, JournalJobStore>();
+
+    /**
+     * Name of the scheduler using this store.
+     */
+    private String instanceName = null;
+
+    /**
+     * Signaler used to wake up the scheduler when jobs are attached.
+     */
+    private SchedulerSignaler schedulerSignaler = null;
+
+    /**
+     * Journaled jobs that are not scheduled (bean not yet deployed or stopped).
+     */
+    private final Map<JobKey, DetachedJob> detachedJobs = new LinkedHashMap<JobKey, DetachedJob>();
+
+    /**
+     * Jobs are being detached, changes are not written in the journal.
+     */
+    private boolean detaching = false;
+
+    /**
+     * Gets the journal job store used by the given scheduler.
+     * @param schedulerName the name of the scheduler
+     * @return the job store or null if the scheduler doesn't use a journal job store
+     */
+    public static JournalJobStore getJobStore(final String schedulerName) {
+        return JOB_STORES.get(schedulerName);
+    }
+
+    /**
+     * Sets the name of the scheduler using this store.
+     * @param schedName the name of the scheduler
+     */
+    @Override
+    public void setInstanceName(final String schedName) {
+        super.setInstanceName(schedName);
+        this.instanceName = schedName;
+    }
+
+    /**
+     * Opens the journal and restores the jobs and triggers it contains.
+     * @param loadHelper the helper used to load the classes
+     * @param schedSignaler the signaler of the scheduler
+     */
+    @Override
+    public void initialize(final ClassLoadHelper loadHelper, final SchedulerSignaler schedSignaler) {
+        super.initialize(loadHelper, schedSignaler);
+        this.classLoader = loadHelper.getClassLoader();
+        this.schedulerSignaler = schedSignaler;
+
+        if (this.directory == null || this.directory.trim().length() == 0) {
+            this.openFailure = new IOException("No directory has been set for the timer journal, the property "
+                    + "'org.quartz.jobStore.directory' is required.");
+            LOGGER.error("Cannot open the timer journal", this.openFailure);
+            return;
+        }
+        TimerJournal timerJournal = new TimerJournal(new File(this.directory), this.syncInterval, this.compactionSize,
+                this.snapshotInterval);
+        synchronized (this.lock) {
+            try {
+                timerJournal.open();
+            } catch (IOException e) {
+                LOGGER.error("Cannot open the timer journal in ''{0}''", this.directory, e);
+                this.openFailure = e;
+                return;
+            }
+            this.journal = timerJournal;
+            restore();
+        }
+        if (this.instanceName != null) {
+            JOB_STORES.put(this.instanceName, this);
+        }
+    }
+
+    /**
+     * Reports an error if the journal has not been opened.
+     * @throws SchedulerException if the journal cannot be used
+     */
+    @Override
+    public void schedulerStarted() throws SchedulerException {
+        if (this.openFailure != null) {
+            throw new JobPersistenceException("Cannot open the timer journal in '" + this.directory + "'.", this.openFailure);
+        }
+        super.schedulerStarted();
+    }
+
+    /**
+     * Writes the journal and closes it.
+     */
+    @Override
+    public void shutdown() {
+        if (this.instanceName != null) {
+            JOB_STORES.remove(this.instanceName);
+        }
+        super.shutdown();
+        synchronized (this.lock) {
+            if (this.journal != null) {
+                try {
+                    this.journal.close();
+                } catch (IOException e) {
+                    LOGGER.error("Cannot close the timer journal in ''{0}''", this.directory, e);
+                }
+                this.journal = null;
+            }
+        }
+    }
+
+    /**
+     * @return true as persistent timers are kept across restarts
+     */
+    @Override
+    public boolean supportsPersistence() {
+        return true;
+    }
+
+    /**
+     * Stores the given job and trigger. An error is thrown if the job of a
+     * persistent timer cannot be written in the journal.
+     * @param newJob the job to store
+     * @param newTrigger the trigger to store
+     * @throws JobPersistenceException if the job cannot be stored
+     */
+    @Override
+    public void storeJobAndTrigger(final JobDetail newJob, final OperableTrigger newTrigger) throws JobPersistenceException {
+        synchronized (this.lock) {
+            super.storeJob(newJob, false);
+            try {
+                journalJob(newJob.getKey());
+            } catch (JobPersistenceException e) {
+                // Not scheduled if it cannot be persisted
+                super.removeJob(newJob.getKey());
+                throw e;
+            }
+            storeTrigger(newTrigger, false);
+        }
+    }
+
+    /**
+     * Stores the given job.
+     * @param newJob the job to store
+     * @param replaceExisting true if an existing job can be replaced
+     * @throws ObjectAlreadyExistsException if the job already exists
+     */
+    @Override
+    public void storeJob(final JobDetail newJob, final boolean replaceExisting) throws ObjectAlreadyExistsException {
+        synchronized (this.lock) {
+            super.storeJob(newJob, replaceExisting);
+            journalJobQuietly(newJob.getKey());
+        }
+    }
+
+    /**
+     * Removes the given job and its triggers.
+     * @param jobKey the key of the job
+     * @return true if the job has been found
+     */
+    @Override
+    public boolean removeJob(final JobKey jobKey) {
+        synchronized (this.lock) {
+            boolean found = super.removeJob(jobKey);
+            journalJobQuietly(jobKey);
+            return found;
+        }
+    }
+
+    /**
+     * Stores the given trigger.
+     * @param newTrigger the trigger to store
+     * @param replaceExisting true if an existing trigger can be replaced
+     * @throws JobPersistenceException if the trigger cannot be stored
+     */
+    @Override
+    public void storeTrigger(final OperableTrigger newTrigger, final boolean replaceExisting) throws JobPersistenceException {
+        synchronized (this.lock) {
+            super.storeTrigger(newTrigger, replaceExisting);
+            try {
+                journalTrigger(newTrigger.getKey());
+            } catch (JobPersistenceException e) {
+                // Not scheduled if it cannot be persisted
+                removeTrigger(newTrigger.getKey());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Removes the given trigger (and its job if it's not durable).
+     * @param triggerKey the key of the trigger
+     * @return true if the trigger has been found
+     */
+    @Override
+    public boolean removeTrigger(final TriggerKey triggerKey) {
+        synchronized (this.lock) {
+            boolean found = super.removeTrigger(triggerKey);
+            journalTriggerQuietly(triggerKey);
+            return found;
+        }
+    }
+
+    /**
+     * Replaces the given trigger by a new one.
+     * @param triggerKey the key of the trigger to replace
+     * @param newTrigger the new trigger
+     * @return true if the trigger has been found
+     * @throws JobPersistenceException if the new trigger cannot be stored
+     */
+    @Override
+    public boolean replaceTrigger(final TriggerKey triggerKey, final OperableTrigger newTrigger)
+            throws JobPersistenceException {
+        synchronized (this.lock) {
+            boolean found = super.replaceTrigger(triggerKey, newTrigger);
+            journalTriggerQuietly(triggerKey);
+            journalTrigger(newTrigger.getKey());
+            return found;
+        }
+    }
+
+    /**
+     * Pauses the given trigger.
+     * @param triggerKey the key of the trigger
+     */
+    @Override
+    public void pauseTrigger(final TriggerKey triggerKey) {
+        synchronized (this.lock) {
+            super.pauseTrigger(triggerKey);
+            journalTriggerQuietly(triggerKey);
+        }
+    }
+
+    /**
+     * Resumes the given trigger.
+     * @param triggerKey the key of the trigger
+     */
+    @Override
+    public void resumeTrigger(final TriggerKey triggerKey) {
+        synchronized (this.lock) {
+            super.resumeTrigger(triggerKey);
+            journalTriggerQuietly(triggerKey);
+        }
+    }
+
+    /**
+     * Fires the given triggers and keeps their next fire time.
+     * @param firedTriggers the triggers that are fired
+     * @return the results for each trigger
+     */
+    @Override
+    public List<TriggerFiredResult> triggersFired(final List<OperableTrigger> firedTriggers) {
+        synchronized (this.lock) {
+            List<TriggerFiredResult> results = super.triggersFired(firedTriggers);
+            for (OperableTrigger firedTrigger : firedTriggers) {
+                journalTriggerQuietly(firedTrigger.getKey());
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Updates the trigger and the job once the job has been executed.
+     * @param trigger the trigger that has been fired
+     * @param jobDetail the executed job
+     * @param triggerInstCode the instruction for the trigger
+     */
+    @Override
+    public void triggeredJobComplete(final OperableTrigger trigger, final JobDetail jobDetail,
+            final CompletedExecutionInstruction triggerInstCode) {
+        synchronized (this.lock) {
+            super.triggeredJobComplete(trigger, jobDetail, triggerInstCode);
+            journalJobQuietly(jobDetail.getKey());
+            journalTriggerQuietly(trigger.getKey());
+        }
+    }
+
+    /**
+     * Removes the given jobs from the scheduled jobs without removing them
+     * from the journal (the bean of the timers is stopped). Jobs that are not
+     * journaled are removed.
+     * @param jobKeys the keys of the jobs
+     */
+    public void detachJobs(final Collection<JobKey> jobKeys) {
+        synchronized (this.lock) {
+            for (JobKey jobKey : jobKeys) {
+                JobDetail jobDetail = retrieveJob(jobKey);
+                if (jobDetail == null) {
+                    continue;
+                }
+                if (!this.journaledJobs.contains(jobKey)) {
+                    removeJob(jobKey);
+                    continue;
+                }
+                DetachedJob detachedJob = new DetachedJob(jobDetail);
+                for (OperableTrigger trigger : getTriggersForJob(jobKey)) {
+                    detachedJob.addTrigger(trigger, getTriggerState(trigger.getKey()) == TriggerState.PAUSED);
+                }
+                this.detachedJobs.put(jobKey, detachedJob);
+                this.detaching = true;
+                try {
+                    super.removeJob(jobKey);
+                } finally {
+                    this.detaching = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules again the detached jobs of the given group (the bean of the
+     * timers is deployed).
+     * @param group the group of the jobs
+     * @return the number of jobs scheduled again
+     */
+    public int attachJobs(final String group) {
+        int attached = 0;
+        synchronized (this.lock) {
+            Iterator<DetachedJob> itDetachedJobs = this.detachedJobs.values().iterator();
+            while (itDetachedJobs.hasNext()) {
+                DetachedJob detachedJob = itDetachedJobs.next();
+                JobDetail jobDetail = detachedJob.getJobDetail();
+                if (!group.equals(jobDetail.getKey().getGroup())) {
+                    continue;
+                }
+                itDetachedJobs.remove();
+
+                // Already in the journal, only the scheduled jobs are updated
+                try {
+                    super.storeJob(jobDetail, true);
+                    for (OperableTrigger trigger : detachedJob.getTriggers()) {
+                        super.storeTrigger(trigger, true);
+                        if (detachedJob.isPaused(trigger.getKey())) {
+                            super.pauseTrigger(trigger.getKey());
+                        }
+                    }
+                } catch (JobPersistenceException e) {
+                    LOGGER.error("Cannot schedule again the job ''{0}''", jobDetail.getKey(), e);
+                    continue;
+                }
+                attached++;
+            }
+        }
+        if (attached > 0 && this.schedulerSignaler != null) {
+            this.schedulerSignaler.signalSchedulingChange(0L);
+        }
+        return attached;
+    }
+
+    /**
+     * Checks if the given job needs to be kept in the journal. Only persistent
+     * EJB timers are kept. Automatic timers (with a callback method) are
+     * created again when the bean is deployed so they're not kept.
+     * @param jobDetail the job to check
+     * @return true if the job is kept in the journal
+     */
+    protected boolean isJournaled(final JobDetail jobDetail) {
+        Object data = jobDetail.getJobDataMap().get("data");
+        if (!(data instanceof EasyBeansJobDetailData)) {
+            return false;
+        }
+        EasyBeansJobDetailData jobDetailData = (EasyBeansJobDetailData) data;
+        return jobDetailData.isPersistent() && jobDetailData.getMethodInfo() == null;
+    }
+
+    /**
+     * Writes the current state of the given job in the journal.
+     * @param jobKey the key of the job
+     * @throws JobPersistenceException if the job cannot be written
+     */
+    private void journalJob(final JobKey jobKey) throws JobPersistenceException {
+        if (this.journal == null || this.detaching) {
+            return;
+        }
+        JobDetail jobDetail = retrieveJob(jobKey);
+        try {
+            if (jobDetail != null && isJournaled(jobDetail)) {
+                this.journal.putJob(jobKey, serialize(jobDetail, null));
+                this.journaledJobs.add(jobKey);
+            } else if (this.journaledJobs.remove(jobKey)) {
+                this.journal.removeJob(jobKey);
+            }
+        } catch (IOException e) {
+            throw new JobPersistenceException("Cannot write the job '" + jobKey + "' in the timer journal.", e);
+        }
+    }
+
+    /**
+     * Writes the current state of the given job in the journal and logs the
+     * error if it fails.
+     * @param jobKey the key of the job
+     */
+    private void journalJobQuietly(final JobKey jobKey) {
+        try {
+            journalJob(jobKey);
+        } catch (JobPersistenceException e) {
+            LOGGER.error("Cannot write the job ''{0}'' in the timer journal", jobKey, e);
+        }
+    }
+
+    /**
+     * Writes the current state of the given trigger in the journal. Triggers
+     * are only kept if their job is kept.
+     * @param triggerKey the key of the trigger
+     * @throws JobPersistenceException if the trigger cannot be written
+     */
+    private void journalTrigger(final TriggerKey triggerKey) throws JobPersistenceException {
+        if (this.journal == null || this.detaching) {
+            return;
+        }
+        OperableTrigger trigger = retrieveTrigger(triggerKey);
+        try {
+            if (trigger != null && this.journaledJobs.contains(trigger.getJobKey())) {
+                Byte state = Byte.valueOf(STATE_NORMAL);
+                if (getTriggerState(triggerKey) == TriggerState.PAUSED) {
+                    state = Byte.valueOf(STATE_PAUSED);
+                }
+                this.journal.putTrigger(triggerKey, serialize(trigger, state));
+                this.journaledTriggers.add(triggerKey);
+            } else if (this.journaledTriggers.remove(triggerKey)) {
+                this.journal.removeTrigger(triggerKey);
+            }
+        } catch (IOException e) {
+            throw new JobPersistenceException("Cannot write the trigger '" + triggerKey + "' in the timer journal.", e);
+        }
+    }
+
+    /**
+     * Writes the current state of the given trigger in the journal and logs
+     * the error if it fails.
+     * @param triggerKey the key of the trigger
+     */
+    private void journalTriggerQuietly(final TriggerKey triggerKey) {
+        try {
+            journalTrigger(triggerKey);
+        } catch (JobPersistenceException e) {
+            LOGGER.error("Cannot write the trigger ''{0}'' in the timer journal", triggerKey, e);
+        }
+    }
+
+    /**
+     * Reads the jobs and triggers of the journal. They are kept detached until
+     * the timer service of their bean is created. Records that cannot be read
+     * are left in the journal.
+     */
+    private void restore() {
+        int restoredJobs = 0;
+        for (Map.Entry<JobKey, byte[]> entry : this.journal.getJobs().entrySet()) {
+            JobDetail jobDetail = (JobDetail) deserialize(entry.getKey().toString(), entry.getValue(), 0);
+            if (jobDetail == null) {
+                continue;
+            }
+            this.detachedJobs.put(entry.getKey(), new DetachedJob(jobDetail));
+            this.journaledJobs.add(entry.getKey());
+            restoredJobs++;
+        }
+
+        int restoredTriggers = 0;
+        for (Map.Entry<TriggerKey, byte[]> entry : this.journal.getTriggers().entrySet()) {
+            byte[] data = entry.getValue();
+            OperableTrigger trigger = (OperableTrigger) deserialize(entry.getKey().toString(), data, 1);
+            if (trigger == null) {
+                continue;
+            }
+            DetachedJob detachedJob = this.detachedJobs.get(trigger.getJobKey());
+            if (detachedJob == null) {
+                LOGGER.error("Cannot restore the trigger ''{0}'', the job ''{1}'' is not found", entry.getKey(),
+                        trigger.getJobKey());
+                continue;
+            }
+            detachedJob.addTrigger(trigger, data[0] == STATE_PAUSED);
+            this.journaledTriggers.add(entry.getKey());
+            restoredTriggers++;
+        }
+
+        LOGGER.info("Restored ''{0}'' persistent timers (''{1}'' triggers) from ''{2}''", Integer.valueOf(restoredJobs),
+                Integer.valueOf(restoredTriggers), this.directory);
+    }
+
+    /**
+     * Serializes the given job or trigger.
+     * @param object the object to serialize
+     * @param state the state written before the object or null
+     * @return the bytes
+     * @throws IOException if the object cannot be serialized
+     */
+    private static byte[] serialize(final Object object, final Byte state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (state != null) {
+            bytes.write(state.byteValue());
+        }
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(object);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a serialized job or trigger.
+     * @param key the key of the object (for the errors)
+     * @param data the bytes
+     * @param offset the offset of the object in the bytes
+     * @return the object or null if it cannot be read
+     */
+    private Object deserialize(final String key, final byte[] data, final int offset) {
+        try {
+            ObjectInputStream in = new TimerJournalInputStream(new ByteArrayInputStream(data, offset, data.length - offset),
+                    this.classLoader);
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Cannot read ''{0}'' from the timer journal, it is kept in the journal", key, e);
+        } catch (ClassNotFoundException e) {
+            LOGGER.error("Cannot read ''{0}'' from the timer journal, it is kept in the journal", key, e);
+        }
+        return null;
+    }
+
+    /**
+     * @return the directory of the journal
+     */
+    public String getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Sets the directory of the journal.
+     * @param directory the directory
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the delay in ms between two fsync of the journal
+     */
+    public long getSyncInterval() {
+        return this.syncInterval;
+    }
+
+    /**
+     * Sets the delay in ms between two fsync of the journal (0 = fsync at each change).
+     * @param syncInterval the delay
+     */
+    public void setSyncInterval(final long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * @return the size of the journal after which a snapshot is done
+     */
+    public long getCompactionSize() {
+        return this.compactionSize;
+    }
+
+    /**
+     * Sets the size of the journal in bytes after which a snapshot is done (0 = never).
+     * @param compactionSize the size
+     */
+    public void setCompactionSize(final long compactionSize) {
+        this.compactionSize = compactionSize;
+    }
+
+    /**
+     * @return the delay in ms after which a snapshot is done
+     */
+    public long getSnapshotInterval() {
+        return this.snapshotInterval;
+    }
+
+    /**
+     * Sets the delay in ms after which a snapshot is done (0 = never).
+     * @param snapshotInterval the delay
+     */
+    public void setSnapshotInterval(final long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Job kept in the journal which is not scheduled.
+     */
+    private static final class DetachedJob {
+
+        /**
+         * The job.
+         */
+        private final JobDetail jobDetail;
+
+        /**
+         * Triggers of the job.
+         */
+        private final List<OperableTrigger> triggers = new ArrayList<OperableTrigger>();
+
+        /**
+         * Triggers that are paused.
+         */
+        private final Set<TriggerKey> pausedTriggers = new HashSet<TriggerKey>();
+
+        /**
+         * Builds a detached job.
+         * @param jobDetail the job
+         */
+        private DetachedJob(final JobDetail jobDetail) {
+            this.jobDetail = jobDetail;
+        }
+
+        /**
+         * Adds a trigger of the job.
+         * @param trigger the trigger
+         * @param paused true if the trigger is paused
+         */
+        private void addTrigger(final OperableTrigger trigger, final boolean paused) {
+            this.triggers.add(trigger);
+            if (paused) {
+                this.pausedTriggers.add(trigger.getKey());
+            }
+        }
+
+        /**
+         * @return the job
+         */
+        private JobDetail getJobDetail() {
+            return this.jobDetail;
+        }
+
+        /**
+         * @return the triggers of the job
+         */
+        private List<OperableTrigger> getTriggers() {
+            return this.triggers;
+        }
+
+        /**
+         * @param triggerKey the key of a trigger
+         * @return true if the trigger is paused
+         */
+        private boolean isPaused(final TriggerKey triggerKey) {
+            return this.pausedTriggers.contains(triggerKey);
+        }
+    }
+}
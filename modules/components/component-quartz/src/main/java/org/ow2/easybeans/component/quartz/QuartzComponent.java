@@ -75,6 +75,11 @@ public class QuartzComponent implements TimerComponent {
      */
     private SchedulerFactory schedulerFactory = null;
 
+    /**
+     * Listener removing the expired or deleted timers from their timer service.
+     */
+    private TimerServiceListener timerServiceListener = null;
+
     /**
      * Init method.<br/>
      * This method is called before the start method.
@@ -118,6 +123,15 @@ public class QuartzComponent implements TimerComponent {
             throw new EZBComponentException("Cannot get a scheduler from the factory", e);
         }
 
+        // Follow the end of the timers
+        this.timerServiceListener = new TimerServiceListener();
+        try {
+            this.scheduler.getListenerManager().addSchedulerListener(this.timerServiceListener);
+            this.scheduler.getListenerManager().addTriggerListener(this.timerServiceListener);
+        } catch (SchedulerException e) {
+            throw new EZBComponentException("Cannot add the listener of the timers", e);
+        }
+
         // Start the scheduler
         try {
             this.scheduler.start();
@@ -151,7 +165,10 @@ public class QuartzComponent implements TimerComponent {
      * @return an EJB timer service
      */
     public EZBTimerService getTimerService(final Factory<?, ?> factory) {
-        return new QuartzTimerService(factory, this.scheduler);
+        QuartzTimerService timerService = new QuartzTimerService(factory, this.scheduler, this.timerServiceListener);
+        // Persistent timers kept by the job store
+        timerService.attachTimers();
+        return timerService;
     }
 
     /**
@@ -34,7 +34,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.ejb.EJBException;
 import javax.ejb.ScheduleExpression;
@@ -58,6 +60,7 @@ import org.quartz.SchedulerException;
 import org.quartz.SimpleScheduleBuilder;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
+import org.quartz.TriggerKey;
 import org.quartz.impl.matchers.GroupMatcher;
 
 /**
@@ -97,6 +100,21 @@ public class QuartzTimerService implements EZBTimerService {
      */
     private long jobDetailId = 0;
 
+    /**
+     * Live timers of the factory, by the key of their job.
+     */
+    private Map<JobKey, EasyBeansTimer> timers = null;
+
+    /**
+     * Timers already scheduled (restored by the job store) have been added to the live timers ?
+     */
+    private volatile boolean timersLoaded = false;
+
+    /**
+     * Listener removing the expired or deleted timers from the live timers (optional).
+     */
+    private TimerServiceListener listener = null;
+
     /**
      * Build a new instance of the EJB Timer service for the given factory and
      * the given scheduler.
@@ -104,9 +122,26 @@ public class QuartzTimerService implements EZBTimerService {
      * @param scheduler the given scheduler
      */
     public QuartzTimerService(final Factory<?, ?> factory, final Scheduler scheduler) {
+        this(factory, scheduler, null);
+    }
+
+    /**
+     * Build a new instance of the EJB Timer service for the given factory and
+     * the given scheduler, followed by the given listener of the scheduler.
+     * @param factory the given factory
+     * @param scheduler the given scheduler
+     * @param listener the listener removing the expired timers (may be null)
+     */
+    public QuartzTimerService(final Factory<?, ?> factory, final Scheduler scheduler,
+            final TimerServiceListener listener) {
         this.factory = factory;
         this.scheduler = scheduler;
         this.triggerGroupName = factory.getId();
+        this.timers = new ConcurrentHashMap<JobKey, EasyBeansTimer>();
+        this.listener = listener;
+        if (listener != null) {
+            listener.addTimerService(this);
+        }
     }
 
     /**
@@ -549,6 +584,7 @@ public class QuartzTimerService implements EZBTimerService {
 
         // Build a new timer object
         EasyBeansTimer timer = new EasyBeansTimer(jobDetail, trigger, this.scheduler, this.factory);
+        timer.setTimerService(this);
         if (trigger instanceof EasyBeansScheduleTrigger) {
             ((EasyBeansScheduleTrigger) trigger).setEasyBeansTimer(timer);
         }
@@ -557,11 +593,15 @@ public class QuartzTimerService implements EZBTimerService {
         // Add it as a data
         beansJobDetailData.setTimer(timer);
 
+        // Index the timer before it may fire (and expire)
+        this.timers.put(jobDetail.getKey(), timer);
+
         // Schedule the job
         try {
             this.scheduler.scheduleJob(jobDetail, trigger);
         } catch (SchedulerException e) {
             LOGGER.error("Cannot schedule the given job ''{0}''.", jobDetail, e);
+            this.timers.remove(jobDetail.getKey());
             timer.setInvalid();
             return timer;
         }
@@ -592,8 +632,135 @@ public class QuartzTimerService implements EZBTimerService {
                             + "'.");
         }
 
-        Collection<Timer> timers = new ArrayList<Timer>();
+        // Return the list of the timers for this timer service.
+        return new ArrayList<Timer>(getTimersIndex().values());
+    }
+
+    /**
+     * Cancels all the timers of the bean.
+     * The jobs are removed from the scheduler in a single call.
+     * @throws EJBException If the jobs cannot be removed from the scheduler.
+     */
+    public void cancelTimers() throws EJBException {
+        Map<JobKey, EasyBeansTimer> liveTimers = getTimersIndex();
+        List<JobKey> jobKeys = new ArrayList<JobKey>(liveTimers.keySet());
+        if (jobKeys.isEmpty()) {
+            return;
+        }
+
+        // Jobs that have expired in the meantime are ignored by the scheduler
+        try {
+            this.scheduler.deleteJobs(jobKeys);
+        } catch (SchedulerException e) {
+            throw new EJBException("Cannot cancel the jobs of the group named '" + getJobDetailGroupName() + "'.", e);
+        }
+        invalidateTimers(jobKeys);
+    }
+
+    /**
+     * Unschedules all the timers of the bean when it is stopped. The persistent
+     * timers kept by a journal job store are not removed from the journal and
+     * are scheduled again when the bean is started again. Without such a store,
+     * the timers are cancelled.
+     * @throws EJBException If the jobs cannot be removed from the scheduler.
+     */
+    public void detachTimers() throws EJBException {
+        if (this.listener != null) {
+            this.listener.removeTimerService(this);
+        }
+        JournalJobStore jobStore = getJournalJobStore();
+        if (jobStore == null) {
+            cancelTimers();
+            return;
+        }
+
+        List<JobKey> jobKeys = new ArrayList<JobKey>(getTimersIndex().keySet());
+        if (jobKeys.isEmpty()) {
+            return;
+        }
+        jobStore.detachJobs(jobKeys);
+        invalidateTimers(jobKeys);
+    }
+
+    /**
+     * Schedules again the persistent timers of the bean kept by the journal
+     * job store (read at startup or detached when the bean was stopped).
+     * @throws EJBException If the name of the scheduler cannot be read.
+     */
+    protected void attachTimers() throws EJBException {
+        JournalJobStore jobStore = getJournalJobStore();
+        if (jobStore != null) {
+            int attached = jobStore.attachJobs(getJobDetailGroupName());
+            LOGGER.debug("''{0}'' persistent timers scheduled again for the group ''{1}''", Integer.valueOf(attached),
+                    getJobDetailGroupName());
+        }
+    }
 
+    /**
+     * Gets the journal job store of the scheduler.
+     * @return the job store or null if the scheduler doesn't use a journal job store
+     * @throws EJBException If the name of the scheduler cannot be read.
+     */
+    private JournalJobStore getJournalJobStore() throws EJBException {
+        try {
+            return JournalJobStore.getJobStore(this.scheduler.getSchedulerName());
+        } catch (SchedulerException e) {
+            throw new EJBException("Cannot get the name of the scheduler.", e);
+        }
+    }
+
+    /**
+     * Removes the given timers from the live timers and marks them as invalid.
+     * @param jobKeys the keys of the jobs of the timers
+     */
+    private void invalidateTimers(final List<JobKey> jobKeys) {
+        for (JobKey jobKey : jobKeys) {
+            EasyBeansTimer timer = this.timers.remove(jobKey);
+            if (timer != null) {
+                timer.setInvalid();
+            }
+        }
+    }
+
+    /**
+     * Gets the live timer associated to the given job.
+     * @param jobKey the key of the job
+     * @return the timer or null if there is no live timer for this job
+     */
+    protected EasyBeansTimer getTimer(final JobKey jobKey) {
+        return getTimersIndex().get(jobKey);
+    }
+
+    /**
+     * Removes a timer that has been cancelled or that has expired from the live timers.
+     * @param jobKey the key of the job of the timer
+     */
+    protected void removeTimer(final JobKey jobKey) {
+        this.timers.remove(jobKey);
+    }
+
+    /**
+     * Gets the live timers, the timers already scheduled when this service has
+     * been created (restored by the job store) are added on the first call.
+     * @return the live timers by the key of their job
+     */
+    private Map<JobKey, EasyBeansTimer> getTimersIndex() {
+        if (!this.timersLoaded) {
+            synchronized (this.timers) {
+                if (!this.timersLoaded) {
+                    loadTimers();
+                    this.timersLoaded = true;
+                }
+            }
+        }
+        return this.timers;
+    }
+
+    /**
+     * Adds the jobs of the group found in the scheduler to the live timers.
+     * @throws EJBException If the jobs cannot be read from the scheduler.
+     */
+    private void loadTimers() throws EJBException {
         // Get the list of job names for this group
         Set<JobKey> jobKeys = null;
         try {
@@ -605,8 +772,11 @@ public class QuartzTimerService implements EZBTimerService {
 
         // If there are jobs, get the detail and trigger
         if (jobKeys != null) {
-            // For each job key
+            // For each job key which is not yet known
             for (JobKey jobKey : jobKeys) {
+                if (this.timers.containsKey(jobKey)) {
+                    continue;
+                }
 
                 // Get detail
                 JobDetail jobDetail = null;
@@ -630,13 +800,17 @@ public class QuartzTimerService implements EZBTimerService {
                     throw new EJBException("Invalid numbers of triggers found for the job named '" +  jobKey + "'.");
                 }
 
-                // Build a timer object and return it
-                timers.add(new EasyBeansTimer(jobDetail, triggers.get(0), this.scheduler, this.factory));
+                // Job removed or expired in the meantime
+                if (jobDetail == null || triggers.isEmpty()) {
+                    continue;
+                }
+
+                // Build a timer object and index it
+                EasyBeansTimer timer = new EasyBeansTimer(jobDetail, triggers.get(0), this.scheduler, this.factory);
+                timer.setTimerService(this);
+                this.timers.put(jobKey, timer);
             }
         }
-
-        // Return the list of the timers for this timer service.
-        return timers;
     }
 
     /**
@@ -644,7 +818,16 @@ public class QuartzTimerService implements EZBTimerService {
      * @return a new trigger name
      */
     private synchronized String getTriggerName() {
-        return "triggerTimer" + (this.triggerId++);
+        String name = null;
+        try {
+            // Skip the names of the timers restored by a persistent job store
+            do {
+                name = "triggerTimer" + (this.triggerId++);
+            } while (this.scheduler.checkExists(TriggerKey.triggerKey(name, getTriggerGroupName())));
+        } catch (SchedulerException e) {
+            throw new EJBException("Cannot check the name of the trigger '" + name + "'.", e);
+        }
+        return name;
     }
 
     /**
@@ -652,7 +835,16 @@ public class QuartzTimerService implements EZBTimerService {
      * @return a new job detail name
      */
     private synchronized String getNewJobDetailName() {
-        return "jobDetail" + (this.jobDetailId++);
+        String name = null;
+        try {
+            // Skip the names of the timers restored by a persistent job store
+            do {
+                name = "jobDetail" + (this.jobDetailId++);
+            } while (this.scheduler.checkExists(JobKey.jobKey(name, getJobDetailGroupName())));
+        } catch (SchedulerException e) {
+            throw new EJBException("Cannot check the name of the job '" + name + "'.", e);
+        }
+        return name;
     }
 
     /**
@@ -667,7 +859,7 @@ public class QuartzTimerService implements EZBTimerService {
      * Get the group name for each job detail.
      * @return the group name
      */
-    private String getJobDetailGroupName() {
+    protected String getJobDetailGroupName() {
         return "jobDetailGroup" + this.factory.getClassName();
     }
 
@@ -28,7 +28,9 @@ package org.ow2.easybeans.component.quartz;
 import static org.ow2.easybeans.component.quartz.SchedulePatterns.LAST;
 import static org.ow2.easybeans.component.quartz.SchedulePatterns.PATTERN_NDAYS;
 
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Map;
@@ -54,33 +56,99 @@ public abstract class ScheduleValue {
 
 
     /**
-     * Translate string week day into its integer value.
+     * Translate string week day into its integer value (shared by all the values).
      */
-    private Map<String, Integer> weekDaysToInt = null;
+    private static final Map<String, Integer> WEEK_DAYS_TO_INT;
+
+    static {
+        Map<String, Integer> weekDays = new HashMap<String, Integer>();
+        weekDays.put("sun", Integer.valueOf(Calendar.SUNDAY));
+        weekDays.put("mon", Integer.valueOf(Calendar.MONDAY));
+        weekDays.put("tue", Integer.valueOf(Calendar.TUESDAY));
+        weekDays.put("wed", Integer.valueOf(Calendar.WEDNESDAY));
+        weekDays.put("thu", Integer.valueOf(Calendar.THURSDAY));
+        weekDays.put("fri", Integer.valueOf(Calendar.FRIDAY));
+        weekDays.put("sat", Integer.valueOf(Calendar.SATURDAY));
+        WEEK_DAYS_TO_INT = Collections.unmodifiableMap(weekDays);
+    }
 
     /**
      * The calendar used to extract values.
      */
     private Calendar calendar = null;
 
+    /**
+     * Precomputed values allowed by this schedule value, indexed by the value
+     * of the calendar field. It is null when the values depend on the
+     * calendar (last day of month, nth days, years, etc.) and have to be
+     * computed for each call.
+     */
+    private BitSet valueSet = null;
+
     /**
      * Build a new schedule value for the given calendar field.
      * @param calendarField the given calendar field.
      */
-    @SuppressWarnings("boxing")
     public ScheduleValue(final int calendarField) {
         this.calendarField = calendarField;
         this.calendar =  new GregorianCalendar();
+    }
+
+    /**
+     * Checks if the values of the given calendar field are the same for every
+     * date (second, minute, hour, month and day of week). Day of month depends
+     * on the month and year has no upper bound.
+     * @param calendarField the calendar field
+     * @return true if the range of the field never changes
+     */
+    protected static boolean isFixedRange(final int calendarField) {
+        switch (calendarField) {
+        case Calendar.SECOND:
+        case Calendar.MINUTE:
+        case Calendar.HOUR_OF_DAY:
+        case Calendar.MONTH:
+        case Calendar.DAY_OF_WEEK:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return the precomputed values allowed by this schedule value or null if
+     *         they are computed from the calendar at each call.
+     */
+    public BitSet getValueSet() {
+        return this.valueSet;
+    }
+
+    /**
+     * Sets the precomputed values allowed by this schedule value.
+     * @param valueSet the values (indexed by field value) or null
+     */
+    protected void setValueSet(final BitSet valueSet) {
+        this.valueSet = valueSet;
+    }
 
-        // Init the values
-        this.weekDaysToInt = new HashMap<String, Integer>();
-        this.weekDaysToInt.put("sun", Calendar.SUNDAY);
-        this.weekDaysToInt.put("mon", Calendar.MONDAY);
-        this.weekDaysToInt.put("tue", Calendar.TUESDAY);
-        this.weekDaysToInt.put("wed", Calendar.WEDNESDAY);
-        this.weekDaysToInt.put("thu", Calendar.THURSDAY);
-        this.weekDaysToInt.put("fri", Calendar.FRIDAY);
-        this.weekDaysToInt.put("sat", Calendar.SATURDAY);
+    /**
+     * Computes the next value by scanning the precomputed values. It is the
+     * smallest allowed value greater or equal to the current one, or the first
+     * allowed value with the increment flag when there is none.
+     * @param afterTimeCalendar the calendar to use in order to compute the next
+     *        available value
+     * @return the next value result for the given calendar
+     */
+    protected ValueResult getTimeAfterFromValueSet(final Calendar afterTimeCalendar) {
+        ValueResult valueResult = new ValueResult();
+        int foundValue = this.valueSet.nextSetBit(afterTimeCalendar.get(this.calendarField));
+        if (foundValue >= 0) {
+            valueResult.setResult(foundValue);
+        } else {
+            // use the next first available value
+            valueResult.setResult(this.valueSet.nextSetBit(0));
+            valueResult.setNeedsIncrement(true);
+        }
+        return valueResult;
     }
 
     /**
@@ -106,7 +174,7 @@ public abstract class ScheduleValue {
     @SuppressWarnings("boxing")
     protected Integer computeNDays(final String number, final String day, final Calendar calendar) {
 
-        int dayToGet = this.weekDaysToInt.get(day);
+        int dayToGet = WEEK_DAYS_TO_INT.get(day);
         Calendar newCalendar = (Calendar) calendar.clone();
 
         if (LAST.equals(number)) {
@@ -25,6 +25,7 @@
 
 package org.ow2.easybeans.component.quartz;
 
+import java.util.BitSet;
 import java.util.Calendar;
 
 /**
@@ -57,6 +58,12 @@ public class ScheduleValueAttribute extends ScheduleValue {
             }
         }
 
+        // Single value, used when this attribute is part of a list
+        if (isFixedRange(calendarField)) {
+            BitSet valueSet = new BitSet();
+            valueSet.set(this.value);
+            setValueSet(valueSet);
+        }
     }
 
     /**
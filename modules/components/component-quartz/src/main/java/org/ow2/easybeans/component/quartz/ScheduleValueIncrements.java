@@ -27,9 +27,8 @@ package org.ow2.easybeans.component.quartz;
 
 import static org.ow2.easybeans.component.quartz.SchedulePatterns.WILDCARD_CHARACTER;
 
+import java.util.BitSet;
 import java.util.Calendar;
-import java.util.NavigableSet;
-import java.util.TreeSet;
 
 /**
  * Defines an increments like '* / 5' or 10/5.
@@ -47,11 +46,6 @@ public class ScheduleValueIncrements extends ScheduleValue {
      */
     private int interval;
 
-    /**
-     * All possible values.
-     */
-    private NavigableSet<Integer> allValues = null;
-
     /**
      * Build a new value for the given start and the given interval for the given calendar field.
      * @param startingPoint start value
@@ -66,7 +60,6 @@ public class ScheduleValueIncrements extends ScheduleValue {
             this.startingPoint = Integer.parseInt(startingPoint);
         }
         this.interval = interval;
-        this.allValues = new TreeSet<Integer>();
 
         // initialize all possible values for the given increments
         init();
@@ -76,16 +69,17 @@ public class ScheduleValueIncrements extends ScheduleValue {
     /**
      * Initialize all possible values for the given increments.
      */
-    @SuppressWarnings("boxing")
     private void init() {
+        BitSet allValues = new BitSet();
         int current = this.startingPoint;
 
-        this.allValues.add(current);
+        allValues.set(current);
         current += this.interval;
         while (current < getCalendar().getMaximum(getCalendarField())) {
-            this.allValues.add(current);
+            allValues.set(current);
             current += this.interval;
         }
+        setValueSet(allValues);
     }
 
     /**
@@ -93,21 +87,8 @@ public class ScheduleValueIncrements extends ScheduleValue {
      * @return the next value result for the given calendar for the calendard field associated.
      */
     @Override
-    @SuppressWarnings("boxing")
     public ValueResult getTimeAfter(final Calendar afterTimeCalendar) {
-
-        ValueResult valueResult = new ValueResult();
-        int currentFieldValue = afterTimeCalendar.get(getCalendarField());
-
-        Integer foundValue = this.allValues.ceiling(currentFieldValue);
-        if (foundValue != null) {
-            valueResult.setResult(foundValue.intValue());
-        } else {
-            // use the next first available value
-            valueResult.setResult(this.allValues.first());
-            valueResult.setNeedsIncrement(true);
-        }
-        return valueResult;
+        return getTimeAfterFromValueSet(afterTimeCalendar);
     }
 
 
@@ -126,7 +107,7 @@ public class ScheduleValueIncrements extends ScheduleValue {
         sb.append(", calendarField=");
         sb.append(getCalendarField());
         sb.append(", allValues=");
-        sb.append(this.allValues);
+        sb.append(getValueSet());
         sb.append("]");
         return sb.toString();
     }
@@ -26,6 +26,7 @@
 package org.ow2.easybeans.component.quartz;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.List;
 import java.util.NavigableSet;
@@ -42,6 +43,12 @@ public class ScheduleValueList extends ScheduleValue {
      */
     private List<ScheduleValue> scheduleValues = null;
 
+    /**
+     * True while all the values of the list have precomputed values, the
+     * list is then the union of these values.
+     */
+    private boolean indexed = true;
+
     /**
      * Build a new value for the given calendar field.
      * @param calendarField the calendar field
@@ -64,6 +71,20 @@ public class ScheduleValueList extends ScheduleValue {
      */
     public void add(final ScheduleValue scheduleValue) {
         this.scheduleValues.add(scheduleValue);
+
+        // Merge the precomputed values of the given value
+        BitSet childValueSet = scheduleValue.getValueSet();
+        if (childValueSet == null) {
+            this.indexed = false;
+            setValueSet(null);
+        } else if (this.indexed) {
+            BitSet valueSet = getValueSet();
+            if (valueSet == null) {
+                valueSet = new BitSet();
+                setValueSet(valueSet);
+            }
+            valueSet.or(childValueSet);
+        }
     }
 
 
@@ -76,7 +97,9 @@ public class ScheduleValueList extends ScheduleValue {
     @Override
     @SuppressWarnings("boxing")
     public ValueResult getTimeAfter(final Calendar afterTimeCalendar) {
-
+        if (getValueSet() != null) {
+            return getTimeAfterFromValueSet(afterTimeCalendar);
+        }
 
         int currentFieldValue = afterTimeCalendar.get(getCalendarField());
 
@@ -28,6 +28,7 @@ package org.ow2.easybeans.component.quartz;
 import static org.ow2.easybeans.component.quartz.SchedulePatterns.LAST;
 import static org.ow2.easybeans.component.quartz.SchedulePatterns.WILDCARD_CHARACTER;
 
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.NavigableSet;
 import java.util.TreeSet;
@@ -60,6 +61,15 @@ public class ScheduleValueRange extends ScheduleValue {
         super(calendarField);
         this.left = left;
         this.right = right;
+
+        // Values of the range do not depend on the date, compute them once
+        if (isFixedRange(calendarField) && getNDays(left) == null && getNDays(right) == null) {
+            BitSet valueSet = new BitSet();
+            for (Integer value : getValues(getCalendar())) {
+                valueSet.set(value.intValue());
+            }
+            setValueSet(valueSet);
+        }
     }
 
     /**
@@ -158,6 +168,9 @@ public class ScheduleValueRange extends ScheduleValue {
     @Override
     @SuppressWarnings("boxing")
     public ValueResult getTimeAfter(final Calendar afterTimeCalendar) {
+        if (getValueSet() != null) {
+            return getTimeAfterFromValueSet(afterTimeCalendar);
+        }
 
         int currentFieldValue = afterTimeCalendar.get(getCalendarField());
         NavigableSet<Integer> allValues = getValues(afterTimeCalendar);
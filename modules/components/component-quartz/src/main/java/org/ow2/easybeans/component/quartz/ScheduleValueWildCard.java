@@ -25,6 +25,7 @@
 
 package org.ow2.easybeans.component.quartz;
 
+import java.util.BitSet;
 import java.util.Calendar;
 
 /**
@@ -40,6 +41,13 @@ public class ScheduleValueWildCard extends ScheduleValue {
      */
     public ScheduleValueWildCard(final int calendarField) {
         super(calendarField);
+
+        // All the values of the field
+        if (isFixedRange(calendarField)) {
+            BitSet valueSet = new BitSet();
+            valueSet.set(getCalendar().getMinimum(calendarField), getCalendar().getMaximum(calendarField) + 1);
+            setValueSet(valueSet);
+        }
     }
 
     /**
@@ -0,0 +1,797 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+import org.quartz.JobKey;
+import org.quartz.TriggerKey;
+import org.quartz.utils.Key;
+
+/**
+ * Append-only journal of the jobs and triggers of the persistent timers.<br/>
+ * Each change is a record (put or remove of a job or trigger) appended to the
+ * current journal file. Records are buffered and written with a single fsync
+ * every sync interval (or at each change if the interval is 0).<br/>
+ * When the journal is too big or too old, the last record of each job and
+ * trigger is written in a snapshot and the journal files covered by the
+ * snapshot are deleted. On start, the snapshot and the next journals are read
+ * again to rebuild the last state.
+ * @author Florent Benoit
+ */
+public class TimerJournal {
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog(TimerJournal.class);
+
+    /**
+     * Magic number at the beginning of the files.
+     */
+    private static final int MAGIC = 0x45424A54;
+
+    /**
+     * Version of the format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Marker written at the end of a complete snapshot.
+     */
+    private static final int END_OF_SNAPSHOT = -1;
+
+    /**
+     * Size of the header of a record (length and checksum).
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * Maximum size of a record, bigger lengths are corrupted records.
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Permissions of a new directory (only its owner can access it).
+     */
+    private static final Set<PosixFilePermission> OWNER_ONLY = EnumSet.of(PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+
+    /**
+     * Record storing a job.
+     */
+    private static final byte PUT_JOB = 1;
+
+    /**
+     * Record storing a trigger.
+     */
+    private static final byte PUT_TRIGGER = 2;
+
+    /**
+     * Record removing a job.
+     */
+    private static final byte REMOVE_JOB = 3;
+
+    /**
+     * Record removing a trigger.
+     */
+    private static final byte REMOVE_TRIGGER = 4;
+
+    /**
+     * Name of the snapshot file.
+     */
+    private static final String SNAPSHOT = "timers.snapshot";
+
+    /**
+     * Name of the snapshot being written.
+     */
+    private static final String SNAPSHOT_TMP = "timers.snapshot.tmp";
+
+    /**
+     * Prefix of the journal files (followed by the generation).
+     */
+    private static final String JOURNAL_PREFIX = "timers-";
+
+    /**
+     * Suffix of the journal files.
+     */
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    /**
+     * Directory containing the files.
+     */
+    private final File directory;
+
+    /**
+     * Delay in ms between two fsync of the journal (0 = fsync at each record).
+     */
+    private final long syncInterval;
+
+    /**
+     * Size of the journal in bytes after which a snapshot is done (0 = never).
+     */
+    private final long compactionSize;
+
+    /**
+     * Delay in ms after which a snapshot is done if the journal has changed (0 = never).
+     */
+    private final long snapshotInterval;
+
+    /**
+     * Last record of each job.
+     */
+    private final Map<JobKey, byte[]> jobs = new LinkedHashMap<JobKey, byte[]>();
+
+    /**
+     * Last record of each trigger.
+     */
+    private final Map<TriggerKey, byte[]> triggers = new LinkedHashMap<TriggerKey, byte[]>();
+
+    /**
+     * Records not yet written in the journal file.
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Generation of the current journal file.
+     */
+    private long generation = 0;
+
+    /**
+     * Channel of the current journal file.
+     */
+    private FileChannel channel = null;
+
+    /**
+     * Number of bytes appended to the current journal.
+     */
+    private long journalSize = 0;
+
+    /**
+     * Time of the last snapshot.
+     */
+    private long lastSnapshot = 0;
+
+    /**
+     * Thread writing the pending records.
+     */
+    private Thread syncThread = null;
+
+    /**
+     * Journal closed ?
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Builds a journal in the given directory.
+     * @param directory the directory containing the files
+     * @param syncInterval delay in ms between two fsync (0 = fsync at each record)
+     * @param compactionSize size in bytes of the journal that triggers a snapshot (0 = never)
+     * @param snapshotInterval delay in ms after which a snapshot is done (0 = never)
+     */
+    public TimerJournal(final File directory, final long syncInterval, final long compactionSize,
+            final long snapshotInterval) {
+        this.directory = directory;
+        this.syncInterval = syncInterval;
+        this.compactionSize = compactionSize;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Creates the directory of the journal or checks that an existing one
+     * can be trusted, as the records read from it are deserialized.
+     * @throws IOException if the directory cannot be created or is not owned
+     *         by the current user
+     */
+    private void checkDirectory() throws IOException {
+        Path path = this.directory.toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                if (posix) {
+                    Files.createDirectories(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createDirectories(path);
+                }
+            } catch (IOException e) {
+                throw new IOException("Cannot create the directory '" + this.directory + "'.", e);
+            }
+        }
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("The timer journal '" + this.directory + "' is not a directory.");
+        }
+
+        String owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName();
+        String user = System.getProperty("user.name");
+        if (!owner.equals(user)) {
+            throw new IOException("The timer journal '" + this.directory + "' belongs to '" + owner + "' and not to '"
+                    + user + "'.");
+        }
+        if (posix) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                    || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException("The timer journal '" + this.directory + "' can be written by other users ("
+                        + PosixFilePermissions.toString(permissions) + ").");
+            }
+        }
+    }
+
+    /**
+     * Reads the existing files and starts a new journal.<br/>
+     * A missing directory is created with access for its owner only, an
+     * existing one is only used if it belongs to the current user and cannot
+     * be written by other users (see {@link #checkDirectory()}).
+     * @throws IOException if the files cannot be read or written
+     */
+    public void open() throws IOException {
+        checkDirectory();
+
+        synchronized (this) {
+            long lastGeneration = recover();
+
+            // Start from a clean snapshot (it also drops any truncated record)
+            this.generation = lastGeneration;
+        }
+        snapshot();
+
+        if (this.syncInterval > 0) {
+            this.syncThread = new Thread(new Runnable() {
+                public void run() {
+                    syncLoop();
+                }
+            }, "EasyBeans-Timer-Journal");
+            this.syncThread.setDaemon(true);
+            this.syncThread.start();
+        }
+    }
+
+    /**
+     * @return a copy of the last record of each job
+     */
+    public synchronized Map<JobKey, byte[]> getJobs() {
+        return new LinkedHashMap<JobKey, byte[]>(this.jobs);
+    }
+
+    /**
+     * @return a copy of the last record of each trigger
+     */
+    public synchronized Map<TriggerKey, byte[]> getTriggers() {
+        return new LinkedHashMap<TriggerKey, byte[]>(this.triggers);
+    }
+
+    /**
+     * Stores the given job.
+     * @param jobKey the key of the job
+     * @param data the serialized job
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void putJob(final JobKey jobKey, final byte[] data) throws IOException {
+        this.jobs.put(jobKey, data);
+        append(PUT_JOB, jobKey, data);
+    }
+
+    /**
+     * Stores the given trigger.
+     * @param triggerKey the key of the trigger
+     * @param data the serialized trigger
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void putTrigger(final TriggerKey triggerKey, final byte[] data) throws IOException {
+        this.triggers.put(triggerKey, data);
+        append(PUT_TRIGGER, triggerKey, data);
+    }
+
+    /**
+     * Removes the given job.
+     * @param jobKey the key of the job
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void removeJob(final JobKey jobKey) throws IOException {
+        if (this.jobs.remove(jobKey) != null) {
+            append(REMOVE_JOB, jobKey, null);
+        }
+    }
+
+    /**
+     * Removes the given trigger.
+     * @param triggerKey the key of the trigger
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void removeTrigger(final TriggerKey triggerKey) throws IOException {
+        if (this.triggers.remove(triggerKey) != null) {
+            append(REMOVE_TRIGGER, triggerKey, null);
+        }
+    }
+
+    /**
+     * Writes the pending records and a last snapshot, then closes the files.
+     * @throws IOException if the files cannot be written
+     */
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.syncThread != null) {
+            synchronized (this) {
+                notifyAll();
+            }
+            try {
+                this.syncThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Next start only needs to read the snapshot
+        snapshot();
+        synchronized (this) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Appends a record to the pending records.
+     * @param type the type of the record
+     * @param key the key of the job or trigger
+     * @param data the serialized object or null for removals
+     * @throws IOException if the record cannot be written
+     */
+    private void append(final byte type, final Key<?> key, final byte[] data) throws IOException {
+        if (this.channel == null) {
+            throw new IOException("The timer journal '" + this.directory + "' is closed.");
+        }
+        int size = writeRecord(this.pending, type, key, data);
+        this.journalSize += size;
+
+        // No sync thread, write and sync now
+        if (this.syncThread == null) {
+            write(this.channel, this.pending);
+            this.pending.reset();
+            if (needsSnapshot()) {
+                snapshot();
+            }
+        }
+    }
+
+    /**
+     * Loop of the thread writing the pending records.
+     */
+    private void syncLoop() {
+        while (!this.closed) {
+            synchronized (this) {
+                try {
+                    wait(this.syncInterval);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                sync();
+                if (needsSnapshot()) {
+                    snapshot();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Cannot write the timer journal in ''{0}''", this.directory, e);
+            }
+        }
+    }
+
+    /**
+     * Writes and syncs the pending records. The appenders are only blocked
+     * while the buffers are swapped.
+     * @throws IOException if the records cannot be written
+     */
+    private void sync() throws IOException {
+        ByteArrayOutputStream toWrite = null;
+        FileChannel fileChannel = null;
+        synchronized (this) {
+            if (this.pending.size() == 0) {
+                return;
+            }
+            toWrite = this.pending;
+            fileChannel = this.channel;
+            this.pending = new ByteArrayOutputStream(toWrite.size());
+        }
+        write(fileChannel, toWrite);
+    }
+
+    /**
+     * Writes the given records in the given channel and syncs it.
+     * @param fileChannel the channel of the journal
+     * @param records the records to write
+     * @throws IOException if the records cannot be written
+     */
+    private static void write(final FileChannel fileChannel, final ByteArrayOutputStream records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+        fileChannel.force(false);
+    }
+
+    /**
+     * @return true if the journal needs to be compacted in a snapshot
+     */
+    private synchronized boolean needsSnapshot() {
+        if (this.compactionSize > 0 && this.journalSize >= this.compactionSize) {
+            return true;
+        }
+        return this.snapshotInterval > 0 && this.journalSize > 0
+                && System.currentTimeMillis() - this.lastSnapshot >= this.snapshotInterval;
+    }
+
+    /**
+     * Starts a new journal file and writes the state covered by the previous
+     * journals in a snapshot. Journals covered by the snapshot are then
+     * deleted.
+     * @throws IOException if the files cannot be written
+     */
+    private void snapshot() throws IOException {
+        Map<JobKey, byte[]> jobsCopy = null;
+        Map<TriggerKey, byte[]> triggersCopy = null;
+        long snapshotGeneration = 0;
+
+        synchronized (this) {
+            // Previous journal is complete on the disk
+            if (this.channel != null) {
+                write(this.channel, this.pending);
+                this.pending.reset();
+                this.channel.close();
+            }
+            jobsCopy = new LinkedHashMap<JobKey, byte[]>(this.jobs);
+            triggersCopy = new LinkedHashMap<TriggerKey, byte[]>(this.triggers);
+            snapshotGeneration = this.generation;
+
+            // Next records go in a new journal
+            this.generation++;
+            this.channel = openJournal(this.generation);
+            this.journalSize = 0;
+            this.lastSnapshot = System.currentTimeMillis();
+        }
+
+        writeSnapshot(snapshotGeneration, jobsCopy, triggersCopy);
+
+        // Delete the journals that are now in the snapshot
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long fileGeneration = getGeneration(file);
+                if (fileGeneration >= 0 && fileGeneration <= snapshotGeneration && !file.delete()) {
+                    LOGGER.warn("Cannot delete the journal ''{0}''", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the journal file of the given generation.
+     * @param journalGeneration the generation
+     * @return the channel used to append the records
+     * @throws IOException if the file cannot be created
+     */
+    private FileChannel openJournal(final long journalGeneration) throws IOException {
+        File file = new File(this.directory, JOURNAL_PREFIX + journalGeneration + JOURNAL_SUFFIX);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0);
+        FileChannel fileChannel = randomAccessFile.getChannel();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(journalGeneration);
+        out.flush();
+        write(fileChannel, header);
+        return fileChannel;
+    }
+
+    /**
+     * Writes the snapshot of the given generation. The snapshot is written in
+     * a temporary file which is then renamed.
+     * @param snapshotGeneration the last generation of journal covered by the snapshot
+     * @param jobsCopy the records of the jobs
+     * @param triggersCopy the records of the triggers
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(final long snapshotGeneration, final Map<JobKey, byte[]> jobsCopy,
+            final Map<TriggerKey, byte[]> triggersCopy) throws IOException {
+        File tmpFile = new File(this.directory, SNAPSHOT_TMP);
+        FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotGeneration);
+            for (Map.Entry<JobKey, byte[]> entry : jobsCopy.entrySet()) {
+                writeRecord(out, PUT_JOB, entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<TriggerKey, byte[]> entry : triggersCopy.entrySet()) {
+                writeRecord(out, PUT_TRIGGER, entry.getKey(), entry.getValue());
+            }
+            out.writeInt(END_OF_SNAPSHOT);
+            out.flush();
+            fileOutputStream.getFD().sync();
+        } finally {
+            fileOutputStream.close();
+        }
+
+        File snapshotFile = new File(this.directory, SNAPSHOT);
+        if (!tmpFile.renameTo(snapshotFile)) {
+            // Some platforms don't replace existing files (the temporary file is read if the snapshot is missing)
+            if (!snapshotFile.delete() || !tmpFile.renameTo(snapshotFile)) {
+                throw new IOException("Cannot rename the snapshot '" + tmpFile + "' to '" + snapshotFile + "'.");
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot and the journals written after it.
+     * @return the last generation found
+     * @throws IOException if the files cannot be read
+     */
+    private long recover() throws IOException {
+        this.jobs.clear();
+        this.triggers.clear();
+
+        // Snapshot (or the temporary one if the rename has been interrupted)
+        long snapshotGeneration = readSnapshot(new File(this.directory, SNAPSHOT));
+        if (snapshotGeneration < 0) {
+            snapshotGeneration = readSnapshot(new File(this.directory, SNAPSHOT_TMP));
+        }
+
+        // Then the next journals, in order
+        File[] files = this.directory.listFiles();
+        long[] generations = new long[files == null ? 0 : files.length];
+        int count = 0;
+        for (int i = 0; i < generations.length; i++) {
+            long fileGeneration = getGeneration(files[i]);
+            if (fileGeneration > snapshotGeneration) {
+                generations[count++] = fileGeneration;
+            }
+        }
+        Arrays.sort(generations, 0, count);
+
+        long lastGeneration = Math.max(snapshotGeneration, 0);
+        for (int i = 0; i < count; i++) {
+            readJournal(new File(this.directory, JOURNAL_PREFIX + generations[i] + JOURNAL_SUFFIX));
+            lastGeneration = generations[i];
+        }
+
+        LOGGER.debug("Read ''{0}'' jobs and ''{1}'' triggers from the timer journal ''{2}''", Integer.valueOf(this.jobs
+                .size()), Integer.valueOf(this.triggers.size()), this.directory);
+        return lastGeneration;
+    }
+
+    /**
+     * Reads the given snapshot.
+     * @param file the snapshot file
+     * @return the generation of the snapshot or -1 if there is no complete snapshot
+     * @throws IOException if the file cannot be read
+     */
+    private long readSnapshot(final File file) throws IOException {
+        if (!file.isFile()) {
+            return -1;
+        }
+        Map<JobKey, byte[]> snapshotJobs = new LinkedHashMap<JobKey, byte[]>();
+        Map<TriggerKey, byte[]> snapshotTriggers = new LinkedHashMap<TriggerKey, byte[]>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            long snapshotGeneration = readHeader(in, file);
+            while (true) {
+                int length = in.readInt();
+                if (length == END_OF_SNAPSHOT) {
+                    break;
+                }
+                if (!readRecord(in, length, snapshotJobs, snapshotTriggers)) {
+                    throw new EOFException();
+                }
+            }
+            this.jobs.putAll(snapshotJobs);
+            this.triggers.putAll(snapshotTriggers);
+            return snapshotGeneration;
+        } catch (EOFException e) {
+            LOGGER.warn("The snapshot ''{0}'' is incomplete, it is ignored", file);
+            return -1;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the records of the given journal. Reading stops at the first
+     * incomplete or corrupted record (it was being written).
+     * @param file the journal file
+     * @throws IOException if the file cannot be read
+     */
+    private void readJournal(final File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readHeader(in, file);
+            while (true) {
+                int length = in.readInt();
+                if (!readRecord(in, length, this.jobs, this.triggers)) {
+                    LOGGER.warn("Ignoring the end of the journal ''{0}'' (incomplete record)", file);
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            // End of the journal
+            return;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the header of a file.
+     * @param in the stream of the file
+     * @param file the file
+     * @return the generation of the file
+     * @throws IOException if the header is not valid
+     */
+    private static long readHeader(final DataInputStream in, final File file) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("The file '" + file + "' is not a timer journal with the version '" + VERSION + "'.");
+        }
+        return in.readLong();
+    }
+
+    /**
+     * Reads a record and applies it on the given maps.
+     * @param in the stream of the file
+     * @param length the length of the record
+     * @param jobRecords the records of the jobs
+     * @param triggerRecords the records of the triggers
+     * @return false if the record is corrupted
+     * @throws IOException if the record cannot be read
+     */
+    private static boolean readRecord(final DataInputStream in, final int length, final Map<JobKey, byte[]> jobRecords,
+            final Map<TriggerKey, byte[]> triggerRecords) throws IOException {
+        if (length <= 0 || length > MAX_RECORD_SIZE) {
+            return false;
+        }
+        int checksum = in.readInt();
+        byte[] record = new byte[length];
+        in.readFully(record);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+
+        DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = recordIn.readByte();
+        String group = recordIn.readUTF();
+        String name = recordIn.readUTF();
+        byte[] data = new byte[recordIn.available()];
+        recordIn.readFully(data);
+
+        switch (type) {
+        case PUT_JOB:
+            jobRecords.put(new JobKey(name, group), data);
+            break;
+        case PUT_TRIGGER:
+            triggerRecords.put(new TriggerKey(name, group), data);
+            break;
+        case REMOVE_JOB:
+            jobRecords.remove(new JobKey(name, group));
+            break;
+        case REMOVE_TRIGGER:
+            triggerRecords.remove(new TriggerKey(name, group));
+            break;
+        default:
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a record: length, checksum, type, key and data.
+     * @param outputStream the stream to write to
+     * @param type the type of the record
+     * @param key the key of the job or trigger
+     * @param data the serialized object or null
+     * @return the number of bytes written
+     * @throws IOException if the record cannot be written
+     */
+    private static int writeRecord(final OutputStream outputStream, final byte type, final Key<?> key,
+            final byte[] data) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(type);
+        out.writeUTF(key.getGroup());
+        out.writeUTF(key.getName());
+        if (data != null) {
+            out.write(data);
+        }
+        out.flush();
+        byte[] bytes = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        DataOutputStream header = new DataOutputStream(outputStream);
+        header.writeInt(bytes.length);
+        header.writeInt((int) crc.getValue());
+        header.write(bytes);
+        header.flush();
+        return RECORD_HEADER_SIZE + bytes.length;
+    }
+
+    /**
+     * Gets the generation of a journal file.
+     * @param file the file
+     * @return the generation or -1 if it's not a journal file
+     */
+    private static long getGeneration(final File file) {
+        String name = file.getName();
+        if (!name.startsWith(JOURNAL_PREFIX) || !name.endsWith(JOURNAL_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the directory of the journal
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stream used to read the jobs and triggers stored in the timer journal.<br/>
+ * Only the classes a job or a trigger is made of can be read: the EasyBeans
+ * jobs and triggers, the Quartz jobs and triggers and the JDK classes of their
+ * fields. The info of a timer is kept serialized in its job and is read with
+ * the classloader of its bean (see {@link EasyBeansJobDetailData#getInfo()}).
+ * @author Florent Benoit
+ */
+public class TimerJournalInputStream extends TimerObjectInputStream {
+
+    /**
+     * Packages whose classes (but not the classes of their sub packages) can
+     * be read.
+     */
+    private static final List<String> ALLOWED_PACKAGES = Arrays.asList(
+            "org.ow2.easybeans.component.quartz",
+            "org.quartz",
+            "org.quartz.impl",
+            "org.quartz.impl.triggers",
+            "org.quartz.utils",
+            "java.lang",
+            "java.util");
+
+    /**
+     * Classes of other packages which can be read.
+     */
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+            "javax.ejb.ScheduleExpression",
+            // Time zone of the calendars and cron triggers
+            "sun.util.calendar.ZoneInfo"));
+
+    /**
+     * Builds a new stream.
+     * @param in the stream to read from
+     * @param classLoader the classloader used to load the classes
+     * @throws IOException if the stream cannot be built
+     */
+    public TimerJournalInputStream(final InputStream in, final ClassLoader classLoader) throws IOException {
+        super(in, classLoader);
+    }
+
+    /**
+     * Loads the class of a serialized object if it is allowed.
+     * @param desc the description of the class
+     * @return the class
+     * @throws IOException if the class is not allowed
+     * @throws ClassNotFoundException if the class is not found
+     */
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        if (!isAllowed(desc.getName())) {
+            throw new InvalidClassException(desc.getName(), "Class is not allowed in the timer journal");
+        }
+        return super.resolveClass(desc);
+    }
+
+    /**
+     * Proxies are never read from the journal.
+     * @param interfaces the names of the interfaces of the proxy
+     * @return nothing
+     * @throws IOException as proxies are not allowed
+     */
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+        throw new InvalidClassException("Proxy", "Proxies are not allowed in the timer journal");
+    }
+
+    /**
+     * Checks if the given class can be read.
+     * @param className the name of the class (may be an array)
+     * @return true if the class is allowed
+     */
+    protected static boolean isAllowed(final String className) {
+        String name = className;
+        if (name.startsWith("[")) {
+            int index = name.lastIndexOf('[') + 1;
+            if (name.charAt(index) != 'L') {
+                // array of primitives
+                return true;
+            }
+            name = name.substring(index + 1, name.length() - 1);
+        }
+        if (ALLOWED_CLASSES.contains(name)) {
+            return true;
+        }
+        int index = name.lastIndexOf('.');
+        return index > 0 && ALLOWED_PACKAGES.contains(name.substring(0, index));
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Proxy;
+
+/**
+ * Stream used to read the serialized timer data (jobs, triggers or info)
+ * with a given classloader.
+ * @author Florent Benoit
+ */
+public class TimerObjectInputStream extends ObjectInputStream {
+
+    /**
+     * Classloader used to load the classes.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * Builds a new stream.
+     * @param in the stream to read from
+     * @param classLoader the classloader used to load the classes
+     * @throws IOException if the stream cannot be built
+     */
+    public TimerObjectInputStream(final InputStream in, final ClassLoader classLoader) throws IOException {
+        super(in);
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Loads the class of a serialized object with the given classloader.
+     * @param desc the description of the class
+     * @return the class
+     * @throws IOException if the class cannot be resolved
+     * @throws ClassNotFoundException if the class is not found
+     */
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        if (this.classLoader != null) {
+            try {
+                return Class.forName(desc.getName(), false, this.classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+        return super.resolveClass(desc);
+    }
+
+    /**
+     * Builds the proxy class of a serialized proxy with the given classloader.
+     * @param interfaces the names of the interfaces of the proxy
+     * @return the proxy class
+     * @throws IOException if the class cannot be resolved
+     * @throws ClassNotFoundException if an interface is not found
+     */
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
+        if (this.classLoader == null) {
+            return super.resolveProxyClass(interfaces);
+        }
+        Class<?>[] classes = new Class<?>[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            classes[i] = Class.forName(interfaces[i], false, this.classLoader);
+        }
+        return Proxy.getProxyClass(this.classLoader, classes);
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+
+package org.ow2.easybeans.component.quartz;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.TriggerListener;
+import org.quartz.listeners.SchedulerListenerSupport;
+
+/**
+ * Listener of the scheduler removing the timers from the live timers of their
+ * timer service once their job is gone: the last timeout has been delivered,
+ * the trigger will never fire again (after a misfire for example) or the job
+ * has been deleted from the scheduler.
+ * @author Florent Benoit
+ */
+public class TimerServiceListener extends SchedulerListenerSupport implements TriggerListener {
+
+    /**
+     * Name of the listener.
+     */
+    public static final String NAME = "EasyBeans-TimerServices";
+
+    /**
+     * Timer services by the group name of their jobs.
+     */
+    private final ConcurrentMap<String, QuartzTimerService> timerServices =
+            new ConcurrentHashMap<String, QuartzTimerService>();
+
+    /**
+     * Adds a timer service whose timers are followed.
+     * @param timerService the timer service
+     */
+    public void addTimerService(final QuartzTimerService timerService) {
+        this.timerServices.put(timerService.getJobDetailGroupName(), timerService);
+    }
+
+    /**
+     * Removes a timer service (its bean is stopped).
+     * @param timerService the timer service
+     */
+    public void removeTimerService(final QuartzTimerService timerService) {
+        this.timerServices.remove(timerService.getJobDetailGroupName(), timerService);
+    }
+
+    /**
+     * Removes the timer of the given job from the live timers of its timer service.
+     * @param jobKey the key of the job
+     */
+    protected void removeTimer(final JobKey jobKey) {
+        QuartzTimerService timerService = this.timerServices.get(jobKey.getGroup());
+        if (timerService != null) {
+            timerService.removeTimer(jobKey);
+        }
+    }
+
+    /**
+     * The job has been deleted from the scheduler.
+     * @param jobKey the key of the job
+     */
+    @Override
+    public void jobDeleted(final JobKey jobKey) {
+        removeTimer(jobKey);
+    }
+
+    /**
+     * The trigger will never fire again.
+     * @param trigger the trigger
+     */
+    @Override
+    public void triggerFinalized(final Trigger trigger) {
+        removeTimer(trigger.getJobKey());
+    }
+
+    /**
+     * @return the name of the listener.
+     */
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Nothing to do when the trigger fires.
+     * @param trigger the trigger
+     * @param context the context of the job
+     */
+    public void triggerFired(final Trigger trigger, final JobExecutionContext context) {
+    }
+
+    /**
+     * Timeouts are never vetoed.
+     * @param trigger the trigger
+     * @param context the context of the job
+     * @return false
+     */
+    public boolean vetoJobExecution(final Trigger trigger, final JobExecutionContext context) {
+        return false;
+    }
+
+    /**
+     * Nothing to do on a misfire (see {@link #triggerFinalized(Trigger)}).
+     * @param trigger the trigger
+     */
+    public void triggerMisfired(final Trigger trigger) {
+    }
+
+    /**
+     * Removes the timer once its last timeout has been delivered (even if the
+     * job has failed), or if its trigger is deleted.
+     * @param trigger the trigger
+     * @param context the context of the job
+     * @param triggerInstructionCode the instruction for the trigger
+     */
+    public void triggerComplete(final Trigger trigger, final JobExecutionContext context,
+            final CompletedExecutionInstruction triggerInstructionCode) {
+        if (trigger.getNextFireTime() == null || triggerInstructionCode == CompletedExecutionInstruction.DELETE_TRIGGER) {
+            removeTimer(trigger.getJobKey());
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+
+import org.ow2.easybeans.api.EZBContainer;
+import org.ow2.easybeans.api.EZBServer;
+import org.ow2.easybeans.api.EZBTimerService;
+import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.component.api.EZBComponentException;
+import org.ow2.easybeans.component.util.Property;
+import org.ow2.easybeans.container.JContainer3;
+import org.ow2.easybeans.container.session.stateless.StatelessSessionFactory;
+import org.ow2.easybeans.server.Embedded;
+import org.ow2.util.archive.api.IArchive;
+import org.ow2.util.archive.impl.MemoryArchive;
+import org.ow2.util.ee.deploy.api.deployable.IDeployable;
+import org.ow2.util.ee.deploy.impl.helper.DeployableHelper;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the job store keeping the persistent timers in a journal.
+ * @author Florent Benoit
+ */
+public class TestJournalJobStore {
+
+    /**
+     * Delay before the timeout of the timers.
+     */
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+
+    /**
+     * Directory of the journal.
+     */
+    private File directory = null;
+
+    /**
+     * Factory of the timers.
+     */
+    private StatelessSessionFactory factory = null;
+
+    /**
+     * Builds the factory of the timers.
+     */
+    @BeforeClass
+    protected void init() throws Exception {
+        this.directory = new File(System.getProperty("java.io.tmpdir") + File.separator + System.getProperty("user.name")
+                + File.separator + "easybeans-journal-job-store-" + System.nanoTime());
+        Assert.assertTrue(this.directory.mkdirs());
+
+        List<String> classes = new ArrayList<String>();
+        classes.add(DummyStateless.class.getName());
+        IArchive inMemoryArchive = new MemoryArchive(TestJournalJobStore.class.getClassLoader(), classes);
+
+        IDeployable<?> deployable = DeployableHelper.getDeployable(inMemoryArchive);
+
+        EZBServer easybeans = new Embedded();
+        EZBContainer container = easybeans.createContainer(deployable);
+
+        container.setClassLoader(TestJournalJobStore.class.getClassLoader());
+        this.factory = new StatelessSessionFactory(DummyStateless.class.getName(), container);
+
+        Field factoriesField = JContainer3.class.getDeclaredField("factories");
+        factoriesField.setAccessible(true);
+        Map<String, Factory<?, ?>> factories = (Map<String, Factory<?, ?>>) factoriesField.get(container);
+        factories.put(this.factory.getClassName(), this.factory);
+    }
+
+    /**
+     * Persistent timers are kept when the factory and the scheduler are
+     * stopped, and removed from the journal once cancelled.
+     */
+    @Test
+    public void testRestart() throws EZBComponentException {
+        QuartzComponent quartzComponent = startComponent();
+        EZBTimerService timerService = quartzComponent.getTimerService(this.factory);
+        timerService.createSingleActionTimer(ONE_HOUR, new TimerConfig("persistent", true));
+        timerService.createSingleActionTimer(ONE_HOUR, new TimerConfig("transient", false));
+        Assert.assertEquals(timerService.getTimers().size(), 2);
+
+        // Factory stopped and then the server
+        timerService.detachTimers();
+        Assert.assertEquals(timerService.getTimers().size(), 0);
+        quartzComponent.stop();
+
+        quartzComponent = startComponent();
+        timerService = quartzComponent.getTimerService(this.factory);
+        Collection<Timer> timers = timerService.getTimers();
+        Assert.assertEquals(timers.size(), 1);
+        Timer timer = timers.iterator().next();
+        Assert.assertEquals(timer.getInfo(), "persistent");
+        Assert.assertTrue(timer.isPersistent());
+
+        // Stopped again without restarting the scheduler
+        timerService.detachTimers();
+        timerService = quartzComponent.getTimerService(this.factory);
+        timers = timerService.getTimers();
+        Assert.assertEquals(timers.size(), 1);
+
+        // Cancelled, not restored anymore
+        timers.iterator().next().cancel();
+        quartzComponent.stop();
+
+        quartzComponent = startComponent();
+        timerService = quartzComponent.getTimerService(this.factory);
+        Assert.assertEquals(timerService.getTimers().size(), 0);
+        quartzComponent.stop();
+    }
+
+    /**
+     * Starts a scheduler using the journal job store.
+     * @return the started component
+     */
+    private QuartzComponent startComponent() throws EZBComponentException {
+        QuartzComponent quartzComponent = new QuartzComponent();
+
+        List<Property> properties = new ArrayList<Property>();
+        properties.add(newProperty("org.quartz.scheduler.instanceName", "EasyBeansJournal"));
+        properties.add(newProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool"));
+        properties.add(newProperty("org.quartz.threadPool.threadCount", "1"));
+        properties.add(newProperty("org.quartz.jobStore.class", JournalJobStore.class.getName()));
+        properties.add(newProperty("org.quartz.jobStore.directory", this.directory.getPath()));
+        properties.add(newProperty("org.quartz.jobStore.syncInterval", "0"));
+
+        quartzComponent.setProperties(properties);
+        quartzComponent.init();
+        quartzComponent.start();
+        return quartzComponent;
+    }
+
+    /**
+     * Builds a property of the component.
+     * @param name the name of the property
+     * @param value the value of the property
+     * @return the property
+     */
+    private static Property newProperty(final String name, final String value) {
+        Property property = new Property();
+        property.setName(name);
+        property.setValue(value);
+        return property;
+    }
+}
@@ -58,6 +58,7 @@ import org.ow2.util.ee.deploy.api.deployable.IDeployable;
 import org.ow2.util.ee.deploy.api.helper.DeployableHelperException;
 import org.ow2.util.ee.deploy.impl.helper.DeployableHelper;
 import org.ow2.util.marshalling.Serialization;
+import org.quartz.SchedulerException;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -398,6 +399,52 @@ public class TestQuartzTimerService {
     }
 
 
+    /**
+     * A cancelled timer is no more returned by getTimers().
+     */
+    @Test
+    public void testCancelledTimer() {
+        TimerConfig timerConfig = new TimerConfig();
+        timerConfig.setInfo("testCancelledTimer");
+        Timer timer = this.timerService.createSingleActionTimer(TWO_MINUTES, timerConfig);
+        Assert.assertTrue(this.timerService.getTimers().contains(timer));
+
+        timer.cancel();
+        Assert.assertFalse(this.timerService.getTimers().contains(timer));
+    }
+
+    /**
+     * An expired timer is no more returned by getTimers().
+     */
+    @Test
+    public void testExpiredTimer() throws InterruptedException {
+        TimerConfig timerConfig = new TimerConfig();
+        timerConfig.setInfo("testExpiredTimer");
+        Timer timer = this.timerService.createSingleActionTimer(100L, timerConfig);
+
+        // Wait for the timeout
+        long deadline = System.currentTimeMillis() + 10 * MILLIS;
+        while (this.timerService.getTimers().contains(timer) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+        Assert.assertFalse(this.timerService.getTimers().contains(timer));
+    }
+
+    /**
+     * A timer whose job is deleted from the scheduler is no more returned by getTimers().
+     */
+    @Test
+    public void testDeletedJob() throws SchedulerException {
+        TimerConfig timerConfig = new TimerConfig();
+        timerConfig.setInfo("testDeletedJob");
+        EasyBeansTimer timer = (EasyBeansTimer) this.timerService.createSingleActionTimer(TWO_MINUTES, timerConfig);
+        Assert.assertTrue(this.timerService.getTimers().contains(timer));
+
+        ((QuartzTimerService) this.timerService).getScheduler().deleteJob(timer.getTrigger().getJobKey());
+        Assert.assertFalse(this.timerService.getTimers().contains(timer));
+    }
+
+
     @Test
     public void testTimerHandle() throws IOException, ClassNotFoundException {
 
@@ -25,6 +25,8 @@
 
 package org.ow2.easybeans.component.quartz;
 
+import java.util.Calendar;
+
 import javax.ejb.ScheduleExpression;
 
 import org.testng.Assert;
@@ -77,4 +79,29 @@ public class TestScheduleExpressionParser {
     }
 
 
+    /**
+     * Check the values precomputed for the fields not depending on the date.
+     */
+    @Test
+    public void testValueSet() {
+        ScheduleValue minutes = this.scheduleExpressionParser.getScheduleValue("0,15,30-32", Calendar.MINUTE);
+        Assert.assertTrue(minutes instanceof ScheduleValueList);
+        Assert.assertNotNull(minutes.getValueSet());
+        Assert.assertEquals(minutes.getValueSet().toString(), "{0, 15, 30, 31, 32}");
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.MINUTE, 16);
+        ValueResult valueResult = minutes.getTimeAfter(calendar);
+        Assert.assertEquals(valueResult.getResult(), 30);
+        Assert.assertFalse(valueResult.needsIncrement());
+
+        calendar.set(Calendar.MINUTE, 40);
+        valueResult = minutes.getTimeAfter(calendar);
+        Assert.assertEquals(valueResult.getResult(), 0);
+        Assert.assertTrue(valueResult.needsIncrement());
+
+        // Day of month depends on the month
+        Assert.assertNull(this.scheduleExpressionParser.getScheduleValue("1,last", Calendar.DAY_OF_MONTH).getValueSet());
+    }
+
 }
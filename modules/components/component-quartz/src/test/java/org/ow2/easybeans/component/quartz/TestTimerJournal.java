@@ -0,0 +1,188 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+
+import org.quartz.JobKey;
+import org.quartz.TriggerKey;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the journal used by the job store of the persistent timers.
+ * @author Florent Benoit
+ */
+public class TestTimerJournal {
+
+    /**
+     * Records are read again after a restart.
+     */
+    @Test
+    public void testRestart() throws IOException {
+        File directory = newDirectory("restart");
+
+        TimerJournal journal = new TimerJournal(directory, 10, 0, 0);
+        journal.open();
+        journal.putJob(new JobKey("job1", "group"), new byte[] {1});
+        journal.putJob(new JobKey("job2", "group"), new byte[] {2});
+        journal.putTrigger(new TriggerKey("trigger1", "group"), new byte[] {1, 1});
+        journal.putTrigger(new TriggerKey("trigger1", "group"), new byte[] {1, 2});
+        journal.removeJob(new JobKey("job2", "group"));
+        journal.close();
+
+        journal = new TimerJournal(directory, 10, 0, 0);
+        journal.open();
+        Map<JobKey, byte[]> jobs = journal.getJobs();
+        Map<TriggerKey, byte[]> triggers = journal.getTriggers();
+        journal.close();
+
+        Assert.assertEquals(jobs.size(), 1);
+        Assert.assertEquals(jobs.get(new JobKey("job1", "group")), new byte[] {1});
+        Assert.assertEquals(triggers.size(), 1);
+        Assert.assertEquals(triggers.get(new TriggerKey("trigger1", "group")), new byte[] {1, 2});
+    }
+
+    /**
+     * Journal written at each change and compacted in snapshots, without a clean close.
+     */
+    @Test
+    public void testCompactionWithoutClose() throws IOException {
+        File directory = newDirectory("compaction");
+
+        TimerJournal journal = new TimerJournal(directory, 0, 200, 0);
+        journal.open();
+        for (int i = 0; i < 100; i++) {
+            journal.putJob(new JobKey("job" + i, "group"), new byte[] {(byte) i});
+            if (i % 2 == 0) {
+                journal.removeJob(new JobKey("job" + i, "group"));
+            }
+        }
+        // No close, journal is read as it is on the disk
+
+        TimerJournal restarted = new TimerJournal(directory, 0, 200, 0);
+        restarted.open();
+        Map<JobKey, byte[]> jobs = restarted.getJobs();
+        restarted.close();
+
+        Assert.assertEquals(jobs.size(), 50);
+        Assert.assertEquals(jobs.get(new JobKey("job99", "group")), new byte[] {99});
+        Assert.assertNull(jobs.get(new JobKey("job98", "group")));
+    }
+
+    /**
+     * An incomplete record at the end of the journal is ignored.
+     */
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        File directory = newDirectory("truncated");
+
+        TimerJournal journal = new TimerJournal(directory, 0, 0, 0);
+        journal.open();
+        journal.putJob(new JobKey("job1", "group"), new byte[] {1});
+        journal.putJob(new JobKey("job2", "group"), new byte[] {2, 2, 2, 2});
+
+        // Cut the last record
+        File journalFile = null;
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".journal")) {
+                journalFile = file;
+            }
+        }
+        Assert.assertNotNull(journalFile);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - 2);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        TimerJournal restarted = new TimerJournal(directory, 0, 0, 0);
+        restarted.open();
+        Map<JobKey, byte[]> jobs = restarted.getJobs();
+        restarted.close();
+
+        Assert.assertEquals(jobs.size(), 1);
+        Assert.assertNotNull(jobs.get(new JobKey("job1", "group")));
+    }
+
+    /**
+     * A missing directory is created for its owner only.
+     */
+    @Test
+    public void testNewDirectory() throws IOException {
+        File directory = new File(newDirectory("new"), "timers");
+
+        TimerJournal journal = new TimerJournal(directory, 0, 0, 0);
+        journal.open();
+        journal.close();
+
+        Assert.assertTrue(directory.isDirectory());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Assert.assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())),
+                    "rwx------");
+        }
+    }
+
+    /**
+     * A directory which can be written by other users is not used.
+     */
+    @Test
+    public void testDirectoryWritableByOthers() throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        File directory = newDirectory("shared");
+        Files.setPosixFilePermissions(directory.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        TimerJournal journal = new TimerJournal(directory, 0, 0, 0);
+        try {
+            journal.open();
+            Assert.fail("The directory should be refused");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("other users"), e.getMessage());
+        }
+        Assert.assertEquals(directory.list().length, 0);
+    }
+
+    /**
+     * Builds an empty directory for a test.
+     * @param name the name of the test
+     * @return the directory
+     */
+    private File newDirectory(final String name) {
+        File directory = new File(System.getProperty("java.io.tmpdir") + File.separator + System.getProperty("user.name")
+                + File.separator + "easybeans-timer-journal-" + name + "-" + System.nanoTime());
+        Assert.assertTrue(directory.mkdirs());
+        return directory;
+    }
+}
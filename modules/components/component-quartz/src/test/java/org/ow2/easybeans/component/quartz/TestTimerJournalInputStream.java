@@ -0,0 +1,108 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+
+package org.ow2.easybeans.component.quartz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.quartz.JobKey;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the classes which can be read from the timer journal.
+ * @author Florent Benoit
+ */
+public class TestTimerJournalInputStream {
+
+    /**
+     * The Quartz and JDK classes of the jobs are read.
+     */
+    @Test
+    public void testAllowedClasses() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("key", new JobKey("job", "group"));
+        map.put("bytes", new byte[] {1, 2});
+        map.put("keys", new JobKey[] {new JobKey("job", "group")});
+
+        Object read = read(map);
+        Assert.assertEquals(((Map<?, ?>) read).get("key"), new JobKey("job", "group"));
+    }
+
+    /**
+     * Other classes are refused.
+     */
+    @Test
+    public void testRefusedClasses() throws Exception {
+        assertRefused(new URL("http://localhost/"));
+        assertRefused(new File("job"));
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("files", new File[] {new File("job")});
+        assertRefused(map);
+    }
+
+    /**
+     * Checks that the given object cannot be read.
+     * @param object the object
+     */
+    private void assertRefused(final Object object) throws Exception {
+        try {
+            read(object);
+            Assert.fail("The object " + object + " should be refused");
+        } catch (InvalidClassException e) {
+            Assert.assertTrue(e.getMessage().contains("timer journal"), e.getMessage());
+        }
+    }
+
+    /**
+     * Writes an object and reads it with the stream of the journal.
+     * @param object the object
+     * @return the read object
+     */
+    private Object read(final Object object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        ObjectInputStream in = new TimerJournalInputStream(new ByteArrayInputStream(bytes.toByteArray()),
+                TestTimerJournalInputStream.class.getClassLoader());
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+}
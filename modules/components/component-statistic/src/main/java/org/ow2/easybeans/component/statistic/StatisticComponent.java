@@ -35,6 +35,8 @@ import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.EZBJ2EEManagedObject;
 import org.ow2.easybeans.api.EZBServer;
 import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.api.statistic.EZBLatencyStatistic;
+import org.ow2.easybeans.api.statistic.EZBStatistic;
 import org.ow2.easybeans.api.statistic.EZBStatisticFactory;
 import org.ow2.easybeans.api.statistic.EZBStatisticProvider;
 import org.ow2.easybeans.component.api.EZBComponentException;
@@ -45,6 +47,7 @@ import org.ow2.easybeans.jmx.MBeansException;
 import org.ow2.easybeans.jmx.MBeansHelper;
 import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.easybeans.statistic.CallCountStatisticFactory;
+import org.ow2.easybeans.statistic.LatencyStatisticFactory;
 import org.ow2.easybeans.statistic.MeanCallTimeStatisticFactory;
 import org.ow2.easybeans.statistic.TotalCallTimeStatisticFactory;
 import org.ow2.util.log.Log;
@@ -103,6 +106,7 @@ public class StatisticComponent implements EZBStatisticComponent {
         registerStatisticFactory(new CallCountStatisticFactory(this.eventComponent, this.jmxComponent));
         registerStatisticFactory(new MeanCallTimeStatisticFactory(this.eventComponent, this.jmxComponent));
         registerStatisticFactory(new TotalCallTimeStatisticFactory(this.eventComponent, this.jmxComponent));
+        registerStatisticFactory(new LatencyStatisticFactory(this.eventComponent, this.jmxComponent));
 
         try {
             MBeansHelper.getInstance().registerMBean(this);
@@ -556,6 +560,49 @@ public class StatisticComponent implements EZBStatisticComponent {
         return managedStatistic.getStatistic().getLastSampleTime();
     }
 
+    /**
+     * Get the value at the given percentile for the given latency statistic.
+     * @param statisticId The statistic id.
+     * @param percentile The percentile (between 0 and 100).
+     * @return The value at the given percentile.
+     * @throws EZBComponentException If an error occurs or if the statistic is not a latency statistic.
+     */
+    public synchronized long getStatisticPercentile(final String statisticId, final double percentile)
+            throws EZBComponentException {
+        return getLatencyStatistic(statisticId).getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Get the statistic value for the values recorded since the previous call of this method for the given latency
+     * statistic.
+     * @param statisticId The statistic id.
+     * @return The statistic value for the last interval.
+     * @throws EZBComponentException If an error occurs or if the statistic is not a latency statistic.
+     */
+    public synchronized String getStatisticIntervalValue(final String statisticId) throws EZBComponentException {
+        return getLatencyStatistic(statisticId).getIntervalValue();
+    }
+
+    /**
+     * Get the given latency statistic.
+     * @param statisticId The statistic id.
+     * @return The latency statistic.
+     * @throws EZBComponentException If the statistic is not found or if it is not a latency statistic.
+     */
+    private EZBLatencyStatistic getLatencyStatistic(final String statisticId) throws EZBComponentException {
+        ManagedStatistic managedStatistic = this.managedStatistics.get(statisticId);
+
+        if (managedStatistic == null) {
+            throw new EZBComponentException("Cannot find statistic " + statisticId);
+        }
+
+        EZBStatistic statistic = managedStatistic.getStatistic();
+        if (!(statistic instanceof EZBLatencyStatistic)) {
+            throw new EZBComponentException("Statistic " + statisticId + " is not a latency statistic");
+        }
+        return (EZBLatencyStatistic) statistic;
+    }
+
     /**
      * Helper method to register a EZBServer.
      * @param server The EZBServer to register.
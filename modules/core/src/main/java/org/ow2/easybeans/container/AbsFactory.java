@@ -25,6 +25,7 @@
 
 package org.ow2.easybeans.container;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
@@ -48,13 +49,17 @@ import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocationBegin;
 import org.ow2.easybeans.api.injection.EasyBeansInjectionException;
 import org.ow2.easybeans.api.injection.ResourceInjector;
 import org.ow2.easybeans.api.interceptor.EZBInvocationContextFactory;
+import org.ow2.easybeans.api.loader.EZBClassLoader;
 import org.ow2.easybeans.api.pool.EZBManagementPool;
 import org.ow2.easybeans.component.api.EZBComponent;
 import org.ow2.easybeans.component.itf.EZBEventComponent;
 import org.ow2.easybeans.component.itf.EZBStatisticComponent;
 import org.ow2.easybeans.component.itf.EZBWorkManagerComponent;
 import org.ow2.easybeans.component.itf.TimerComponent;
+import org.ow2.easybeans.enhancer.bean.BeanMethodInvoker;
+import org.ow2.easybeans.enhancer.bean.BeanMethodInvokerGenerator;
 import org.ow2.easybeans.event.bean.EventBeanInvocationBegin;
+import org.ow2.easybeans.event.bean.StackTraceCapturePolicy;
 import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.easybeans.naming.NamingManager;
 import org.ow2.easybeans.naming.interceptors.ENCManager;
@@ -107,6 +112,28 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
      */
     private static final int MANAGEMENTPOOL_THREAD_MAX = 15;
 
+    /**
+     * Property used to define the default stack trace capture policy of the factories.
+     */
+    public static final String STACKTRACE_CAPTURE_POLICY = "easybeans.stacktrace.capture";
+
+    /**
+     * Property used to define the default sampling rate (1 invocation out of N) of the factories.
+     */
+    public static final String STACKTRACE_SAMPLING_RATE = "easybeans.stacktrace.sampling";
+
+    /**
+     * Default stack trace capture policy. Invocation events are only built if
+     * a listener (like the audit) is registered and it gets the stack of each
+     * invocation. Other policies have to be chosen explicitly.
+     */
+    private static final StackTraceCapturePolicy DEFAULT_STACKTRACE_CAPTURE_POLICY = StackTraceCapturePolicy.ALWAYS;
+
+    /**
+     * Default sampling rate if the SAMPLED policy is used.
+     */
+    private static final int DEFAULT_STACKTRACE_SAMPLING_RATE = 100;
+
     /**
      * Name of the class of the managed bean.
      */
@@ -149,6 +176,21 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
      */
     private Map<Long, Method> hashes = null;
 
+    /**
+     * Methods of the bean that can be called through the factory (by method hash), computed at init.
+     */
+    private Map<Long, FactoryMethod> factoryMethods = null;
+
+    /**
+     * Generated invoker used to call the methods of the bean without reflection (if available).
+     */
+    private BeanMethodInvoker beanMethodInvoker = null;
+
+    /**
+     * Event component (if any) used to know if invocation events are listened.
+     */
+    private EZBEventComponent eventComponent = null;
+
     /**
      * Keep a direct reference to the methodInfo object so that we don't need to compute
      * each time the method object to invoke.<br>
@@ -211,6 +253,22 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
      */
     private TimerComponent timerComponent;
 
+    /**
+     * Policy used to capture the stack trace of the caller in invocation events.
+     */
+    private volatile StackTraceCapturePolicy stackTraceCapturePolicy = null;
+
+    /**
+     * Stack trace is captured for one invocation out of this rate (SAMPLED policy).
+     */
+    private volatile int stackTraceSamplingRate;
+
+    /**
+     * Number of invocations since the last sampled stack trace.
+     * Not synchronized: a race only changes which invocation is sampled.
+     */
+    private int stackTraceSamplingCounter = 0;
+
     /**
      * Builds a new factory with a given name and its container.
      * @param className name of this factory (name of class that is managed)
@@ -224,6 +282,10 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
         this.id = String.valueOf(System.identityHashCode(this));
         this.j2eeManagedObjectId = J2EEManagedObjectNamingHelper.getJ2EEManagedObjectId(this);
         this.contextDataThreadLocal = new InheritableThreadLocal<Map<String, Object>>();
+        this.stackTraceCapturePolicy = StackTraceCapturePolicy.fromName(System.getProperty(STACKTRACE_CAPTURE_POLICY),
+                DEFAULT_STACKTRACE_CAPTURE_POLICY);
+        this.stackTraceSamplingRate = Math.max(1, Integer.getInteger(STACKTRACE_SAMPLING_RATE,
+                DEFAULT_STACKTRACE_SAMPLING_RATE).intValue());
 
         Class clazz = null;
         try {
@@ -398,6 +460,66 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
         return this.hashes;
     }
 
+    /**
+     * Gets the methods that can be called through this factory.
+     * @return factory methods by method hash
+     */
+    protected Map<Long, FactoryMethod> getFactoryMethods() {
+        return this.factoryMethods;
+    }
+
+    /**
+     * Invokes the given method on the bean instance.<br>
+     * The generated invoker is used if available and if the arguments match the parameters of the method, else the
+     * method is called by reflection (which reports invalid arguments with an {@link IllegalArgumentException}). In
+     * both cases, an exception thrown by the method is wrapped in an {@link InvocationTargetException}.
+     * @param factoryMethod the method to call
+     * @param bean the bean instance
+     * @param args the arguments of the method
+     * @return the value returned by the method
+     * @throws IllegalAccessException if the method can't be called by reflection
+     * @throws IllegalArgumentException if the arguments don't match the parameters of the method
+     * @throws InvocationTargetException if the method has thrown an exception
+     */
+    protected Object invokeBusinessMethod(final FactoryMethod factoryMethod, final Object bean, final Object[] args)
+            throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        BeanMethodInvoker invoker = this.beanMethodInvoker;
+        int index = factoryMethod.getIndex();
+        if (invoker == null || index == FactoryMethod.NO_INDEX || !factoryMethod.acceptsArguments(args)) {
+            // Reflection also applies widening conversions and reports invalid arguments
+            return factoryMethod.getMethod().invoke(bean, args);
+        }
+        try {
+            return invoker.invoke(bean, index, args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Checks if the invocation events of the given method are listened by someone.
+     * @param factoryMethod the called method
+     * @return true if a listener (statistic, audit, etc.) is registered for the method, the factory or its container.
+     */
+    protected boolean isInvocationEventListened(final FactoryMethod factoryMethod) {
+        EZBEventComponent component = this.eventComponent;
+        if (component == null) {
+            return false;
+        }
+        long version = component.getListenersVersion();
+        Boolean listened = factoryMethod.getListened(version);
+        if (listened != null) {
+            return listened.booleanValue();
+        }
+
+        // Compute the flag for this version of the listeners
+        boolean value = component.hasEventListener(factoryMethod.getMethodId())
+                || component.hasEventListener(getJ2EEManagedObjectId())
+                || component.hasEventListener(getContainer().getJ2EEManagedObjectId());
+        factoryMethod.setListened(value, version);
+        return value;
+    }
+
     /**
      * Gets the computed method info hashes.
      * @return computed hashes
@@ -513,6 +635,7 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
         if (eventComponent != null) {
             eventComponent.registerJ2EEManagedObject(this, this.dispatcher);
         }
+        this.eventComponent = eventComponent;
 
         // Register to jmx component will be done by the mbean itself.
 
@@ -534,6 +657,66 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
             long hashTempMethod = Hash.hashMethod(methodInfo.getName(), methodInfo.getDescriptor());
             this.methodInfoHashes.put(Long.valueOf(hashTempMethod), methodInfo);
         }
+
+        // Init methods that can be called (and the invoker used to call them)
+        Map<Long, Method> hashes = getHashes();
+        Method[] invokableMethods = new Method[hashes.size()];
+        Map<Long, FactoryMethod> methods = new HashMap<Long, FactoryMethod>();
+        boolean invokableBean = BeanMethodInvokerGenerator.isInvokable(getBeanClass());
+        int index = 0;
+        for (Map.Entry<Long, Method> entry : hashes.entrySet()) {
+            Method method = entry.getValue();
+            int methodIndex = FactoryMethod.NO_INDEX;
+            if (invokableBean && BeanMethodInvokerGenerator.isInvokable(method)) {
+                methodIndex = index;
+                invokableMethods[index] = method;
+            }
+            index++;
+            methods.put(entry.getKey(), new FactoryMethod(getJ2EEManagedObjectId(), method, methodIndex));
+        }
+        this.factoryMethods = methods;
+        if (invokableBean) {
+            this.beanMethodInvoker = createBeanMethodInvoker(invokableMethods);
+        }
+    }
+
+    /**
+     * Generates and loads the invoker of the bean methods.
+     * @param methods the methods by index
+     * @return the invoker or null if it can't be defined (methods will be called by reflection)
+     */
+    private BeanMethodInvoker createBeanMethodInvoker(final Method[] methods) {
+        BeanMethodInvokerGenerator generator = new BeanMethodInvokerGenerator(getBeanClass(), methods);
+        generator.generate();
+        String invokerClassName = generator.getGeneratedClassName();
+        ClassLoader loader = getBeanClass().getClassLoader();
+        try {
+            Class<?> invokerClass = null;
+            if (loader instanceof EZBClassLoader) {
+                ((EZBClassLoader) loader).addClassDefinition(invokerClassName, generator.getBytes());
+                invokerClass = loader.loadClass(invokerClassName);
+            } else {
+                // use other way of loading class (defineClass is protected)
+                byte[] bytes = generator.getBytes();
+                Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", new Class[] {String.class,
+                        byte[].class, int.class, int.class});
+                defineClass.setAccessible(true);
+                try {
+                    invokerClass = (Class<?>) defineClass.invoke(loader, new Object[] {invokerClassName, bytes,
+                            Integer.valueOf(0), Integer.valueOf(bytes.length)});
+                } finally {
+                    defineClass.setAccessible(false);
+                }
+            }
+            return invokerClass.asSubclass(BeanMethodInvoker.class).newInstance();
+        } catch (Exception e) {
+            logger.debug("Unable to define the invoker ''{0}'', methods of the bean will be called by reflection",
+                    invokerClassName, e);
+        } catch (LinkageError e) {
+            logger.debug("Unable to define the invoker ''{0}'', methods of the bean will be called by reflection",
+                    invokerClassName, e);
+        }
+        return null;
     }
 
     /**
@@ -578,6 +761,7 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
         if (eventComponent != null) {
             eventComponent.unregisterJ2EEManagedObject(this);
         }
+        this.eventComponent = null;
 
         // Unref the event dispatcher.
         this.dispatcher = null;
@@ -715,7 +899,24 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
         EZBSecurityContext securityContext = SecurityCurrent.getCurrent().getSecurityContext();
         boolean runAsMode = getBeanInfo().getSecurityInfo().getRunAsRole() != null;
         EventBeanInvocationBegin event = new EventBeanInvocationBegin(source, params, securityContext, runAsMode);
-        event.setStackTraceElements(Thread.currentThread().getStackTrace());
+        switch (this.stackTraceCapturePolicy) {
+            case ALWAYS:
+                event.setStackTraceElements(Thread.currentThread().getStackTrace());
+                break;
+            case LAZY:
+                // Stack is still filled but elements are only built if someone reads them (audit)
+                event.setLazyStackTrace(new Throwable());
+                break;
+            case SAMPLED:
+                if (++this.stackTraceSamplingCounter >= this.stackTraceSamplingRate) {
+                    this.stackTraceSamplingCounter = 0;
+                    event.setStackTraceElements(Thread.currentThread().getStackTrace());
+                }
+                break;
+            case NEVER:
+            default:
+                break;
+        }
 
         // If audit ID propagation enabled, add current ID to the event
         if (this.currentInvocationID != null) {
@@ -729,6 +930,43 @@ public abstract class AbsFactory<PoolType extends EasyBeansBean> implements Fact
         return event;
     }
 
+    /**
+     * @return the policy used to capture the stack trace of the caller.
+     */
+    public StackTraceCapturePolicy getStackTraceCapturePolicy() {
+        return this.stackTraceCapturePolicy;
+    }
+
+    /**
+     * Sets the policy used to capture the stack trace of the caller.
+     * @param stackTraceCapturePolicy the given policy
+     */
+    public void setStackTraceCapturePolicy(final StackTraceCapturePolicy stackTraceCapturePolicy) {
+        if (stackTraceCapturePolicy == null) {
+            throw new IllegalArgumentException("Stack trace capture policy cannot be null");
+        }
+        this.stackTraceCapturePolicy = stackTraceCapturePolicy;
+    }
+
+    /**
+     * @return the sampling rate (one invocation out of N) used by the SAMPLED policy.
+     */
+    public int getStackTraceSamplingRate() {
+        return this.stackTraceSamplingRate;
+    }
+
+    /**
+     * Sets the sampling rate used by the SAMPLED policy.
+     * @param stackTraceSamplingRate capture the stack for one invocation out of this value
+     */
+    public void setStackTraceSamplingRate(final int stackTraceSamplingRate) {
+        if (stackTraceSamplingRate < 1) {
+            throw new IllegalArgumentException("Sampling rate should be greater than 0, got '" + stackTraceSamplingRate
+                    + "'");
+        }
+        this.stackTraceSamplingRate = stackTraceSamplingRate;
+    }
+
     /**
      * @return the current invocation ID.
      */
@@ -51,7 +51,7 @@ import javax.ejb.ScheduleExpression;
 import javax.ejb.Timer;
 import javax.ejb.TimerConfig;
 import javax.ejb.TimerService;
-import javax.naming.InitialContext;
+import javax.naming.Context;
 import javax.naming.NamingException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
@@ -64,6 +64,7 @@ import org.ow2.easybeans.api.bean.info.ISecurityInfo;
 import org.ow2.easybeans.api.container.EZBEJBContext;
 import org.ow2.easybeans.container.session.stateful.StatefulSessionFactory;
 import org.ow2.easybeans.container.session.stateless.StatelessSessionFactory;
+import org.ow2.easybeans.naming.NamingManager;
 import org.ow2.easybeans.security.propagation.context.SecurityCurrent;
 import org.ow2.easybeans.transaction.JTransactionManager;
 import org.ow2.easybeans.transaction.interceptors.CMTSupportsTransactionInterceptor;
@@ -86,9 +87,14 @@ public class EasyBeansEJBContext<FactoryType extends Factory<?, ?>> implements E
     private final Log logger = LogFactory.getLog(EasyBeansEJBContext.class);
 
     /**
-     * java:comp/env prefix.
+     * java: prefix.
      */
-    private static final String JAVA_COMP_ENV = "java:comp/env/";
+    private static final String JAVA_PREFIX = "java:";
+
+    /**
+     * comp/env prefix (relative to the java: context).
+     */
+    private static final String COMP_ENV = "comp/env/";
 
     /**
      * Reference to the transaction manager.
@@ -452,16 +458,24 @@ public class EasyBeansEJBContext<FactoryType extends Factory<?, ?>> implements E
         }
 
 
-        // Search in java:comp/env first
         try {
-            return new InitialContext().lookup(JAVA_COMP_ENV + name);
-        } catch (NamingException ne) {
-            // try in registry
-            try {
-                return new InitialContext().lookup(name);
-            } catch (NamingException e) {
-                throw new IllegalArgumentException("Lookup on '" + name + "' was not found");
+            // Search directly in the java: context of the bean
+            Context javaContext = this.easyBeansFactory.getJavaContext();
+            if (javaContext != null) {
+                if (name.startsWith(JAVA_PREFIX)) {
+                    return javaContext.lookup(name.substring(JAVA_PREFIX.length()));
+                }
+                // Search in java:comp/env first
+                try {
+                    return javaContext.lookup(COMP_ENV + name);
+                } catch (NamingException ne) {
+                    this.logger.debug("''{0}'' not found in java:comp/env, searching in the registry", name);
+                }
             }
+            // try in registry
+            return NamingManager.getInstance().getInitialContext().lookup(name);
+        } catch (NamingException e) {
+            throw new IllegalArgumentException("Lookup on '" + name + "' was not found");
         }
     }
 
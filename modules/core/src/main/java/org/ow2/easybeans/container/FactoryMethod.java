@@ -0,0 +1,228 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container;
+
+import java.lang.reflect.Method;
+
+import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
+
+/**
+ * Business method of a bean that can be called through the factory.<br>
+ * It keeps the data computed once when the factory is initialized (index used
+ * by the generated invoker, event provider ids) so that invocations don't need
+ * to compute them.
+ * @author Florent Benoit
+ */
+public final class FactoryMethod {
+
+    /**
+     * Index used when the method can't be called by the generated invoker.
+     */
+    public static final int NO_INDEX = -1;
+
+    /**
+     * Value of the listened state when it has never been computed.
+     */
+    private static final long UNKNOWN_STATE = -1L;
+
+    /**
+     * The method of the bean class.
+     */
+    private final Method method;
+
+    /**
+     * Index of the method in the generated invoker.
+     */
+    private final int index;
+
+    /**
+     * Types of the parameters of the method (wrapper types for primitives).
+     */
+    private final Class<?>[] argumentTypes;
+
+    /**
+     * For each parameter, true if the type is a primitive (null is not accepted).
+     */
+    private final boolean[] primitiveArguments;
+
+    /**
+     * Id of the method (used to register the dispatcher).
+     */
+    private final String methodId;
+
+    /**
+     * Id used for local invocation events.
+     */
+    private final String localId;
+
+    /**
+     * Id used for remote invocation events.
+     */
+    private final String remoteId;
+
+    /**
+     * Listeners version for which the listened flag has been computed
+     * (shifted by one bit) and the listened flag (lowest bit).<br>
+     * Both values are kept in a single field so that they're always read together.
+     */
+    private volatile long listenedState = UNKNOWN_STATE;
+
+    /**
+     * Builds a factory method for the given method.
+     * @param factoryId the J2EE managed object id of the factory
+     * @param method the bean method
+     * @param index the index of the method in the generated invoker (or {@link #NO_INDEX})
+     */
+    public FactoryMethod(final String factoryId, final Method method, final int index) {
+        this.method = method;
+        this.index = index;
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        this.argumentTypes = new Class<?>[parameterTypes.length];
+        this.primitiveArguments = new boolean[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            this.primitiveArguments[i] = parameterTypes[i].isPrimitive();
+            this.argumentTypes[i] = getArgumentType(parameterTypes[i]);
+        }
+        this.methodId = factoryId + "/" + J2EEManagedObjectNamingHelper.getMethodSignature(method);
+        this.localId = this.methodId + "@Local";
+        this.remoteId = this.methodId + "@Remote";
+    }
+
+    /**
+     * Checks if the given arguments can be given to the generated invoker:
+     * same number of arguments than the method and each argument is an
+     * instance of the type of its parameter (or of the wrapper type for
+     * primitives, without conversion).
+     * @param args the arguments of the call (may be null if there are none)
+     * @return true if the arguments are valid for the generated invoker
+     */
+    public boolean acceptsArguments(final Object[] args) {
+        int length = 0;
+        if (args != null) {
+            length = args.length;
+        }
+        if (length != this.argumentTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                if (this.primitiveArguments[i]) {
+                    return false;
+                }
+            } else if (!this.argumentTypes[i].isInstance(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the type of object that can be given for a parameter type.
+     * @param parameterType the type of the parameter
+     * @return the wrapper type for primitives, else the given type
+     */
+    private static Class<?> getArgumentType(final Class<?> parameterType) {
+        if (!parameterType.isPrimitive()) {
+            return parameterType;
+        }
+        if (parameterType == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (parameterType == Byte.TYPE) {
+            return Byte.class;
+        } else if (parameterType == Character.TYPE) {
+            return Character.class;
+        } else if (parameterType == Short.TYPE) {
+            return Short.class;
+        } else if (parameterType == Integer.TYPE) {
+            return Integer.class;
+        } else if (parameterType == Long.TYPE) {
+            return Long.class;
+        } else if (parameterType == Float.TYPE) {
+            return Float.class;
+        }
+        return Double.class;
+    }
+
+    /**
+     * @return the method of the bean class.
+     */
+    public Method getMethod() {
+        return this.method;
+    }
+
+    /**
+     * @return the index of the method in the generated invoker (or {@link #NO_INDEX}).
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * @return the id of the method.
+     */
+    public String getMethodId() {
+        return this.methodId;
+    }
+
+    /**
+     * @return the id used for local invocation events.
+     */
+    public String getLocalId() {
+        return this.localId;
+    }
+
+    /**
+     * @return the id used for remote invocation events.
+     */
+    public String getRemoteId() {
+        return this.remoteId;
+    }
+
+    /**
+     * Gets the listened flag computed for the given listeners version.
+     * @param listenersVersion the current version of the listeners
+     * @return true/false if a listener is listening this method, or null if
+     *         the flag has not been computed for this version.
+     */
+    public Boolean getListened(final long listenersVersion) {
+        long state = this.listenedState;
+        if (state == UNKNOWN_STATE || (state >>> 1) != listenersVersion) {
+            return null;
+        }
+        return Boolean.valueOf((state & 1L) == 1L);
+    }
+
+    /**
+     * Sets the listened flag for the given listeners version.
+     * @param listened true if a listener is listening this method
+     * @param listenersVersion the version of the listeners used to compute the flag
+     */
+    public void setListened(final boolean listened, final long listenersVersion) {
+        this.listenedState = (listenersVersion << 1) | (listened ? 1L : 0L);
+    }
+
+}
@@ -209,7 +209,12 @@ public class JContainer3 implements EZBContainer {
     /**
      * Container available.
      */
-    private boolean available = false;
+    private volatile boolean available = false;
+
+    /**
+     * Lock used to wait for the availability of the container.
+     */
+    private final Object availableLock = new Object();
 
     /**
      * Deployment stuff has been resolved ?
@@ -511,7 +516,7 @@ public class JContainer3 implements EZBContainer {
                 this.persistenceUnitManager, this.configuration));
         this.dispatcher.dispatch(new EventLifeCycleStarted(this.j2eeManagedObjectId));
 
-        this.available = true;
+        setAvailable(true);
 
     }
 
@@ -1397,7 +1402,7 @@ public class JContainer3 implements EZBContainer {
      */
     @Override
     public void stop() {
-        this.available = false;
+        setAvailable(false);
 
         // Must resolve again after it has been stopped
         this.resolved = false;
@@ -1855,6 +1860,49 @@ public class JContainer3 implements EZBContainer {
         return this.available;
     }
 
+    /**
+     * Waits until the container is available.
+     * @param timeout the maximum time to wait in milliseconds (0 to wait
+     *        without limit)
+     * @return true if the container is available, false if the time has
+     *         elapsed before.
+     * @throws InterruptedException if the current thread is interrupted while
+     *         waiting
+     */
+    @Override
+    public boolean waitAvailable(final long timeout) throws InterruptedException {
+        if (this.available) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this.availableLock) {
+            while (!this.available) {
+                if (timeout <= 0) {
+                    this.availableLock.wait();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    this.availableLock.wait(remaining);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the availability of the container and wakes up the threads waiting
+     * for it.
+     * @param available true if the container is available
+     */
+    private void setAvailable(final boolean available) {
+        synchronized (this.availableLock) {
+            this.available = available;
+            this.availableLock.notifyAll();
+        }
+    }
+
     /**
      * Gets the persistence manager object which manages all persistence-unit
      * associated to this container.
@@ -0,0 +1,365 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.mdb;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+
+import org.ow2.easybeans.container.FactoryMethod;
+import org.ow2.easybeans.transaction.JTransactionManager;
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Batch of messages delivered to a message endpoint in a single container
+ * transaction.<br>
+ * The transaction is begun with the first message of the batch. Between two
+ * messages, it is suspended (and the XA resource of the endpoint is delisted)
+ * so that the resource adapter thread is not left associated with it. The
+ * transaction interceptor of the bean joins this transaction instead of
+ * starting its own one. The transaction is committed when the batch is full,
+ * when its timeout has expired or when the endpoint is released.
+ * @author Florent Benoit
+ */
+public class MDBDeliveryBatch {
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(MDBDeliveryBatch.class);
+
+    /**
+     * Settings of the batched delivery.
+     */
+    private final MDBDeliveryBatching batching;
+
+    /**
+     * Transaction manager (null to use the one of the server).
+     */
+    private final TransactionManager transactionManager;
+
+    /**
+     * Lock taken while a message is delivered or while the batch is committed.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Transaction of the current batch (null if there is no current batch).
+     */
+    private Transaction transaction = null;
+
+    /**
+     * Number of messages delivered in the current batch.
+     */
+    private int size = 0;
+
+    /**
+     * Time of the first message of the current batch.
+     */
+    private long startTime = 0;
+
+    /**
+     * Number of messages to deliver in their own transaction after a failed batch.
+     */
+    private int unbatchedDeliveries = 0;
+
+    /**
+     * Builds a batch for an endpoint.
+     * @param batching the settings of the batched delivery
+     */
+    public MDBDeliveryBatch(final MDBDeliveryBatching batching) {
+        this(batching, null);
+    }
+
+    /**
+     * Builds a batch for an endpoint using the given transaction manager.
+     * @param batching the settings of the batched delivery
+     * @param transactionManager the transaction manager (null to use the one of the server)
+     */
+    public MDBDeliveryBatch(final MDBDeliveryBatching batching, final TransactionManager transactionManager) {
+        this.batching = batching;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Checks if the given method of the listener interface is delivered in batches.
+     * @param method the called method
+     * @return true if the method is delivered in batches
+     */
+    public boolean isBatched(final Method method) {
+        return this.batching.isBatched(method);
+    }
+
+    /**
+     * Delivers a message to the endpoint in the transaction of the current batch.
+     * @param endpoint the endpoint receiving the message
+     * @param factoryMethod the bean method to call
+     * @param args the arguments of the method
+     * @return the response of the call (or null if there is no answer)
+     */
+    public Object deliver(final MDBListenerEndpointInvocationHandler endpoint, final FactoryMethod factoryMethod,
+            final Object[] args) {
+        return deliver(new Delivery() {
+            public XAResource getXAResource() {
+                return endpoint.getEasyBeansMDB().getXaResource();
+            }
+
+            public Object deliver() {
+                return endpoint.invokeMethodOnMDB(factoryMethod, args);
+            }
+        });
+    }
+
+    /**
+     * Delivers a message in the transaction of the current batch.
+     * @param delivery the delivery of the message to the endpoint
+     * @return the response of the call (or null if there is no answer)
+     */
+    public Object deliver(final Delivery delivery) {
+        TransactionManager transactionManager = this.transactionManager;
+        if (transactionManager == null) {
+            transactionManager = JTransactionManager.getTransactionManager();
+        }
+        this.lock.lock();
+        try {
+            // Messages of a failed batch are delivered in their own transaction
+            if (this.unbatchedDeliveries > 0) {
+                this.unbatchedDeliveries--;
+                return delivery.deliver();
+            }
+
+            if (!attach(transactionManager)) {
+                // Transaction imported by the resource adapter, nothing to batch
+                return delivery.deliver();
+            }
+
+            XAResource xaResource = delivery.getXAResource();
+            Object result = null;
+            try {
+                result = delivery.deliver();
+            } catch (RuntimeException e) {
+                detach(transactionManager, xaResource, XAResource.TMFAIL);
+                // The failed message is also delivered again
+                rollback(this.size + 1);
+                throw e;
+            }
+            detach(transactionManager, xaResource, XAResource.TMSUCCESS);
+            this.size++;
+
+            if (isMarkedRollback()) {
+                rollback(this.size);
+            } else if (this.size >= this.batching.getBatchSize()
+                    || System.currentTimeMillis() - this.startTime >= this.batching.getBatchTimeout()) {
+                commit();
+            }
+            return result;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Commits the current batch (if any).
+     */
+    public void flush() {
+        this.lock.lock();
+        try {
+            if (this.transaction != null) {
+                commit();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Commits the current batch if its timeout has expired and if no message is being delivered.
+     * @param now the current time
+     */
+    public void flushIfExpired(final long now) {
+        if (!this.lock.tryLock()) {
+            // Message being delivered, the batch will be checked at the end of the delivery
+            return;
+        }
+        try {
+            if (this.transaction != null && now - this.startTime >= this.batching.getBatchTimeout()) {
+                commit();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Associates the current thread with the transaction of the batch (a new batch is started if needed).
+     * @param transactionManager the transaction manager
+     * @return false if the thread is already associated with another transaction
+     */
+    private boolean attach(final TransactionManager transactionManager) {
+        try {
+            if (this.transaction != null) {
+                transactionManager.resume(this.transaction);
+                return true;
+            }
+            if (transactionManager.getTransaction() != null) {
+                return false;
+            }
+            transactionManager.begin();
+            this.transaction = transactionManager.getTransaction();
+            this.size = 0;
+            this.startTime = System.currentTimeMillis();
+            return true;
+        } catch (Exception e) {
+            // Messages of the batch will be delivered again
+            if (this.transaction != null) {
+                rollback(this.size);
+            }
+            throw new IllegalStateException("Cannot deliver the message", e);
+        }
+    }
+
+    /**
+     * Delists the XA resource of the endpoint and dissociates the current thread from the transaction of the batch.
+     * @param transactionManager the transaction manager
+     * @param xaResource the XA resource of the endpoint (may be null)
+     * @param flag the flag used to delist the resource
+     */
+    private void detach(final TransactionManager transactionManager, final XAResource xaResource, final int flag) {
+        if (xaResource != null) {
+            try {
+                this.transaction.delistResource(xaResource, flag);
+            } catch (IllegalStateException e) {
+                logger.debug("XA resource ''{0}'' was not enlisted in the transaction ''{1}''", xaResource,
+                        this.transaction, e);
+            } catch (SystemException e) {
+                logger.error("Cannot delist the XA resource ''{0}'' from the transaction ''{1}''", xaResource,
+                        this.transaction, e);
+                setRollbackOnly();
+            }
+        }
+        try {
+            transactionManager.suspend();
+        } catch (SystemException e) {
+            throw new IllegalStateException("Cannot suspend the transaction of the batch", e);
+        }
+    }
+
+    /**
+     * @return true if the transaction of the batch can only be rolled back.
+     */
+    private boolean isMarkedRollback() {
+        try {
+            return this.transaction.getStatus() != Status.STATUS_ACTIVE;
+        } catch (SystemException e) {
+            logger.error("Cannot get the status of the transaction ''{0}''", this.transaction, e);
+            return true;
+        }
+    }
+
+    /**
+     * Marks the transaction of the batch so that it will be rolled back.
+     */
+    private void setRollbackOnly() {
+        try {
+            this.transaction.setRollbackOnly();
+        } catch (SystemException e) {
+            logger.error("Cannot mark the transaction ''{0}'' for rollback", this.transaction, e);
+        }
+    }
+
+    /**
+     * Commits the transaction of the batch.
+     */
+    private void commit() {
+        Transaction committed = this.transaction;
+        int committedSize = this.size;
+        this.transaction = null;
+        this.size = 0;
+
+        long start = System.nanoTime();
+        try {
+            committed.commit();
+        } catch (Exception e) {
+            logger.error("Cannot commit the batch of ''{0}'' messages", Integer.valueOf(committedSize), e);
+            this.batching.batchRolledBack();
+            split(committedSize);
+            return;
+        }
+        this.batching.batchCommitted(committedSize, System.nanoTime() - start);
+    }
+
+    /**
+     * Rolls back the transaction of the batch.
+     * @param redelivered the number of messages that will be delivered again by the resource adapter
+     */
+    private void rollback(final int redelivered) {
+        Transaction rolledBack = this.transaction;
+        this.transaction = null;
+        this.size = 0;
+
+        try {
+            rolledBack.rollback();
+        } catch (Exception e) {
+            logger.error("Cannot rollback the transaction ''{0}''", rolledBack, e);
+        }
+        this.batching.batchRolledBack();
+        split(redelivered);
+    }
+
+    /**
+     * Delivers the given number of messages in their own transaction if the batches are split on failures.
+     * @param redelivered the number of messages that will be delivered again by the resource adapter
+     */
+    private void split(final int redelivered) {
+        if (this.batching.isSplitOnFailure()) {
+            this.unbatchedDeliveries = redelivered;
+        }
+    }
+
+    /**
+     * Delivery of a message to an endpoint.
+     */
+    public interface Delivery {
+
+        /**
+         * @return the XA resource of the endpoint (may be null)
+         */
+        XAResource getXAResource();
+
+        /**
+         * Calls the bean method receiving the message.
+         * @return the response of the call (or null if there is no answer)
+         */
+        Object deliver();
+    }
+
+}
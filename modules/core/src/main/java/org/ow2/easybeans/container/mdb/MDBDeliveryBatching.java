@@ -0,0 +1,371 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.mdb;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Settings and statistics of the batched delivery of a message endpoint
+ * factory.<br>
+ * When the batched delivery is enabled, each endpoint groups the messages
+ * delivered to a transacted method in a single container transaction which
+ * is committed once the batch is full or when its timeout has expired. A
+ * flusher thread commits the batches of the endpoints that are idle.
+ * @author Florent Benoit
+ */
+public class MDBDeliveryBatching {
+
+    /**
+     * Activation config property giving the maximum number of messages of a batch.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "easybeans.batch.size";
+
+    /**
+     * Activation config property giving the maximum time (in ms) of a batch.
+     */
+    public static final String BATCH_TIMEOUT_PROPERTY = "easybeans.batch.timeout";
+
+    /**
+     * Activation config property giving the behavior of a batch when a message fails (split or rollback).
+     */
+    public static final String BATCH_FAILURE_PROPERTY = "easybeans.batch.failure";
+
+    /**
+     * Failure policy: the batch is rolled back and its messages are then delivered one by one.
+     */
+    public static final String SPLIT_ON_FAILURE = "split";
+
+    /**
+     * Failure policy: the batch is rolled back and its messages are delivered again as a batch.
+     */
+    public static final String ROLLBACK_ON_FAILURE = "rollback";
+
+    /**
+     * Default maximum time (in ms) of a batch.
+     */
+    public static final long DEFAULT_BATCH_TIMEOUT = 100L;
+
+    /**
+     * Minimum time (in ms) between two checks of the flusher thread.
+     */
+    private static final long MIN_FLUSH_PERIOD = 10L;
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(MDBDeliveryBatching.class);
+
+    /**
+     * Maximum number of messages of a batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Maximum time (in ms) between the first message of a batch and its commit.
+     */
+    private final long batchTimeout;
+
+    /**
+     * Split the batch (true) or roll back all of it (false) when a message fails.
+     */
+    private final boolean splitOnFailure;
+
+    /**
+     * Methods of the listener interface that are delivered in batches (the transacted ones).
+     */
+    private final Set<Method> batchedMethods;
+
+    /**
+     * Batches of the endpoints that are currently used.
+     */
+    private final Map<MDBDeliveryBatch, Boolean> batches = new ConcurrentHashMap<MDBDeliveryBatch, Boolean>();
+
+    /**
+     * Thread committing the batches whose timeout has expired.
+     */
+    private Thread flusher = null;
+
+    /**
+     * Flusher is running ?
+     */
+    private volatile boolean running = false;
+
+    /**
+     * Number of committed batches.
+     */
+    private final AtomicLong committedBatches = new AtomicLong();
+
+    /**
+     * Number of messages of the committed batches.
+     */
+    private final AtomicLong committedMessages = new AtomicLong();
+
+    /**
+     * Number of rolled back batches.
+     */
+    private final AtomicLong rolledBackBatches = new AtomicLong();
+
+    /**
+     * Size of the biggest committed batch.
+     */
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    /**
+     * Total time (in ns) spent to commit the batches.
+     */
+    private final AtomicLong commitTime = new AtomicLong();
+
+    /**
+     * Longest time (in ns) spent to commit a batch.
+     */
+    private final AtomicLong maxCommitTime = new AtomicLong();
+
+    /**
+     * Builds the batched delivery settings.
+     * @param batchSize the maximum number of messages of a batch
+     * @param batchTimeout the maximum time (in ms) of a batch
+     * @param splitOnFailure split the batch (true) or roll back all of it (false) when a message fails
+     * @param batchedMethods the methods of the listener interface that are delivered in batches
+     */
+    public MDBDeliveryBatching(final int batchSize, final long batchTimeout, final boolean splitOnFailure,
+            final Set<Method> batchedMethods) {
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.splitOnFailure = splitOnFailure;
+        this.batchedMethods = batchedMethods;
+    }
+
+    /**
+     * @return the maximum number of messages of a batch.
+     */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * @return the maximum time (in ms) of a batch.
+     */
+    public long getBatchTimeout() {
+        return this.batchTimeout;
+    }
+
+    /**
+     * @return true if a batch is split when a message fails, false if all of it is rolled back.
+     */
+    public boolean isSplitOnFailure() {
+        return this.splitOnFailure;
+    }
+
+    /**
+     * Checks if the given method of the listener interface is delivered in batches.
+     * @param method the called method
+     * @return true if the method is delivered in batches
+     */
+    public boolean isBatched(final Method method) {
+        return this.batchedMethods.contains(method);
+    }
+
+    /**
+     * Creates the batch of a new endpoint.
+     * @return the batch of the endpoint
+     */
+    public MDBDeliveryBatch createBatch() {
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(this);
+        this.batches.put(batch, Boolean.TRUE);
+        return batch;
+    }
+
+    /**
+     * Commits the batch of a released endpoint and forgets it.
+     * @param batch the batch of the endpoint
+     */
+    public void releaseBatch(final MDBDeliveryBatch batch) {
+        this.batches.remove(batch);
+        batch.flush();
+    }
+
+    /**
+     * Starts the thread committing the batches of the idle endpoints.
+     */
+    public void start() {
+        this.running = true;
+        this.flusher = new Thread(new Runnable() {
+            public void run() {
+                flushExpiredBatches();
+            }
+        }, "EasyBeans MDB batch flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Stops the flusher thread and commits the pending batches.
+     */
+    public void stop() {
+        this.running = false;
+        if (this.flusher != null) {
+            this.flusher.interrupt();
+            try {
+                this.flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.flusher = null;
+        }
+        for (MDBDeliveryBatch batch : this.batches.keySet()) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Loop of the flusher thread.
+     */
+    private void flushExpiredBatches() {
+        long period = Math.max(MIN_FLUSH_PERIOD, this.batchTimeout / 2);
+        while (this.running) {
+            try {
+                Thread.sleep(period);
+            } catch (InterruptedException e) {
+                // Stopped
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (MDBDeliveryBatch batch : this.batches.keySet()) {
+                try {
+                    batch.flushIfExpired(now);
+                } catch (RuntimeException e) {
+                    logger.error("Unable to commit the batch ''{0}''", batch, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a committed batch.
+     * @param size the number of messages of the batch
+     * @param time the time (in ns) spent to commit the batch
+     */
+    protected void batchCommitted(final int size, final long time) {
+        this.committedBatches.incrementAndGet();
+        this.committedMessages.addAndGet(size);
+        this.commitTime.addAndGet(time);
+        updateMax(this.maxBatchSize, size);
+        updateMax(this.maxCommitTime, time);
+    }
+
+    /**
+     * Records a rolled back batch.
+     */
+    protected void batchRolledBack() {
+        this.rolledBackBatches.incrementAndGet();
+    }
+
+    /**
+     * Updates the given maximum with the given value.
+     * @param max the maximum
+     * @param value the new value
+     */
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of committed batches.
+     */
+    public long getCommittedBatches() {
+        return this.committedBatches.get();
+    }
+
+    /**
+     * @return the number of messages of the committed batches.
+     */
+    public long getCommittedMessages() {
+        return this.committedMessages.get();
+    }
+
+    /**
+     * @return the number of rolled back batches.
+     */
+    public long getRolledBackBatches() {
+        return this.rolledBackBatches.get();
+    }
+
+    /**
+     * @return the average number of messages of the committed batches.
+     */
+    public double getAverageBatchSize() {
+        long count = this.committedBatches.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) this.committedMessages.get() / count;
+    }
+
+    /**
+     * @return the number of messages of the biggest committed batch.
+     */
+    public long getMaxBatchSize() {
+        return this.maxBatchSize.get();
+    }
+
+    /**
+     * @return the average time (in ms) spent to commit a batch.
+     */
+    public double getAverageCommitTime() {
+        long count = this.committedBatches.get();
+        if (count == 0) {
+            return 0;
+        }
+        return this.commitTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * @return the longest time (in ms) spent to commit a batch.
+     */
+    public double getMaxCommitTime() {
+        return this.maxCommitTime.get() / 1000000.0;
+    }
+
+    /**
+     * @return string representation of the settings.
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + this.batchSize + ", timeout=" + this.batchTimeout + "ms, failure="
+                + (this.splitOnFailure ? SPLIT_ON_FAILURE : ROLLBACK_ON_FAILURE) + "]";
+    }
+
+}
@@ -25,10 +25,6 @@
 
 package org.ow2.easybeans.container.mdb;
 
-import java.util.Collection;
-
-import javax.ejb.Timer;
-
 import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.FactoryException;
 import org.ow2.easybeans.api.bean.EasyBeansMDB;
@@ -117,10 +113,7 @@ public abstract class MDBFactory extends AbsFactory<EasyBeansMDB> implements IPo
     @Override
     public void stop() {
         // Stop all timers
-        Collection<Timer> timers = getTimerService().getTimers();
-        for (Timer timer : timers) {
-            timer.cancel();
-        }
+        getTimerService().detachTimers();
 
         super.stop();
 
@@ -28,17 +28,20 @@ package org.ow2.easybeans.container.mdb;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.ejb.Timer;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
+import javax.resource.spi.endpoint.MessageEndpoint;
 
 import org.ow2.easybeans.api.bean.EasyBeansMDB;
 import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocation;
+import org.ow2.easybeans.container.FactoryMethod;
 import org.ow2.easybeans.event.bean.EventBeanInvocationEnd;
 import org.ow2.easybeans.event.bean.EventBeanInvocationError;
-import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.util.auditreport.api.IAuditID;
 import org.ow2.util.auditreport.api.ICurrentInvocationID;
 import org.ow2.util.auditreport.impl.AuditIDImpl;
@@ -57,6 +60,64 @@ public class MDBListenerEndpointInvocationHandler extends MDBMessageEndPoint imp
      */
     private static Log logger = LogFactory.getLog(MDBListenerEndpointInvocationHandler.class);
 
+    /**
+     * Id of the getEasyBeansFactory() method.
+     */
+    private static final int GET_EASYBEANS_FACTORY = 0;
+
+    /**
+     * Id of the getMDBMessageEndPointFactory() method.
+     */
+    private static final int GET_MDB_MESSAGE_END_POINT_FACTORY = 1;
+
+    /**
+     * Id of the getEasyBeansMDB() method.
+     */
+    private static final int GET_EASYBEANS_MDB = 2;
+
+    /**
+     * Id of the notifyTimeout(Timer) method.
+     */
+    private static final int NOTIFY_TIMEOUT = 3;
+
+    /**
+     * Id of the release() method.
+     */
+    private static final int RELEASE = 4;
+
+    /**
+     * Id of the beforeDelivery(Method) method.
+     */
+    private static final int BEFORE_DELIVERY = 5;
+
+    /**
+     * Id of the afterDelivery() method.
+     */
+    private static final int AFTER_DELIVERY = 6;
+
+    /**
+     * Methods of the message endpoint that are handled by this object and not by the bean.
+     */
+    private static final Map<Method, Integer> ENDPOINT_METHODS = new HashMap<Method, Integer>();
+
+    static {
+        try {
+            ENDPOINT_METHODS.put(EZBMessageEndPoint.class.getMethod("getEasyBeansFactory"),
+                    Integer.valueOf(GET_EASYBEANS_FACTORY));
+            ENDPOINT_METHODS.put(EZBMessageEndPoint.class.getMethod("getMDBMessageEndPointFactory"),
+                    Integer.valueOf(GET_MDB_MESSAGE_END_POINT_FACTORY));
+            ENDPOINT_METHODS.put(EZBMessageEndPoint.class.getMethod("getEasyBeansMDB"), Integer.valueOf(GET_EASYBEANS_MDB));
+            ENDPOINT_METHODS.put(EZBMessageEndPoint.class.getMethod("notifyTimeout", Timer.class),
+                    Integer.valueOf(NOTIFY_TIMEOUT));
+            ENDPOINT_METHODS.put(MessageEndpoint.class.getMethod("release"), Integer.valueOf(RELEASE));
+            ENDPOINT_METHODS.put(MessageEndpoint.class.getMethod("beforeDelivery", Method.class),
+                    Integer.valueOf(BEFORE_DELIVERY));
+            ENDPOINT_METHODS.put(MessageEndpoint.class.getMethod("afterDelivery"), Integer.valueOf(AFTER_DELIVERY));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Cannot find the methods of the message endpoint", e);
+        }
+    }
+
 
     /**
      * Event dispatcher.
@@ -68,6 +129,11 @@ public class MDBListenerEndpointInvocationHandler extends MDBMessageEndPoint imp
      */
     private Class<?> listenerInterface = null;
 
+    /**
+     * Batch of the messages delivered to this endpoint (null if the batched delivery is disabled).
+     */
+    private MDBDeliveryBatch deliveryBatch = null;
+
     /**
      * Initialize the handler with the given factory and the given instance of the MDB.
      * @param mdbMessageEndPointFactory the MDB factory
@@ -78,7 +144,11 @@ public class MDBListenerEndpointInvocationHandler extends MDBMessageEndPoint imp
             final EasyBeansMDB easyBeansMDB, final Class<?> listenerInterface) {
         super(mdbMessageEndPointFactory, easyBeansMDB);
         this.listenerInterface = listenerInterface;
-        this.eventDispatcher = ((MDBMessageEndPointFactory) getEasyBeansFactory()).getEventDispatcher();
+        this.eventDispatcher = mdbMessageEndPointFactory.getEventDispatcher();
+        MDBDeliveryBatching deliveryBatching = mdbMessageEndPointFactory.getDeliveryBatching();
+        if (deliveryBatching != null) {
+            this.deliveryBatch = deliveryBatching.createBatch();
+        }
     }
 
     /**
@@ -104,44 +174,72 @@ public class MDBListenerEndpointInvocationHandler extends MDBMessageEndPoint imp
      *         the proxy instance.
      */
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        String methodName = method.getName();
-
-        if ("getEasyBeansFactory".equals(methodName)) {
-            return getEasyBeansFactory();
-        } else if ("getMDBMessageEndPointFactory".equals(methodName)) {
-            return getMDBMessageEndPointFactory();
-        } else if ("getEasyBeansMDB".equals(methodName)) {
-            return getEasyBeansMDB();
-        } else if ("notifyTimeout".equals(methodName)) {
-            notifyTimeout((Timer) args[0]);
-            return null;
-        } else if ("release".equals(methodName)) {
-            release();
-            return null;
-        } else if ("beforeDelivery".equals(methodName)) {
-            beforeDelivery((Method) args[0]);
-            return null;
-        } else if ("afterDelivery".equals(methodName)) {
-            afterDelivery();
-            return null;
+        Integer endpointMethod = ENDPOINT_METHODS.get(method);
+        if (endpointMethod != null) {
+            switch (endpointMethod.intValue()) {
+                case GET_EASYBEANS_FACTORY:
+                    return getEasyBeansFactory();
+                case GET_MDB_MESSAGE_END_POINT_FACTORY:
+                    return getMDBMessageEndPointFactory();
+                case GET_EASYBEANS_MDB:
+                    return getEasyBeansMDB();
+                case NOTIFY_TIMEOUT:
+                    notifyTimeout((Timer) args[0]);
+                    return null;
+                case RELEASE:
+                    release();
+                    return null;
+                case BEFORE_DELIVERY:
+                    beforeDelivery((Method) args[0]);
+                    return null;
+                case AFTER_DELIVERY:
+                    afterDelivery();
+                    return null;
+                default:
+                    throw new IllegalStateException("Unknown endpoint method '" + method + "'");
+            }
+        }
+
+        // Method resolved when the factory has been initialized
+        FactoryMethod factoryMethod = getMDBMessageEndPointFactory().getListenerMethod(method);
+        if (factoryMethod == null) {
+            throw new IllegalStateException("Cannot deliver the message", new NoSuchMethodException("The method '" + method
+                    + "' is not found on the bean '" + getEasyBeansMDB().getClass().getName() + "'"));
+        }
+        MDBDeliveryBatch batch = this.deliveryBatch;
+        if (batch != null && batch.isBatched(method)) {
+            return batch.deliver(this, factoryMethod, args);
+        }
+        return invokeMethodOnMDB(factoryMethod, args);
+    }
+
+    /**
+     * Commits the pending batch of messages (if any) and releases the endpoint.
+     */
+    @Override
+    public void release() {
+        if (this.deliveryBatch != null) {
+            getMDBMessageEndPointFactory().getDeliveryBatching().releaseBatch(this.deliveryBatch);
         }
-        return invokeMethodOnMDB(method, args);
+        super.release();
     }
 
     /**
      * Invoke the given method on the MDB.
-     * @param method the method that needs to be called on the Message Driven Bean.
+     * @param factoryMethod the method that needs to be called on the Message Driven Bean.
      * @param args the arguments of the method
      * @return the response of the call (or null if there is no answer)
      */
-    protected Object invokeMethodOnMDB(final Method method, final Object[] args) {
+    protected Object invokeMethodOnMDB(final FactoryMethod factoryMethod, final Object[] args) {
+        MDBMessageEndPointFactory factory = getMDBMessageEndPointFactory();
+
         // set classloader to EJB classloader
         ClassLoader oldCL = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(getEasyBeansFactory().getContainer().getClassLoader());
+        Thread.currentThread().setContextClassLoader(factory.getContainer().getClassLoader());
 
         // Do some stuff on ID only if object is there, which means that audit
         // component is enabled and that this is an MDB JMS
-        ICurrentInvocationID currentInvocationID = getMDBMessageEndPointFactory().getCurrentInvocationID();
+        ICurrentInvocationID currentInvocationID = factory.getCurrentInvocationID();
 
         if (currentInvocationID != null && MessageListener.class.equals(this.listenerInterface)) {
             // Check if there is an ID in the message
@@ -167,46 +265,40 @@ public class MDBListenerEndpointInvocationHandler extends MDBMessageEndPoint imp
             }
         }
 
-        // Create the bean invocation begin event.
-        String methodEventProviderId = getMDBMessageEndPointFactory().getJ2EEManagedObjectId() + "/"
-                + J2EEManagedObjectNamingHelper.getMethodSignature(method);
-        EZBEventBeanInvocation event = getMDBMessageEndPointFactory().getInvocationEventBegin(methodEventProviderId, args);
-        long number = event.getInvocationNumber();
-        this.eventDispatcher.dispatch(event);
-        EZBEventBeanInvocation endEvent = null;
-
-        Method mdbMethod = null;
-        // Bean is implementing the interface, keep the given method
-        if (this.listenerInterface.isInstance(getEasyBeansMDB())) {
-            mdbMethod = method;
-        } else {
-            // search the method with the same signature on the bean
-            try {
-                mdbMethod = getEasyBeansMDB().getClass().getMethod(method.getName(), method.getParameterTypes());
-            } catch (SecurityException e) {
-                throw new IllegalStateException("Cannot deliver the message", e);
-            } catch (NoSuchMethodException e) {
-                throw new IllegalStateException("Cannot deliver the message", e);
-            }
+        // Events are only created and dispatched if someone is listening them
+        String methodEventProviderId = factoryMethod.getMethodId();
+        boolean enabledEvent = factory.isInvocationEventListened(factoryMethod);
+        long number = 0;
+        if (enabledEvent) {
+            EZBEventBeanInvocation event = factory.getInvocationEventBegin(methodEventProviderId, args);
+            number = event.getInvocationNumber();
+            this.eventDispatcher.dispatch(event);
         }
+        EZBEventBeanInvocation endEvent = null;
 
-
-
-        // invoke by using reflection
+        // invoke by using the generated invoker (or by reflection)
         Object result = null;
         try {
-            result = mdbMethod.invoke(getEasyBeansMDB(), args);
-            endEvent = new EventBeanInvocationEnd(methodEventProviderId, number, null);
+            result = factory.invokeBusinessMethod(factoryMethod, getEasyBeansMDB(), args);
+            if (enabledEvent) {
+                endEvent = new EventBeanInvocationEnd(methodEventProviderId, number, null);
+            }
         } catch (IllegalArgumentException e) {
             logger.error("Cannot deliver the message", e);
-            endEvent = new EventBeanInvocationError(methodEventProviderId, number, e);
+            if (enabledEvent) {
+                endEvent = new EventBeanInvocationError(methodEventProviderId, number, e);
+            }
             throw new IllegalStateException("Cannot deliver the message", e);
         } catch (IllegalAccessException e) {
             logger.error("Cannot deliver the message", e);
-            endEvent = new EventBeanInvocationError(methodEventProviderId, number, e);
+            if (enabledEvent) {
+                endEvent = new EventBeanInvocationError(methodEventProviderId, number, e);
+            }
             throw new IllegalStateException("Cannot deliver the message", e);
         } catch (InvocationTargetException e) {
-            endEvent = new EventBeanInvocationError(methodEventProviderId, number, e);
+            if (enabledEvent) {
+                endEvent = new EventBeanInvocationError(methodEventProviderId, number, e);
+            }
             logger.error("Cannot deliver the message", e.getTargetException());
             throw new IllegalStateException("Cannot deliver the message", e.getTargetException());
         } finally {
@@ -30,6 +30,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +53,7 @@ import org.ow2.easybeans.api.FactoryException;
 import org.ow2.easybeans.api.bean.EasyBeansMDB;
 import org.ow2.easybeans.api.bean.info.IMethodInfo;
 import org.ow2.easybeans.component.itf.JMSComponent;
+import org.ow2.easybeans.container.FactoryMethod;
 import org.ow2.easybeans.container.info.MessageDrivenInfo;
 import org.ow2.easybeans.resolver.api.EZBJNDIResolverException;
 import org.ow2.easybeans.rpc.util.Hash;
@@ -120,6 +122,31 @@ public class MDBMessageEndPointFactory extends MDBFactory implements MessageEndp
      */
     private Map<Method, Boolean> transactedMethods = null;
 
+    /**
+     * Bean methods to call for the methods of the listener interface.
+     */
+    private Map<Method, FactoryMethod> listenerMethods = null;
+
+    /**
+     * Maximum number of messages delivered in a single transaction (batched delivery disabled if lower than 2).
+     */
+    private int batchSize = 1;
+
+    /**
+     * Maximum time (in ms) of a batch.
+     */
+    private long batchTimeout = MDBDeliveryBatching.DEFAULT_BATCH_TIMEOUT;
+
+    /**
+     * Split the batch (true) or roll back all of it (false) when a message fails.
+     */
+    private boolean splitOnFailure = true;
+
+    /**
+     * Batched delivery (null if disabled).
+     */
+    private MDBDeliveryBatching deliveryBatching = null;
+
     /**
      * Default constructor (delegate to super class).
      * @param className name of this factory (name of class that is managed)
@@ -161,15 +188,70 @@ public class MDBMessageEndPointFactory extends MDBFactory implements MessageEndp
                     + getClassName() + "' of container '" + getContainer().getName() + "'");
         }
 
+        initListenerMethods();
 
         initActivationSpec();
 
+        initDeliveryBatching();
+
         validateActivationSpec();
 
         activate();
     }
 
 
+    /**
+     * Resolves once the bean method (and its event id) called for each method
+     * of the listener interface.
+     */
+    private void initListenerMethods() {
+        Map<Method, FactoryMethod> methods = new HashMap<Method, FactoryMethod>();
+        for (Method method : this.listenerInterface.getMethods()) {
+            // Bean methods are registered with the same hash (name and descriptor)
+            FactoryMethod factoryMethod = getFactoryMethods().get(Long.valueOf(Hash.hashMethod(method)));
+            if (factoryMethod != null) {
+                methods.put(method, factoryMethod);
+            } else {
+                logger.warn("No method ''{0}'' found on the bean ''{1}'' for the listener interface ''{2}''", method
+                        .getName(), getClassName(), this.listenerInterface.getName());
+            }
+        }
+        this.listenerMethods = methods;
+    }
+
+    /**
+     * Gets the bean method to call for the given method of the message endpoint.
+     * @param method the method called on the message endpoint
+     * @return the bean method or null if the bean has no such method
+     */
+    public FactoryMethod getListenerMethod(final Method method) {
+        FactoryMethod factoryMethod = this.listenerMethods.get(method);
+        if (factoryMethod == null) {
+            // Not a method of the listener interface (java.lang.Object methods for example)
+            factoryMethod = getFactoryMethods().get(Long.valueOf(Hash.hashMethod(method)));
+        }
+        return factoryMethod;
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * Overridden so that it can be called by the message endpoints of this factory.
+     */
+    @Override
+    protected Object invokeBusinessMethod(final FactoryMethod factoryMethod, final Object bean, final Object[] args)
+            throws IllegalAccessException, InvocationTargetException {
+        return super.invokeBusinessMethod(factoryMethod, bean, args);
+    }
+
+    /**
+     * {@inheritDoc}<br>
+     * Overridden so that it can be called by the message endpoints of this factory.
+     */
+    @Override
+    protected boolean isInvocationEventListened(final FactoryMethod factoryMethod) {
+        return super.isInvocationEventListened(factoryMethod);
+    }
+
     /**
      * Call setters method on the activation spec object.
      * @throws FactoryException if activation spec object is not configured.
@@ -234,6 +316,9 @@ public class MDBMessageEndPointFactory extends MDBFactory implements MessageEndp
                     this.jmsComponent, activationConfigProperties);
         }
 
+        // Batched delivery is configured by EasyBeans, not by the activation spec
+        initBatchProperties(activationConfigProperties);
+
         Set<Entry<String, String>> entrySet = activationConfigProperties.entrySet();
         Iterator<Entry<String, String>> it = entrySet.iterator();
         while (it.hasNext()) {
@@ -244,6 +329,80 @@ public class MDBMessageEndPointFactory extends MDBFactory implements MessageEndp
 
     }
 
+    /**
+     * Reads (and removes) the properties of the batched delivery from the given activation config properties.
+     * @param activationConfigProperties the activation config properties
+     * @throws FactoryException if a value is invalid
+     */
+    private void initBatchProperties(final Map<String, String> activationConfigProperties) throws FactoryException {
+        String size = activationConfigProperties.remove(MDBDeliveryBatching.BATCH_SIZE_PROPERTY);
+        String timeout = activationConfigProperties.remove(MDBDeliveryBatching.BATCH_TIMEOUT_PROPERTY);
+        String failure = activationConfigProperties.remove(MDBDeliveryBatching.BATCH_FAILURE_PROPERTY);
+        try {
+            if (size != null) {
+                this.batchSize = Integer.parseInt(size.trim());
+            } else if (timeout != null) {
+                // Only limited by the time
+                this.batchSize = Integer.MAX_VALUE;
+            }
+            if (timeout != null) {
+                this.batchTimeout = Long.parseLong(timeout.trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new FactoryException("Invalid batch size '" + size + "' or timeout '" + timeout + "' for bean '"
+                    + getBeanInfo().getName() + "'.", e);
+        }
+        if (failure != null) {
+            if (MDBDeliveryBatching.SPLIT_ON_FAILURE.equalsIgnoreCase(failure.trim())) {
+                this.splitOnFailure = true;
+            } else if (MDBDeliveryBatching.ROLLBACK_ON_FAILURE.equalsIgnoreCase(failure.trim())) {
+                this.splitOnFailure = false;
+            } else {
+                throw new FactoryException("Invalid batch failure policy '" + failure + "' for bean '"
+                        + getBeanInfo().getName() + "'. Expected values are '" + MDBDeliveryBatching.SPLIT_ON_FAILURE
+                        + "' or '" + MDBDeliveryBatching.ROLLBACK_ON_FAILURE + "'.");
+            }
+        }
+    }
+
+    /**
+     * Starts the batched delivery of the transacted methods if it has been configured.
+     */
+    private void initDeliveryBatching() {
+        if (this.batchSize < 2 || this.batchTimeout <= 0) {
+            return;
+        }
+        Set<Method> batchedMethods = new HashSet<Method>();
+        for (Method method : this.listenerMethods.keySet()) {
+            boolean transacted = false;
+            try {
+                transacted = isDeliveryTransacted(method);
+            } catch (NoSuchMethodException e) {
+                logger.debug("No transaction attribute for method ''{0}''", method, e);
+            }
+            if (transacted) {
+                batchedMethods.add(method);
+            }
+        }
+        if (batchedMethods.isEmpty()) {
+            logger.warn("Batched delivery is ignored for bean ''{0}'' as its listener methods are not transacted",
+                    getBeanInfo().getName());
+            return;
+        }
+        this.deliveryBatching = new MDBDeliveryBatching(this.batchSize, this.batchTimeout, this.splitOnFailure,
+                batchedMethods);
+        this.deliveryBatching.start();
+        logger.info("Batched delivery ''{0}'' enabled for bean ''{1}''", this.deliveryBatching, getBeanInfo().getName());
+    }
+
+    /**
+     * Gets the batched delivery of this factory.
+     * @return the batched delivery settings and statistics (or null if the batched delivery is disabled)
+     */
+    public MDBDeliveryBatching getDeliveryBatching() {
+        return this.deliveryBatching;
+    }
+
     /**
      * Apply the property with its given value on the activation spec object.
      * @param key the property's key
@@ -436,6 +595,11 @@ public class MDBMessageEndPointFactory extends MDBFactory implements MessageEndp
         // deactivate this factory
         this.resourceAdapter.endpointDeactivation(this, this.activationSpec);
 
+        // commit the pending batches
+        if (this.deliveryBatching != null) {
+            this.deliveryBatching.stop();
+        }
+
     }
 
 
@@ -28,14 +28,11 @@ package org.ow2.easybeans.container.session.singleton;
 import static org.ow2.easybeans.api.OperationState.BUSINESS_METHOD;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Collection;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.ejb.NoSuchEJBException;
-import javax.ejb.Timer;
 
 import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.FactoryException;
@@ -46,13 +43,13 @@ import org.ow2.easybeans.api.bean.info.IApplicationExceptionInfo;
 import org.ow2.easybeans.api.bean.info.ILockTypeInfo;
 import org.ow2.easybeans.api.bean.info.IMethodInfo;
 import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocation;
+import org.ow2.easybeans.container.FactoryMethod;
 import org.ow2.easybeans.container.session.JPoolWrapperFactory;
 import org.ow2.easybeans.container.session.PoolWrapper;
 import org.ow2.easybeans.container.session.SessionFactory;
 import org.ow2.easybeans.container.session.stateful.ConcurrentBuilderException;
 import org.ow2.easybeans.event.bean.EventBeanInvocationEnd;
 import org.ow2.easybeans.event.bean.EventBeanInvocationError;
-import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.easybeans.rpc.JEJBResponse;
 import org.ow2.easybeans.rpc.api.EJBLocalRequest;
 import org.ow2.easybeans.rpc.api.EJBResponse;
@@ -235,9 +232,9 @@ public class SingletonSessionFactory extends SessionFactory<EasyBeansSingletonSB
                     return ejbResponse;
                 }
             }
-            Method m = getHashes().get(methodHash);
+            FactoryMethod factoryMethod = getFactoryMethods().get(methodHash);
 
-            if (m == null) {
+            if (factoryMethod == null) {
                 ejbResponse.setRPCException(new RPCException("Cannot find method called on the bean '" + getClassName() + "'."));
                 return ejbResponse;
             }
@@ -259,8 +256,7 @@ public class SingletonSessionFactory extends SessionFactory<EasyBeansSingletonSB
 
 
             // Dispatch the bean invocation begin event.
-            String methodEventProviderId = getJ2EEManagedObjectId() + "/" + J2EEManagedObjectNamingHelper.getMethodSignature(m)
-            + "@Local";
+            String methodEventProviderId = factoryMethod.getLocalId();
             boolean enabledEvent = !localCallRequest.isCalledFromRemoteRequest();
 
             EZBEventBeanInvocation event = null;
@@ -279,7 +275,7 @@ public class SingletonSessionFactory extends SessionFactory<EasyBeansSingletonSB
             }
 
             try {
-                value = m.invoke(this.singletonBean, localCallRequest.getMethodArgs());
+                value = invokeBusinessMethod(factoryMethod, this.singletonBean, localCallRequest.getMethodArgs());
             } catch (IllegalArgumentException e) {
                 ejbResponse.setRPCException(new RPCException(e));
                 if (enabledEvent) {
@@ -353,10 +349,7 @@ public class SingletonSessionFactory extends SessionFactory<EasyBeansSingletonSB
     public void stop() {
         try {
             // Stop all timers
-            Collection<Timer> timers = getTimerService().getTimers();
-            for (Timer timer : timers) {
-                timer.cancel();
-            }
+            getTimerService().detachTimers();
         } finally {
             // push back into the pool
             if (this.singletonBean != null) {
@@ -0,0 +1,178 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.session.stateful;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Registry of the locks used to serialize the access to stateful instances.
+ * There is one lock by bean id, the registry doesn't use any global monitor
+ * so that calls on different beans never wait for each other. The contention
+ * on the locks is recorded, uncontended acquisitions don't update any shared
+ * counter.
+ * @author Florent Benoit
+ */
+public class StatefulLockRegistry {
+
+    /**
+     * Locks by bean id.
+     */
+    private final ConcurrentMap<Long, Lock> locks = new ConcurrentHashMap<Long, Lock>();
+
+    /**
+     * Number of acquisitions that had to wait.
+     */
+    private final AtomicLong contendedCount = new AtomicLong();
+
+    /**
+     * Number of acquisitions that failed (timeout or concurrent access denied).
+     */
+    private final AtomicLong deniedCount = new AtomicLong();
+
+    /**
+     * Total time spent waiting for locks (in ns).
+     */
+    private final AtomicLong waitTime = new AtomicLong();
+
+    /**
+     * Gets the lock of the given bean, creating it if needed.
+     * @param id the id of the bean
+     * @return the lock of the bean
+     */
+    public Lock getLock(final Long id) {
+        Lock lock = this.locks.get(id);
+        if (lock == null) {
+            Lock newLock = new ReentrantLock();
+            lock = this.locks.putIfAbsent(id, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Acquires the lock of the given bean, waiting until it is available.
+     * @param id the id of the bean
+     * @return the acquired lock
+     */
+    public Lock lock(final Long id) {
+        Lock lock = getLock(id);
+        if (!lock.tryLock()) {
+            this.contendedCount.incrementAndGet();
+            long start = System.nanoTime();
+            lock.lock();
+            this.waitTime.addAndGet(System.nanoTime() - start);
+        }
+        return lock;
+    }
+
+    /**
+     * Tries to acquire the lock of the given bean within the given time.
+     * @param id the id of the bean
+     * @param timeout the maximum time to wait (0 to not wait)
+     * @param unit the unit of the timeout
+     * @return the acquired lock or null if the lock was not acquired
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public Lock tryLock(final Long id, final long timeout, final TimeUnit unit) throws InterruptedException {
+        Lock lock = getLock(id);
+        if (!lock.tryLock()) {
+            this.contendedCount.incrementAndGet();
+            if (timeout <= 0) {
+                this.deniedCount.incrementAndGet();
+                return null;
+            }
+            long start = System.nanoTime();
+            boolean acquired = false;
+            try {
+                acquired = lock.tryLock(timeout, unit);
+            } finally {
+                this.waitTime.addAndGet(System.nanoTime() - start);
+            }
+            if (!acquired) {
+                this.deniedCount.incrementAndGet();
+                return null;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Removes the lock of the given bean (when the bean is removed).
+     * @param id the id of the bean
+     */
+    public void remove(final Long id) {
+        if (id != null) {
+            this.locks.remove(id);
+        }
+    }
+
+    /**
+     * Removes all the locks.
+     */
+    public void clear() {
+        this.locks.clear();
+    }
+
+    /**
+     * @return the number of locks in the registry.
+     */
+    public int size() {
+        return this.locks.size();
+    }
+
+    /**
+     * @return the number of acquisitions that had to wait for another thread.
+     */
+    public long getContendedCount() {
+        return this.contendedCount.get();
+    }
+
+    /**
+     * @return the number of acquisitions that failed.
+     */
+    public long getDeniedCount() {
+        return this.deniedCount.get();
+    }
+
+    /**
+     * @return the average time spent waiting for a contended lock (in microseconds).
+     */
+    public long getAverageWaitTime() {
+        long count = this.contendedCount.get();
+        if (count == 0) {
+            return 0L;
+        }
+        return this.waitTime.get() / count / 1000L;
+    }
+
+}
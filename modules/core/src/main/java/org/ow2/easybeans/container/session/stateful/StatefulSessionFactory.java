@@ -27,15 +27,22 @@ package org.ow2.easybeans.container.session.stateful;
 
 import static org.ow2.easybeans.api.OperationState.BUSINESS_METHOD;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.ejb.EJBException;
 import javax.ejb.NoSuchEJBException;
@@ -47,6 +54,7 @@ import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.EZBStatefulSessionFactory;
 import org.ow2.easybeans.api.FactoryException;
 import org.ow2.easybeans.api.OperationState;
+import org.ow2.easybeans.api.container.EZBSessionContext;
 import org.ow2.easybeans.api.bean.EasyBeansSFSB;
 import org.ow2.easybeans.api.bean.info.IAccessTimeoutInfo;
 import org.ow2.easybeans.api.bean.info.IApplicationExceptionInfo;
@@ -54,16 +62,20 @@ import org.ow2.easybeans.api.bean.info.IMethodInfo;
 import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocation;
 import org.ow2.easybeans.component.api.EZBComponentException;
 import org.ow2.easybeans.component.util.TimerCallback;
+import org.ow2.easybeans.container.FactoryMethod;
+import org.ow2.easybeans.container.session.EasyBeansSessionContext;
 import org.ow2.easybeans.container.session.JPoolWrapperFactory;
 import org.ow2.easybeans.container.session.SessionFactory;
+import org.ow2.easybeans.container.session.stateful.passivation.PassivationHelper;
+import org.ow2.easybeans.container.session.stateful.passivation.PassivationStore;
 import org.ow2.easybeans.event.bean.EventBeanInvocationEnd;
 import org.ow2.easybeans.event.bean.EventBeanInvocationError;
-import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.easybeans.persistence.EZBExtendedEntityManager;
 import org.ow2.easybeans.rpc.JEJBResponse;
 import org.ow2.easybeans.rpc.api.EJBLocalRequest;
 import org.ow2.easybeans.rpc.api.EJBResponse;
 import org.ow2.easybeans.rpc.api.RPCException;
+import org.ow2.easybeans.util.TimingWheel;
 import org.ow2.util.auditreport.api.IAuditID;
 import org.ow2.util.ee.metadata.ejbjar.api.struct.IJEjbStatefulTimeout;
 import org.ow2.util.log.Log;
@@ -71,6 +83,7 @@ import org.ow2.util.log.LogFactory;
 import org.ow2.util.pool.api.PoolException;
 import org.ow2.util.pool.impl.JPool;
 import org.ow2.util.pool.impl.enhanced.EnhancedCluePool;
+import org.ow2.util.pool.impl.enhanced.api.basic.CreatePoolItemException;
 import org.ow2.util.pool.impl.enhanced.api.clue.basiccluemanager.IClueAccessor;
 import org.ow2.util.pool.impl.enhanced.impl.clue.basiccluemanager.BasicClueManager;
 import org.ow2.util.pool.impl.enhanced.manager.clue.optional.IPoolItemRemoveClueManager;
@@ -89,6 +102,34 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
      */
     private static final String STATEFUL_TIMEOUT_INTERVAL_FLAG = "easybeans.stateful.timeout.check.interval";
 
+    /**
+     * System property giving the idle time (in ms) after which an instance is
+     * passivated (0 to disable).
+     */
+    private static final String PASSIVATION_IDLE_TIME_FLAG = "easybeans.stateful.passivation.idle";
+
+    /**
+     * System property giving the maximum number of instances kept in memory
+     * before passivating the least recently used ones (0 for no limit).
+     */
+    private static final String PASSIVATION_MAX_ACTIVE_FLAG = "easybeans.stateful.passivation.max.active";
+
+    /**
+     * System property giving the maximum size (in bytes) of the passivation
+     * store. Instances stay in memory once this size is reached.
+     */
+    private static final String PASSIVATION_STORE_MAX_SIZE_FLAG = "easybeans.stateful.passivation.store.max.size";
+
+    /**
+     * System property giving the directory of the passivation store.
+     */
+    private static final String PASSIVATION_DIRECTORY_FLAG = "easybeans.stateful.passivation.directory";
+
+    /**
+     * System property used to configure the interval of the passivation check.
+     */
+    private static final String PASSIVATION_INTERVAL_FLAG = "easybeans.stateful.passivation.check.interval";
+
     /**
      * Logger.
      */
@@ -108,12 +149,12 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
     /**
      * Locks by beans.
      */
-    private final Map<Long, Lock> locks;
+    private final StatefulLockRegistry locks;
 
     /**
      * Locks by beans having StatefulTimeout.
      */
-    private final Map<Long, Lock> statefulTimeoutLocks;
+    private final StatefulLockRegistry statefulTimeoutLocks;
 
     /**
      * Extended Persistence contexts for a given bean.
@@ -134,23 +175,108 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
     /**
      * The interval in ms between to check of idle timeout
      */
-    private long statefulTimeoutTimerInterval = 480000;
+    private long statefulTimeoutTimerInterval = 1000;
+
+    /**
+     * Number of buckets of the timing wheel used to check stateful timeout.
+     */
+    private static final int STATEFUL_TIMEOUT_WHEEL_SIZE = 512;
+
+    /**
+     * Deadlines of the instances having a stateful timeout.
+     */
+    private TimingWheel<Long> statefulTimeoutWheel = null;
 
     /**
-     * List of running scheduled jobs used to check stateful timeout
+     * List of running scheduled jobs (stateful timeout and passivation checks)
      */
     private final List<String> scheduledJobIds = new ArrayList<String>();
 
     /**
-     * Property key used to store the bean id for a check timeout scheduled job
+     * Property key used to identify the stateful timeout scheduled job
      */
-    private static final String BEAN_ID_KEY = "BEAN-ID";
+    private static final String STATEFUL_TIMEOUT_KEY = "STATEFUL-TIMEOUT";
 
     /**
      * List of bean ids removed by a scheduled job and for which the client has not already be notified of the bean removal
      */
     private final List<Long> killedTimedoutIds = new ArrayList<Long>();
 
+    /**
+     * Property key used to identify the passivation scheduled job.
+     */
+    private static final String PASSIVATION_KEY = "PASSIVATION";
+
+    /**
+     * Idle time (in ms) after which an instance is passivated (0 if disabled).
+     */
+    private long passivationIdleTime = 0L;
+
+    /**
+     * Maximum number of instances kept in memory (0 if no limit).
+     */
+    private int passivationMaxActive = 0;
+
+    /**
+     * Maximum size of the passivation store in bytes.
+     */
+    private long passivationStoreMaxSize = 256L * 1024L * 1024L;
+
+    /**
+     * Interval in ms between two passivation checks.
+     */
+    private long passivationInterval = 60000L;
+
+    /**
+     * Store of the passivated instances (created on first passivation).
+     * Published without lock as it is read on each call of a bean.
+     */
+    private volatile PassivationStore passivationStore = null;
+
+    /**
+     * Lock used to create and close the passivation store.
+     */
+    private final Object passivationStoreLock = new Object();
+
+    /**
+     * Deadlines of the passivated instances having a stateful timeout.
+     */
+    private final Map<Long, Long> passivatedTimeouts = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * Instances in memory with their last access time (only tracked if
+     * passivation is enabled). They're sorted by the passivation check.
+     */
+    private final Map<Long, Long> activeBeans = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * Instances being removed from the pool as they're passivated (not
+     * destroyed).
+     */
+    private final Set<EasyBeansSFSB> passivatedInstances = Collections.synchronizedSet(Collections
+            .newSetFromMap(new IdentityHashMap<EasyBeansSFSB, Boolean>()));
+
+    /**
+     * Activated instance that the pool has to use instead of creating a new
+     * one.
+     */
+    private final ThreadLocal<EasyBeansSFSB> activatedInstance = new ThreadLocal<EasyBeansSFSB>();
+
+    /**
+     * Number of passivations.
+     */
+    private final AtomicLong passivationCount = new AtomicLong();
+
+    /**
+     * Number of activations.
+     */
+    private final AtomicLong activationCount = new AtomicLong();
+
+    /**
+     * Total time spent in activations (in ns).
+     */
+    private final AtomicLong activationTime = new AtomicLong();
+
     /**
      * Builds a new factory with a given name and its container.
      *
@@ -176,8 +302,8 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
             final boolean useExtendedPersistenceContext) throws FactoryException {
         super(className, container);
 
-        this.locks = new HashMap<Long, Lock>();
-        this.statefulTimeoutLocks = new HashMap<Long, Lock>();
+        this.locks = new StatefulLockRegistry();
+        this.statefulTimeoutLocks = new StatefulLockRegistry();
         this.currentBeanId = new InheritableThreadLocal<Long>();
 
         // Init Stateful session synchronization
@@ -204,6 +330,59 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
 
         // Get timer interval
         statefulTimeoutTimerInterval = Long.getLong(STATEFUL_TIMEOUT_INTERVAL_FLAG, statefulTimeoutTimerInterval);
+
+        // Get passivation settings
+        this.passivationIdleTime = Long.getLong(PASSIVATION_IDLE_TIME_FLAG, this.passivationIdleTime).longValue();
+        this.passivationMaxActive = Integer.getInteger(PASSIVATION_MAX_ACTIVE_FLAG, this.passivationMaxActive).intValue();
+        this.passivationStoreMaxSize = Long.getLong(PASSIVATION_STORE_MAX_SIZE_FLAG, this.passivationStoreMaxSize).longValue();
+        this.passivationInterval = Long.getLong(PASSIVATION_INTERVAL_FLAG, this.passivationInterval).longValue();
+    }
+
+    /**
+     * Init the factory and schedules the passivation checks if passivation
+     * is enabled.
+     * @throws FactoryException if the initialization fails.
+     */
+    @Override
+    public void init() throws FactoryException {
+        super.init();
+
+        // Single job checking the deadlines of all the instances
+        IJEjbStatefulTimeout statefulTimeout = this.getSessionBeanInfo().getStatefulTimeout();
+        if (statefulTimeout != null && statefulTimeout.getValue() >= 0 && getTimerComponent() != null) {
+            this.statefulTimeoutWheel = new TimingWheel<Long>(this.statefulTimeoutTimerInterval, STATEFUL_TIMEOUT_WHEEL_SIZE);
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(STATEFUL_TIMEOUT_KEY, Boolean.TRUE);
+            String jobId = this.getId() + "-" + STATEFUL_TIMEOUT_KEY;
+            synchronized (scheduledJobIds) {
+                try {
+                    this.getTimerComponent().schedule(jobId, this.statefulTimeoutTimerInterval, this, properties);
+                    scheduledJobIds.add(jobId);
+                } catch (EZBComponentException e) {
+                    logger.info("EZBComponentException caught when scheduling a stateful timeout check", e);
+                }
+            }
+        }
+
+        if (isPassivationEnabled()) {
+            if (getTimerComponent() == null) {
+                logger.warn("No timer component, passivation of stateful bean ''{0}'' is disabled", getClassName());
+                this.passivationIdleTime = 0L;
+                this.passivationMaxActive = 0;
+                return;
+            }
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(PASSIVATION_KEY, Boolean.TRUE);
+            String jobId = this.getId() + "-" + PASSIVATION_KEY;
+            synchronized (scheduledJobIds) {
+                try {
+                    this.getTimerComponent().schedule(jobId, this.passivationInterval, this, properties);
+                    scheduledJobIds.add(jobId);
+                } catch (EZBComponentException e) {
+                    logger.warn("Cannot schedule the passivation check of stateful bean ''{0}''", getClassName(), e);
+                }
+            }
+        }
     }
 
     /**
@@ -243,10 +422,19 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
     @Override
     protected EasyBeansSFSB getBean(final Long beanId) throws IllegalArgumentException {
         EasyBeansSFSB bean = null;
+        long activationStart = System.nanoTime();
+        EasyBeansSFSB activated = readPassivatedInstance(beanId);
         try {
             bean = getPool().get(beanId);
         } catch (PoolException e) {
             throw new IllegalArgumentException("Cannot get element in the pool", e);
+        } finally {
+            this.activatedInstance.remove();
+        }
+        if (activated != null) {
+            activate(activated, bean);
+            this.activationCount.incrementAndGet();
+            this.activationTime.addAndGet(System.nanoTime() - activationStart);
         }
         logger.debug("Set for bean {0} the Id = {1}", bean, beanId);
         bean.setEasyBeansStatefulID(beanId);
@@ -257,20 +445,9 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
             bean.setStatefulTimeout(System.currentTimeMillis() + statefulTimeout.getUnit().toMillis(statefulTimeout.getValue()));
             logger.debug("Factory {0}/{1} have stateful timeout {2} {3}",this.getClassName(), this.getId(), statefulTimeout.getValue(),
                     statefulTimeout.getUnit());
-            logger.debug("Scheduling a timeout callback for bean {0} with id: {1}", bean, beanId);
-            //Create a recurring timer to check timeout
-            Map<String, Object> properties = new HashMap<String, Object>();
-            String jobId = this.getId() + "-" + beanId;
-            properties.put(StatefulSessionFactory.BEAN_ID_KEY, beanId);
-            synchronized (scheduledJobIds) {
-            if (!scheduledJobIds.contains(jobId)) {
-                try {
-                    this.getTimerComponent().schedule(jobId, this.statefulTimeoutTimerInterval, this, properties);
-                    scheduledJobIds.add(jobId);
-                } catch (EZBComponentException e) {
-                    logger.info("EZBComponentException caught when scheduling a stateful timeout check", e);
-                }
-            }
+            if (this.statefulTimeoutWheel != null) {
+                logger.debug("Scheduling a timeout check for bean {0} with id: {1}", bean, beanId);
+                this.statefulTimeoutWheel.schedule(beanId, bean.getStatefulTimeout().longValue());
             }
         }
         return bean;
@@ -293,33 +470,18 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
                 }
             }
         } finally {
-            // Unschedule timeout job if any
-            IJEjbStatefulTimeout statefulTimeout = this.getSessionBeanInfo().getStatefulTimeout();
-            if (statefulTimeout != null && statefulTimeout.getValue() >= 0) {
-                String jobId = this.getId() + "-" + instance.getEasyBeansStatefulID();
-                synchronized (scheduledJobIds) {
-                    if (scheduledJobIds.contains(jobId)) {
-                        try {
-                            this.getTimerComponent().unschedule(jobId);
-                        } catch (EZBComponentException e) {
-                            logger.info("EZBComponentException caught when unscheduling a stateful timeout check", e);
-                        }
-                        scheduledJobIds.remove(jobId);
-                    }
-                }
+            // Cancel timeout check if any
+            if (this.statefulTimeoutWheel != null && instance.getEasyBeansStatefulID() != null) {
+                this.statefulTimeoutWheel.cancel(instance.getEasyBeansStatefulID());
             }
             super.remove(instance);
             instance.setEasyBeansRemoved(true);
 
             // Remove lock for this instance
-            synchronized (this.locks) {
-                this.locks.remove(instance.getEasyBeansStatefulID());
-            }
+            this.locks.remove(instance.getEasyBeansStatefulID());
 
             // Remove stateful timeout lock for this instance
-            synchronized (this.statefulTimeoutLocks) {
-                this.statefulTimeoutLocks.remove(instance.getEasyBeansStatefulID());
-            }
+            this.statefulTimeoutLocks.remove(instance.getEasyBeansStatefulID());
         }
     }
 
@@ -389,35 +551,23 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
             accessTimeout = methodInfo.getAccessTimeout();
         }
 
-        // existing lock ?
-        Lock lock = null;
-        synchronized (this.locks) {
-            lock = this.locks.get(id);
-            if (lock == null) {
-                lock = new ReentrantLock();
-                this.locks.put(id, lock);
-            }
-        }
-
         // getAccess is used if accessTimeout with value >=0 is used
+        Lock lock = null;
         boolean getAccess = true;
-        if (accessTimeout != null) {
-            // Infinite wait
-            if (accessTimeout.value() == -1) {
-                lock.lock();
-            } else if (accessTimeout.value() >= 0) {
-                try {
-                    logger.debug("Trying to lock bean with id ''{0}'' with value ''{1}'' and timeunit ''{2}''", id, Long
-                            .valueOf(accessTimeout.value()), accessTimeout.unit());
-                    getAccess = lock.tryLock(accessTimeout.value(), accessTimeout.unit());
-                } catch (InterruptedException e) {
-                    ejbResponse.setRPCException(new RPCException("Cannot get a lock for the stateful instance", e));
-                    return ejbResponse;
-                }
+        if (accessTimeout != null && accessTimeout.value() >= 0) {
+            try {
+                logger.debug("Trying to lock bean with id ''{0}'' with value ''{1}'' and timeunit ''{2}''", id, Long
+                        .valueOf(accessTimeout.value()), accessTimeout.unit());
+                lock = this.locks.tryLock(id, accessTimeout.value(), accessTimeout.unit());
+                getAccess = lock != null;
+            } catch (InterruptedException e) {
+                ejbResponse.setRPCException(new RPCException("Cannot get a lock for the stateful instance", e));
+                return ejbResponse;
             }
         } else {
-            // Serialize concurrent calls, so wait until the lock is liberated
-            lock.lock();
+            // Infinite wait or no access timeout:
+            // serialize concurrent calls, so wait until the lock is liberated
+            lock = this.locks.lock(id);
         }
 
 
@@ -445,14 +595,7 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
         }
         Lock statefulTimeoutLock = null;
         if (this.getSessionBeanInfo().getStatefulTimeout() != null) {
-            synchronized (statefulTimeoutLocks) {
-                statefulTimeoutLock = this.statefulTimeoutLocks.get(id);
-                if (statefulTimeoutLock == null) {
-                    statefulTimeoutLock = new ReentrantLock();
-                }
-                this.locks.put(id, statefulTimeoutLock);
-            }
-            statefulTimeoutLock.lock();
+            statefulTimeoutLock = this.statefulTimeoutLocks.lock(id);
         }
 
         // If we're here, it means that we've got the lock. so don't forget to unlock
@@ -490,9 +633,9 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
                 }
             }
 
-            Method m = getHashes().get(methodHash);
+            FactoryMethod factoryMethod = getFactoryMethods().get(methodHash);
 
-            if (m == null) {
+            if (factoryMethod == null) {
                 ejbResponse.setRPCException(new RPCException("Cannot find method called on the bean '" + getClassName() + "'.",
                         new NoSuchMethodException("The method is not found on the bean")));
                 return ejbResponse;
@@ -517,8 +660,7 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
             getCurrentBeanIDThreadLocal().set(id);
 
             // Dispatch the bean invocation begin event.
-            String methodEventProviderId = getJ2EEManagedObjectId() + "/" + J2EEManagedObjectNamingHelper.getMethodSignature(m)
-                    + "@Local";
+            String methodEventProviderId = factoryMethod.getLocalId();
             boolean enabledEvent = !localCallRequest.isCalledFromRemoteRequest();
 
             EZBEventBeanInvocation event = null;
@@ -537,7 +679,7 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
             }
 
             try {
-                value = m.invoke(bean, localCallRequest.getMethodArgs());
+                value = invokeBusinessMethod(factoryMethod, bean, localCallRequest.getMethodArgs());
             } catch (IllegalArgumentException e) {
                 ejbResponse.setRPCException(new RPCException(e));
                 if (enabledEvent) {
@@ -586,6 +728,8 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
                 // bean, so the client won't call again any methods.
                 if (bean.getEasyBeansRemoved()) {
                     ejbResponse.setRemoved(true);
+                } else if (isPassivationEnabled()) {
+                    this.activeBeans.put(id, Long.valueOf(System.currentTimeMillis()));
                 }
             }
             ejbResponse.setValue(value);
@@ -761,6 +905,21 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
             scheduledJobIds.clear();
         }
 
+        if (this.statefulTimeoutWheel != null) {
+            this.statefulTimeoutWheel.clear();
+        }
+        this.locks.clear();
+        this.statefulTimeoutLocks.clear();
+
+        // Cleanup passivated instances
+        this.activeBeans.clear();
+        this.passivatedTimeouts.clear();
+        synchronized (this.passivationStoreLock) {
+            if (this.passivationStore != null) {
+                this.passivationStore.close();
+                this.passivationStore = null;
+            }
+        }
     }
 
     /**
@@ -771,68 +930,471 @@ public class StatefulSessionFactory extends SessionFactory<EasyBeansSFSB> implem
      */
     @Override
     public void execute(Map<String, Object> properties) {
-        Lock statefulTimeoutLock = null;
-        if (this.getSessionBeanInfo().getStatefulTimeout() != null && properties != null) {
-            Long beanId = (Long) properties.get(BEAN_ID_KEY);
-            logger.debug("Checking timeout for bean with id: {0}", beanId);
-            synchronized (statefulTimeoutLocks) {
-                statefulTimeoutLock = this.statefulTimeoutLocks.get(beanId);
-                if (statefulTimeoutLock == null) {
-                    statefulTimeoutLock = new ReentrantLock();
+        if (properties != null && properties.containsKey(PASSIVATION_KEY)) {
+            passivateInstances();
+            return;
+        }
+        if (properties != null && properties.containsKey(STATEFUL_TIMEOUT_KEY) && this.statefulTimeoutWheel != null) {
+            // Check all the instances whose deadline has been reached
+            for (Long beanId : this.statefulTimeoutWheel.advance(System.currentTimeMillis())) {
+                checkStatefulTimeout(beanId);
+            }
+        }
+    }
+
+    /**
+     * Check idle timeout of the given instance and remove it if necessary.
+     * If the instance has been used since its deadline was scheduled, a new
+     * check is scheduled. Passivated instances are removed from the
+     * passivation store without being activated (and without calling the
+     * PreDestroy callbacks).<br>
+     * The check doesn't wait for an instance being called: it is done again
+     * at the next tick, so that a long call doesn't delay the checks of the
+     * other instances.
+     * @param beanId the id of the instance
+     */
+    protected void checkStatefulTimeout(final Long beanId) {
+        logger.debug("Checking timeout for bean with id: {0}", beanId);
+        Lock statefulTimeoutLock = this.statefulTimeoutLocks.getLock(beanId);
+        if (!statefulTimeoutLock.tryLock()) {
+            logger.debug("Bean with id: {0} is in use, checking its timeout later", beanId);
+            this.statefulTimeoutWheel.schedule(beanId, System.currentTimeMillis() + this.statefulTimeoutTimerInterval);
+            return;
+        }
+        try {
+            Long passivatedTimeout = this.passivatedTimeouts.get(beanId);
+            if (passivatedTimeout != null) {
+                if (System.currentTimeMillis() > passivatedTimeout.longValue()) {
+                    logger.debug("Passivated bean with id: {0} is in timeout, discarding it", beanId);
+                    discardPassivatedInstance(beanId);
+                } else {
+                    this.statefulTimeoutWheel.schedule(beanId, passivatedTimeout.longValue());
                 }
-                this.locks.put(beanId, statefulTimeoutLock);
+                return;
             }
+
+            EasyBeansSFSB bean = null;
             try {
-                statefulTimeoutLock.lock();
-                EasyBeansSFSB bean = null;
-                try {
-                    bean = this.getBean(beanId);
-                } catch (Exception e) {
-                    // Unschedule yourself
-                    logger.debug("Bean not found, unscheduling timeout callback for bean with id: {0}", beanId);
-                    String jobId = this.getId() + "-" + beanId;
-                    synchronized (scheduledJobIds) {
-                        try {
-                            this.getTimerComponent().unschedule(jobId);
-                        } catch (EZBComponentException e1) {
-                            logger.info("EZBComponentException caught when scheduling a stateful timeout check", e1);
+                bean = this.getBean(beanId);
+            } catch (Exception e) {
+                logger.debug("Bean not found, no more timeout check for bean with id: {0}", beanId);
+                return;
+            }
+            if (bean.getInTransaction() == null || !bean.getInTransaction()) {
+                if (System.currentTimeMillis() > bean.getStatefulTimeout()) {
+                    logger.debug("Bean {0} with id: {1} is in timeout, discarding it", bean, beanId);
+                    try {
+                        this.getPool().discard(bean);
+                        synchronized (killedTimedoutIds) {
+                            killedTimedoutIds.add(bean.getEasyBeansStatefulID());
                         }
-                        scheduledJobIds.remove(jobId);
+                    } catch (PoolException e) {
+                        logger.warn("Unable to discard timed-out bean", e);
                     }
                     return;
                 }
-                if (bean.getInTransaction() == null || !bean.getInTransaction()) {
-                    if (System.currentTimeMillis() > bean.getStatefulTimeout()) {
-                        logger.debug("Bean {0} with id: {1} is in timeout, discarding it", bean, beanId);
-                        try {
-                            this.getPool().discard(bean);
-                            synchronized (killedTimedoutIds) {
-                                killedTimedoutIds.add(bean.getEasyBeansStatefulID());
-                            }
-                            } catch (PoolException e) {
-                            logger.warn("Unable to discard timed-out bean", e);
-                        }
-                        // Unschedule yourself
-                        String jobId = this.getId() + "-" + beanId;
-                        synchronized (scheduledJobIds) {
-                            try {
-                                this.getTimerComponent().unschedule(jobId);
-                            } catch (EZBComponentException e) {
-                                logger.info("EZBComponentException caught when scheduling a stateful timeout check", e);
-                            }
-                            scheduledJobIds.remove(jobId);
-                        }
-                        return;
-                    }
-                }
-                try {
-                    this.getPool().release(bean);
-                } catch (PoolException e) {
-                    logger.debug("Unable to release bean {0} with id: {1}", bean, beanId, e);
-                }
+            }
+            // Not yet in timeout (or in a transaction), check it again later
+            long deadline = bean.getStatefulTimeout().longValue();
+            if (deadline < System.currentTimeMillis()) {
+                deadline = System.currentTimeMillis() + this.statefulTimeoutTimerInterval;
+            }
+            this.statefulTimeoutWheel.schedule(beanId, deadline);
+            try {
+                this.getPool().release(bean);
+            } catch (PoolException e) {
+                logger.debug("Unable to release bean {0} with id: {1}", bean, beanId, e);
+            }
+        } finally {
+            statefulTimeoutLock.unlock();
+        }
+    }
+
+    /**
+     * Creates an instance or gives the instance being activated by the
+     * current thread.
+     * @throws CreatePoolItemException if instance cannot be created.
+     * @return the created instance.
+     */
+    @Override
+    public EasyBeansSFSB createPoolItem() throws CreatePoolItemException {
+        EasyBeansSFSB instance = this.activatedInstance.get();
+        if (instance != null) {
+            this.activatedInstance.remove();
+            return instance;
+        }
+        return super.createPoolItem();
+    }
+
+    /**
+     * Callback used when the given element will be removed.
+     * Passivated instances are removed from the pool without being destroyed.
+     * @param instance the given instance to be removed
+     */
+    @Override
+    public void poolItemRemoved(final EasyBeansSFSB instance) {
+        if (this.passivatedInstances.remove(instance)) {
+            return;
+        }
+        if (isPassivationEnabled()) {
+            this.activeBeans.remove(instance.getEasyBeansStatefulID());
+        }
+        super.poolItemRemoved(instance);
+    }
+
+    /**
+     * @return true if instances can be passivated.
+     */
+    protected boolean isPassivationEnabled() {
+        return this.passivationIdleTime > 0 || this.passivationMaxActive > 0;
+    }
+
+    /**
+     * Passivates the instances that are idle for too long or exceeding the
+     * maximum number of instances in memory (least recently used first).
+     */
+    protected void passivateInstances() {
+        List<Long> candidates = new ArrayList<Long>();
+        long idleLimit = System.currentTimeMillis() - this.passivationIdleTime;
+
+        // Snapshot of the instances, sorted from the least recently used
+        List<Map.Entry<Long, Long>> entries = new ArrayList<Map.Entry<Long, Long>>();
+        for (Map.Entry<Long, Long> entry : this.activeBeans.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<Long, Long>(entry));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<Long, Long>>() {
+            public int compare(final Map.Entry<Long, Long> e1, final Map.Entry<Long, Long> e2) {
+                return e1.getValue().compareTo(e2.getValue());
+            }
+        });
+
+        int excess = 0;
+        if (this.passivationMaxActive > 0) {
+            excess = entries.size() - this.passivationMaxActive;
+        }
+        for (Map.Entry<Long, Long> entry : entries) {
+            if (excess > 0) {
+                excess--;
+            } else if (this.passivationIdleTime <= 0 || entry.getValue().longValue() > idleLimit) {
+                break;
+            }
+            candidates.add(entry.getKey());
+        }
+
+        for (Long beanId : candidates) {
+            if (getPassivationStoreSize() >= this.passivationStoreMaxSize) {
+                logger.debug("Passivation store of ''{0}'' is full, instances are kept in memory", getClassName());
+                return;
+            }
+            passivate(beanId);
+        }
+    }
+
+    /**
+     * Passivates the given instance if it is not used.
+     * @param beanId the id of the instance
+     */
+    protected void passivate(final Long beanId) {
+        // Instance is in use, don't wait (and don't count it as a contention)
+        Lock lock = this.locks.getLock(beanId);
+        if (!lock.tryLock()) {
+            return;
+        }
+        // Instance being checked for its stateful timeout
+        Lock statefulTimeoutLock = null;
+        if (this.getSessionBeanInfo().getStatefulTimeout() != null) {
+            statefulTimeoutLock = this.statefulTimeoutLocks.getLock(beanId);
+            if (!statefulTimeoutLock.tryLock()) {
+                lock.unlock();
+                return;
+            }
+        }
+        try {
+            // Ensure that the instance has not been removed in the meantime
+            if (this.activeBeans.remove(beanId) == null) {
+                return;
+            }
+
+            EasyBeansSFSB bean = null;
+            try {
+                bean = getPool().get(beanId);
+            } catch (PoolException e) {
+                logger.debug("Cannot get the instance with id ''{0}'' to passivate", beanId, e);
+                return;
+            }
+
+            // Instances in a transaction or with an extended persistence context stay in memory
+            byte[] data = null;
+            if (!Boolean.TRUE.equals(bean.getInTransaction()) && getExtendedPersistenceContexts(bean) == null) {
+                data = writeInstance(bean);
+            }
+            if (data == null) {
+                releaseActive(beanId, bean);
+                return;
+            }
+
+            try {
+                getPassivationStore(true).store(beanId, data);
+            } catch (IOException e) {
+                logger.warn("Cannot store the passivated instance with id ''{0}''", beanId, e);
+                postActivate(bean);
+                releaseActive(beanId, bean);
+                return;
+            }
+
+            // Remove the instance from the pool without destroying it
+            this.passivatedInstances.add(bean);
+            try {
+                getPool().discard(bean);
+            } catch (PoolException e) {
+                logger.warn("Cannot remove the passivated instance with id ''{0}'' from the pool", beanId, e);
             } finally {
+                this.passivatedInstances.remove(bean);
+            }
+            if (bean.getStatefulTimeout() != null) {
+                this.passivatedTimeouts.put(beanId, bean.getStatefulTimeout());
+            }
+            this.passivationCount.incrementAndGet();
+            logger.debug("Instance with id ''{0}'' of ''{1}'' has been passivated", beanId, getClassName());
+        } finally {
+            if (statefulTimeoutLock != null) {
                 statefulTimeoutLock.unlock();
             }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the passivation store.
+     * @param create true if the store has to be created if it doesn't exist
+     * @return the store or null if it has not been created
+     * @throws IOException if the store cannot be created
+     */
+    private PassivationStore getPassivationStore(final boolean create) throws IOException {
+        PassivationStore store = this.passivationStore;
+        if (store != null || !create) {
+            return store;
+        }
+        synchronized (this.passivationStoreLock) {
+            if (this.passivationStore == null) {
+                String directory = System.getProperty(PASSIVATION_DIRECTORY_FLAG);
+                this.passivationStore = new PassivationStore(directory == null ? null : new File(directory),
+                        "easybeans-" + getBeanClass().getSimpleName() + "-");
+            }
+            return this.passivationStore;
+        }
+    }
+
+    /**
+     * Removes a passivated instance which is in timeout from the passivation
+     * store.
+     * @param beanId the id of the instance
+     */
+    private void discardPassivatedInstance(final Long beanId) {
+        this.passivatedTimeouts.remove(beanId);
+        try {
+            PassivationStore store = getPassivationStore(false);
+            if (store != null) {
+                store.remove(beanId);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot remove the passivated instance with id ''{0}''", beanId, e);
+        }
+        synchronized (this.killedTimedoutIds) {
+            this.killedTimedoutIds.add(beanId);
+        }
+        this.locks.remove(beanId);
+        this.statefulTimeoutLocks.remove(beanId);
+    }
+
+    /**
+     * Calls the PrePassivate callbacks and serializes the given instance. The
+     * instance is first serialized without calling the callbacks so that
+     * instances which cannot be serialized are kept in memory without
+     * PrePassivate/PostActivate calls.
+     * @param bean the instance to passivate
+     * @return the serialized instance or null if it cannot be passivated
+     */
+    private byte[] writeInstance(final EasyBeansSFSB bean) {
+        try {
+            PassivationHelper.write(bean);
+        } catch (IOException e) {
+            // Not serializable instance
+            logger.debug("Cannot serialize the instance ''{0}'', it is kept in memory", bean, e);
+            return null;
+        }
+
+        ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(getContainer().getClassLoader());
+        OperationState oldState = getOperationState();
+        getOperationStateThreadLocal().set(OperationState.LIFECYCLE_CALLBACK_INTERCEPTOR);
+        try {
+            bean.prePassivateEasyBeansLifeCycle();
+        } catch (RuntimeException e) {
+            logger.warn("PrePassivate callback failed on instance ''{0}'', it is kept in memory", bean, e);
+            return null;
+        } finally {
+            getOperationStateThreadLocal().set(oldState);
+            Thread.currentThread().setContextClassLoader(oldClassLoader);
+        }
+
+        try {
+            return PassivationHelper.write(bean);
+        } catch (IOException e) {
+            // State changed by the callbacks is not serializable
+            logger.warn("Cannot serialize the instance ''{0}'' after PrePassivate, it is kept in memory", bean, e);
+            postActivate(bean);
+            return null;
+        }
+    }
+
+    /**
+     * Puts back an instance that has not been passivated.
+     * @param beanId the id of the instance
+     * @param bean the instance
+     */
+    private void releaseActive(final Long beanId, final EasyBeansSFSB bean) {
+        try {
+            getPool().release(bean);
+        } catch (PoolException e) {
+            logger.debug("Unable to release bean {0} with id: {1}", bean, beanId, e);
+        }
+        this.activeBeans.put(beanId, Long.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * Reads the passivated instance with the given id (if any). This instance
+     * will be given to the pool instead of creating a new one.
+     * @param beanId the id of the instance
+     * @return the passivated instance or null if the instance is not passivated
+     * @throws NoSuchEJBException if the passivated instance cannot be read
+     */
+    private EasyBeansSFSB readPassivatedInstance(final Long beanId) throws NoSuchEJBException {
+        // Nothing can have been passivated
+        if (beanId == null || !isPassivationEnabled()) {
+            return null;
+        }
+        byte[] data = null;
+        try {
+            PassivationStore store = getPassivationStore(false);
+            if (store == null) {
+                return null;
+            }
+            data = store.load(beanId);
+        } catch (IOException e) {
+            throw new NoSuchEJBException("Cannot read the passivated bean with id '" + beanId + "': " + e.getMessage());
+        }
+        if (data == null) {
+            return null;
+        }
+        this.passivatedTimeouts.remove(beanId);
+
+        // References to the container are replaced by the objects of this factory
+        EZBSessionContext<SessionFactory<?>> sessionContext = new EasyBeansSessionContext<SessionFactory<?>>(this);
+        EasyBeansSFSB instance = null;
+        ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(getContainer().getClassLoader());
+        OperationState oldState = getOperationState();
+        getOperationStateThreadLocal().set(OperationState.DEPENDENCY_INJECTION);
+        try {
+            instance = (EasyBeansSFSB) PassivationHelper.read(data, getContainer().getClassLoader(), this, sessionContext);
+        } catch (IOException e) {
+            throw new NoSuchEJBException("Cannot read the passivated bean with id '" + beanId + "': " + e.getMessage());
+        } catch (ClassNotFoundException e) {
+            throw new NoSuchEJBException("Cannot read the passivated bean with id '" + beanId + "': " + e.getMessage());
+        } finally {
+            getOperationStateThreadLocal().set(oldState);
+            Thread.currentThread().setContextClassLoader(oldClassLoader);
+        }
+        this.activatedInstance.set(instance);
+        return instance;
+    }
+
+    /**
+     * Activates an instance and calls the PostActivate callbacks. The
+     * references of the instance (like EJB references) are the serialized
+     * ones, resources are not injected again.
+     * @param activated the instance that has been read from the store
+     * @param bean the instance given by the pool
+     */
+    private void activate(final EasyBeansSFSB activated, final EasyBeansSFSB bean) {
+        // The pool may have given an existing instance, use the passivated state
+        if (activated != bean) {
+            PassivationHelper.copyState(activated, bean);
+        }
+        postActivate(bean);
+        logger.debug("Instance with id ''{0}'' of ''{1}'' has been activated", bean.getEasyBeansStatefulID(), getClassName());
+    }
+
+    /**
+     * Calls the PostActivate callbacks on the given instance.
+     * @param bean the instance
+     */
+    private void postActivate(final EasyBeansSFSB bean) {
+        ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(getContainer().getClassLoader());
+        OperationState oldState = getOperationState();
+        getOperationStateThreadLocal().set(OperationState.LIFECYCLE_CALLBACK_INTERCEPTOR);
+        try {
+            bean.postActivateEasyBeansLifeCycle();
+        } finally {
+            getOperationStateThreadLocal().set(oldState);
+            Thread.currentThread().setContextClassLoader(oldClassLoader);
+        }
+    }
+
+    /**
+     * @return the number of passivations of instances.
+     */
+    public long getPassivationCount() {
+        return this.passivationCount.get();
+    }
+
+    /**
+     * @return the number of activations of instances.
+     */
+    public long getActivationCount() {
+        return this.activationCount.get();
+    }
+
+    /**
+     * @return the average time of an activation (in microseconds).
+     */
+    public long getAverageActivationTime() {
+        long count = this.activationCount.get();
+        if (count == 0) {
+            return 0L;
+        }
+        return this.activationTime.get() / count / 1000L;
+    }
+
+    /**
+     * @return the number of instances currently passivated.
+     */
+    public int getPassivatedInstancesCount() {
+        PassivationStore store = this.passivationStore;
+        if (store == null) {
+            return 0;
         }
+        return store.getCount();
     }
+
+    /**
+     * @return the size (in bytes) of the passivation store.
+     */
+    public long getPassivationStoreSize() {
+        PassivationStore store = this.passivationStore;
+        if (store == null) {
+            return 0L;
+        }
+        return store.getSize();
+    }
+
+    /**
+     * @return the registry of the locks used to serialize the calls on the instances.
+     */
+    public StatefulLockRegistry getLockRegistry() {
+        return this.locks;
+    }
+
 }
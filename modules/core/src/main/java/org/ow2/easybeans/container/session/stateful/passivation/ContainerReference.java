@@ -0,0 +1,104 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.session.stateful.passivation;
+
+import javax.ejb.EJBContext;
+
+import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.api.interceptor.EZBInterceptorManager;
+import org.ow2.easybeans.api.interceptor.EZBInvocationContextFactory;
+
+/**
+ * Written instead of the objects of the container referenced by a
+ * passivated instance. They are replaced by the objects of the factory
+ * activating the instance.
+ * @author Florent Benoit
+ */
+enum ContainerReference {
+
+    /**
+     * Reference to the factory.
+     */
+    FACTORY(Factory.class),
+
+    /**
+     * Reference to the context of the instance.
+     */
+    CONTEXT(EJBContext.class),
+
+    /**
+     * Reference to the invocation context factory.
+     */
+    INVOCATION_CONTEXT_FACTORY(EZBInvocationContextFactory.class),
+
+    /**
+     * Reference to the dynamic interceptor manager.
+     */
+    INTERCEPTOR_MANAGER(EZBInterceptorManager.class);
+
+    /**
+     * Type of the referenced objects.
+     */
+    private final Class<?> type;
+
+    /**
+     * Builds a reference.
+     * @param type the type of the referenced objects
+     */
+    private ContainerReference(final Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the reference to write instead of the given object.
+     * @param obj the object to write
+     * @return the reference or null if the object is not an object of the container
+     */
+    static ContainerReference get(final Object obj) {
+        if (obj != null) {
+            for (ContainerReference reference : values()) {
+                if (reference.type.isInstance(obj)) {
+                    return reference;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param type the type of a field
+     * @return true if the given type is a type of the container
+     */
+    static boolean isContainerType(final Class<?> type) {
+        for (ContainerReference reference : values()) {
+            if (reference.type.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
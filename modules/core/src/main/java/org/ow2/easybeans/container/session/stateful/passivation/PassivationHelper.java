@@ -0,0 +1,120 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.session.stateful.passivation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.api.container.EZBEJBContext;
+
+/**
+ * Serializes and deserializes the passivated stateful instances.
+ * @author Florent Benoit
+ */
+public final class PassivationHelper {
+
+    /**
+     * Utility class, no public constructor.
+     */
+    private PassivationHelper() {
+
+    }
+
+    /**
+     * Serializes the given instance.
+     * @param instance the instance to serialize
+     * @return the serialized instance
+     * @throws IOException if the instance cannot be serialized
+     */
+    public static byte[] write(final Object instance) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new PassivationObjectOutputStream(baos);
+        try {
+            oos.writeObject(instance);
+        } finally {
+            oos.close();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Deserializes an instance. The references to the objects of the
+     * container are replaced by the objects of the given factory.
+     * @param data the serialized instance
+     * @param classLoader the classloader of the container
+     * @param factory the factory activating the instance
+     * @param context the context of the activated instance
+     * @return the instance
+     * @throws IOException if the instance cannot be read
+     * @throws ClassNotFoundException if a class of the instance is not found
+     */
+    public static Object read(final byte[] data, final ClassLoader classLoader, final Factory<?, ?> factory,
+            final EZBEJBContext<?> context) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new PassivationObjectInputStream(new ByteArrayInputStream(data), classLoader, factory,
+                context);
+        try {
+            return ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * Copies the state of an activated instance into another instance of the
+     * same class. Fields referencing the objects of the container are not
+     * copied.
+     * @param from the activated instance
+     * @param to the instance receiving the state
+     */
+    public static void copyState(final Object from, final Object to) {
+        if (from.getClass() != to.getClass()) {
+            throw new IllegalArgumentException("Cannot copy the state of '" + from.getClass() + "' into '" + to.getClass()
+                    + "'.");
+        }
+        Class<?> clazz = from.getClass();
+        while (clazz != null && clazz != Object.class) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || ContainerReference.isContainerType(field.getType())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                try {
+                    field.set(to, field.get(from));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Cannot copy the field '" + field + "'.", e);
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+    }
+
+}
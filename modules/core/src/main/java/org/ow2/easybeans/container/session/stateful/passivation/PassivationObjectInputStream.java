@@ -0,0 +1,144 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.session.stateful.passivation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Proxy;
+
+import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.api.container.EZBEJBContext;
+import org.ow2.easybeans.api.interceptor.EZBInterceptorManager;
+
+/**
+ * Stream used to read a passivated stateful instance with the classloader of
+ * its container. The references to the objects of the container are replaced
+ * by the objects of the factory activating the instance.
+ * @author Florent Benoit
+ */
+public class PassivationObjectInputStream extends ObjectInputStream {
+
+    /**
+     * Classloader used to load the classes of the instance.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * Factory activating the instance.
+     */
+    private final Factory<?, ?> factory;
+
+    /**
+     * Context of the activated instance.
+     */
+    private final EZBEJBContext<?> context;
+
+    /**
+     * Builds a new stream.
+     * @param in the stream to read from
+     * @param classLoader the classloader of the container
+     * @param factory the factory activating the instance
+     * @param context the context of the activated instance
+     * @throws IOException if the stream cannot be built
+     */
+    public PassivationObjectInputStream(final InputStream in, final ClassLoader classLoader, final Factory<?, ?> factory,
+            final EZBEJBContext<?> context) throws IOException {
+        super(in);
+        this.classLoader = classLoader;
+        this.factory = factory;
+        this.context = context;
+        enableResolveObject(true);
+    }
+
+    /**
+     * Replaces the references to the objects of the container.
+     * @param obj the object read
+     * @return the object to use instead
+     * @throws IOException if the object cannot be replaced
+     */
+    @Override
+    protected Object resolveObject(final Object obj) throws IOException {
+        if (!(obj instanceof ContainerReference)) {
+            return obj;
+        }
+        switch ((ContainerReference) obj) {
+            case FACTORY:
+                return this.factory;
+            case CONTEXT:
+                return this.context;
+            case INVOCATION_CONTEXT_FACTORY:
+                return this.factory.getInvocationContextFactory();
+            case INTERCEPTOR_MANAGER:
+                // Interceptors of the container are not part of the state of the instance
+                if (this.factory.getInvocationContextFactory() == null) {
+                    return null;
+                }
+                EZBInterceptorManager interceptorManager = this.factory.getInvocationContextFactory()
+                        .getInterceptorManagerFactory().getInterceptorManager();
+                interceptorManager.setEasyBeansContext(this.context);
+                interceptorManager.injectedByEasyBeans();
+                return interceptorManager;
+            default:
+                throw new IOException("Unknown reference '" + obj + "'.");
+        }
+    }
+
+    /**
+     * Loads the class of a serialized object with the container classloader.
+     * @param desc the description of the class
+     * @return the class
+     * @throws IOException if the class cannot be resolved
+     * @throws ClassNotFoundException if the class is not found
+     */
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        try {
+            return Class.forName(desc.getName(), false, this.classLoader);
+        } catch (ClassNotFoundException e) {
+            return super.resolveClass(desc);
+        }
+    }
+
+    /**
+     * Builds the proxy class of a serialized proxy (like EJB references) with
+     * the container classloader.
+     * @param interfaces the names of the interfaces of the proxy
+     * @return the proxy class
+     * @throws IOException if the class cannot be resolved
+     * @throws ClassNotFoundException if an interface is not found
+     */
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
+        Class<?>[] classes = new Class<?>[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            classes[i] = Class.forName(interfaces[i], false, this.classLoader);
+        }
+        return Proxy.getProxyClass(this.classLoader, classes);
+    }
+
+}
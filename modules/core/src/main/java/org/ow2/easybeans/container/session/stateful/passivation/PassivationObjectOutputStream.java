@@ -0,0 +1,67 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.session.stateful.passivation;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream used to write a stateful instance that is passivated.<br>
+ * References to the objects of the container (factory, context, interceptor
+ * managers) are not written. They are replaced by the objects of the factory
+ * when the instance is activated, other references (like EJB references) are
+ * written with the state of the instance.
+ * @author Florent Benoit
+ */
+public class PassivationObjectOutputStream extends ObjectOutputStream {
+
+    /**
+     * Builds a new stream.
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be built
+     */
+    public PassivationObjectOutputStream(final OutputStream out) throws IOException {
+        super(out);
+        enableReplaceObject(true);
+    }
+
+    /**
+     * Replaces the objects of the container by a reference to them.
+     * @param obj the object to write
+     * @return the object to write instead
+     * @throws IOException if the object cannot be replaced
+     */
+    @Override
+    protected Object replaceObject(final Object obj) throws IOException {
+        ContainerReference reference = ContainerReference.get(obj);
+        if (reference != null) {
+            return reference;
+        }
+        return obj;
+    }
+
+}
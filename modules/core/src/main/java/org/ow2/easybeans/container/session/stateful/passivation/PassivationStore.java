@@ -0,0 +1,236 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.container.session.stateful.passivation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Append-only file store of passivated stateful instances.<br>
+ * Each record (id, length, data) is appended at the end of the file and an
+ * in-memory index gives the location of the live records. The file is
+ * compacted when most of its content is no longer used.
+ * @author Florent Benoit
+ */
+public class PassivationStore {
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(PassivationStore.class);
+
+    /**
+     * Size of the header of a record (id + length).
+     */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * Size of the file under which no compaction is done.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024L * 1024L;
+
+    /**
+     * File used to store the records.
+     */
+    private File file = null;
+
+    /**
+     * Access to the file.
+     */
+    private RandomAccessFile randomAccessFile = null;
+
+    /**
+     * Location of the live records : id => {offset of data, length}.
+     */
+    private final Map<Long, long[]> index = new HashMap<Long, long[]>();
+
+    /**
+     * Size of the live records.
+     */
+    private long liveSize = 0L;
+
+    /**
+     * Builds a new store in the given directory.
+     * @param directory the directory of the file (temporary directory if null)
+     * @param prefix the prefix of the file name
+     * @throws IOException if the file cannot be created
+     */
+    public PassivationStore(final File directory, final String prefix) throws IOException {
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory '" + directory + "'.");
+        }
+        this.file = File.createTempFile(prefix, ".store", directory);
+        this.file.deleteOnExit();
+        this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+    }
+
+    /**
+     * Stores the data of the given instance (replacing any previous data).
+     * @param id the id of the instance
+     * @param data the serialized instance
+     * @throws IOException if the data cannot be written
+     */
+    public synchronized void store(final Long id, final byte[] data) throws IOException {
+        remove(id);
+        long offset = this.randomAccessFile.length();
+        this.randomAccessFile.seek(offset);
+        this.randomAccessFile.writeLong(id.longValue());
+        this.randomAccessFile.writeInt(data.length);
+        this.randomAccessFile.write(data);
+        this.index.put(id, new long[] {offset + RECORD_HEADER_SIZE, data.length});
+        this.liveSize += data.length;
+    }
+
+    /**
+     * Loads and removes the data of the given instance.
+     * @param id the id of the instance
+     * @return the serialized instance or null if not stored
+     * @throws IOException if the data cannot be read
+     */
+    public synchronized byte[] load(final Long id) throws IOException {
+        long[] location = this.index.get(id);
+        if (location == null) {
+            return null;
+        }
+        byte[] data = new byte[(int) location[1]];
+        this.randomAccessFile.seek(location[0]);
+        this.randomAccessFile.readFully(data);
+        remove(id);
+        return data;
+    }
+
+    /**
+     * @param id the id of the instance
+     * @return true if the given instance is stored.
+     */
+    public synchronized boolean contains(final Long id) {
+        return this.index.containsKey(id);
+    }
+
+    /**
+     * Removes the data of the given instance.
+     * @param id the id of the instance
+     * @return true if the instance was stored
+     * @throws IOException if the file cannot be compacted
+     */
+    public synchronized boolean remove(final Long id) throws IOException {
+        long[] location = this.index.remove(id);
+        if (location == null) {
+            return false;
+        }
+        this.liveSize -= location[1];
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * @return the number of stored instances.
+     */
+    public synchronized int getCount() {
+        return this.index.size();
+    }
+
+    /**
+     * @return the size of the file (in bytes).
+     */
+    public synchronized long getSize() {
+        try {
+            return this.randomAccessFile.length();
+        } catch (IOException e) {
+            return this.liveSize;
+        }
+    }
+
+    /**
+     * Compacts the file if the size of the live records is less than half of
+     * the file size.
+     * @throws IOException if the file cannot be compacted
+     */
+    private void compactIfNeeded() throws IOException {
+        long fileSize = this.randomAccessFile.length();
+        if (this.index.isEmpty()) {
+            this.randomAccessFile.setLength(0);
+            return;
+        }
+        if (fileSize < MIN_COMPACTION_SIZE || this.liveSize > fileSize / 2) {
+            return;
+        }
+
+        // Copy live records to a new file
+        File newFile = File.createTempFile(this.file.getName(), ".compact", this.file.getParentFile());
+        newFile.deleteOnExit();
+        RandomAccessFile newRandomAccessFile = new RandomAccessFile(newFile, "rw");
+        Map<Long, Long> newOffsets = new HashMap<Long, Long>();
+        try {
+            for (Map.Entry<Long, long[]> entry : this.index.entrySet()) {
+                long[] location = entry.getValue();
+                byte[] data = new byte[(int) location[1]];
+                this.randomAccessFile.seek(location[0]);
+                this.randomAccessFile.readFully(data);
+
+                long offset = newRandomAccessFile.getFilePointer();
+                newRandomAccessFile.writeLong(entry.getKey().longValue());
+                newRandomAccessFile.writeInt(data.length);
+                newRandomAccessFile.write(data);
+                newOffsets.put(entry.getKey(), Long.valueOf(offset + RECORD_HEADER_SIZE));
+            }
+        } catch (IOException e) {
+            newRandomAccessFile.close();
+            newFile.delete();
+            throw e;
+        }
+
+        // Switch to the new file
+        for (Map.Entry<Long, long[]> entry : this.index.entrySet()) {
+            entry.getValue()[0] = newOffsets.get(entry.getKey()).longValue();
+        }
+        this.randomAccessFile.close();
+        this.file.delete();
+        this.file = newFile;
+        this.randomAccessFile = newRandomAccessFile;
+    }
+
+    /**
+     * Closes the store and deletes its file.
+     */
+    public synchronized void close() {
+        this.index.clear();
+        this.liveSize = 0L;
+        try {
+            this.randomAccessFile.close();
+        } catch (IOException e) {
+            logger.debug("Cannot close the file ''{0}''", this.file, e);
+        }
+        this.file.delete();
+    }
+
+}
@@ -28,11 +28,8 @@ package org.ow2.easybeans.container.session.stateless;
 import static org.ow2.easybeans.api.OperationState.BUSINESS_METHOD;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Collection;
 
 import javax.ejb.NoSuchEJBException;
-import javax.ejb.Timer;
 
 import org.ow2.easybeans.api.EZBContainer;
 import org.ow2.easybeans.api.FactoryException;
@@ -40,12 +37,12 @@ import org.ow2.easybeans.api.OperationState;
 import org.ow2.easybeans.api.bean.EasyBeansSLSB;
 import org.ow2.easybeans.api.bean.info.IApplicationExceptionInfo;
 import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocation;
+import org.ow2.easybeans.container.FactoryMethod;
 import org.ow2.easybeans.container.session.JPoolWrapperFactory;
 import org.ow2.easybeans.container.session.PoolWrapper;
 import org.ow2.easybeans.container.session.SessionFactory;
 import org.ow2.easybeans.event.bean.EventBeanInvocationEnd;
 import org.ow2.easybeans.event.bean.EventBeanInvocationError;
-import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.easybeans.rpc.JEJBResponse;
 import org.ow2.easybeans.rpc.api.EJBLocalRequest;
 import org.ow2.easybeans.rpc.api.EJBResponse;
@@ -129,9 +126,9 @@ public class StatelessSessionFactory extends SessionFactory<EasyBeansSLSB> imple
             return ejbResponse;
         }
 
-        Method m = getHashes().get(localCallRequest.getMethodHash());
+        FactoryMethod factoryMethod = getFactoryMethods().get(localCallRequest.getMethodHash());
 
-        if (m == null) {
+        if (factoryMethod == null) {
             ejbResponse.setRPCException(new RPCException("Cannot find method called on the bean '" + getClassName() + "'.",
                     new NoSuchMethodException("The method is not found on the bean")));
             return ejbResponse;
@@ -152,21 +149,23 @@ public class StatelessSessionFactory extends SessionFactory<EasyBeansSLSB> imple
         getOperationStateThreadLocal().set(BUSINESS_METHOD);
 
         // Dispatch the bean invocation begin event.
-        String methodEventProviderId = getJ2EEManagedObjectId() + "/" + J2EEManagedObjectNamingHelper.getMethodSignature(m)
-                    + "@Local";
-        boolean enabledEvent = !localCallRequest.isCalledFromRemoteRequest();
+        boolean calledLocally = !localCallRequest.isCalledFromRemoteRequest();
+        String methodEventProviderId = factoryMethod.getLocalId();
+
+        // Events are only created and dispatched if someone is listening them
+        boolean enabledEvent = calledLocally && isInvocationEventListened(factoryMethod);
 
         EZBEventBeanInvocation event = null;
         long number = 0;
 
         IAuditID previousID = null;
+        // Invocation ID
+        if (calledLocally && getCurrentInvocationID() != null) {
+            previousID = getCurrentInvocationID().newInvocation();
+        }
+
         // Compute and send begin event only if required
         if (enabledEvent) {
-            // Invocation ID
-            if (getCurrentInvocationID() != null) {
-                previousID = getCurrentInvocationID().newInvocation();
-            }
-
             event = getInvocationEventBegin(methodEventProviderId, localCallRequest.getMethodArgs());
             number = event.getInvocationNumber();
             getEventDispatcher().dispatch(event);
@@ -174,7 +173,7 @@ public class StatelessSessionFactory extends SessionFactory<EasyBeansSLSB> imple
 
         // Invoke method
         try {
-            value = m.invoke(bean, localCallRequest.getMethodArgs());
+            value = invokeBusinessMethod(factoryMethod, bean, localCallRequest.getMethodArgs());
         } catch (IllegalArgumentException e) {
             ejbResponse.setRPCException(new RPCException(e));
             if (enabledEvent) {
@@ -201,10 +200,10 @@ public class StatelessSessionFactory extends SessionFactory<EasyBeansSLSB> imple
             // send events only if not called remotely
             if (enabledEvent) {
                 getEventDispatcher().dispatch(new EventBeanInvocationEnd(methodEventProviderId, number, value));
-                // Restore previous ID
-                if (getCurrentInvocationID() != null) {
-                    getCurrentInvocationID().setAuditID(previousID);
-                }
+            }
+            // Restore previous ID
+            if (calledLocally && getCurrentInvocationID() != null) {
+                getCurrentInvocationID().setAuditID(previousID);
             }
 
             Thread.currentThread().setContextClassLoader(oldClassLoader);
@@ -266,10 +265,7 @@ public class StatelessSessionFactory extends SessionFactory<EasyBeansSLSB> imple
     public void stop() {
         try {
             // Stop all timers
-            Collection<Timer> timers = getTimerService().getTimers();
-            for (Timer timer : timers) {
-                timer.cancel();
-            }
+            getTimerService().detachTimers();
         } finally {
             // And then stop factory
             super.stop();
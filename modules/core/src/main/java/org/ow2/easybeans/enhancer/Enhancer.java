@@ -35,10 +35,20 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ow2.easybeans.api.loader.EZBClassLoader;
 import org.ow2.easybeans.asm.ClassReader;
@@ -67,6 +77,12 @@ public class Enhancer {
      */
     private static Log logger = LogFactory.getLog(Enhancer.class);
 
+    /**
+     * Number of threads used to enhance independent classes (1 = classes are enhanced one by one).
+     */
+    private static final int ENHANCER_THREADS = Integer.getInteger("easybeans.enhancer.threads",
+            Runtime.getRuntime().availableProcessors()).intValue();
+
     /**
      * Metadata of the classes of a given jar file.
      */
@@ -87,6 +103,10 @@ public class Enhancer {
      */
     private Map<String, Object> map = null;
 
+    /**
+     * Number of threads used to enhance independent classes.
+     */
+    private int threads = ENHANCER_THREADS;
 
     /**
      * Creates an new enhancer.
@@ -237,7 +257,7 @@ public class Enhancer {
         List<String> beanNames = getSortedListBeans();
 
         // Search all EJB that needs to be defined
-        List<String> ejbClassAndSuperClassMetadatas = new ArrayList<String>();
+        Set<String> ejbClassAndSuperClassMetadatas = new HashSet<String>();
         for (String beanName : beanNames) {
             for (EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
                     .getClassesForBean(beanName)) {
@@ -248,140 +268,309 @@ public class Enhancer {
         }
 
         // Defines interceptors used by beans first
+        List<EnhancementTask> tasks = new ArrayList<EnhancementTask>();
         for (String beanName : beanNames) {
-            for (EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
+            for (final EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
                     .getClassesForBean(beanName)) {
                 if (classAnnotationMetadata.isInterceptor()
-                        && !ejbClassAndSuperClassMetadatas.contains(classAnnotationMetadata.getClassName())
-                        && !classAnnotationMetadata.wasModified()) {
-                    logger.debug("ClassAdapter on interceptor : {0}", classAnnotationMetadata.getClassName());
-
-                    // Try to set as modified the normal metadata
-                    EasyBeansEjbJarClassMetadata classicMetadata = this.ejbJarAnnotationMetadata
-                            .getScannedClassMetadata(classAnnotationMetadata.getClassName());
-                    if (classicMetadata != null) {
-                        if (classicMetadata.wasModified()) {
-                            continue;
+                        && !ejbClassAndSuperClassMetadatas.contains(classAnnotationMetadata.getClassName())) {
+                    tasks.add(new EnhancementTask(classAnnotationMetadata, tasks.size()) {
+                        @Override
+                        public void enhance() throws EnhancerException {
+                            if (!classAnnotationMetadata.wasModified()) {
+                                enhanceBeanInterceptor(classAnnotationMetadata, getDefinitions());
+                            }
                         }
-                    }
-
-                    // enhance all super classes of the interceptor. (if any)
-                    // And do this only one time.
-                    enhanceSuperClass(classAnnotationMetadata, null);
-
-                    // Create ClassReader/Writer
-                    ClassReader cr = getClassReader(classAnnotationMetadata);
-                    ClassWriter cw = new EasyBeansClassWriter(this.readLoader);
-                    InterceptorClassAdapter cv = new InterceptorClassAdapter(classAnnotationMetadata, cw, this.readLoader);
-                    InjectionClassAdapter cv2 = new InjectionClassAdapter(classAnnotationMetadata, cv, this.map, null, false);
-                    cr.accept(cv2, 0);
-                    classAnnotationMetadata.setModified();
-
-                    // Try to set as modified the normal metadata
-                    if (classicMetadata != null) {
-                        classicMetadata.setModified();
-                    }
-
-                    defineClass(this.writeLoader, classAnnotationMetadata.getClassName().replace("/", "."), cw.toByteArray());
-
-
+                    });
                 }
             }
         }
+        enhance(tasks);
 
         // Define all interceptors first.
-        for (EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
+        tasks = new ArrayList<EnhancementTask>();
+        for (final EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
                 .getEjbJarClassMetadataCollection()) {
             if (classAnnotationMetadata.isInterceptor()
-                    && !ejbClassAndSuperClassMetadatas.contains(classAnnotationMetadata.getClassName())
-                    && !classAnnotationMetadata.wasModified()) {
-                logger.debug("ClassAdapter on interceptor : {0}", classAnnotationMetadata.getClassName());
-
-                // enhance all super classes of the interceptor. (if any)
-                // And do this only one time.
-                enhanceSuperClass(classAnnotationMetadata, null);
-
-                // Create ClassReader/Writer
-                ClassReader cr = getClassReader(classAnnotationMetadata);
-                ClassWriter cw = new EasyBeansClassWriter(this.readLoader);
-                InterceptorClassAdapter cv = new InterceptorClassAdapter(classAnnotationMetadata, cw, this.readLoader);
-                InjectionClassAdapter cv2 = new InjectionClassAdapter(classAnnotationMetadata, cv, this.map, null, false);
-                cr.accept(cv2, 0);
-                classAnnotationMetadata.setModified();
-                defineClass(this.writeLoader, classAnnotationMetadata.getClassName().replace("/", "."), cw.toByteArray());
-                if (logger.isDebugEnabled()) {
-                    String fName = System.getProperty("java.io.tmpdir") + File.separator
-                            + classAnnotationMetadata.getClassName().replace("/", ".") + ".class";
-                    logger.debug("Writing Interceptor Manager of class " +
-                            classAnnotationMetadata.getClassName().replace("/", ".") + " to " + fName);
-                    try {
-                        FileOutputStream fos = new FileOutputStream(fName);
-                        fos.write(cw.toByteArray());
-                        fos.close();
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
+                    && !ejbClassAndSuperClassMetadatas.contains(classAnnotationMetadata.getClassName())) {
+                tasks.add(new EnhancementTask(classAnnotationMetadata, tasks.size()) {
+                    @Override
+                    public void enhance() throws EnhancerException {
+                        if (!classAnnotationMetadata.wasModified()) {
+                            enhanceInterceptor(classAnnotationMetadata, getDefinitions());
+                        }
                     }
-                }
+                });
             }
         }
+        enhance(tasks);
+
         // search all beans
         logger.info("Beans found are {0}", this.ejbJarAnnotationMetadata.getBeanNames());
 
-
+        tasks = new ArrayList<EnhancementTask>();
         for (String beanName : beanNames) {
-            for (EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
+            for (final EasyBeansEjbJarClassMetadata classAnnotationMetadata : this.ejbJarAnnotationMetadata
                     .getClassesForBean(beanName)) {
                 if (classAnnotationMetadata.isBean()) {
+                    tasks.add(new EnhancementTask(classAnnotationMetadata, tasks.size()) {
+                        @Override
+                        public void enhance() throws EnhancerException {
+                            enhanceBean(classAnnotationMetadata, getDefinitions());
+                        }
+                    });
+                }
+            }
+        }
+        enhance(tasks);
 
-                    // First, enhance all super classes of the bean. (if any)
-                    // And do this only one time.
-                    enhanceSuperClass(classAnnotationMetadata, classAnnotationMetadata);
-                    //logger.info("Enhancement of {0} done !", classAnnotationMetadata);
-
-                    // Create ClassReader/Writer
-                    ClassReader cr = getClassReader(classAnnotationMetadata);
-                    ClassWriter cw = new EasyBeansClassWriter(this.readLoader);
-                    BeanClassAdapter cv = new BeanClassAdapter(classAnnotationMetadata, cw, this.readLoader);
-                    InterceptorClassAdapter itcpClassAdapter = new InterceptorClassAdapter(classAnnotationMetadata, cv,
-                            this.readLoader);
-                    InjectionClassAdapter cv2 = new InjectionClassAdapter(classAnnotationMetadata, itcpClassAdapter, this.map,
-  classAnnotationMetadata, false);
-
-                    ClassVisitor beanVisitor = cv2;
-                    // EJb 2.1 view ?
-                    if (classAnnotationMetadata.getRemoteHome() != null || classAnnotationMetadata.getLocalHome() != null) {
-                        Migration21ClassAdapter ejb21Adapter = new Migration21ClassAdapter(classAnnotationMetadata, cv2);
-                        beanVisitor = ejb21Adapter;
-                    }
-
+    }
 
-                    cr.accept(beanVisitor, 0);
+    /**
+     * Runs the given tasks. Tasks working on the same classes (or on the same
+     * super classes) are run one by one in the given order while independent
+     * groups of tasks are run in parallel by a work-stealing pool. Then the
+     * classes are defined in the same order than if the tasks had been run one
+     * by one.
+     * @param tasks the tasks to run
+     * @throws EnhancerException if enhancing fails
+     */
+    protected void enhance(final List<EnhancementTask> tasks) throws EnhancerException {
+        List<List<EnhancementTask>> groups = getIndependentTasks(tasks);
 
-                    // define subclasses if interceptor enabled
-                    loadDefinedClasses(this.writeLoader, itcpClassAdapter.getDefinedClasses());
+        // Classes are defined as soon as they are enhanced if the read classloader is also used to define the classes
+        if (this.threads <= 1 || groups.size() <= 1 || this.readLoader == this.writeLoader) {
+            for (EnhancementTask task : tasks) {
+                task.enhance();
+            }
+            return;
+        }
 
-                    defineClass(this.writeLoader, classAnnotationMetadata.getClassName().replace("/", "."), cw.toByteArray());
+        int nbThreads = Math.min(this.threads, groups.size());
+        logger.debug("Enhancing {0} groups of classes with {1} threads", Integer.valueOf(groups.size()),
+                Integer.valueOf(nbThreads));
+        ForkJoinPool executor = new ForkJoinPool(nbThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) { };
+                thread.setName("EasyBeans Enhancer " + this.count.incrementAndGet());
+                return thread;
+            }
+        }, null, false);
+        try {
+            final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final List<EnhancementTask> group : groups) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws EnhancerException {
+                        ClassLoader old = Thread.currentThread().getContextClassLoader();
+                        Thread.currentThread().setContextClassLoader(contextClassLoader);
+                        try {
+                            for (EnhancementTask task : group) {
+                                task.setDefinitions(new ArrayList<DefinedClass>());
+                                task.enhance();
+                            }
+                        } finally {
+                            Thread.currentThread().setContextClassLoader(old);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof EnhancerException) {
+                        throw (EnhancerException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new EnhancerException("Cannot enhance the classes", cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EnhancerException("Interrupted while enhancing the classes", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
 
-                    // Define proxy class
-                    loadDefinedClasses(this.writeLoader, cv.getDefinedClasses());
+        // Define the classes
+        for (EnhancementTask task : tasks) {
+            loadDefinedClasses(this.writeLoader, task.getDefinitions());
+        }
+    }
 
-                    if (logger.isDebugEnabled()) {
-                        String fName = System.getProperty("java.io.tmpdir") + File.separator
-                                + classAnnotationMetadata.getClassName().replace("/", ".") + ".class";
-                        logger.debug( "Writing Interceptor Manager of class " +
-                                classAnnotationMetadata.getClassName().replace("/", ".") + " to " + fName);
-                        try {
-                            FileOutputStream fos = new FileOutputStream(fName);
-                            fos.write(cw.toByteArray());
-                            fos.close();
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
+    /**
+     * Splits the given tasks in groups of tasks that are not sharing any class.
+     * @param tasks the tasks to split
+     * @return groups of tasks (tasks of a group are kept in the given order)
+     */
+    protected List<List<EnhancementTask>> getIndependentTasks(final List<EnhancementTask> tasks) {
+        // group of the tasks using a class
+        Map<String, List<EnhancementTask>> groupsByClass = new HashMap<String, List<EnhancementTask>>();
+        for (EnhancementTask task : tasks) {
+            List<EnhancementTask> group = new ArrayList<EnhancementTask>();
+            group.add(task);
+            for (String className : getSuperClassesMetadata(task.getClassMetadata())) {
+                List<EnhancementTask> otherGroup = groupsByClass.get(className);
+                if (otherGroup != null && otherGroup != group) {
+                    // merge the groups
+                    group.addAll(otherGroup);
+                    for (EnhancementTask otherTask : otherGroup) {
+                        for (String otherClassName : getSuperClassesMetadata(otherTask.getClassMetadata())) {
+                            groupsByClass.put(otherClassName, group);
                         }
                     }
                 }
+                groupsByClass.put(className, group);
+            }
+        }
+
+        // Keep the initial order in each group
+        Set<List<EnhancementTask>> groups = Collections.newSetFromMap(new IdentityHashMap<List<EnhancementTask>, Boolean>());
+        groups.addAll(groupsByClass.values());
+        List<List<EnhancementTask>> independentTasks = new ArrayList<List<EnhancementTask>>();
+        for (List<EnhancementTask> group : groups) {
+            Collections.sort(group);
+            independentTasks.add(group);
+        }
+        return independentTasks;
+    }
+
+    /**
+     * Enhance an interceptor of a bean.
+     * @param classAnnotationMetadata the interceptor class.
+     * @param definitions the list where to add the classes to define (null to define them now)
+     * @throws EnhancerException if class can't be analyzed.
+     */
+    protected void enhanceBeanInterceptor(final EasyBeansEjbJarClassMetadata classAnnotationMetadata,
+            final List<DefinedClass> definitions) throws EnhancerException {
+        logger.debug("ClassAdapter on interceptor : {0}", classAnnotationMetadata.getClassName());
+
+        // Try to set as modified the normal metadata
+        EasyBeansEjbJarClassMetadata classicMetadata = this.ejbJarAnnotationMetadata
+                .getScannedClassMetadata(classAnnotationMetadata.getClassName());
+        if (classicMetadata != null) {
+            if (classicMetadata.wasModified()) {
+                return;
+            }
+        }
+
+        // enhance all super classes of the interceptor. (if any)
+        // And do this only one time.
+        enhanceSuperClass(classAnnotationMetadata, null, definitions);
+
+        // Create ClassReader/Writer
+        ClassReader cr = getClassReader(classAnnotationMetadata);
+        ClassWriter cw = new EasyBeansClassWriter(this.readLoader);
+        InterceptorClassAdapter cv = new InterceptorClassAdapter(classAnnotationMetadata, cw, this.readLoader);
+        InjectionClassAdapter cv2 = new InjectionClassAdapter(classAnnotationMetadata, cv, this.map, null, false);
+        cr.accept(cv2, 0);
+        classAnnotationMetadata.setModified();
+
+        // Try to set as modified the normal metadata
+        if (classicMetadata != null) {
+            classicMetadata.setModified();
+        }
+
+        addClassDefinition(definitions, classAnnotationMetadata.getClassName().replace("/", "."), cw.toByteArray());
+    }
+
+    /**
+     * Enhance an interceptor.
+     * @param classAnnotationMetadata the interceptor class.
+     * @param definitions the list where to add the classes to define (null to define them now)
+     * @throws EnhancerException if class can't be analyzed.
+     */
+    protected void enhanceInterceptor(final EasyBeansEjbJarClassMetadata classAnnotationMetadata,
+            final List<DefinedClass> definitions) throws EnhancerException {
+        logger.debug("ClassAdapter on interceptor : {0}", classAnnotationMetadata.getClassName());
+
+        // enhance all super classes of the interceptor. (if any)
+        // And do this only one time.
+        enhanceSuperClass(classAnnotationMetadata, null, definitions);
+
+        // Create ClassReader/Writer
+        ClassReader cr = getClassReader(classAnnotationMetadata);
+        ClassWriter cw = new EasyBeansClassWriter(this.readLoader);
+        InterceptorClassAdapter cv = new InterceptorClassAdapter(classAnnotationMetadata, cw, this.readLoader);
+        InjectionClassAdapter cv2 = new InjectionClassAdapter(classAnnotationMetadata, cv, this.map, null, false);
+        cr.accept(cv2, 0);
+        classAnnotationMetadata.setModified();
+        addClassDefinition(definitions, classAnnotationMetadata.getClassName().replace("/", "."), cw.toByteArray());
+        if (logger.isDebugEnabled()) {
+            String fName = System.getProperty("java.io.tmpdir") + File.separator
+                    + classAnnotationMetadata.getClassName().replace("/", ".") + ".class";
+            logger.debug("Writing Interceptor Manager of class " +
+                    classAnnotationMetadata.getClassName().replace("/", ".") + " to " + fName);
+            try {
+                FileOutputStream fos = new FileOutputStream(fName);
+                fos.write(cw.toByteArray());
+                fos.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
             }
         }
+    }
+
+    /**
+     * Enhance a bean class.
+     * @param classAnnotationMetadata the bean class.
+     * @param definitions the list where to add the classes to define (null to define them now)
+     * @throws EnhancerException if class can't be analyzed.
+     */
+    protected void enhanceBean(final EasyBeansEjbJarClassMetadata classAnnotationMetadata,
+            final List<DefinedClass> definitions) throws EnhancerException {
+        // First, enhance all super classes of the bean. (if any)
+        // And do this only one time.
+        enhanceSuperClass(classAnnotationMetadata, classAnnotationMetadata, definitions);
+        //logger.info("Enhancement of {0} done !", classAnnotationMetadata);
+
+        // Create ClassReader/Writer
+        ClassReader cr = getClassReader(classAnnotationMetadata);
+        ClassWriter cw = new EasyBeansClassWriter(this.readLoader);
+        BeanClassAdapter cv = new BeanClassAdapter(classAnnotationMetadata, cw, this.readLoader);
+        InterceptorClassAdapter itcpClassAdapter = new InterceptorClassAdapter(classAnnotationMetadata, cv,
+                this.readLoader);
+        InjectionClassAdapter cv2 = new InjectionClassAdapter(classAnnotationMetadata, itcpClassAdapter, this.map,
+                classAnnotationMetadata, false);
+
+        ClassVisitor beanVisitor = cv2;
+        // EJb 2.1 view ?
+        if (classAnnotationMetadata.getRemoteHome() != null || classAnnotationMetadata.getLocalHome() != null) {
+            Migration21ClassAdapter ejb21Adapter = new Migration21ClassAdapter(classAnnotationMetadata, cv2);
+            beanVisitor = ejb21Adapter;
+        }
 
+
+        cr.accept(beanVisitor, 0);
+
+        // define subclasses if interceptor enabled
+        addClassDefinitions(definitions, itcpClassAdapter.getDefinedClasses());
+
+        addClassDefinition(definitions, classAnnotationMetadata.getClassName().replace("/", "."), cw.toByteArray());
+
+        // Define proxy class
+        addClassDefinitions(definitions, cv.getDefinedClasses());
+
+        if (logger.isDebugEnabled()) {
+            String fName = System.getProperty("java.io.tmpdir") + File.separator
+                    + classAnnotationMetadata.getClassName().replace("/", ".") + ".class";
+            logger.debug( "Writing Interceptor Manager of class " +
+                    classAnnotationMetadata.getClassName().replace("/", ".") + " to " + fName);
+            try {
+                FileOutputStream fos = new FileOutputStream(fName);
+                fos.write(cw.toByteArray());
+                fos.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
 
@@ -393,6 +582,19 @@ public class Enhancer {
      */
     protected void enhanceSuperClass(final EasyBeansEjbJarClassMetadata classAnnotationMetadata,
             final EasyBeansEjbJarClassMetadata beanClassMetadata) throws EnhancerException {
+        enhanceSuperClass(classAnnotationMetadata, beanClassMetadata, null);
+    }
+
+    /**
+     * Enhance all super classes that are available.
+     * @param classAnnotationMetadata the class where to lookup super classes.
+     * @param beanClassMetadata the original class (bean class for example)
+     * @param definitions the list where to add the classes to define (null to define them now)
+     * @throws EnhancerException if class can't be analyzed.
+     */
+    protected void enhanceSuperClass(final EasyBeansEjbJarClassMetadata classAnnotationMetadata,
+            final EasyBeansEjbJarClassMetadata beanClassMetadata, final List<DefinedClass> definitions)
+            throws EnhancerException {
         // First, enhance all super classes of the bean. (if any)
         // And do this only one time.
         String superClass = classAnnotationMetadata.getSuperName();
@@ -417,8 +619,8 @@ public class Enhancer {
                 if (classicMetadata != null) {
                     classicMetadata.setModified();
                 }
-                enhanceSuperClass(superMetaData, beanClassMetadata);
-                defineClass(this.writeLoader, superMetaData.getClassName().replace("/", "."), cw.toByteArray());
+                enhanceSuperClass(superMetaData, beanClassMetadata, definitions);
+                addClassDefinition(definitions, superMetaData.getClassName().replace("/", "."), cw.toByteArray());
 
                 if (logger.isDebugEnabled()) {
                     String fName = System.getProperty("java.io.tmpdir") + File.separator
@@ -451,6 +653,33 @@ public class Enhancer {
     }
 
 
+    /**
+     * Adds a class to define.
+     * @param definitions the list where to add the class (null to define it now)
+     * @param className the name of the class
+     * @param b the bytecode of the class to define
+     */
+    protected void addClassDefinition(final List<DefinedClass> definitions, final String className, final byte[] b) {
+        if (definitions == null) {
+            defineClass(this.writeLoader, className, b);
+        } else {
+            definitions.add(new DefinedClass(className, b));
+        }
+    }
+
+    /**
+     * Adds the generated classes to define.
+     * @param definitions the list where to add the classes (null to define them now)
+     * @param lst a list of new generated classes.
+     */
+    protected void addClassDefinitions(final List<DefinedClass> definitions, final List<DefinedClass> lst) {
+        if (definitions == null) {
+            loadDefinedClasses(this.writeLoader, lst);
+        } else if (lst != null) {
+            definitions.addAll(lst);
+        }
+    }
+
     /**
      * Gets a class reader for a given metadata.
      * @param classAnnotationMetadata given metadata
@@ -555,6 +784,21 @@ public class Enhancer {
         return this.map;
     }
 
+    /**
+     * @return the number of threads used to enhance independent classes
+     */
+    protected int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Sets the number of threads used to enhance independent classes.
+     * @param threads the number of threads (1 = classes are enhanced one by one)
+     */
+    protected void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
     /**
      * @return the classloader used by this enhancer.
      */
@@ -562,4 +806,72 @@ public class Enhancer {
         return this.writeLoader;
     }
 
+    /**
+     * Enhancement of a class (and of its super classes).
+     */
+    protected abstract static class EnhancementTask implements Comparable<EnhancementTask> {
+
+        /**
+         * Metadata of the class to enhance.
+         */
+        private EasyBeansEjbJarClassMetadata classMetadata = null;
+
+        /**
+         * Index of the task (tasks are run in this order when they are sharing classes).
+         */
+        private int index;
+
+        /**
+         * Classes to define once all the tasks have been run (null if classes are defined at once).
+         */
+        private List<DefinedClass> definitions = null;
+
+        /**
+         * Builds a task for the given class.
+         * @param classMetadata metadata of the class to enhance
+         * @param index index of the task
+         */
+        public EnhancementTask(final EasyBeansEjbJarClassMetadata classMetadata, final int index) {
+            this.classMetadata = classMetadata;
+            this.index = index;
+        }
+
+        /**
+         * Enhance the class.
+         * @throws EnhancerException if enhancing fails
+         */
+        public abstract void enhance() throws EnhancerException;
+
+        /**
+         * @return metadata of the class to enhance
+         */
+        public EasyBeansEjbJarClassMetadata getClassMetadata() {
+            return this.classMetadata;
+        }
+
+        /**
+         * @return the classes to define (null if classes are defined at once)
+         */
+        public List<DefinedClass> getDefinitions() {
+            return this.definitions;
+        }
+
+        /**
+         * Sets the list where to add the classes to define.
+         * @param definitions the given list
+         */
+        public void setDefinitions(final List<DefinedClass> definitions) {
+            this.definitions = definitions;
+        }
+
+        /**
+         * Compares the index of the tasks.
+         * @param other the other task
+         * @return a negative integer, zero, or a positive integer as this task is before, equal, or after the other task
+         */
+        public int compareTo(final EnhancementTask other) {
+            return this.index < other.index ? -1 : (this.index == other.index ? 0 : 1);
+        }
+    }
+
 }
@@ -0,0 +1,46 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.enhancer.bean;
+
+/**
+ * Invoker of the business methods of a bean.<br>
+ * Implementations are generated for each bean class by {@link BeanMethodInvokerGenerator} and call directly the methods
+ * of the bean (no reflection).
+ * @author Florent Benoit
+ */
+public interface BeanMethodInvoker {
+
+    /**
+     * Invokes the method with the given index on the given bean.
+     * @param bean the instance of the bean
+     * @param methodIndex the index of the method (as given to the generator)
+     * @param args the arguments of the method (primitive values are wrapped)
+     * @return the value returned by the method (wrapped if primitive, null if void)
+     * @throws Throwable the exception thrown by the method itself (not wrapped)
+     */
+    Object invoke(Object bean, int methodIndex, Object[] args) throws Throwable;
+
+}
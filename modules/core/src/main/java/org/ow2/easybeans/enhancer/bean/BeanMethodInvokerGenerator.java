@@ -0,0 +1,241 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.enhancer.bean;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.ow2.easybeans.asm.Label;
+import org.ow2.easybeans.asm.MethodVisitor;
+import org.ow2.easybeans.asm.Type;
+import org.ow2.easybeans.enhancer.CommonClassGenerator;
+import org.ow2.easybeans.enhancer.EasyBeansClassWriter;
+
+/**
+ * Generates a class implementing {@link BeanMethodInvoker} for a given bean class.<br>
+ * The generated class looks like:
+ * <pre>
+ * public final class MyBean$EasyBeansMethodInvoker implements BeanMethodInvoker {
+ *     public Object invoke(Object bean, int methodIndex, Object[] args) throws Throwable {
+ *         switch (methodIndex) {
+ *             case 0:
+ *                 return Integer.valueOf(((MyBean) bean).add(((Integer) args[0]).intValue(), ((Integer) args[1]).intValue()));
+ *             case 1:
+ *                 ((MyBean) bean).reset();
+ *                 return null;
+ *             default:
+ *                 throw new IllegalArgumentException("Invalid method index");
+ *         }
+ *     }
+ * }
+ * </pre>
+ * @author Florent Benoit
+ */
+public class BeanMethodInvokerGenerator extends CommonClassGenerator {
+
+    /**
+     * Suffix of the generated class.
+     */
+    public static final String SUFFIX = "$EasyBeansMethodInvoker";
+
+    /**
+     * Interface implemented by the generated class.
+     */
+    private static final String BEAN_METHOD_INVOKER = Type.getInternalName(BeanMethodInvoker.class);
+
+    /**
+     * Descriptor of the invoke method.
+     */
+    private static final String INVOKE_DESCRIPTOR = "(Ljava/lang/Object;I[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    /**
+     * Internal name of the bean class.
+     */
+    private String beanClassName = null;
+
+    /**
+     * Methods that can be invoked (by index). Null entries are not handled by the generated class.
+     */
+    private Method[] methods = null;
+
+    /**
+     * Internal name of the generated class.
+     */
+    private String generatedClassName = null;
+
+    /**
+     * Builds a generator for the given bean class.
+     * @param beanClass the bean class
+     * @param methods the methods to invoke, the index in this array is the index used by the invoker. A method that
+     *        is not accepted by {@link #isInvokable(Method)} should be set to null.
+     */
+    public BeanMethodInvokerGenerator(final Class<?> beanClass, final Method[] methods) {
+        super(new EasyBeansClassWriter(beanClass.getClassLoader()));
+        this.beanClassName = Type.getInternalName(beanClass);
+        this.methods = methods;
+        this.generatedClassName = this.beanClassName + SUFFIX;
+    }
+
+    /**
+     * Checks if an invoker can be generated for the given bean class.
+     * @param beanClass the given class
+     * @return true if the generated class is able to access to the bean class
+     */
+    public static boolean isInvokable(final Class<?> beanClass) {
+        return Modifier.isPublic(beanClass.getModifiers()) && !beanClass.isInterface();
+    }
+
+    /**
+     * Checks if the given method can be called by the generated class.
+     * @param method the given method
+     * @return true if the method is a public instance method and the types of its parameters are accessible.
+     */
+    public static boolean isInvokable(final Method method) {
+        int modifiers = method.getModifiers();
+        if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)) {
+            return false;
+        }
+        // parameters are casted so they need to be visible
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            Class<?> type = parameterType;
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (!type.isPrimitive() && !Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates the class.
+     */
+    public void generate() {
+        getCW().visit(GENERATED_CLASS_VERSION, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, this.generatedClassName, null,
+                "java/lang/Object", new String[] {BEAN_METHOD_INVOKER});
+        addConstructor();
+        addInvokeMethod();
+        getCW().visitEnd();
+    }
+
+    /**
+     * Creates the default constructor.
+     */
+    private void addConstructor() {
+        MethodVisitor mv = getCW().visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Creates the invoke method with a switch on the method index.
+     */
+    private void addInvokeMethod() {
+        MethodVisitor mv = getCW().visitMethod(ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR, null,
+                new String[] {"java/lang/Throwable"});
+        mv.visitCode();
+
+        Label defaultLabel = new Label();
+        if (this.methods.length > 0) {
+            Label[] labels = new Label[this.methods.length];
+            for (int i = 0; i < labels.length; i++) {
+                if (this.methods[i] != null) {
+                    labels[i] = new Label();
+                } else {
+                    labels[i] = defaultLabel;
+                }
+            }
+
+            mv.visitVarInsn(ILOAD, 2);
+            mv.visitTableSwitchInsn(0, this.methods.length - 1, defaultLabel, labels);
+
+            for (int i = 0; i < this.methods.length; i++) {
+                if (this.methods[i] != null) {
+                    mv.visitLabel(labels[i]);
+                    addCase(mv, this.methods[i]);
+                }
+            }
+        }
+
+        // Unknown index
+        mv.visitLabel(defaultLabel);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Invalid method index");
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "(Ljava/lang/String;)V");
+        mv.visitInsn(ATHROW);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Adds the call of the given method: cast of the bean and of the arguments, call and return of the wrapped value.
+     * @param mv the method visitor of the invoke method
+     * @param method the method to call
+     */
+    private void addCase(final MethodVisitor mv, final Method method) {
+        String descriptor = Type.getMethodDescriptor(method);
+
+        // Cast the bean
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, this.beanClassName);
+
+        // Load each argument (and unwrap primitives)
+        Type[] args = Type.getArgumentTypes(descriptor);
+        for (int argCount = 0; argCount < args.length; argCount++) {
+            mv.visitVarInsn(ALOAD, 3);
+            putConstNumber(argCount, mv);
+            mv.visitInsn(AALOAD);
+            transformObjectIntoPrimitive(args[argCount], mv);
+        }
+
+        mv.visitMethodInsn(INVOKEVIRTUAL, this.beanClassName, method.getName(), descriptor);
+
+        // Returns the value as an object
+        returnsObject(Type.getReturnType(descriptor), mv);
+    }
+
+    /**
+     * @return the name of the generated class (with dots).
+     */
+    public String getGeneratedClassName() {
+        return this.generatedClassName.replace("/", ".");
+    }
+
+    /**
+     * @return the bytecode of the generated class.
+     */
+    public byte[] getBytes() {
+        return getCW().toByteArray();
+    }
+
+}
@@ -71,7 +71,8 @@ public class InterceptorManagerGenerator extends CommonClassGenerator {
     /**
      * Interface of this invocation context.
      */
-    public static final String[] INTERFACES = new String[] {"org/ow2/easybeans/api/injection/EasyBeansInjection"};
+    public static final String[] INTERFACES = new String[] {"org/ow2/easybeans/api/injection/EasyBeansInjection",
+        "java/io/Serializable"};
 
     /**
      * EZBEJBContext type descriptor.
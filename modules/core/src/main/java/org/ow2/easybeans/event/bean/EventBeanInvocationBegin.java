@@ -61,6 +61,11 @@ public class EventBeanInvocationBegin extends AbstractEventBeanInvocation implem
      */
     private StackTraceElement[] stackTraceElements = null;
 
+    /**
+     * Throwable recording the stack of the caller, resolved on first read.
+     */
+    private Throwable lazyStackTrace = null;
+
     /**
      * ID.
      */
@@ -108,9 +113,13 @@ public class EventBeanInvocationBegin extends AbstractEventBeanInvocation implem
     }
 
     /**
-     * @return stack elements
+     * @return stack elements (resolved once, the event may be read by several listener threads)
      */
-    public StackTraceElement[] getStackTraceElements() {
+    public synchronized StackTraceElement[] getStackTraceElements() {
+        if (this.stackTraceElements == null && this.lazyStackTrace != null) {
+            this.stackTraceElements = this.lazyStackTrace.getStackTrace();
+            this.lazyStackTrace = null;
+        }
         return this.stackTraceElements;
     }
 
@@ -118,8 +127,19 @@ public class EventBeanInvocationBegin extends AbstractEventBeanInvocation implem
      * Sets the stack trace elements.
      * @param stackTraceElements the given stack
      */
-    public void setStackTraceElements(final StackTraceElement[] stackTraceElements) {
+    public synchronized void setStackTraceElements(final StackTraceElement[] stackTraceElements) {
         this.stackTraceElements = stackTraceElements;
+        this.lazyStackTrace = null;
+    }
+
+    /**
+     * Sets a throwable recording the stack of the caller. The stack trace
+     * elements are only built when {@link #getStackTraceElements()} is called.
+     * @param lazyStackTrace the throwable created by the caller
+     */
+    public synchronized void setLazyStackTrace(final Throwable lazyStackTrace) {
+        this.stackTraceElements = null;
+        this.lazyStackTrace = lazyStackTrace;
     }
 
     /**
@@ -0,0 +1,74 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.event.bean;
+
+/**
+ * Defines how the stack trace of the caller is captured when building a bean
+ * invocation begin event.
+ * @author Florent Benoit
+ */
+public enum StackTraceCapturePolicy {
+
+    /**
+     * Stack trace is never captured.
+     */
+    NEVER,
+
+    /**
+     * Stack trace is captured for one invocation out of N.
+     */
+    SAMPLED,
+
+    /**
+     * Stack trace is always captured when the event is built.
+     */
+    ALWAYS,
+
+    /**
+     * Stack trace is recorded but only resolved into elements when it is read.
+     * Recording the stack still has a cost on each invocation.
+     */
+    LAZY;
+
+    /**
+     * Gets the policy matching the given name (case insensitive).
+     * @param name the name of the policy
+     * @param defaultPolicy the policy returned if the name is null or unknown
+     * @return the matching policy
+     */
+    public static StackTraceCapturePolicy fromName(final String name, final StackTraceCapturePolicy defaultPolicy) {
+        if (name == null) {
+            return defaultPolicy;
+        }
+        for (StackTraceCapturePolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        return defaultPolicy;
+    }
+
+}
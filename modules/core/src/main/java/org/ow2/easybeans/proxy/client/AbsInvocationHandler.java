@@ -25,16 +25,17 @@
 
 package org.ow2.easybeans.proxy.client;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.rmi.Remote;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.ejb.EJBException;
 
 import org.ow2.easybeans.rpc.api.RPCException;
+import org.ow2.easybeans.rpc.util.ClassMethodHashes;
 
 /**
  * Abstract class used by remote or local invocation handler.
@@ -68,9 +69,9 @@ public abstract class AbsInvocationHandler implements InvocationHandler, Seriali
     private Long beanId = null;
 
     /**
-     * Map between method and its hash.
+     * Hash of the methods of the interface (shared by all handlers of this interface).
      */
-    private transient Map<Method, Long> hashedMethods = null;
+    private transient volatile ClassMethodHashes interfaceMethodHashes = null;
 
     /**
      * Interface used by this handler.
@@ -104,7 +105,6 @@ public abstract class AbsInvocationHandler implements InvocationHandler, Seriali
         this.containerId = containerId;
         this.factoryName = factoryName;
         this.useID = useID;
-        this.hashedMethods = new HashMap<Method, Long>();
     }
 
     /**
@@ -209,14 +209,6 @@ public abstract class AbsInvocationHandler implements InvocationHandler, Seriali
         this.beanId = beanId;
     }
 
-    /**
-     * Sets the hashed methods.
-     * @param hashedMethods the hash for each method.
-     */
-    protected void setHashedMethods(final Map<Method, Long> hashedMethods) {
-        this.hashedMethods = hashedMethods;
-    }
-
     /**
      * Gets the bean id.
      * @return the bean id.
@@ -240,10 +232,59 @@ public abstract class AbsInvocationHandler implements InvocationHandler, Seriali
     }
 
     /**
-     * @return the hashes for each method.
+     * Gets the hash of the given method.<br>
+     * Hashes are computed once for each interface and shared by all the handlers.
+     * @param method the method invoked on the proxy
+     * @return the hash of the method
+     */
+    protected Long getMethodHash(final Method method) {
+        ClassMethodHashes methodHashes = this.interfaceMethodHashes;
+        Long hash = null;
+        if (methodHashes != null) {
+            hash = methodHashes.getHash(method);
+        }
+        if (hash == null) {
+            // Interface class not loaded by the deserialization or method of another interface
+            Class<?> declaringClass = method.getDeclaringClass();
+            ClassMethodHashes declaringClassHashes = ClassMethodHashes.getInstance(declaringClass);
+            hash = declaringClassHashes.getHash(method);
+            if (methodHashes == null && declaringClass.getName().equals(this.interfaceClassName)) {
+                this.interfaceMethodHashes = declaringClassHashes;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the hashes of the methods of the interface once the handler has
+     * been deserialized. The interface is loaded by the context classloader
+     * which is also used to build the proxy. If it is not available, the hashes
+     * are got from the declaring class of the invoked methods.
+     */
+    protected void initMethodHashes() {
+        if (this.interfaceClassName == null) {
+            return;
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = AbsInvocationHandler.class.getClassLoader();
+        }
+        try {
+            this.interfaceMethodHashes = ClassMethodHashes.getInstance(classLoader.loadClass(this.interfaceClassName));
+        } catch (ClassNotFoundException e) {
+            this.interfaceMethodHashes = null;
+        }
+    }
+
+    /**
+     * Restores the handler and the hashes of the methods of its interface.
+     * @param in the stream to read the handler from
+     * @throws IOException if I/O errors occur
+     * @throws ClassNotFoundException if a class of the handler cannot be found
      */
-    protected Map<Method, Long> getHashedMethods() {
-        return this.hashedMethods;
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initMethodHashes();
     }
 
     /**
@@ -286,6 +327,7 @@ public abstract class AbsInvocationHandler implements InvocationHandler, Seriali
             this.isItfExtendingRmiRemote = true;
         }
         setInterfaceClassName(clz.getName());
+        this.interfaceMethodHashes = ClassMethodHashes.getInstance(clz);
     }
 
 
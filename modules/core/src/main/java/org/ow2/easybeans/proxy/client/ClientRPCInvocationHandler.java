@@ -28,7 +28,6 @@ package org.ow2.easybeans.proxy.client;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.rmi.NoSuchObjectException;
-import java.util.HashMap;
 import java.util.Hashtable;
 
 import javax.ejb.EJBException;
@@ -45,7 +44,6 @@ import org.ow2.easybeans.rpc.api.ClientRPC;
 import org.ow2.easybeans.rpc.api.EJBRemoteRequest;
 import org.ow2.easybeans.rpc.api.EJBResponse;
 import org.ow2.easybeans.rpc.api.RPCException;
-import org.ow2.easybeans.rpc.util.Hash;
 
 
 
@@ -170,17 +168,9 @@ public class ClientRPCInvocationHandler extends AbsInvocationHandler {
             clientRPC = RPC.getClient(this.rmiClientEnvironment);
         }
 
-        if (getHashedMethods() == null) {
-            setHashedMethods(new HashMap<Method, Long>());
-        }
-
         Long hashLong = null;
         if (hashMethod == null) {
-            hashLong = getHashedMethods().get(method);
-            if (hashLong == null) {
-                hashLong = Long.valueOf(Hash.hashMethod(method));
-                getHashedMethods().put(method, hashLong);
-            }
+            hashLong = getMethodHash(method);
         } else {
             // Reuse given hashCode
             hashLong = hashMethod;
@@ -30,7 +30,6 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.lang.reflect.Method;
-import java.util.HashMap;
 
 import javax.ejb.EJBLocalObject;
 import javax.ejb.NoSuchEJBException;
@@ -44,7 +43,6 @@ import org.ow2.easybeans.rpc.EJBLocalRequestImpl;
 import org.ow2.easybeans.rpc.api.EJBLocalRequest;
 import org.ow2.easybeans.rpc.api.EJBResponse;
 import org.ow2.easybeans.rpc.api.RPCException;
-import org.ow2.easybeans.rpc.util.Hash;
 
 /**
  * Object acting as the proxy for local interfaces calls.
@@ -185,16 +183,9 @@ public class LocalCallInvocationHandler extends AbsInvocationHandler implements
             handleThrowable(convertThrowable(new NoSuchEJBException("The bean has been removed")), false, method, null);
         }
 
-        if (getHashedMethods() == null) {
-            setHashedMethods(new HashMap<Method, Long>());
-        }
         Long hashLong = null;
         if (hashMethod == null) {
-            hashLong = getHashedMethods().get(method);
-            if (hashLong == null) {
-                hashLong = Long.valueOf(Hash.hashMethod(method));
-                getHashedMethods().put(method, hashLong);
-            }
+            hashLong = getMethodHash(method);
         } else {
             // Reuse given hashCode
             hashLong = hashMethod;
@@ -271,6 +262,7 @@ public class LocalCallInvocationHandler extends AbsInvocationHandler implements
 
         // interface class name
         setInterfaceClassName((String) in.readObject());
+        initMethodHashes();
 
         // boolean flag
         setExtendingRmiRemote(in.readBoolean());
@@ -64,6 +64,12 @@ public class EJBRemoteRequestImpl implements EJBRemoteRequest {
      */
     private transient Object[] args = null;
 
+    /**
+     * True when {@link #args} has been decoded from {@link #byteArgs}, so that
+     * the arguments are read only once (even if asked again by a retry).
+     */
+    private transient boolean argsDecoded = false;
+
     /**
      * Id of the container that will be used on the remote side.
      */
@@ -135,8 +141,11 @@ public class EJBRemoteRequestImpl implements EJBRemoteRequest {
      * @return the argument of the request (send by the client).
      * @throws IllegalStateException if arguments were serialized and not available.
      */
-    public Object[] getMethodArgs() throws IllegalStateException {
-        // try to read object from array of bytes
+    public synchronized Object[] getMethodArgs() throws IllegalStateException {
+        if (this.argsDecoded) {
+            return this.args;
+        }
+        // Decode only once, with the classloader set by the caller (container)
         try {
             this.args = (Object[]) loadObject(this.byteArgs);
         } catch (IOException e) {
@@ -144,9 +153,18 @@ public class EJBRemoteRequestImpl implements EJBRemoteRequest {
         } catch (ClassNotFoundException e) {
             throw new IllegalStateException("Cannot get arguments of the request", e);
         }
+        this.argsDecoded = true;
         return this.args;
     }
 
+    /**
+     * @return the arguments of the request as they were serialized by the
+     *         client (to be read with a restricted stream).
+     */
+    public byte[] getSerializedMethodArgs() {
+        return this.byteArgs;
+    }
+
     /**
      * @return the container id of this request. It will be used to know the
      *         container for which this request is sent.
@@ -28,6 +28,8 @@ package org.ow2.easybeans.rpc;
 import java.util.Hashtable;
 
 import org.ow2.easybeans.rpc.api.ClientRPC;
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+import org.ow2.easybeans.rpc.nio.client.NIOClientRPC;
 import org.ow2.easybeans.rpc.rmi.client.RMIClientRPC;
 
 /**
@@ -37,6 +39,17 @@ import org.ow2.easybeans.rpc.rmi.client.RMIClientRPC;
  */
 public final class RPC {
 
+    /**
+     * Property used to select the transport (in the environment or as a
+     * system property).
+     */
+    public static final String TRANSPORT = "easybeans.rpc.transport";
+
+    /**
+     * Value of the transport property selecting the NIO transport.
+     */
+    public static final String NIO_TRANSPORT = "nio";
+
     /**
      * Utility class, no public constructor.
      */
@@ -45,11 +58,15 @@ public final class RPC {
     }
 
     /**
-     * TODO : manage a pool and different kind of implementation. For now only RMI exists
+     * Gets a client for the transport selected by the {@link #TRANSPORT}
+     * property (RMI if not set).
      * @param rmiClientEnvironment the RMI environment.
      * @return an RPC client
      */
     public static ClientRPC getClient(final Hashtable<?, ?> rmiClientEnvironment) {
+        if (NIO_TRANSPORT.equalsIgnoreCase(NIOProtocol.getProperty(rmiClientEnvironment, TRANSPORT, null))) {
+            return new NIOClientRPC(rmiClientEnvironment);
+        }
         return new RMIClientRPC(rmiClientEnvironment);
     }
 }
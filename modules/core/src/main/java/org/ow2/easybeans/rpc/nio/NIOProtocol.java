@@ -0,0 +1,223 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Constants and frame helpers of the NIO RPC transport.<br>
+ * Each frame is made of a header (length of the payload and correlation id)
+ * followed by the payload (a serialized request or response). The
+ * correlation id allows to send several requests on the same connection and
+ * to match the responses which can come back in any order.
+ * @author Florent Benoit
+ */
+public final class NIOProtocol {
+
+    /**
+     * Property used to give the host of the NIO RPC server.
+     */
+    public static final String HOST = "easybeans.rpc.nio.host";
+
+    /**
+     * Property used to give the port of the NIO RPC server. On the server
+     * side, the NIO transport is only started if this property is set.
+     */
+    public static final String PORT = "easybeans.rpc.nio.port";
+
+    /**
+     * Property used to give the timeout (in milliseconds) of a call on the
+     * client side. 0 means no timeout (like the RMI transport).
+     */
+    public static final String TIMEOUT = "easybeans.rpc.nio.timeout";
+
+    /**
+     * Property used to give the maximum length (in bytes) of a frame.
+     */
+    public static final String MAX_PAYLOAD = "easybeans.rpc.nio.max.payload";
+
+    /**
+     * Property used to give the classes (comma separated names, or package
+     * prefixes ending with a dot) which may be read from a request or from its
+     * arguments, in addition to the default ones.
+     */
+    public static final String ALLOWED_CLASSES = "easybeans.rpc.nio.allowed.classes";
+
+    /**
+     * Property used to trust the security context sent by the callers. Peers
+     * are not authenticated, so it should only be set if the network
+     * authenticates them. Else calls are run as anonymous.
+     */
+    public static final String TRUST_CALLER_CONTEXT = "easybeans.rpc.nio.trust.caller";
+
+    /**
+     * Property used to give the maximum number of threads handling the
+     * requests on the server side.
+     */
+    public static final String WORKERS = "easybeans.rpc.nio.workers";
+
+    /**
+     * Property used to give the number of requests waiting for a thread on
+     * the server side. Requests are rejected once this queue is full.
+     */
+    public static final String QUEUE_SIZE = "easybeans.rpc.nio.queue.size";
+
+    /**
+     * Property used to give the maximum number of requests of a connection
+     * being handled at the same time. The connection is no longer read while
+     * this limit is reached.
+     */
+    public static final String MAX_CONNECTION_REQUESTS = "easybeans.rpc.nio.max.connection.requests";
+
+    /**
+     * Default host.
+     */
+    public static final String DEFAULT_HOST = "localhost";
+
+    /**
+     * Default port number.
+     */
+    public static final int DEFAULT_PORT = 2504;
+
+    /**
+     * Size of the header (length of the payload + correlation id).
+     */
+    public static final int HEADER_SIZE = 12;
+
+    /**
+     * Default maximum length of a payload that is accepted.
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * Default maximum number of threads handling the requests.
+     */
+    public static final int DEFAULT_WORKERS = 64;
+
+    /**
+     * Default number of requests waiting for a thread.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * Default maximum number of requests of a connection handled at the same
+     * time.
+     */
+    public static final int DEFAULT_MAX_CONNECTION_REQUESTS = 32;
+
+    /**
+     * Utility class, no public constructor.
+     */
+    private NIOProtocol() {
+
+    }
+
+    /**
+     * Builds a frame ready to be written.
+     * @param correlationId the id of the exchange
+     * @param payload the serialized request or response
+     * @return a buffer containing the frame
+     */
+    public static ByteBuffer createFrame(final long correlationId, final byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putLong(correlationId);
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Checks the length of a payload read from a header.
+     * @param length the given length
+     * @param maxLength the maximum length which is accepted
+     * @return the length if valid
+     * @throws IOException if the length is invalid
+     */
+    public static int checkLength(final int length, final int maxLength) throws IOException {
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid length '" + length + "' for a frame, max length = '" + maxLength + "'.");
+        }
+        return length;
+    }
+
+    /**
+     * Gets the maximum length of a payload from the given environment or else
+     * from the system properties.
+     * @param environment the environment (may be null)
+     * @return the maximum length of a payload
+     */
+    public static int getMaxPayloadLength(final Map<?, ?> environment) {
+        return (int) getLongProperty(environment, MAX_PAYLOAD, DEFAULT_MAX_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * Gets the value of a property from the given environment or else from
+     * the system properties.
+     * @param environment the environment (may be null)
+     * @param name the name of the property
+     * @param defaultValue the value if the property is not set
+     * @return the value of the property
+     */
+    public static String getProperty(final Map<?, ?> environment, final String name, final String defaultValue) {
+        Object value = null;
+        if (environment != null) {
+            value = environment.get(name);
+        }
+        if (value == null) {
+            value = System.getProperty(name);
+        }
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Gets the numeric value of a property from the given environment or else
+     * from the system properties.
+     * @param environment the environment (may be null)
+     * @param name the name of the property
+     * @param defaultValue the value if the property is not set
+     * @return the value of the property
+     * @throws IllegalStateException if the value is not a number
+     */
+    public static long getLongProperty(final Map<?, ?> environment, final String name, final long defaultValue)
+            throws IllegalStateException {
+        String value = getProperty(environment, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid value '" + value + "' for the property '" + name + "'", e);
+        }
+    }
+
+}
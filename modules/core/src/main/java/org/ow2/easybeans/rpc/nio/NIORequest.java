@@ -0,0 +1,95 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio;
+
+import java.io.Serializable;
+
+import org.ow2.easybeans.rpc.api.EJBRemoteRequest;
+import org.ow2.easybeans.security.api.EZBSecurityContext;
+import org.ow2.util.auditreport.api.IAuditID;
+
+/**
+ * Frame payload sent by a NIO client: the request and the contexts of the
+ * caller which are propagated by interceptors on the RMI transport (security
+ * context and audit id).
+ * @author Florent Benoit
+ */
+public class NIORequest implements Serializable {
+
+    /**
+     * Id for serializable class.
+     */
+    private static final long serialVersionUID = -2634436117011986539L;
+
+    /**
+     * The EJB request.
+     */
+    private final EJBRemoteRequest request;
+
+    /**
+     * Security context of the caller (may be null).
+     */
+    private final EZBSecurityContext securityContext;
+
+    /**
+     * Audit id of the caller (may be null).
+     */
+    private final IAuditID auditID;
+
+    /**
+     * Builds a new NIO request.
+     * @param request the EJB request
+     * @param securityContext the security context of the caller
+     * @param auditID the audit id of the caller
+     */
+    public NIORequest(final EJBRemoteRequest request, final EZBSecurityContext securityContext, final IAuditID auditID) {
+        this.request = request;
+        this.securityContext = securityContext;
+        this.auditID = auditID;
+    }
+
+    /**
+     * @return the EJB request.
+     */
+    public EJBRemoteRequest getRequest() {
+        return this.request;
+    }
+
+    /**
+     * @return the security context of the caller (may be null).
+     */
+    public EZBSecurityContext getSecurityContext() {
+        return this.securityContext;
+    }
+
+    /**
+     * @return the audit id of the caller (may be null).
+     */
+    public IAuditID getAuditID() {
+        return this.auditID;
+    }
+
+}
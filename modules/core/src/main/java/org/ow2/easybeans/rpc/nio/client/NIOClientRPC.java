@@ -0,0 +1,158 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.client;
+
+import static org.ow2.util.marshalling.Serialization.loadObject;
+import static org.ow2.util.marshalling.Serialization.storeObject;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+import javax.transaction.SystemException;
+import javax.transaction.TransactionManager;
+
+import org.ow2.easybeans.rpc.api.ClientRPC;
+import org.ow2.easybeans.rpc.api.EJBRemoteRequest;
+import org.ow2.easybeans.rpc.api.EJBResponse;
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+import org.ow2.easybeans.rpc.nio.NIORequest;
+import org.ow2.easybeans.security.propagation.context.SecurityCurrent;
+import org.ow2.easybeans.transaction.JTransactionManager;
+import org.ow2.util.auditreport.api.IAuditID;
+import org.ow2.util.auditreport.impl.CurrentInvocationID;
+
+/**
+ * Client side of the NIO RPC transport.<br>
+ * Requests are sent on a persistent connection shared with the other clients
+ * targeting the same server.<br>
+ * The security context and the audit id of the caller are sent with the
+ * request (the security context is only used by the server if it trusts its
+ * callers, see {@link NIOProtocol#TRUST_CALLER_CONTEXT}). Transactions are not propagated: a call made while a transaction
+ * is active is refused and the RMI transport has to be used instead. A timeout
+ * can be given with the {@link NIOProtocol#TIMEOUT} property (no timeout by
+ * default).
+ * @author Florent Benoit
+ */
+public class NIOClientRPC implements ClientRPC {
+
+    /**
+     * Host of the server.
+     */
+    private String host = null;
+
+    /**
+     * Port of the server.
+     */
+    private int port;
+
+    /**
+     * Time to wait for a response in milliseconds (0 for no limit).
+     */
+    private long timeout;
+
+    /**
+     * Set when there is no transaction manager in this JVM (pure client).
+     */
+    private static volatile boolean noTransactionManager = false;
+
+    /**
+     * Builds a new NIO client RPC with the given environment.
+     * @param environment the environment giving the host and the port of the
+     *        server (system properties are used otherwise)
+     */
+    public NIOClientRPC(final Hashtable<?, ?> environment) {
+        this.host = NIOProtocol.getProperty(environment, NIOProtocol.HOST, NIOProtocol.DEFAULT_HOST);
+        String portValue = NIOProtocol.getProperty(environment, NIOProtocol.PORT, String.valueOf(NIOProtocol.DEFAULT_PORT));
+        try {
+            this.port = Integer.parseInt(portValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid port number '" + portValue + "' for the NIO RPC transport", e);
+        }
+        this.timeout = NIOProtocol.getLongProperty(environment, NIOProtocol.TIMEOUT, 0);
+    }
+
+    /**
+     * Sends a request comes to the remote side.<br>
+     * A response is done by the remote side and it sends back a response.
+     * @param request the EJB request.
+     * @return a response that have been processed by the server.
+     * @throws IllegalStateException if a transaction is active
+     */
+    public EJBResponse sendEJBRequest(final EJBRemoteRequest request) throws IllegalStateException {
+        checkTransaction();
+
+        // Contexts of the caller
+        IAuditID auditID = CurrentInvocationID.getInstance().getAuditID();
+        if (auditID != null) {
+            auditID.increment();
+        }
+        NIORequest nioRequest = new NIORequest(request, SecurityCurrent.getCurrent().getSecurityContext(), auditID);
+
+        byte[] answer = null;
+        try {
+            answer = NIOConnection.getConnection(this.host, this.port).invoke(storeObject(nioRequest), this.timeout);
+        } catch (IOException e) {
+            throw new RuntimeException("Error while handling answer on the remote side ", e);
+        }
+
+        // Response is read with the classloader of the caller
+        try {
+            return (EJBResponse) loadObject(answer);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read the answer of the remote side", e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Cannot read the answer of the remote side", e);
+        }
+    }
+
+    /**
+     * Checks that there is no active transaction as transactions are not
+     * propagated by this transport.
+     * @throws IllegalStateException if a transaction is active
+     */
+    protected void checkTransaction() throws IllegalStateException {
+        if (noTransactionManager) {
+            return;
+        }
+        TransactionManager transactionManager = null;
+        try {
+            transactionManager = JTransactionManager.getTransactionManager();
+        } catch (IllegalStateException e) {
+            // No transaction manager, so no transaction
+            noTransactionManager = true;
+            return;
+        }
+        try {
+            if (transactionManager != null && transactionManager.getTransaction() != null) {
+                throw new IllegalStateException("Transactions are not propagated by the NIO RPC transport,"
+                        + " use the RMI transport for calls made in a transaction");
+            }
+        } catch (SystemException e) {
+            throw new IllegalStateException("Cannot get the current transaction", e);
+        }
+    }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Persistent connection to a NIO RPC server.<br>
+ * The connection is shared by all the clients of a JVM that are using the
+ * same server. Requests are written with a correlation id and a reader thread
+ * gives each response to the caller waiting for it, so several calls can be
+ * in-flight at the same time on the same socket.
+ * @author Florent Benoit
+ */
+public class NIOConnection implements Runnable {
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(NIOConnection.class);
+
+    /**
+     * Opened connections (key is host:port).
+     */
+    private static Map<String, NIOConnection> connections = new HashMap<String, NIOConnection>();
+
+    /**
+     * Key of this connection.
+     */
+    private final String key;
+
+    /**
+     * Channel connected to the server.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Lock used to write a frame entirely before another one.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Id of the next request.
+     */
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Calls waiting for their response.
+     */
+    private final ConcurrentMap<Long, PendingCall> pendingCalls = new ConcurrentHashMap<Long, PendingCall>();
+
+    /**
+     * Closed ?
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Maximum length of a response.
+     */
+    private final int maxLength;
+
+    /**
+     * Builds a new connection to the given server.
+     * @param key the key of this connection
+     * @param host the host of the server
+     * @param port the port of the server
+     * @throws IOException if the connection cannot be opened
+     */
+    protected NIOConnection(final String key, final String host, final int port) throws IOException {
+        this.key = key;
+        this.maxLength = NIOProtocol.getMaxPayloadLength(null);
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.socket().setTcpNoDelay(true);
+        Thread reader = new Thread(this, "EasyBeans NIO RPC client " + key);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Gets a connection to the given server, opening it if needed.
+     * @param host the host of the server
+     * @param port the port of the server
+     * @return a connection to the server
+     * @throws IOException if the connection cannot be opened
+     */
+    public static NIOConnection getConnection(final String host, final int port) throws IOException {
+        String key = host + ":" + port;
+        synchronized (connections) {
+            NIOConnection connection = connections.get(key);
+            if (connection == null || connection.isClosed()) {
+                connection = new NIOConnection(key, host, port);
+                connections.put(key, connection);
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Sends the given request and waits for its response.
+     * @param request the serialized request
+     * @return the serialized response
+     * @throws IOException if the exchange fails
+     */
+    public byte[] invoke(final byte[] request) throws IOException {
+        return invoke(request, 0);
+    }
+
+    /**
+     * Sends the given request and waits for its response during the given
+     * time.
+     * @param request the serialized request
+     * @param timeout the time to wait for the response in milliseconds (0 to
+     *        wait until the response is received)
+     * @return the serialized response
+     * @throws IOException if the exchange fails
+     * @throws SocketTimeoutException if the response has not been received in
+     *         time
+     */
+    public byte[] invoke(final byte[] request, final long timeout) throws IOException {
+        if (this.closed) {
+            throw new IOException("Connection '" + this.key + "' is closed");
+        }
+        Long id = Long.valueOf(this.nextId.incrementAndGet());
+        PendingCall call = new PendingCall();
+        this.pendingCalls.put(id, call);
+
+        ByteBuffer frame = NIOProtocol.createFrame(id.longValue(), request);
+        try {
+            synchronized (this.writeLock) {
+                while (frame.hasRemaining()) {
+                    this.channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            this.pendingCalls.remove(id);
+            close(e);
+            throw e;
+        }
+
+        // connection may have been closed before the call has been registered
+        if (this.closed) {
+            this.pendingCalls.remove(id);
+            throw new IOException("Connection '" + this.key + "' is closed");
+        }
+
+        try {
+            return call.await(timeout);
+        } finally {
+            this.pendingCalls.remove(id);
+        }
+    }
+
+    /**
+     * Reads the responses and gives them to the waiting calls.
+     */
+    public void run() {
+        ByteBuffer header = ByteBuffer.allocate(NIOProtocol.HEADER_SIZE);
+        try {
+            while (!this.closed) {
+                header.clear();
+                readFully(header);
+                header.flip();
+                int length = NIOProtocol.checkLength(header.getInt(), this.maxLength);
+                long id = header.getLong();
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(payload);
+
+                PendingCall call = this.pendingCalls.remove(Long.valueOf(id));
+                if (call != null) {
+                    call.complete(payload.array(), null);
+                } else {
+                    logger.debug("No call waiting for the response ''{0}'' on ''{1}''", Long.valueOf(id), this.key);
+                }
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Fills the given buffer from the channel.
+     * @param buffer the buffer to fill
+     * @throws IOException if the channel cannot be read or is closed
+     */
+    private void readFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer) == -1) {
+                throw new EOFException("Connection '" + this.key + "' closed by the server");
+            }
+        }
+    }
+
+    /**
+     * Closes this connection and fails all the waiting calls.
+     * @param cause the reason of the close
+     */
+    protected void close(final IOException cause) {
+        synchronized (connections) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (connections.get(this.key) == this) {
+                connections.remove(this.key);
+            }
+        }
+        logger.debug("Closing NIO RPC connection ''{0}''", this.key, cause);
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            logger.debug("Cannot close the channel of ''{0}''", this.key, e);
+        }
+        for (PendingCall call : this.pendingCalls.values()) {
+            call.complete(null, cause);
+        }
+        this.pendingCalls.clear();
+    }
+
+    /**
+     * Closes this connection.
+     */
+    public void close() {
+        close(new IOException("Connection '" + this.key + "' has been closed"));
+    }
+
+    /**
+     * @return true if this connection is closed.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * A call waiting for its response.
+     */
+    private static final class PendingCall {
+
+        /**
+         * Signaled when the response (or an error) is available.
+         */
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        /**
+         * The serialized response.
+         */
+        private volatile byte[] response = null;
+
+        /**
+         * Error if the response cannot be received.
+         */
+        private volatile IOException error = null;
+
+        /**
+         * Sets the outcome of the call.
+         * @param response the serialized response (null if failed)
+         * @param error the error (null if succeeded)
+         */
+        void complete(final byte[] response, final IOException error) {
+            this.response = response;
+            this.error = error;
+            this.latch.countDown();
+        }
+
+        /**
+         * Waits for the response.
+         * @param timeout the time to wait in milliseconds (0 for no limit)
+         * @return the serialized response
+         * @throws IOException if the call has failed, has been interrupted or
+         *         if the time is elapsed
+         */
+        byte[] await(final long timeout) throws IOException {
+            try {
+                if (timeout <= 0) {
+                    this.latch.await();
+                } else if (!this.latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException("No response received after '" + timeout + "' ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the response");
+            }
+            if (this.error != null) {
+                IOException ioException = new IOException("Cannot get the response");
+                ioException.initCause(this.error);
+                throw ioException;
+            }
+            return this.response;
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+
+/**
+ * State of a client channel: the frame being read, the requests being
+ * handled and the frames waiting to be written.
+ * @author Florent Benoit
+ */
+public class ChannelState {
+
+    /**
+     * Buffer for the header of the frame being read.
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(NIOProtocol.HEADER_SIZE);
+
+    /**
+     * Buffer for the payload of the frame being read (null while reading the
+     * header).
+     */
+    private ByteBuffer payload = null;
+
+    /**
+     * Correlation id of the frame being read.
+     */
+    private long correlationId;
+
+    /**
+     * Frames waiting to be written.
+     */
+    private final LinkedList<ByteBuffer> pendingWrites = new LinkedList<ByteBuffer>();
+
+    /**
+     * Maximum length of a payload which can be read.
+     */
+    private final int maxLength;
+
+    /**
+     * Number of requests of this channel being handled.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Maximum number of requests of this channel handled at the same time.
+     */
+    private final int maxRequests;
+
+    /**
+     * Builds the state of a new client channel.
+     * @param maxLength the maximum length of a payload which can be read
+     * @param maxRequests the maximum number of requests handled at the same time
+     */
+    public ChannelState(final int maxLength, final int maxRequests) {
+        this.maxLength = maxLength;
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * @return the buffer in which data needs to be read.
+     */
+    public ByteBuffer getReadBuffer() {
+        if (this.payload != null) {
+            return this.payload;
+        }
+        return this.header;
+    }
+
+    /**
+     * Analyzes the header once it is complete and prepares the payload buffer.
+     * @throws IOException if the header is invalid
+     */
+    public void headerRead() throws IOException {
+        this.header.flip();
+        int length = NIOProtocol.checkLength(this.header.getInt(), this.maxLength);
+        this.correlationId = this.header.getLong();
+        this.header.clear();
+        this.payload = ByteBuffer.allocate(length);
+    }
+
+    /**
+     * @return true if the header has been read and the payload is expected.
+     */
+    public boolean isReadingPayload() {
+        return this.payload != null;
+    }
+
+    /**
+     * Gets the payload once it is complete and prepares the reading of the
+     * next frame.
+     * @return the payload of the frame
+     */
+    public byte[] payloadRead() {
+        byte[] bytes = this.payload.array();
+        this.payload = null;
+        return bytes;
+    }
+
+    /**
+     * @return the correlation id of the frame being read.
+     */
+    public long getCorrelationId() {
+        return this.correlationId;
+    }
+
+    /**
+     * Called when a request of this channel is given to a thread.
+     */
+    public void requestStarted() {
+        this.requests.incrementAndGet();
+    }
+
+    /**
+     * Called when a request of this channel has been handled.
+     */
+    public void requestDone() {
+        this.requests.decrementAndGet();
+    }
+
+    /**
+     * @return true if new requests can be read from this channel.
+     */
+    public boolean acceptsRequests() {
+        return this.requests.get() < this.maxRequests;
+    }
+
+    /**
+     * @return true if some frames are waiting to be written.
+     */
+    public synchronized boolean hasPendingWrites() {
+        return !this.pendingWrites.isEmpty();
+    }
+
+    /**
+     * Adds a frame to write.
+     * @param frame the frame
+     */
+    public synchronized void addWrite(final ByteBuffer frame) {
+        this.pendingWrites.add(frame);
+    }
+
+    /**
+     * Writes the pending frames as long as the channel accepts them.
+     * @param channel the channel to write to
+     * @return true if all the frames have been written
+     * @throws IOException if the channel cannot be written
+     */
+    public synchronized boolean flush(final SocketChannel channel) throws IOException {
+        while (!this.pendingWrites.isEmpty()) {
+            ByteBuffer frame = this.pendingWrites.getFirst();
+            channel.write(frame);
+            if (frame.hasRemaining()) {
+                return false;
+            }
+            this.pendingWrites.removeFirst();
+        }
+        return true;
+    }
+
+}
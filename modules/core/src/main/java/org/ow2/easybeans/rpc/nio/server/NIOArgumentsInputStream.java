@@ -0,0 +1,108 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectStreamClass;
+
+/**
+ * Object input stream reading the arguments of a request received by the NIO
+ * server, with the classloader of the container.<br>
+ * Arguments can only be made of the classes of the application (defined by
+ * the classloader of the container), of the value classes of the JDK (classes
+ * of the java.lang, java.util and java.math packages, not of their sub
+ * packages) and of the classes allowed by the configuration.
+ * @author Florent Benoit
+ */
+public class NIOArgumentsInputStream extends NIORequestInputStream {
+
+    /**
+     * Packages of the JDK whose classes can be used in the arguments.
+     */
+    private static final String[] JDK_PACKAGES = new String[] {"java.lang.", "java.util.", "java.math."};
+
+    /**
+     * Builds a new stream.
+     * @param in the stream of the serialized arguments
+     * @param classLoader the classloader of the container
+     * @param extraClasses comma separated list of classes (or package prefixes
+     *        ending with a dot) which are also allowed (may be null)
+     * @throws IOException if the stream header cannot be read
+     */
+    public NIOArgumentsInputStream(final InputStream in, final ClassLoader classLoader, final String extraClasses)
+            throws IOException {
+        super(in, classLoader, extraClasses);
+    }
+
+    /**
+     * Loads the class of the given descriptor if it is allowed.
+     * @param desc the descriptor of the class
+     * @return the class
+     * @throws IOException if the class is not allowed
+     * @throws ClassNotFoundException if the class is not found
+     */
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String className = desc.getName();
+        Class<?> clazz = Class.forName(className, false, getClassLoader());
+        if (isAllowed(className)) {
+            return clazz;
+        }
+        // Class of the application ?
+        Class<?> elementClass = clazz;
+        while (elementClass.isArray()) {
+            elementClass = elementClass.getComponentType();
+        }
+        if (elementClass.getClassLoader() != getClassLoader()) {
+            throw new InvalidClassException(className, "Class is not allowed in the arguments of a NIO RPC request");
+        }
+        return clazz;
+    }
+
+    /**
+     * Checks if the given class is a value class of the JDK or is allowed by
+     * the configuration.
+     * @param className the name of the class (may be an array)
+     * @return true if the class is allowed
+     */
+    @Override
+    protected boolean isAllowed(final String className) {
+        String name = getElementClassName(className);
+        if (name == null) {
+            // array of primitives
+            return true;
+        }
+        for (String jdkPackage : JDK_PACKAGES) {
+            if (name.startsWith(jdkPackage) && name.indexOf('.', jdkPackage.length()) == -1) {
+                return true;
+            }
+        }
+        return isExtraAllowed(name);
+    }
+
+}
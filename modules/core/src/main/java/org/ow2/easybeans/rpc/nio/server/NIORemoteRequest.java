@@ -0,0 +1,143 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import org.ow2.easybeans.rpc.EJBRemoteRequestImpl;
+import org.ow2.easybeans.rpc.api.EJBRemoteRequest;
+
+/**
+ * Request received by the NIO server. The arguments are read with the
+ * classloader set by the container through a {@link NIOArgumentsInputStream},
+ * as the peers are not authenticated.
+ * @author Florent Benoit
+ */
+public class NIORemoteRequest implements EJBRemoteRequest {
+
+    /**
+     * Id for serializable class.
+     */
+    private static final long serialVersionUID = 2390546326395174473L;
+
+    /**
+     * The request sent by the client.
+     */
+    private final EJBRemoteRequestImpl request;
+
+    /**
+     * Classes allowed in the arguments in addition to the default ones.
+     */
+    private final String allowedClasses;
+
+    /**
+     * Arguments once they have been read.
+     */
+    private transient Object[] args = null;
+
+    /**
+     * Builds a new request.
+     * @param request the request sent by the client
+     * @param allowedClasses comma separated list of classes (or package
+     *        prefixes ending with a dot) allowed in the arguments in addition
+     *        to the default ones (may be null)
+     */
+    public NIORemoteRequest(final EJBRemoteRequestImpl request, final String allowedClasses) {
+        this.request = request;
+        this.allowedClasses = allowedClasses;
+    }
+
+    /**
+     * @return name of the method
+     */
+    public String getMethodName() {
+        return this.request.getMethodName();
+    }
+
+    /**
+     * @return the hash of this method
+     */
+    public Long getMethodHash() {
+        return this.request.getMethodHash();
+    }
+
+    /**
+     * @return the argument of the request (send by the client).
+     * @throws IllegalStateException if the arguments cannot be read or contain
+     *         a class which is not allowed.
+     */
+    public synchronized Object[] getMethodArgs() throws IllegalStateException {
+        if (this.args != null) {
+            return this.args;
+        }
+        try {
+            ObjectInputStream objectInputStream = new NIOArgumentsInputStream(new ByteArrayInputStream(
+                    this.request.getSerializedMethodArgs()), Thread.currentThread().getContextClassLoader(),
+                    this.allowedClasses);
+            try {
+                this.args = (Object[]) objectInputStream.readObject();
+            } finally {
+                objectInputStream.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot get arguments of the request", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot get arguments of the request", e);
+        }
+        return this.args;
+    }
+
+    /**
+     * @return the container id of this request.
+     */
+    public String getContainerId() {
+        return this.request.getContainerId();
+    }
+
+    /**
+     * @return the factory name of the container.
+     */
+    public String getFactory() {
+        return this.request.getFactory();
+    }
+
+    /**
+     * @return the id of the bean.
+     */
+    public Long getBeanId() {
+        return this.request.getBeanId();
+    }
+
+    /**
+     * @return name of the business interface used for invoking the method (if any).
+     */
+    public String getInvokedBusinessInterfaceName() {
+        return this.request.getInvokedBusinessInterfaceName();
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Object input stream reading the requests received by the NIO server.<br>
+ * Peers are not authenticated, so only the classes a request is made of can
+ * be read (the request, the contexts of the caller and the JDK classes of
+ * their fields). The arguments of the request are kept serialized and are
+ * only read with the classloader of the container once the request is
+ * handled (see {@link NIOArgumentsInputStream}).
+ * @author Florent Benoit
+ */
+public class NIORequestInputStream extends ObjectInputStream {
+
+    /**
+     * Classes which can always be read from a request.
+     */
+    private static final Set<String> REQUEST_CLASSES = new HashSet<String>(Arrays.asList(
+            "org.ow2.easybeans.rpc.nio.NIORequest",
+            "org.ow2.easybeans.rpc.EJBRemoteRequestImpl",
+            "org.ow2.easybeans.security.propagation.context.SecurityContext",
+            "org.ow2.easybeans.security.struct.JPrincipal",
+            "org.ow2.easybeans.security.struct.JGroup",
+            "javax.security.auth.Subject",
+            "javax.security.auth.Subject$SecureSet",
+            // Wrapper of the principals written by the recent JDKs
+            "java.util.Collections$SynchronizedSet",
+            "java.util.Collections$SynchronizedCollection",
+            "java.lang.Number",
+            "java.lang.Long",
+            "java.util.LinkedList",
+            // Vector (members of a group) and the array of its elements
+            "java.util.Vector",
+            "java.lang.Object"));
+
+    /**
+     * Package of the audit id implementations (its classes are not part of
+     * the EasyBeans API).
+     */
+    private static final String AUDIT_ID_PACKAGE = "org.ow2.util.auditreport.impl.";
+
+    /**
+     * Classes (or package prefixes ending with a dot) which are also allowed.
+     */
+    private final List<String> extraClasses;
+
+    /**
+     * Classloader used to load the classes.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * Builds a new stream.
+     * @param in the stream of the serialized request
+     * @param classLoader the classloader used to load the classes
+     * @param extraClasses comma separated list of classes (or package prefixes
+     *        ending with a dot) which are also allowed (may be null)
+     * @throws IOException if the stream header cannot be read
+     */
+    public NIORequestInputStream(final InputStream in, final ClassLoader classLoader, final String extraClasses)
+            throws IOException {
+        super(in);
+        this.classLoader = classLoader;
+        this.extraClasses = new ArrayList<String>();
+        if (extraClasses != null) {
+            for (String extraClass : extraClasses.split(",")) {
+                if (extraClass.trim().length() > 0) {
+                    this.extraClasses.add(extraClass.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the class of the given descriptor if it is allowed.
+     * @param desc the descriptor of the class
+     * @return the class
+     * @throws IOException if the class is not allowed
+     * @throws ClassNotFoundException if the class is not found
+     */
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String className = desc.getName();
+        if (!isAllowed(className)) {
+            throw new InvalidClassException(className, "Class is not allowed in a NIO RPC request");
+        }
+        return Class.forName(className, false, this.classLoader);
+    }
+
+    /**
+     * Proxies are never read from a request.
+     * @param interfaces the interfaces of the proxy
+     * @return nothing
+     * @throws IOException as proxies are not allowed
+     */
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+        throw new InvalidClassException("Proxy", "Proxies are not allowed in a NIO RPC request");
+    }
+
+    /**
+     * Checks if the given class can be read.
+     * @param className the name of the class (may be an array)
+     * @return true if the class is allowed
+     */
+    protected boolean isAllowed(final String className) {
+        String name = getElementClassName(className);
+        if (name == null) {
+            // array of primitives
+            return true;
+        }
+        if (REQUEST_CLASSES.contains(name) || isExtraAllowed(name)) {
+            return true;
+        }
+        // Classes of the package only, not of its sub packages
+        return name.startsWith(AUDIT_ID_PACKAGE) && name.indexOf('.', AUDIT_ID_PACKAGE.length()) == -1;
+    }
+
+    /**
+     * Checks if the given class has been allowed by the configuration.
+     * @param name the name of the class
+     * @return true if the class is allowed
+     */
+    protected boolean isExtraAllowed(final String name) {
+        for (String extraClass : this.extraClasses) {
+            if (extraClass.endsWith(".") ? name.startsWith(extraClass) : name.equals(extraClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the classloader used to load the classes.
+     */
+    protected ClassLoader getClassLoader() {
+        return this.classLoader;
+    }
+
+    /**
+     * Gets the name of the class of the elements if the given class is an
+     * array.
+     * @param className the name of the class (may be an array)
+     * @return the name of the class or of its elements, null for an array of
+     *         primitives
+     */
+    protected static String getElementClassName(final String className) {
+        if (!className.startsWith("[")) {
+            return className;
+        }
+        int index = className.lastIndexOf('[') + 1;
+        if (className.charAt(index) != 'L') {
+            return null;
+        }
+        return className.substring(index + 1, className.length() - 1);
+    }
+
+}
@@ -0,0 +1,513 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.nio.server;
+
+import static org.ow2.util.marshalling.Serialization.storeObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ow2.easybeans.rpc.EJBRemoteRequestImpl;
+import org.ow2.easybeans.rpc.JEJBResponse;
+import org.ow2.easybeans.rpc.api.EJBResponse;
+import org.ow2.easybeans.rpc.api.RMIServerRPC;
+import org.ow2.easybeans.rpc.api.RPCException;
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+import org.ow2.easybeans.rpc.nio.NIORequest;
+import org.ow2.easybeans.security.propagation.context.SecurityContext;
+import org.ow2.easybeans.security.propagation.context.SecurityCurrent;
+import org.ow2.util.auditreport.impl.CurrentInvocationID;
+import org.ow2.util.log.Log;
+import org.ow2.util.log.LogFactory;
+
+/**
+ * Server side of the NIO RPC transport.<br>
+ * A selector thread reads the frames of all the connections and the requests
+ * are handled by a pool of threads, so a connection can carry several
+ * requests at the same time. Requests are given to the same handler than the
+ * RMI transport.<br>
+ * Peers are not authenticated, so the server only listens on the given host,
+ * the length of the frames is limited, only the classes of a request are
+ * allowed when reading it (and the classes of the application when reading
+ * its arguments) and the calls are run as anonymous unless the security
+ * context of the callers is trusted by the configuration. The audit id of the
+ * caller is applied during the call.<br>
+ * The number of threads, of waiting requests and of requests handled at the
+ * same time for a connection are limited. Once a connection reaches its limit,
+ * it is no longer read until one of its requests has been handled.
+ * @author Florent Benoit
+ */
+public class NIOServerRPC implements Runnable {
+
+    /**
+     * Logger.
+     */
+    private static Log logger = LogFactory.getLog(NIOServerRPC.class);
+
+    /**
+     * Handler of the requests.
+     */
+    private final RMIServerRPC handler;
+
+    /**
+     * Listening host (null for all the interfaces).
+     */
+    private final String hostName;
+
+    /**
+     * Listening port number (0 for any free port).
+     */
+    private final int portNumber;
+
+    /**
+     * Maximum length of a request.
+     */
+    private final int maxLength;
+
+    /**
+     * Classes allowed in a request in addition to the default ones.
+     */
+    private final String allowedClasses;
+
+    /**
+     * Use the security context sent by the callers ?
+     */
+    private final boolean trustCallerContext;
+
+    /**
+     * Maximum number of threads handling the requests.
+     */
+    private final int workers;
+
+    /**
+     * Number of requests waiting for a thread.
+     */
+    private final int queueSize;
+
+    /**
+     * Maximum number of requests of a connection handled at the same time.
+     */
+    private final int maxConnectionRequests;
+
+    /**
+     * Nio Selector.
+     */
+    private Selector selector = null;
+
+    /**
+     * Server socket channel (listening).
+     */
+    private ServerSocketChannel server = null;
+
+    /**
+     * The selection key of the server (accepting clients).
+     */
+    private SelectionKey serverKey = null;
+
+    /**
+     * Threads handling the requests.
+     */
+    private ThreadPoolExecutor executor = null;
+
+    /**
+     * Keys having frames to write (interest is updated by the selector thread).
+     */
+    private final Queue<SelectionKey> writeKeys = new ConcurrentLinkedQueue<SelectionKey>();
+
+    /**
+     * Running ?
+     */
+    private volatile boolean running = false;
+
+    /**
+     * Builds a new NIO server.<br>
+     * The limits, the allowed classes and the trust of the security context
+     * of the callers are taken from the system properties.
+     * @param handler the handler of the requests
+     * @param hostName the host to listen to (null for all the interfaces)
+     * @param portNumber the port to listen to (0 for any free port)
+     */
+    public NIOServerRPC(final RMIServerRPC handler, final String hostName, final int portNumber) {
+        this.handler = handler;
+        this.hostName = hostName;
+        this.portNumber = portNumber;
+        this.maxLength = NIOProtocol.getMaxPayloadLength(null);
+        this.allowedClasses = System.getProperty(NIOProtocol.ALLOWED_CLASSES);
+        this.trustCallerContext = Boolean.parseBoolean(NIOProtocol.getProperty(null, NIOProtocol.TRUST_CALLER_CONTEXT,
+                "false"));
+        this.workers = (int) Math.max(1, NIOProtocol.getLongProperty(null, NIOProtocol.WORKERS,
+                NIOProtocol.DEFAULT_WORKERS));
+        this.queueSize = (int) Math.max(1, NIOProtocol.getLongProperty(null, NIOProtocol.QUEUE_SIZE,
+                NIOProtocol.DEFAULT_QUEUE_SIZE));
+        this.maxConnectionRequests = (int) Math.max(1, NIOProtocol.getLongProperty(null,
+                NIOProtocol.MAX_CONNECTION_REQUESTS, NIOProtocol.DEFAULT_MAX_CONNECTION_REQUESTS));
+    }
+
+    /**
+     * Starts to listen and handle the requests.
+     * @throws IOException if the server cannot listen
+     */
+    public void start() throws IOException {
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.configureBlocking(false);
+        InetSocketAddress address = null;
+        if (this.hostName == null) {
+            address = new InetSocketAddress(this.portNumber);
+        } else {
+            address = new InetSocketAddress(this.hostName, this.portNumber);
+        }
+        try {
+            this.server.socket().bind(address);
+        } catch (IOException e) {
+            this.server.close();
+            this.selector.close();
+            IOException ioException = new IOException("Cannot listen on '" + address
+                    + "', maybe the port is already used.");
+            ioException.initCause(e);
+            throw ioException;
+        }
+        this.serverKey = this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+
+        // Bounded pool, idle threads are stopped
+        this.executor = new ThreadPoolExecutor(this.workers, this.workers, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(this.queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable, "EasyBeans NIO RPC worker " + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.running = true;
+        Thread thread = new Thread(this, "EasyBeans NIO RPC server");
+        thread.setDaemon(true);
+        thread.start();
+
+        logger.info("NIO RPC listening on ''{0}'' with ''{1}'' threads, callers trusted = ''{2}''",
+                this.server.socket().getLocalSocketAddress(), Integer.valueOf(this.workers),
+                Boolean.valueOf(this.trustCallerContext));
+    }
+
+    /**
+     * Stops the server and closes all the connections.
+     */
+    public void stop() {
+        this.running = false;
+        if (this.selector != null) {
+            this.selector.wakeup();
+        }
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the port on which this server is listening.
+     */
+    public int getPort() {
+        return this.server.socket().getLocalPort();
+    }
+
+    /**
+     * Loop (until the server is stopped) that handles the selected keys.
+     */
+    public void run() {
+        while (this.running) {
+            try {
+                this.selector.select();
+            } catch (IOException e) {
+                logger.error("Selector has been closed, stopping NIO RPC server", e);
+                break;
+            }
+
+            // Keys with new frames to write (and maybe able to read requests again)
+            SelectionKey writeKey = this.writeKeys.poll();
+            while (writeKey != null) {
+                updateInterest(writeKey);
+                writeKey = this.writeKeys.poll();
+            }
+
+            for (Iterator<SelectionKey> itSelectedKeys = this.selector.selectedKeys().iterator(); itSelectedKeys.hasNext();) {
+                SelectionKey selectionKey = itSelectedKeys.next();
+                itSelectedKeys.remove();
+
+                if (selectionKey == this.serverKey) {
+                    try {
+                        handleAccept();
+                    } catch (IOException e) {
+                        logger.error("Unable to accept a new connection.", e);
+                    }
+                    continue;
+                }
+
+                try {
+                    if (selectionKey.isValid() && selectionKey.isReadable()) {
+                        handleRead(selectionKey);
+                    }
+                    if (selectionKey.isValid() && selectionKey.isWritable()) {
+                        handleWrite(selectionKey);
+                    }
+                } catch (IOException e) {
+                    logger.debug("Closing connection after an error", e);
+                    close(selectionKey);
+                }
+            }
+        }
+
+        // Stopped: close everything
+        for (SelectionKey selectionKey : this.selector.keys()) {
+            close(selectionKey);
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the selector", e);
+        }
+    }
+
+    /**
+     * Handle a new client that is being connected.
+     * @throws IOException if cannot accept the client
+     */
+    private void handleAccept() throws IOException {
+        SocketChannel client = this.server.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        client.socket().setTcpNoDelay(true);
+        client.register(this.selector, SelectionKey.OP_READ, new ChannelState(this.maxLength,
+                this.maxConnectionRequests));
+    }
+
+    /**
+     * Reads all the available frames of a client.
+     * @param selectionKey the selected key.
+     * @throws IOException if cannot read from the channel.
+     */
+    private void handleRead(final SelectionKey selectionKey) throws IOException {
+        SocketChannel client = (SocketChannel) selectionKey.channel();
+        ChannelState state = (ChannelState) selectionKey.attachment();
+
+        while (true) {
+            if (client.read(state.getReadBuffer()) == -1) {
+                // client has been disconnected
+                close(selectionKey);
+                return;
+            }
+            if (state.getReadBuffer().hasRemaining()) {
+                // wait for more data
+                return;
+            }
+            if (state.isReadingPayload()) {
+                dispatch(selectionKey, state.getCorrelationId(), state.payloadRead());
+                if (!state.acceptsRequests()) {
+                    // Too many requests of this client are being handled, stop reading
+                    updateInterest(selectionKey);
+                    return;
+                }
+            } else {
+                state.headerRead();
+            }
+        }
+    }
+
+    /**
+     * Writes the pending frames of a client.
+     * @param selectionKey the selected key.
+     * @throws IOException if cannot write to the channel.
+     */
+    private void handleWrite(final SelectionKey selectionKey) throws IOException {
+        ChannelState state = (ChannelState) selectionKey.attachment();
+        if (state.flush((SocketChannel) selectionKey.channel())) {
+            updateInterest(selectionKey);
+        }
+    }
+
+    /**
+     * Updates the operations of a client: it is read while it can send new
+     * requests and written while it has pending frames. Only called by the
+     * selector thread.
+     * @param selectionKey the key of the client
+     */
+    private void updateInterest(final SelectionKey selectionKey) {
+        if (!selectionKey.isValid()) {
+            return;
+        }
+        ChannelState state = (ChannelState) selectionKey.attachment();
+        int operations = 0;
+        if (state.acceptsRequests()) {
+            operations |= SelectionKey.OP_READ;
+        }
+        if (state.hasPendingWrites()) {
+            operations |= SelectionKey.OP_WRITE;
+        }
+        selectionKey.interestOps(operations);
+    }
+
+    /**
+     * Handles a request in a worker thread and queues its response.
+     * @param selectionKey the key of the client
+     * @param correlationId the id of the exchange
+     * @param payload the serialized request
+     */
+    private void dispatch(final SelectionKey selectionKey, final long correlationId, final byte[] payload) {
+        final ChannelState state = (ChannelState) selectionKey.attachment();
+        state.requestStarted();
+        try {
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    byte[] answer = null;
+                    try {
+                        answer = handleRequest(payload);
+                    } catch (IOException e) {
+                        logger.error("Cannot send the response of the request ''{0}''", Long.valueOf(correlationId), e);
+                    } finally {
+                        state.requestDone();
+                    }
+                    if (answer != null) {
+                        state.addWrite(NIOProtocol.createFrame(correlationId, answer));
+                    }
+                    // Also reads again the client if it was at its limit
+                    NIOServerRPC.this.writeKeys.add(selectionKey);
+                    NIOServerRPC.this.selector.wakeup();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            state.requestDone();
+            logger.debug("Request ''{0}'' rejected, too many requests are waiting", Long.valueOf(correlationId));
+            JEJBResponse busyResponse = new JEJBResponse();
+            busyResponse.setRPCException(new RPCException("Server is busy, request has been rejected"));
+            try {
+                state.addWrite(NIOProtocol.createFrame(correlationId, storeObject(busyResponse)));
+            } catch (IOException ioException) {
+                logger.error("Cannot send the response of the request ''{0}''", Long.valueOf(correlationId), ioException);
+            }
+            updateInterest(selectionKey);
+        }
+    }
+
+    /**
+     * Handles a serialized request.
+     * @param payload the serialized request
+     * @return the serialized response
+     * @throws IOException if the response cannot be serialized
+     */
+    protected byte[] handleRequest(final byte[] payload) throws IOException {
+        EJBResponse response = null;
+
+        // Request is read with the EasyBeans classloader, arguments will be
+        // read later with the classloader of the container
+        ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(NIOServerRPC.class.getClassLoader());
+        try {
+            NIORequest nioRequest = readRequest(payload);
+            if (!(nioRequest.getRequest() instanceof EJBRemoteRequestImpl)) {
+                throw new IOException("Unsupported request '" + nioRequest.getRequest() + "'");
+            }
+
+            // Contexts of the caller, the identity is only used if it is trusted
+            if (this.trustCallerContext && nioRequest.getSecurityContext() != null) {
+                SecurityCurrent.getCurrent().setSecurityContext(nioRequest.getSecurityContext());
+            } else {
+                SecurityCurrent.getCurrent().setSecurityContext(new SecurityContext());
+            }
+            if (nioRequest.getAuditID() != null) {
+                CurrentInvocationID.getInstance().init(nioRequest.getAuditID());
+            }
+            response = this.handler.getEJBResponse(new NIORemoteRequest((EJBRemoteRequestImpl) nioRequest.getRequest(),
+                    this.allowedClasses));
+        } catch (Exception e) {
+            JEJBResponse errorResponse = new JEJBResponse();
+            errorResponse.setRPCException(new RPCException("Cannot handle the request", e));
+            response = errorResponse;
+        } finally {
+            // cleanup
+            SecurityCurrent.getCurrent().setSecurityContext(new SecurityContext());
+            CurrentInvocationID.getInstance().setAuditID(null);
+            Thread.currentThread().setContextClassLoader(oldClassLoader);
+        }
+
+        try {
+            return storeObject(response);
+        } catch (IOException e) {
+            // Send back an error without the original exception
+            JEJBResponse errorResponse = new JEJBResponse();
+            errorResponse.setRPCException(new RPCException("Cannot serialize the response: " + e.getMessage()));
+            return storeObject(errorResponse);
+        }
+    }
+
+    /**
+     * Reads a serialized request, only the allowed classes can be read.
+     * @param payload the serialized request
+     * @return the request
+     * @throws IOException if the request cannot be read or contains a class
+     *         which is not allowed
+     * @throws ClassNotFoundException if a class is not found
+     */
+    protected NIORequest readRequest(final byte[] payload) throws IOException, ClassNotFoundException {
+        ObjectInputStream objectInputStream = new NIORequestInputStream(new ByteArrayInputStream(payload),
+                NIOServerRPC.class.getClassLoader(), this.allowedClasses);
+        try {
+            return (NIORequest) objectInputStream.readObject();
+        } finally {
+            objectInputStream.close();
+        }
+    }
+
+    /**
+     * Closes the channel of the given key.
+     * @param selectionKey the key to close
+     */
+    private void close(final SelectionKey selectionKey) {
+        selectionKey.cancel();
+        try {
+            selectionKey.channel().close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the channel", e);
+        }
+    }
+
+}
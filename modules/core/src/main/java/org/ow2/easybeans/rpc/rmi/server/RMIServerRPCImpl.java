@@ -27,6 +27,8 @@ package org.ow2.easybeans.rpc.rmi.server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.rmi.PortableRemoteObject;
 
@@ -50,9 +52,32 @@ public class RMIServerRPCImpl implements RMIServerRPC, Remote {
 
 
     /**
-     * Retry time when container is not available.
+     * Property giving the maximum time (in ms) a request waits for an
+     * unavailable container (0 to wait without limit). By default requests
+     * wait until the container is started, as they always did.
      */
-    private static final int WAIT_TIME = 1000;
+    public static final String CONTAINER_WAIT_TIMEOUT = "easybeans.rpc.container.timeout";
+
+    /**
+     * Default maximum time to wait for an unavailable container (no limit).
+     */
+    private static final long DEFAULT_CONTAINER_WAIT_TIMEOUT = 0L;
+
+    /**
+     * Maximum time (in ms) a request waits for an unavailable container.
+     */
+    private volatile long containerWaitTimeout = Long.getLong(CONTAINER_WAIT_TIMEOUT,
+            DEFAULT_CONTAINER_WAIT_TIMEOUT).longValue();
+
+    /**
+     * Number of requests that have waited for an unavailable container.
+     */
+    private final AtomicLong parkedRequests = new AtomicLong();
+
+    /**
+     * Number of requests currently waiting for an unavailable container.
+     */
+    private final AtomicInteger waitingRequests = new AtomicInteger();
 
     /**
      * This invoker will discuss with the embedded server when receiving requests.
@@ -90,12 +115,19 @@ public class RMIServerRPCImpl implements RMIServerRPC, Remote {
 
 
         // while container is not available, stop the current request
-        while (!container.isAvailable()) {
-            //TODO: change it to a semaphore ?
+        if (!container.isAvailable()) {
+            this.parkedRequests.incrementAndGet();
+            this.waitingRequests.incrementAndGet();
             try {
-                Thread.sleep(WAIT_TIME);
+                if (!container.waitAvailable(this.containerWaitTimeout)) {
+                    throw new RemoteException("Container with id '" + id + "' is unavailable after waiting "
+                            + this.containerWaitTimeout + " ms.");
+                }
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while waiting for the container with id '" + id + "'.", e);
+            } finally {
+                this.waitingRequests.decrementAndGet();
             }
         }
 
@@ -109,4 +141,36 @@ public class RMIServerRPCImpl implements RMIServerRPC, Remote {
         return factory.rpcInvoke(request);
     }
 
+    /**
+     * @return the maximum time (in ms) a request waits for an unavailable
+     *         container (0 if there is no limit).
+     */
+    public long getContainerWaitTimeout() {
+        return this.containerWaitTimeout;
+    }
+
+    /**
+     * Sets the maximum time a request waits for an unavailable container.
+     * @param containerWaitTimeout the time in ms (0 to wait without limit)
+     */
+    public void setContainerWaitTimeout(final long containerWaitTimeout) {
+        this.containerWaitTimeout = containerWaitTimeout;
+    }
+
+    /**
+     * @return the number of requests that have waited for an unavailable
+     *         container.
+     */
+    public long getParkedRequestsCount() {
+        return this.parkedRequests.get();
+    }
+
+    /**
+     * @return the number of requests currently waiting for an unavailable
+     *         container.
+     */
+    public int getWaitingRequestsCount() {
+        return this.waitingRequests.get();
+    }
+
 }
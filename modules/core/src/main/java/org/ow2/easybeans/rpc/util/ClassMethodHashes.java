@@ -0,0 +1,94 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.rpc.util;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable table of the hashes of the public methods of a class (or an interface).<br>
+ * Tables are shared by all the users of a given class and computed only once, so that
+ * callers never need to compute the SHA-1 hash of a method while invoking it.
+ * @author Florent Benoit
+ */
+public final class ClassMethodHashes {
+
+    /**
+     * Tables already computed. A table is attached to its class: it is read
+     * without locking and kept as long as the class is loaded, without
+     * preventing its classloader from being garbage collected.
+     */
+    private static final ClassValue<ClassMethodHashes> TABLES = new ClassValue<ClassMethodHashes>() {
+        @Override
+        protected ClassMethodHashes computeValue(final Class<?> clz) {
+            return new ClassMethodHashes(clz);
+        }
+    };
+
+    /**
+     * Hash of each method.
+     */
+    private final Map<Method, Long> hashes;
+
+    /**
+     * Computes the table of the given class.
+     * @param clz the class to analyze
+     */
+    private ClassMethodHashes(final Class<?> clz) {
+        Map<Method, Long> map = new HashMap<Method, Long>();
+        for (Method method : clz.getMethods()) {
+            map.put(method, Long.valueOf(Hash.hashMethod(method)));
+        }
+        // Methods of java.lang.Object are not returned for interfaces
+        for (Method method : Object.class.getMethods()) {
+            if (!map.containsKey(method)) {
+                map.put(method, Long.valueOf(Hash.hashMethod(method)));
+            }
+        }
+        this.hashes = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Gets the table for the given class (computed if this is the first call for this class).
+     * @param clz the class to analyze
+     * @return the shared table of the given class
+     */
+    public static ClassMethodHashes getInstance(final Class<?> clz) {
+        return TABLES.get(clz);
+    }
+
+    /**
+     * Gets the hash of the given method.
+     * @param method the given method
+     * @return the hash of the method or null if the method is not a public method of the class.
+     */
+    public Long getHash(final Method method) {
+        return this.hashes.get(method);
+    }
+
+}
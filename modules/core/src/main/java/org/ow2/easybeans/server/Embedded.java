@@ -26,6 +26,9 @@
 
 package org.ow2.easybeans.server;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
@@ -80,6 +83,8 @@ import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
 import org.ow2.easybeans.resolver.ServerJNDIResolver;
 import org.ow2.easybeans.resolver.api.EZBServerJNDIResolver;
 import org.ow2.easybeans.rpc.api.RMIServerRPC;
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+import org.ow2.easybeans.rpc.nio.server.NIOServerRPC;
 import org.ow2.easybeans.rpc.rmi.server.RMIServerRPCImpl;
 import org.ow2.easybeans.security.jacc.PolicyProvider;
 import org.ow2.util.archive.api.IArchive;
@@ -185,6 +190,11 @@ public class Embedded implements EZBServer {
      */
     private RMIServerRPC invoker = null;
 
+    /**
+     * NIO transport for the invoker (only started if a port is configured).
+     */
+    private NIOServerRPC nioInvoker = null;
+
     /**
      * JNDI Resolver.
      */
@@ -442,6 +452,19 @@ public class Embedded implements EZBServer {
             throw new EmbeddedException("Cannot bind the RPC invoker", e);
         }
 
+        // Start the NIO transport if a port is given
+        String nioPort = System.getProperty(NIOProtocol.PORT);
+        if (nioPort != null) {
+            try {
+                this.nioInvoker = new NIOServerRPC(this.invoker, getNIOHost(), Integer.parseInt(nioPort.trim()));
+                this.nioInvoker.start();
+            } catch (NumberFormatException e) {
+                throw new EmbeddedException("Invalid port number '" + nioPort + "' for the NIO RPC invoker", e);
+            } catch (IOException e) {
+                throw new EmbeddedException("Cannot start the NIO RPC invoker", e);
+            }
+        }
+
         logger.info("Embedded.start.startup", Version.getVersion(), Long.valueOf(System.currentTimeMillis() - tStart));
         logger.debug("Embedded.start.created", Integer.valueOf(this.containers.size()));
 
@@ -472,6 +495,31 @@ public class Embedded implements EZBServer {
         }
     }
 
+    /**
+     * Gets the host on which the NIO RPC invoker is listening: the value of
+     * the {@link NIOProtocol#HOST} property or else the host of the registry
+     * used by RMI (or localhost if there is no registry).
+     * @return the host of the NIO RPC invoker
+     */
+    protected String getNIOHost() {
+        String host = System.getProperty(NIOProtocol.HOST);
+        if (host != null) {
+            return host.trim();
+        }
+        RegistryComponent registryComponent = getComponent(RegistryComponent.class);
+        if (registryComponent != null && registryComponent.getProviderURL() != null) {
+            try {
+                host = new URI(registryComponent.getProviderURL()).getHost();
+            } catch (URISyntaxException e) {
+                logger.warn("Cannot get the host of the provider URL ''{0}''", registryComponent.getProviderURL(), e);
+            }
+        }
+        if (host == null) {
+            return NIOProtocol.DEFAULT_HOST;
+        }
+        return host;
+    }
+
     /**
      * Stops the EJB3 server.
      * @throws EmbeddedException if container cannot be stopped.
@@ -534,6 +582,12 @@ public class Embedded implements EZBServer {
             }
         }
 
+        // Stop the NIO transport
+        if (this.nioInvoker != null) {
+            this.nioInvoker.stop();
+            this.nioInvoker = null;
+        }
+
         // Unbind the RPCInvoker Remote Object
         try {
             new InitialContext().unbind(RMIServerRPC.RPC_JNDI_NAME);
@@ -918,6 +972,14 @@ public class Embedded implements EZBServer {
         return this.stopping;
     }
 
+    /**
+     * @return the RPC invoker handling the remote requests (null if the
+     *         server is not started).
+     */
+    public RMIServerRPC getInvoker() {
+        return this.invoker;
+    }
+
     /**
      * @return context
      */
@@ -0,0 +1,333 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free histogram of latencies.<br>
+ * Values are recorded in buckets whose width grows with the magnitude of the
+ * values (a power of two range is split in {@link #SUB_BUCKET_HALF_COUNT}
+ * buckets) so that the relative error of a reported value stays below 3%.
+ * Each thread records in one of several stripes which are only summed when
+ * a snapshot is taken.
+ * @author Florent Benoit
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of the values recorded with an exact precision.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /**
+     * Number of values recorded with an exact precision.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets of each power of two range above {@link #SUB_BUCKET_COUNT}.
+     */
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * Number of bits of the highest value that can be recorded.
+     */
+    private static final int MAX_VALUE_BITS = 36;
+
+    /**
+     * Highest value that can be recorded (higher values are recorded as this one).
+     */
+    public static final long HIGHEST_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    /**
+     * Number of buckets.
+     */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    /**
+     * Maximum number of stripes.
+     */
+    private static final int MAX_STRIPES = 8;
+
+    /**
+     * Stripes (created when a thread records its first value in it).
+     */
+    private final AtomicReferenceArray<Stripe> stripes;
+
+    /**
+     * Mask used to get the stripe of a thread.
+     */
+    private final int stripeMask;
+
+    /**
+     * Builds an empty histogram.
+     */
+    public LatencyHistogram() {
+        int count = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (count < processors && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        this.stripes = new AtomicReferenceArray<Stripe>(count);
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Records a value.
+     * @param value the value to record (negative values are recorded as 0)
+     */
+    public void record(final long value) {
+        long v = Math.min(Math.max(value, 0L), HIGHEST_TRACKABLE_VALUE);
+        int stripeIndex = (int) Thread.currentThread().getId() & this.stripeMask;
+        Stripe stripe = this.stripes.get(stripeIndex);
+        if (stripe == null) {
+            this.stripes.compareAndSet(stripeIndex, null, new Stripe());
+            stripe = this.stripes.get(stripeIndex);
+        }
+        stripe.record(v);
+    }
+
+    /**
+     * Takes a snapshot of all the values recorded since the creation of the histogram.
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < this.stripes.length(); i++) {
+            Stripe stripe = this.stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKET_COUNT; j++) {
+                    counts[j] += stripe.counts.get(j);
+                }
+                total += stripe.total.get();
+                max = Math.max(max, stripe.max.get());
+            }
+        }
+        return new Snapshot(counts, total, max);
+    }
+
+    /**
+     * Gets the index of the bucket of the given value.
+     * @param value the value (between 0 and {@link #HIGHEST_TRACKABLE_VALUE})
+     * @return the index of the bucket
+     */
+    static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) ((value >>> shift) - SUB_BUCKET_HALF_COUNT);
+    }
+
+    /**
+     * Gets the highest value recorded in the given bucket.
+     * @param index the index of the bucket
+     * @return the highest value of the bucket
+     */
+    static long getHighestValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Values recorded by a group of threads.
+     */
+    private static final class Stripe {
+
+        /**
+         * Number of values of each bucket.
+         */
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+        /**
+         * Sum of the values.
+         */
+        private final AtomicLong total = new AtomicLong();
+
+        /**
+         * Highest value.
+         */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records a value.
+         * @param value the value to record
+         */
+        private void record(final long value) {
+            this.counts.incrementAndGet(getBucketIndex(value));
+            this.total.addAndGet(value);
+            long current = this.max.get();
+            while (value > current && !this.max.compareAndSet(current, value)) {
+                current = this.max.get();
+            }
+        }
+    }
+
+    /**
+     * Immutable view of the values of a histogram.
+     */
+    public static final class Snapshot {
+
+        /**
+         * Empty snapshot.
+         */
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0, 0);
+
+        /**
+         * Number of values of each bucket.
+         */
+        private final long[] counts;
+
+        /**
+         * Number of values.
+         */
+        private final long count;
+
+        /**
+         * Sum of the values.
+         */
+        private final long total;
+
+        /**
+         * Highest value.
+         */
+        private final long max;
+
+        /**
+         * Builds a snapshot.
+         * @param counts the number of values of each bucket
+         * @param total the sum of the values
+         * @param max the highest value
+         */
+        private Snapshot(final long[] counts, final long total, final long max) {
+            this.counts = counts;
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.count = n;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Gets the values recorded since the given (older) snapshot of the same histogram.
+         * @param previous the older snapshot
+         * @return the values recorded between the two snapshots
+         */
+        public Snapshot minus(final Snapshot previous) {
+            long[] diff = new long[BUCKET_COUNT];
+            int highest = -1;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                diff[i] = this.counts[i] - previous.counts[i];
+                if (diff[i] > 0) {
+                    highest = i;
+                }
+            }
+            // The exact highest value is only known for the whole histogram
+            long highestValue = 0;
+            if (highest >= 0) {
+                highestValue = Math.min(getHighestValue(highest), this.max);
+            }
+            return new Snapshot(diff, this.total - previous.total, highestValue);
+        }
+
+        /**
+         * @return the number of values.
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the sum of the values.
+         */
+        public long getTotal() {
+            return this.total;
+        }
+
+        /**
+         * @return the highest value.
+         */
+        public long getMax() {
+            return this.max;
+        }
+
+        /**
+         * @return the lowest value (with the precision of the buckets).
+         */
+        public long getMin() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (this.counts[i] > 0) {
+                    return Math.min(getHighestValue(i), this.max);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the mean of the values.
+         */
+        public double getMean() {
+            if (this.count == 0) {
+                return 0;
+            }
+            return (double) this.total / this.count;
+        }
+
+        /**
+         * Gets the value below which the given percentage of the values fall.
+         * @param percentile the percentile (between 0 and 100)
+         * @return the value at the given percentile (with the precision of the buckets)
+         */
+        public long getValueAtPercentile(final double percentile) {
+            if (this.count == 0) {
+                return 0;
+            }
+            double p = Math.min(Math.max(percentile, 0.0), 100.0);
+            long rank = Math.max(1L, (long) Math.ceil(p / 100.0 * this.count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += this.counts[i];
+                if (seen >= rank) {
+                    return Math.min(getHighestValue(i), this.max);
+                }
+            }
+            return this.max;
+        }
+    }
+
+}
@@ -0,0 +1,596 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.statistic;
+
+import java.util.regex.Pattern;
+
+import javax.management.j2ee.statistics.TimeStatistic;
+
+import org.ow2.easybeans.api.event.EZBEventListener;
+import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocation;
+import org.ow2.easybeans.api.event.bean.EZBEventBeanInvocationBegin;
+import org.ow2.easybeans.api.jmx.EZBMBeanAttribute;
+import org.ow2.easybeans.api.statistic.EZBLatencyStatistic;
+import org.ow2.easybeans.api.statistic.EZBStatistic;
+import org.ow2.easybeans.component.itf.EZBEventComponent;
+import org.ow2.easybeans.component.itf.EZBJmxComponent;
+import org.ow2.easybeans.naming.J2EEManagedObjectNamingHelper;
+import org.ow2.util.event.api.EventPriority;
+import org.ow2.util.event.api.IEvent;
+import org.ow2.util.jmx.impl.AbstractMBeanAttribute;
+
+/**
+ * Statistic factory recording the distribution of the EJB call time in EasyBeans.<br>
+ * The call time is measured on the calling thread (begin and end events are
+ * handled synchronously) so that no event has to be kept until the end of
+ * the call, and it is recorded in a {@link LatencyHistogram}.
+ * @author Florent Benoit
+ */
+public class LatencyStatisticFactory extends AbstractStatisticFactory {
+
+    /**
+     * Percentiles exposed as MBean attributes.
+     */
+    private static final double[] PERCENTILES = new double[] {50.0, 90.0, 99.0, 99.9};
+
+    /**
+     * Names of the percentiles exposed as MBean attributes.
+     */
+    private static final String[] PERCENTILE_NAMES = new String[] {"P50", "P90", "P99", "P999"};
+
+    /**
+     * The LatencyStatisticFactory constructor.
+     * @param eventComponent The event component.
+     * @param jmxComponent The jmx component.
+     */
+    public LatencyStatisticFactory(final EZBEventComponent eventComponent, final EZBJmxComponent jmxComponent) {
+        super(J2EEManagedObjectNamingHelper.getAllJ2EEManagedObjectsFilter(), eventComponent, jmxComponent);
+    }
+
+    /**
+     * Create a statistic for the given statistic provider.
+     * @param statisticProviderId The statistic provider id.
+     * @return The created statistic.
+     */
+    public EZBStatistic createStatistic(final String statisticProviderId) {
+        return new LatencyStatistic(statisticProviderId);
+    }
+
+    /**
+     * Statistic recording the distribution of the EJB call time (in microseconds).
+     * @author Florent Benoit
+     */
+    public class LatencyStatistic extends AbstractStatistic implements EZBLatencyStatistic {
+
+        /**
+         * Recorded call times.
+         */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /**
+         * Snapshot taken when the statistic has been reset.
+         */
+        private volatile LatencyHistogram.Snapshot resetSnapshot = LatencyHistogram.Snapshot.EMPTY;
+
+        /**
+         * Snapshot taken at the end of the previous interval.
+         */
+        private LatencyHistogram.Snapshot intervalSnapshot = LatencyHistogram.Snapshot.EMPTY;
+
+        /**
+         * Calls of the current thread waiting for their end event.
+         */
+        private final ThreadLocal<PendingCalls> pendingCalls = new ThreadLocal<PendingCalls>() {
+            @Override
+            protected PendingCalls initialValue() {
+                return new PendingCalls();
+            }
+        };
+
+        /**
+         * The LatencyStatistic constructor.
+         * @param statisticProviderId The statistic provider id.
+         */
+        public LatencyStatistic(final String statisticProviderId) {
+            super(getStatisticName("businessProcessingTimeDistribution", statisticProviderId),
+                    "The distribution of the processing time",
+                    "us",
+                    LatencyStatisticFactory.this.getStatisticFactoryId(),
+                    statisticProviderId,
+                    LatencyStatisticFactory.this.getEventComponent(),
+                    LatencyStatisticFactory.this.getJmxComponent());
+
+            addEventListener(new LatencyEventListener());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                addMBeanAttribute(new LatencyMBeanAttribute(getStatisticName("businessProcessingTime"
+                        + PERCENTILE_NAMES[i], statisticProviderId), PERCENTILES[i]));
+            }
+            addMBeanAttribute(new LatencyMBeanAttribute(getStatisticName("businessProcessingTimeMax",
+                    statisticProviderId), 100.0));
+        }
+
+        /**
+         * Reset the statistic.
+         */
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            LatencyHistogram.Snapshot snapshot = this.histogram.snapshot();
+            this.resetSnapshot = snapshot;
+            this.intervalSnapshot = snapshot;
+        }
+
+        /**
+         * Get the values recorded since the last reset.
+         * @return The values recorded since the last reset.
+         */
+        public LatencyHistogram.Snapshot getSnapshot() {
+            return this.histogram.snapshot().minus(this.resetSnapshot);
+        }
+
+        /**
+         * Get the number of recorded values.
+         * @return The number of recorded values.
+         */
+        public long getCount() {
+            return getSnapshot().getCount();
+        }
+
+        /**
+         * Get the value (in the statistic unit) below which the given percentage of the recorded values fall.
+         * @param percentile The percentile (between 0 and 100).
+         * @return The value at the given percentile.
+         */
+        public long getValueAtPercentile(final double percentile) {
+            return getSnapshot().getValueAtPercentile(percentile);
+        }
+
+        /**
+         * Get the highest recorded value (in the statistic unit).
+         * @return The highest recorded value.
+         */
+        public long getMaxValue() {
+            return getSnapshot().getMax();
+        }
+
+        /**
+         * Get the statistic String representation.
+         * @return The statistic String representation.
+         */
+        public String getValue() {
+            return format(getSnapshot());
+        }
+
+        /**
+         * Get the statistic String representation for the values recorded since the previous call of this method.
+         * @return The statistic String representation for the last interval.
+         */
+        public synchronized String getIntervalValue() {
+            LatencyHistogram.Snapshot snapshot = this.histogram.snapshot();
+            LatencyHistogram.Snapshot interval = snapshot.minus(this.intervalSnapshot);
+            this.intervalSnapshot = snapshot;
+            return format(interval);
+        }
+
+        /**
+         * Get the String representation of the given values.
+         * @param snapshot The values.
+         * @return The String representation.
+         */
+        private String format(final LatencyHistogram.Snapshot snapshot) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("count=");
+            sb.append(snapshot.getCount());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                sb.append(", ");
+                sb.append(PERCENTILE_NAMES[i].toLowerCase());
+                sb.append("=");
+                sb.append(snapshot.getValueAtPercentile(PERCENTILES[i]));
+                sb.append(getUnit());
+            }
+            sb.append(", max=");
+            sb.append(snapshot.getMax());
+            sb.append(getUnit());
+            return sb.toString();
+        }
+
+        /**
+         * Get the statistic JSR77 representation.
+         * @return The statistic JSR77 representation.
+         */
+        public LatencyTimeStatistic getJSR77Statistic() {
+            return new LatencyTimeStatistic(this, getSnapshot());
+        }
+
+        /**
+         * Calls of a thread waiting for their end event.<br>
+         * Calls of a thread end in the reverse order of their beginning.
+         */
+        private final class PendingCalls {
+
+            /**
+             * Initial capacity.
+             */
+            private static final int INITIAL_CAPACITY = 4;
+
+            /**
+             * Invocation numbers.
+             */
+            private long[] numbers = new long[INITIAL_CAPACITY];
+
+            /**
+             * Begin times (in ns).
+             */
+            private long[] startTimes = new long[INITIAL_CAPACITY];
+
+            /**
+             * Number of pending calls.
+             */
+            private int size = 0;
+
+            /**
+             * Adds a call.
+             * @param number The invocation number.
+             * @param startTime The begin time (in ns).
+             */
+            private void push(final long number, final long startTime) {
+                if (this.size == this.numbers.length) {
+                    long[] newNumbers = new long[this.size * 2];
+                    long[] newStartTimes = new long[this.size * 2];
+                    System.arraycopy(this.numbers, 0, newNumbers, 0, this.size);
+                    System.arraycopy(this.startTimes, 0, newStartTimes, 0, this.size);
+                    this.numbers = newNumbers;
+                    this.startTimes = newStartTimes;
+                }
+                this.numbers[this.size] = number;
+                this.startTimes[this.size] = startTime;
+                this.size++;
+            }
+
+            /**
+             * Removes a call (and the calls begun after it which have no end event).
+             * @param number The invocation number.
+             * @return The begin time (in ns) or -1 if the call is unknown.
+             */
+            private long pop(final long number) {
+                for (int i = this.size - 1; i >= 0; i--) {
+                    if (this.numbers[i] == number) {
+                        this.size = i;
+                        return this.startTimes[i];
+                    }
+                }
+                return -1;
+            }
+        }
+
+        /**
+         * An EventListener for LatencyStatistic to collect data it needs.
+         * @author Florent Benoit
+         */
+        private class LatencyEventListener implements EZBEventListener {
+            /**
+             * The event provider filter.
+             */
+            private Pattern eventProviderFilter;
+
+            /**
+             * The LatencyEventListener constructor.
+             */
+            public LatencyEventListener() {
+                this.eventProviderFilter = Pattern.compile(
+                        J2EEManagedObjectNamingHelper.getAllRelativeMethodsFilter(getStatisticProviderId()));
+            }
+
+            /**
+             * Get the event provider filter.<br>
+             * The event provider filter is a regular expression that define which event provider the listener needs to listen.
+             * @return The event provider filter.
+             */
+            public String getEventProviderFilter() {
+                return this.eventProviderFilter.pattern();
+            }
+
+            /**
+             * Check whether the listener wants to handle this event.
+             * @param event The event to check.
+             * @return True if the listener wants to handle this event, false otherwise.
+             */
+            public boolean accept(final IEvent event) {
+                try {
+                    return this.eventProviderFilter.matcher(
+                            ((EZBEventBeanInvocation) event).getEventProviderId()).matches();
+                } catch (Throwable error) {
+                    return false;
+                }
+            }
+
+            /**
+             * Get the listener priority.<br>
+             * Events are handled by the calling thread, the begin and the end of a call are paired on this thread.
+             * @return The listener priority.
+             */
+            public EventPriority getPriority() {
+                return EventPriority.SYNC_NORM;
+            }
+
+            /**
+             * Handle the event.
+             * @param event The event to handle.
+             */
+            public void handle(final IEvent event) {
+                long now = System.nanoTime();
+                EZBEventBeanInvocation invocationEvent = (EZBEventBeanInvocation) event;
+                PendingCalls calls = LatencyStatistic.this.pendingCalls.get();
+                if (invocationEvent instanceof EZBEventBeanInvocationBegin) {
+                    calls.push(invocationEvent.getInvocationNumber(), now);
+                } else {
+                    long startTime = calls.pop(invocationEvent.getInvocationNumber());
+                    if (startTime >= 0) {
+                        LatencyStatistic.this.histogram.record((now - startTime) / 1000L);
+                        setLastSampleTime(System.currentTimeMillis());
+                    }
+                }
+            }
+        }
+
+        /**
+         * A MBeanAttribute for LatencyStatistic to expose a percentile.
+         * @author Florent Benoit
+         */
+        private class LatencyMBeanAttribute extends AbstractMBeanAttribute implements EZBMBeanAttribute {
+
+            /**
+             * The exposed percentile.
+             */
+            private final double percentile;
+
+            /**
+             * The LatencyMBeanAttribute constructor.
+             * @param name The attribute name.
+             * @param percentile The exposed percentile.
+             */
+            public LatencyMBeanAttribute(final String name, final double percentile) {
+                super(name, getUnit(), getDescription(), true, false, false);
+                this.percentile = percentile;
+            }
+
+            /**
+             * Get the MBean provider filter.<br>
+             * The MBean provider filter is a regular expression that define on which MBean the attribute needs to be added.
+             * @return The MBean provider filter.
+             */
+            public String getMBeanProviderFilter() {
+                return J2EEManagedObjectNamingHelper.encodeJ2EEManagedObjectFilter(getStatisticProviderId());
+            }
+
+            /**
+             * Get the attributes value for this BaseModelMBeanExt id.
+             * @param id The BaseModelMBeanExt id.
+             * @return The attributes value.
+             */
+            public Object getValue(final String id) {
+                return Long.valueOf(getValueAtPercentile(this.percentile));
+            }
+
+            /**
+             * Set the attribute value for this BaseModelMBeanExt id.
+             * @param id The BaseModelMBeanExt id.
+             * @param value The attributes value.
+             */
+            public void setValue(final String id, final Object value) {
+                // Nothing to do
+            }
+        }
+    }
+
+    /**
+     * Get the name of a statistic (or of an attribute) for the given statistic provider.
+     * @param name The name used for beans.
+     * @param statisticProviderId The statistic provider id.
+     * @return The name with the method signature if the provider is a method.
+     */
+    private static String getStatisticName(final String name, final String statisticProviderId) {
+        if (statisticProviderId.matches(J2EEManagedObjectNamingHelper.getAllMethodsFilter())) {
+            return name + "_" + statisticProviderId.substring(statisticProviderId.lastIndexOf("/") + 1);
+        }
+        return name;
+    }
+
+    /**
+     * JSR77 representation of a latency statistic.<br>
+     * The percentiles are available in addition of the JSR77 time statistic attributes.
+     * @author Florent Benoit
+     */
+    public static class LatencyTimeStatistic implements TimeStatistic {
+
+        /**
+         * Id for serializable class.
+         */
+        private static final long serialVersionUID = -2409011873405557126L;
+
+        /**
+         * The statistic name.
+         */
+        private final String name;
+
+        /**
+         * The statistic description.
+         */
+        private final String description;
+
+        /**
+         * The statistic unit.
+         */
+        private final String unit;
+
+        /**
+         * The statistic start time.
+         */
+        private final long startTime;
+
+        /**
+         * The statistic last sample time.
+         */
+        private final long lastSampleTime;
+
+        /**
+         * The number of calls.
+         */
+        private final long count;
+
+        /**
+         * The shortest call time.
+         */
+        private final long minTime;
+
+        /**
+         * The longest call time.
+         */
+        private final long maxTime;
+
+        /**
+         * The sum of the call times.
+         */
+        private final long totalTime;
+
+        /**
+         * The call time at each exposed percentile.
+         */
+        private final long[] percentiles;
+
+        /**
+         * Builds the JSR77 representation of the given values.
+         * @param statistic The statistic.
+         * @param snapshot The values of the statistic.
+         */
+        public LatencyTimeStatistic(final EZBStatistic statistic, final LatencyHistogram.Snapshot snapshot) {
+            this.name = statistic.getName();
+            this.description = statistic.getDescription();
+            this.unit = statistic.getUnit();
+            this.startTime = statistic.getStartTime();
+            this.lastSampleTime = statistic.getLastSampleTime();
+            this.count = snapshot.getCount();
+            this.minTime = snapshot.getMin();
+            this.maxTime = snapshot.getMax();
+            this.totalTime = snapshot.getTotal();
+            this.percentiles = new long[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                this.percentiles[i] = snapshot.getValueAtPercentile(PERCENTILES[i]);
+            }
+        }
+
+        /**
+         * @return The statistic name.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return The statistic description.
+         */
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * @return The statistic unit.
+         */
+        public String getUnit() {
+            return this.unit;
+        }
+
+        /**
+         * @return The statistic start time.
+         */
+        public long getStartTime() {
+            return this.startTime;
+        }
+
+        /**
+         * @return The statistic last sample time.
+         */
+        public long getLastSampleTime() {
+            return this.lastSampleTime;
+        }
+
+        /**
+         * @return The number of calls.
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return The shortest call time.
+         */
+        public long getMinTime() {
+            return this.minTime;
+        }
+
+        /**
+         * @return The longest call time.
+         */
+        public long getMaxTime() {
+            return this.maxTime;
+        }
+
+        /**
+         * @return The sum of the call times.
+         */
+        public long getTotalTime() {
+            return this.totalTime;
+        }
+
+        /**
+         * @return The median call time.
+         */
+        public long getPercentile50() {
+            return this.percentiles[0];
+        }
+
+        /**
+         * @return The 90th percentile of the call time.
+         */
+        public long getPercentile90() {
+            return this.percentiles[1];
+        }
+
+        /**
+         * @return The 99th percentile of the call time.
+         */
+        public long getPercentile99() {
+            return this.percentiles[2];
+        }
+
+        /**
+         * @return The 99.9th percentile of the call time.
+         */
+        public long getPercentile999() {
+            return this.percentiles[3];
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timing wheel tracking deadlines of keys. Scheduling and cancelling
+ * a key are O(1) operations; the wheel is advanced by a single periodic task
+ * that collects all the keys whose deadline has been reached.<br>
+ * Entries keep their expiration tick, so a deadline farther than one
+ * revolution of the wheel stays in its bucket until this tick is reached.
+ * @param <K> the type of the keys
+ * @author Florent Benoit
+ */
+public class TimingWheel<K> {
+
+    /**
+     * Duration of a tick (in ms).
+     */
+    private final long tickDuration;
+
+    /**
+     * Buckets of the wheel, a bucket is a doubly linked list of entries.
+     */
+    private final Entry<K>[] wheel;
+
+    /**
+     * Entries by key.
+     */
+    private final Map<K, Entry<K>> entries = new HashMap<K, Entry<K>>();
+
+    /**
+     * Number of ticks that have been processed.
+     */
+    private long tick = 0L;
+
+    /**
+     * Time of the start of the wheel (in ms).
+     */
+    private final long startTime;
+
+    /**
+     * Builds a new timing wheel.
+     * @param tickDuration the duration of a tick (in ms)
+     * @param wheelSize the number of buckets of the wheel
+     */
+    public TimingWheel(final long tickDuration, final int wheelSize) {
+        this(tickDuration, wheelSize, System.currentTimeMillis());
+    }
+
+    /**
+     * Builds a new timing wheel starting at the given time.
+     * @param tickDuration the duration of a tick (in ms)
+     * @param wheelSize the number of buckets of the wheel
+     * @param startTime the time (in ms) of the first tick
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(final long tickDuration, final int wheelSize, final long startTime) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Invalid tick duration '" + tickDuration + "'.");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("Invalid wheel size '" + wheelSize + "'.");
+        }
+        this.tickDuration = tickDuration;
+        this.wheel = new Entry[wheelSize];
+        this.startTime = startTime;
+    }
+
+    /**
+     * Schedules the given key at the given deadline. An existing deadline for
+     * this key is replaced.
+     * @param key the key
+     * @param deadline the time (in ms) at which the key expires
+     */
+    public synchronized void schedule(final K key, final long deadline) {
+        Entry<K> entry = this.entries.get(key);
+        if (entry != null) {
+            unlink(entry);
+        } else {
+            entry = new Entry<K>(key);
+            this.entries.put(key, entry);
+        }
+
+        // Tick at which the key expires, never in the past
+        long expirationTick = (deadline - this.startTime + this.tickDuration - 1) / this.tickDuration;
+        if (expirationTick <= this.tick) {
+            expirationTick = this.tick + 1;
+        }
+        entry.expirationTick = expirationTick;
+        link(entry, (int) (expirationTick % this.wheel.length));
+    }
+
+    /**
+     * Cancels the deadline of the given key.
+     * @param key the key
+     * @return true if the key was scheduled
+     */
+    public synchronized boolean cancel(final K key) {
+        Entry<K> entry = this.entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * Advances the wheel up to the given time.
+     * @param now the current time (in ms)
+     * @return the keys whose deadline has been reached, they're no longer scheduled
+     */
+    public synchronized List<K> advance(final long now) {
+        List<K> expired = new ArrayList<K>();
+        long currentTick = (now - this.startTime) / this.tickDuration;
+        if (currentTick <= this.tick) {
+            return expired;
+        }
+        // Buckets of the elapsed ticks, each bucket is visited at most once
+        // if the wheel was not advanced for more than one revolution
+        long ticks = Math.min(currentTick - this.tick, this.wheel.length);
+        for (long i = 1; i <= ticks; i++) {
+            int index = (int) ((this.tick + i) % this.wheel.length);
+            Entry<K> entry = this.wheel[index];
+            while (entry != null) {
+                Entry<K> next = entry.next;
+                if (entry.expirationTick <= currentTick) {
+                    unlink(entry);
+                    this.entries.remove(entry.key);
+                    expired.add(entry.key);
+                }
+                entry = next;
+            }
+        }
+        this.tick = currentTick;
+        return expired;
+    }
+
+    /**
+     * @return the number of scheduled keys.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Cancels all the deadlines.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < this.wheel.length; i++) {
+            this.wheel[i] = null;
+        }
+        this.entries.clear();
+    }
+
+    /**
+     * Adds the entry in the given bucket.
+     * @param entry the entry
+     * @param index the index of the bucket
+     */
+    private void link(final Entry<K> entry, final int index) {
+        entry.bucket = index;
+        entry.previous = null;
+        entry.next = this.wheel[index];
+        if (entry.next != null) {
+            entry.next.previous = entry;
+        }
+        this.wheel[index] = entry;
+    }
+
+    /**
+     * Removes the entry from its bucket.
+     * @param entry the entry
+     */
+    private void unlink(final Entry<K> entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            this.wheel[entry.bucket] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    /**
+     * Entry of the wheel.
+     * @param <K> the type of the key
+     */
+    private static final class Entry<K> {
+
+        /**
+         * Key of the entry.
+         */
+        private final K key;
+
+        /**
+         * Tick at which the entry expires.
+         */
+        private long expirationTick;
+
+        /**
+         * Index of the bucket of the entry.
+         */
+        private int bucket;
+
+        /**
+         * Previous entry in the bucket.
+         */
+        private Entry<K> previous;
+
+        /**
+         * Next entry in the bucket.
+         */
+        private Entry<K> next;
+
+        /**
+         * Builds an entry for the given key.
+         * @param key the key
+         */
+        private Entry(final K key) {
+            this.key = key;
+        }
+    }
+
+}
@@ -0,0 +1,451 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.container.mdb;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+
+import org.ow2.easybeans.container.mdb.MDBDeliveryBatch;
+import org.ow2.easybeans.container.mdb.MDBDeliveryBatching;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the transactions of the batched delivery of the messages with a mock
+ * transaction manager.
+ * @author Florent Benoit
+ */
+public class TestMDBDeliveryBatch {
+
+    /**
+     * Maximum time of a batch which never expires during a test.
+     */
+    private static final long LONG_TIMEOUT = 60000L;
+
+    /**
+     * Calls made on the transaction manager, the transactions and the endpoint.
+     */
+    private List<String> events = null;
+
+    /**
+     * Transaction manager.
+     */
+    private MockTransactionManager transactionManager = null;
+
+    /**
+     * XA resource of the endpoint.
+     */
+    private XAResource xaResource = null;
+
+    /**
+     * Builds the mocks.
+     */
+    @BeforeMethod
+    public void init() {
+        this.events = new ArrayList<String>();
+        this.transactionManager = new MockTransactionManager();
+        this.xaResource = (XAResource) Proxy.newProxyInstance(XAResource.class.getClassLoader(),
+                new Class[] {XAResource.class}, new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Messages are delivered in a single transaction, suspended between two
+     * messages, which is committed once the batch is full.
+     */
+    @Test
+    public void testFullBatch() {
+        MDBDeliveryBatching batching = newBatching(3, LONG_TIMEOUT, true);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(batch.deliver(new MessageDelivery(i)), Integer.valueOf(i));
+            Assert.assertNull(this.transactionManager.current);
+        }
+
+        Assert.assertEquals(this.events, Arrays.asList("begin", "deliver 0", "delist success", "suspend",
+                "resume", "deliver 1", "delist success", "suspend",
+                "resume", "deliver 2", "delist success", "suspend", "commit"));
+        Assert.assertEquals(batching.getCommittedBatches(), 1);
+        Assert.assertEquals(batching.getCommittedMessages(), 3);
+        Assert.assertEquals(batching.getMaxBatchSize(), 3);
+        Assert.assertEquals(batching.getAverageBatchSize(), 3.0);
+        Assert.assertEquals(batching.getRolledBackBatches(), 0);
+
+        // Next message begins a new batch
+        this.events.clear();
+        batch.deliver(new MessageDelivery(3));
+        Assert.assertEquals(this.events.get(0), "begin");
+    }
+
+    /**
+     * A failed message rolls back the batch. With the split policy, the
+     * messages delivered again are then delivered in their own transaction.
+     */
+    @Test
+    public void testSplitOnFailure() {
+        MDBDeliveryBatching batching = newBatching(10, LONG_TIMEOUT, true);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        batch.deliver(new MessageDelivery(0));
+        try {
+            batch.deliver(new MessageDelivery(1, true, false));
+            Assert.fail("The failure of the message should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "message 1");
+        }
+        Assert.assertNull(this.transactionManager.current);
+        Assert.assertEquals(this.events, Arrays.asList("begin", "deliver 0", "delist success", "suspend",
+                "resume", "deliver 1", "delist fail", "suspend", "rollback"));
+        Assert.assertEquals(batching.getRolledBackBatches(), 1);
+        Assert.assertEquals(batching.getCommittedBatches(), 0);
+
+        // Both messages are delivered again, one by one
+        this.events.clear();
+        batch.deliver(new MessageDelivery(0));
+        batch.deliver(new MessageDelivery(1));
+        Assert.assertEquals(this.events, Arrays.asList("deliver 0", "deliver 1"));
+
+        // Then batched again
+        batch.deliver(new MessageDelivery(2));
+        Assert.assertEquals(this.events.get(2), "begin");
+    }
+
+    /**
+     * With the rollback policy, the messages are batched again after a failure.
+     */
+    @Test
+    public void testRollbackOnFailure() {
+        MDBDeliveryBatching batching = newBatching(10, LONG_TIMEOUT, false);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        try {
+            batch.deliver(new MessageDelivery(0, true, false));
+            Assert.fail("The failure of the message should be thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "message 0");
+        }
+        Assert.assertEquals(batching.getRolledBackBatches(), 1);
+
+        this.events.clear();
+        batch.deliver(new MessageDelivery(0));
+        Assert.assertEquals(this.events, Arrays.asList("begin", "deliver 0", "delist success", "suspend"));
+    }
+
+    /**
+     * A transaction marked for rollback by a message rolls back the batch.
+     */
+    @Test
+    public void testMarkedForRollback() {
+        MDBDeliveryBatching batching = newBatching(10, LONG_TIMEOUT, true);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        batch.deliver(new MessageDelivery(0));
+        Assert.assertNull(batch.deliver(new MessageDelivery(1, false, true)));
+        Assert.assertEquals(this.events, Arrays.asList("begin", "deliver 0", "delist success", "suspend",
+                "resume", "deliver 1", "delist success", "suspend", "rollback"));
+        Assert.assertEquals(batching.getRolledBackBatches(), 1);
+
+        this.events.clear();
+        batch.deliver(new MessageDelivery(0));
+        batch.deliver(new MessageDelivery(1));
+        Assert.assertEquals(this.events, Arrays.asList("deliver 0", "deliver 1"));
+    }
+
+    /**
+     * A batch is committed by the flusher once its timeout has expired, or
+     * when the endpoint is released.
+     */
+    @Test
+    public void testTimeoutAndFlush() {
+        MDBDeliveryBatching batching = newBatching(10, LONG_TIMEOUT, true);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        batch.deliver(new MessageDelivery(0));
+        batch.flushIfExpired(System.currentTimeMillis());
+        Assert.assertFalse(this.events.contains("commit"));
+        batch.flushIfExpired(System.currentTimeMillis() + LONG_TIMEOUT);
+        Assert.assertEquals(this.events.get(this.events.size() - 1), "commit");
+        Assert.assertEquals(batching.getCommittedMessages(), 1);
+
+        batch.deliver(new MessageDelivery(1));
+        batch.deliver(new MessageDelivery(2));
+        batch.flush();
+        Assert.assertEquals(this.events.get(this.events.size() - 1), "commit");
+        Assert.assertEquals(batching.getCommittedBatches(), 2);
+        Assert.assertEquals(batching.getCommittedMessages(), 3);
+        Assert.assertEquals(batching.getMaxBatchSize(), 2);
+
+        // Nothing to commit
+        this.events.clear();
+        batch.flush();
+        Assert.assertTrue(this.events.isEmpty());
+    }
+
+    /**
+     * A failed commit is counted as a rolled back batch and its messages are
+     * delivered again one by one.
+     */
+    @Test
+    public void testCommitFailure() {
+        MDBDeliveryBatching batching = newBatching(2, LONG_TIMEOUT, true);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        this.transactionManager.failCommit = true;
+        batch.deliver(new MessageDelivery(0));
+        batch.deliver(new MessageDelivery(1));
+        Assert.assertEquals(batching.getCommittedBatches(), 0);
+        Assert.assertEquals(batching.getRolledBackBatches(), 1);
+
+        this.events.clear();
+        batch.deliver(new MessageDelivery(0));
+        batch.deliver(new MessageDelivery(1));
+        Assert.assertEquals(this.events, Arrays.asList("deliver 0", "deliver 1"));
+    }
+
+    /**
+     * Messages delivered in a transaction imported by the resource adapter are not batched.
+     * @throws Exception if the transaction cannot be begun
+     */
+    @Test
+    public void testImportedTransaction() throws Exception {
+        MDBDeliveryBatching batching = newBatching(2, LONG_TIMEOUT, true);
+        MDBDeliveryBatch batch = new MDBDeliveryBatch(batching, this.transactionManager.getProxy());
+
+        this.transactionManager.getProxy().begin();
+        Transaction imported = this.transactionManager.current;
+        this.events.clear();
+        batch.deliver(new MessageDelivery(0));
+        Assert.assertEquals(this.events, Collections.singletonList("deliver 0"));
+        Assert.assertSame(this.transactionManager.current, imported);
+    }
+
+    /**
+     * Builds the settings of a batched delivery.
+     * @param size the maximum number of messages of a batch
+     * @param timeout the maximum time of a batch
+     * @param splitOnFailure split the batch when a message fails
+     * @return the settings
+     */
+    private static MDBDeliveryBatching newBatching(final int size, final long timeout, final boolean splitOnFailure) {
+        return new MDBDeliveryBatching(size, timeout, splitOnFailure, Collections.<Method>emptySet());
+    }
+
+    /**
+     * Delivery of a message to the endpoint.
+     */
+    private final class MessageDelivery implements MDBDeliveryBatch.Delivery {
+
+        /**
+         * Number of the message.
+         */
+        private final int number;
+
+        /**
+         * The message fails.
+         */
+        private final boolean failure;
+
+        /**
+         * The message marks the transaction for rollback.
+         */
+        private final boolean rollbackOnly;
+
+        /**
+         * Builds a successful delivery.
+         * @param number number of the message
+         */
+        private MessageDelivery(final int number) {
+            this(number, false, false);
+        }
+
+        /**
+         * Builds a delivery.
+         * @param number number of the message
+         * @param failure the message fails
+         * @param rollbackOnly the message marks the transaction for rollback
+         */
+        private MessageDelivery(final int number, final boolean failure, final boolean rollbackOnly) {
+            this.number = number;
+            this.failure = failure;
+            this.rollbackOnly = rollbackOnly;
+        }
+
+        /**
+         * @return the XA resource of the endpoint
+         */
+        public XAResource getXAResource() {
+            return TestMDBDeliveryBatch.this.xaResource;
+        }
+
+        /**
+         * Delivers the message.
+         * @return the number of the message (or null if the transaction is marked for rollback)
+         */
+        public Object deliver() {
+            TestMDBDeliveryBatch.this.events.add("deliver " + this.number);
+            if (this.failure) {
+                throw new IllegalStateException("message " + this.number);
+            }
+            if (this.rollbackOnly) {
+                try {
+                    TestMDBDeliveryBatch.this.transactionManager.current.setRollbackOnly();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            }
+            return Integer.valueOf(this.number);
+        }
+    }
+
+    /**
+     * Transaction manager associating a single thread with the mock transactions.
+     */
+    private final class MockTransactionManager implements InvocationHandler {
+
+        /**
+         * Proxy of the transaction manager.
+         */
+        private final TransactionManager proxy = (TransactionManager) Proxy.newProxyInstance(
+                TransactionManager.class.getClassLoader(), new Class[] {TransactionManager.class}, this);
+
+        /**
+         * Transaction associated with the thread.
+         */
+        private Transaction current = null;
+
+        /**
+         * Commits fail.
+         */
+        private boolean failCommit = false;
+
+        /**
+         * @return the proxy of the transaction manager
+         */
+        private TransactionManager getProxy() {
+            return this.proxy;
+        }
+
+        /**
+         * Handles the calls on the transaction manager.
+         * @param proxy the transaction manager
+         * @param method the called method
+         * @param args the arguments of the call
+         * @return the result of the call
+         */
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            String name = method.getName();
+            if ("begin".equals(name)) {
+                TestMDBDeliveryBatch.this.events.add("begin");
+                this.current = (Transaction) Proxy.newProxyInstance(Transaction.class.getClassLoader(),
+                        new Class[] {Transaction.class}, new MockTransaction());
+                return null;
+            } else if ("getTransaction".equals(name)) {
+                return this.current;
+            } else if ("suspend".equals(name)) {
+                TestMDBDeliveryBatch.this.events.add("suspend");
+                Transaction suspended = this.current;
+                this.current = null;
+                return suspended;
+            } else if ("resume".equals(name)) {
+                TestMDBDeliveryBatch.this.events.add("resume");
+                this.current = (Transaction) args[0];
+                return null;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+    /**
+     * Transaction recording its completion.
+     */
+    private final class MockTransaction implements InvocationHandler {
+
+        /**
+         * Status of the transaction.
+         */
+        private int status = Status.STATUS_ACTIVE;
+
+        /**
+         * Handles the calls on the transaction.
+         * @param proxy the transaction
+         * @param method the called method
+         * @param args the arguments of the call
+         * @return the result of the call
+         * @throws RollbackException if the commit fails
+         */
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws RollbackException {
+            String name = method.getName();
+            if ("getStatus".equals(name)) {
+                return Integer.valueOf(this.status);
+            } else if ("setRollbackOnly".equals(name)) {
+                this.status = Status.STATUS_MARKED_ROLLBACK;
+                return null;
+            } else if ("delistResource".equals(name)) {
+                Assert.assertSame(args[0], TestMDBDeliveryBatch.this.xaResource);
+                boolean success = ((Integer) args[1]).intValue() == XAResource.TMSUCCESS;
+                TestMDBDeliveryBatch.this.events.add(success ? "delist success" : "delist fail");
+                return Boolean.TRUE;
+            } else if ("commit".equals(name)) {
+                if (TestMDBDeliveryBatch.this.transactionManager.failCommit) {
+                    this.status = Status.STATUS_ROLLEDBACK;
+                    throw new RollbackException("commit failure");
+                }
+                this.status = Status.STATUS_COMMITTED;
+                TestMDBDeliveryBatch.this.events.add("commit");
+                return null;
+            } else if ("rollback".equals(name)) {
+                this.status = Status.STATUS_ROLLEDBACK;
+                TestMDBDeliveryBatch.this.events.add("rollback");
+                return null;
+            } else if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if ("toString".equals(name)) {
+                return "MockTransaction[status=" + this.status + "]";
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.container.session.stateful;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.api.container.EZBEJBContext;
+import org.ow2.easybeans.container.session.stateful.passivation.PassivationHelper;
+import org.ow2.easybeans.container.session.stateful.passivation.PassivationStore;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the serialization and the store of the passivated stateful instances.
+ * @author Florent Benoit
+ */
+public class TestPassivation {
+
+    /**
+     * References to the container are replaced by the objects of the
+     * activating factory, other references are kept.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testContainerReferences() throws Exception {
+        Bean bean = new Bean();
+        bean.factory = newProxy(Factory.class);
+        bean.context = newProxy(EZBEJBContext.class);
+        bean.reference = new Reference("ejb/other");
+        bean.otherReference = bean.reference;
+        bean.counter = 2;
+
+        byte[] data = PassivationHelper.write(bean);
+
+        Factory<?, ?> factory = newProxy(Factory.class);
+        EZBEJBContext<?> context = newProxy(EZBEJBContext.class);
+        Bean activated = (Bean) PassivationHelper.read(data, TestPassivation.class.getClassLoader(), factory, context);
+
+        Assert.assertSame(activated.factory, factory);
+        Assert.assertSame(activated.context, context);
+        Assert.assertEquals(activated.reference.name, "ejb/other");
+        Assert.assertSame(activated.otherReference, activated.reference);
+        Assert.assertEquals(activated.counter, 2);
+    }
+
+    /**
+     * Instances with non serializable fields cannot be written.
+     * @throws IOException if the test fails
+     */
+    @Test(expectedExceptions = NotSerializableException.class)
+    public void testNotSerializable() throws IOException {
+        Bean bean = new Bean();
+        bean.value = new Object();
+        PassivationHelper.write(bean);
+    }
+
+    /**
+     * Instances are read once from the store.
+     * @throws IOException if the test fails
+     */
+    @Test
+    public void testStore() throws IOException {
+        PassivationStore store = new PassivationStore(new File(System.getProperty("java.io.tmpdir")), "easybeans-test-");
+        try {
+            store.store(Long.valueOf(1), new byte[] {1, 2});
+            store.store(Long.valueOf(2), new byte[] {3});
+            store.store(Long.valueOf(1), new byte[] {4});
+            Assert.assertEquals(store.getCount(), 2);
+
+            Assert.assertEquals(store.load(Long.valueOf(1)), new byte[] {4});
+            Assert.assertNull(store.load(Long.valueOf(1)));
+            Assert.assertTrue(store.remove(Long.valueOf(2)));
+            Assert.assertFalse(store.contains(Long.valueOf(2)));
+            Assert.assertEquals(store.getCount(), 0);
+            Assert.assertEquals(store.getSize(), 0L);
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Builds an object of the container.
+     * @param <T> the type of the object
+     * @param itf the interface of the object
+     * @return the object
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T newProxy(final Class<T> itf) {
+        return (T) Proxy.newProxyInstance(TestPassivation.class.getClassLoader(), new Class<?>[] {itf},
+                new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Passivated instance.
+     */
+    private static class Bean implements Serializable {
+
+        /**
+         * Id for serializable class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Factory of the instance.
+         */
+        private Factory<?, ?> factory = null;
+
+        /**
+         * Context of the instance.
+         */
+        private EZBEJBContext<?> context = null;
+
+        /**
+         * Reference kept with the state.
+         */
+        private Reference reference = null;
+
+        /**
+         * Same reference.
+         */
+        private Reference otherReference = null;
+
+        /**
+         * State of the instance.
+         */
+        private int counter = 0;
+
+        /**
+         * Any value.
+         */
+        private Object value = null;
+    }
+
+    /**
+     * Serializable reference (like an EJB reference).
+     */
+    private static class Reference implements Serializable {
+
+        /**
+         * Id for serializable class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Name of the reference.
+         */
+        private final String name;
+
+        /**
+         * Builds a reference.
+         * @param name the name of the reference
+         */
+        public Reference(final String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.container.session.stateful;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.ow2.easybeans.container.session.stateful.StatefulLockRegistry;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the locks of the stateful instances.
+ * @author Florent Benoit
+ */
+public class TestStatefulLockRegistry {
+
+    /**
+     * Same id gives the same lock, different ids give different locks.
+     */
+    @Test
+    public void testLockById() {
+        StatefulLockRegistry registry = new StatefulLockRegistry();
+        Assert.assertSame(registry.getLock(Long.valueOf(1)), registry.getLock(Long.valueOf(1)));
+        Assert.assertNotSame(registry.getLock(Long.valueOf(1)), registry.getLock(Long.valueOf(2)));
+        Assert.assertEquals(registry.size(), 2);
+        registry.remove(Long.valueOf(1));
+        Assert.assertEquals(registry.size(), 1);
+    }
+
+    /**
+     * A busy lock is denied for a zero timeout and contention is recorded.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testContention() throws Exception {
+        final StatefulLockRegistry registry = new StatefulLockRegistry();
+        final Long id = Long.valueOf(1);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                Lock lock = registry.lock(id);
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+        owner.start();
+        locked.await();
+
+        Assert.assertNull(registry.tryLock(id, 0, TimeUnit.MILLISECONDS));
+        Assert.assertNull(registry.tryLock(id, 10, TimeUnit.MILLISECONDS));
+        // Other ids are not blocked
+        Lock other = registry.tryLock(Long.valueOf(2), 0, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(other);
+        other.unlock();
+
+        release.countDown();
+        Lock lock = registry.tryLock(id, 10, TimeUnit.SECONDS);
+        Assert.assertNotNull(lock);
+        lock.unlock();
+        owner.join();
+
+        Assert.assertEquals(registry.getDeniedCount(), 2);
+        Assert.assertTrue(registry.getContendedCount() >= 2);
+    }
+
+    /**
+     * Acquisitions without contention are not recorded.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testUncontended() throws Exception {
+        StatefulLockRegistry registry = new StatefulLockRegistry();
+        registry.lock(Long.valueOf(1)).unlock();
+        registry.tryLock(Long.valueOf(1), 0, TimeUnit.MILLISECONDS).unlock();
+        registry.tryLock(Long.valueOf(2), 10, TimeUnit.MILLISECONDS).unlock();
+        Assert.assertEquals(registry.getContendedCount(), 0);
+        Assert.assertEquals(registry.getDeniedCount(), 0);
+        Assert.assertEquals(registry.getAverageWaitTime(), 0);
+    }
+
+}
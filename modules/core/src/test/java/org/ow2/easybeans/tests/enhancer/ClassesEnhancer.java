@@ -112,7 +112,22 @@ public final class ClassesEnhancer extends Enhancer {
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
 
         IArchive archive = new ArchiveInMemory(loader, classesToEnhance);
+        EjbJarArchiveMetadata ejbJarAnnotationMetadata = createMetadata(archive);
 
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(EZBContainerJNDIResolver.class.getName(), new ContainerJNDIResolver(archive));
+        ClassesEnhancer classesEnhancer = new ClassesEnhancer(loader, ejbJarAnnotationMetadata, map);
+        classesEnhancer.enhance();
+    }
+
+    /**
+     * Builds the metadata of the classes of the given archive, without the
+     * global EasyBeans interceptors so that the classes can be enhanced offline.
+     * @param archive the archive containing the classes
+     * @return the metadata of the archive
+     * @throws Exception if it fails
+     */
+    public static EjbJarArchiveMetadata createMetadata(final IArchive archive) throws Exception {
         EasyBeansEjbJarMetadataFactory metadataFactory = new EasyBeansEjbJarMetadataFactory(new ASMScannerImpl());
         IEjbJarMetadata ejbJarMetadata = metadataFactory.createArchiveMetadata(archive);
         EjbJarArchiveMetadata ejbJarAnnotationMetadata = ejbJarMetadata.as(EjbJarArchiveMetadata.class);
@@ -133,11 +148,7 @@ public final class ClassesEnhancer extends Enhancer {
                 }
             }
         }
-
-        Map<String, Object> map = new HashMap<String, Object>();
-        map.put(EZBContainerJNDIResolver.class.getName(), new ContainerJNDIResolver(archive));
-        ClassesEnhancer classesEnhancer = new ClassesEnhancer(loader, ejbJarAnnotationMetadata, map);
-        classesEnhancer.enhance();
+        return ejbJarAnnotationMetadata;
     }
 
 }
@@ -0,0 +1,167 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.enhancer.invoker;
+
+import java.lang.reflect.Method;
+
+import org.ow2.easybeans.container.FactoryMethod;
+import org.ow2.easybeans.enhancer.bean.BeanMethodInvoker;
+import org.ow2.easybeans.enhancer.bean.BeanMethodInvokerGenerator;
+import org.ow2.easybeans.tests.enhancer.invoker.bean.InvokedBean;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Calls the methods of a bean through the generated invoker and checks the
+ * arguments accepted by the invoker.
+ * @author Florent Benoit
+ */
+public class TestBeanMethodInvoker {
+
+    /**
+     * Invoked methods (the index is the one of the invoker).
+     */
+    private Method[] methods = null;
+
+    /**
+     * Generated invoker.
+     */
+    private BeanMethodInvoker invoker = null;
+
+    /**
+     * Generates the invoker of the bean.
+     * @throws Exception if the invoker cannot be generated
+     */
+    @BeforeClass
+    public void generateInvoker() throws Exception {
+        this.methods = new Method[] {
+                InvokedBean.class.getMethod("add", Integer.TYPE, Integer.TYPE),
+                InvokedBean.class.getMethod("sum", Integer.TYPE, Long.TYPE),
+                InvokedBean.class.getMethod("concat", String.class, String[].class),
+                InvokedBean.class.getMethod("reset"),
+                InvokedBean.class.getMethod("fail")};
+        for (Method method : this.methods) {
+            Assert.assertTrue(BeanMethodInvokerGenerator.isInvokable(method));
+        }
+        BeanMethodInvokerGenerator generator = new BeanMethodInvokerGenerator(InvokedBean.class, this.methods);
+        generator.generate();
+        Class<?> invokerClass = new InvokerClassLoader(InvokedBean.class.getClassLoader()).define(
+                generator.getGeneratedClassName(), generator.getBytes());
+        this.invoker = invokerClass.asSubclass(BeanMethodInvoker.class).newInstance();
+    }
+
+    /**
+     * Calls the methods through the invoker.
+     * @throws Throwable if a call fails
+     */
+    @Test
+    public void testInvoke() throws Throwable {
+        InvokedBean bean = new InvokedBean();
+        Assert.assertEquals(this.invoker.invoke(bean, 0, new Object[] {Integer.valueOf(2), Integer.valueOf(3)}),
+                Integer.valueOf(5));
+        Assert.assertEquals(this.invoker.invoke(bean, 1, new Object[] {Integer.valueOf(2), Long.valueOf(3)}),
+                Long.valueOf(5));
+        Assert.assertEquals(this.invoker.invoke(bean, 2, new Object[] {null, new String[] {"a", "b"}}), "nullab");
+        Assert.assertNull(this.invoker.invoke(bean, 3, null));
+        Assert.assertEquals(bean.getValue(), 0);
+    }
+
+    /**
+     * Exceptions of the bean are thrown without being wrapped.
+     * @throws Throwable if the call fails with an unexpected exception
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testBeanException() throws Throwable {
+        this.invoker.invoke(new InvokedBean(), 4, new Object[0]);
+    }
+
+    /**
+     * An unknown index is rejected.
+     * @throws Throwable if the call fails with an unexpected exception
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidIndex() throws Throwable {
+        this.invoker.invoke(new InvokedBean(), this.methods.length, new Object[0]);
+    }
+
+    /**
+     * Only the arguments which can be casted by the invoker are accepted,
+     * others are given to the reflection.
+     */
+    @Test
+    public void testAcceptedArguments() {
+        FactoryMethod add = new FactoryMethod("factory", this.methods[0], 0);
+        Assert.assertTrue(add.acceptsArguments(new Object[] {Integer.valueOf(1), Integer.valueOf(2)}));
+        // wrong number of arguments
+        Assert.assertFalse(add.acceptsArguments(new Object[] {Integer.valueOf(1)}));
+        Assert.assertFalse(add.acceptsArguments(null));
+        // null for a primitive
+        Assert.assertFalse(add.acceptsArguments(new Object[] {Integer.valueOf(1), null}));
+        // wrong type
+        Assert.assertFalse(add.acceptsArguments(new Object[] {Integer.valueOf(1), "2"}));
+
+        // widening is only done by the reflection
+        FactoryMethod sum = new FactoryMethod("factory", this.methods[1], 1);
+        Assert.assertFalse(sum.acceptsArguments(new Object[] {Integer.valueOf(1), Integer.valueOf(2)}));
+        Assert.assertTrue(sum.acceptsArguments(new Object[] {Integer.valueOf(1), Long.valueOf(2)}));
+
+        FactoryMethod concat = new FactoryMethod("factory", this.methods[2], 2);
+        Assert.assertTrue(concat.acceptsArguments(new Object[] {null, null}));
+        Assert.assertTrue(concat.acceptsArguments(new Object[] {"a", new String[0]}));
+        Assert.assertFalse(concat.acceptsArguments(new Object[] {"a", new Object[0]}));
+
+        FactoryMethod reset = new FactoryMethod("factory", this.methods[3], 3);
+        Assert.assertTrue(reset.acceptsArguments(null));
+        Assert.assertTrue(reset.acceptsArguments(new Object[0]));
+        Assert.assertFalse(reset.acceptsArguments(new Object[] {"a"}));
+    }
+
+    /**
+     * Classloader defining the generated invoker.
+     */
+    private static final class InvokerClassLoader extends ClassLoader {
+
+        /**
+         * Builds a classloader with the given parent.
+         * @param parent the parent classloader
+         */
+        private InvokerClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Defines the given class.
+         * @param className the name of the class
+         * @param bytes the bytecode of the class
+         * @return the defined class
+         */
+        private Class<?> define(final String className, final byte[] bytes) {
+            return defineClass(className, bytes, 0, bytes.length);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.enhancer.invoker.bean;
+
+/**
+ * Bean called through a generated invoker.
+ * @author Florent Benoit
+ */
+public class InvokedBean {
+
+    /**
+     * Value changed by {@link #reset()}.
+     */
+    private int value = 1;
+
+    /**
+     * Adds two values.
+     * @param a first value
+     * @param b second value
+     * @return the sum
+     */
+    public int add(final int a, final int b) {
+        return a + b;
+    }
+
+    /**
+     * Sums a value with a wide value.
+     * @param a first value
+     * @param b second value
+     * @return the sum
+     */
+    public long sum(final int a, final long b) {
+        return a + b;
+    }
+
+    /**
+     * Concatenates the given values.
+     * @param prefix the prefix (may be null)
+     * @param values the values
+     * @return the concatenated values
+     */
+    public String concat(final String prefix, final String[] values) {
+        StringBuilder sb = new StringBuilder(String.valueOf(prefix));
+        for (String value : values) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Resets the value.
+     */
+    public void reset() {
+        this.value = 0;
+    }
+
+    /**
+     * @return the value.
+     */
+    public int getValue() {
+        return this.value;
+    }
+
+    /**
+     * Always fails.
+     * @throws IllegalStateException always
+     */
+    public void fail() {
+        throw new IllegalStateException("Failure of the bean");
+    }
+
+}
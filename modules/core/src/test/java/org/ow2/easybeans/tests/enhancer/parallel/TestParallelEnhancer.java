@@ -0,0 +1,173 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.enhancer.parallel;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ow2.easybeans.deployment.metadata.ejbjar.EjbJarArchiveMetadata;
+import org.ow2.easybeans.enhancer.DefinedClass;
+import org.ow2.easybeans.enhancer.Enhancer;
+import org.ow2.easybeans.resolver.ContainerJNDIResolver;
+import org.ow2.easybeans.resolver.api.EZBContainerJNDIResolver;
+import org.ow2.easybeans.tests.enhancer.ArchiveInMemory;
+import org.ow2.easybeans.tests.enhancer.ClassesEnhancer;
+import org.ow2.util.archive.api.IArchive;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the classes enhanced in parallel are the same and are defined
+ * in the same order than the classes enhanced one by one.
+ * @author Florent Benoit
+ */
+public class TestParallelEnhancer {
+
+    /**
+     * Classes to enhance: independent interceptors, beans sharing a super
+     * class and an independent bean.
+     */
+    private static final String[] CLASSES = new String[] {"MyLifeCycleInterceptorStateful",
+            "MyLifeCycleInterceptorStateless", "SessionBeanItf", "AbsSessionBean", "StatefulBean", "StatelessBean",
+            "StatelessBean2", "StatelessBean3"};
+
+    /**
+     * Package of the classes to enhance.
+     */
+    private static final String PACKAGE_NAME = "org/ow2/easybeans/tests/enhancer/interceptors/lifecycle/bean/";
+
+    /**
+     * Number of threads of the parallel enhancement.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * Enhances the classes one by one and in parallel and compares the defined classes.
+     * @throws Exception if the enhancement fails
+     */
+    @Test
+    public void testDefinedClasses() throws Exception {
+        List<DefinedClass> sequentialClasses = enhance(1);
+        List<DefinedClass> parallelClasses = enhance(THREADS);
+
+        Assert.assertFalse(sequentialClasses.isEmpty());
+        Assert.assertEquals(getClassNames(parallelClasses), getClassNames(sequentialClasses));
+        for (int i = 0; i < sequentialClasses.size(); i++) {
+            Assert.assertEquals(parallelClasses.get(i).getBytes(), sequentialClasses.get(i).getBytes(),
+                    "Bytecode of " + sequentialClasses.get(i).getClassName());
+        }
+    }
+
+    /**
+     * Enhances the classes with the given number of threads.
+     * @param threads the number of threads
+     * @return the defined classes, in their definition order
+     * @throws Exception if the enhancement fails
+     */
+    private List<DefinedClass> enhance(final int threads) throws Exception {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        List<String> classes = new ArrayList<String>();
+        for (String className : CLASSES) {
+            classes.add(PACKAGE_NAME + className + ClassesEnhancer.EXT_CLASS);
+        }
+        IArchive archive = new ArchiveInMemory(loader, classes);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(EZBContainerJNDIResolver.class.getName(), new ContainerJNDIResolver(archive));
+
+        // The enhancer reads the classes from a copy of this loader
+        RecordingEnhancer enhancer = new RecordingEnhancer(new URLClassLoader(new URL[0], loader),
+                ClassesEnhancer.createMetadata(archive), map);
+        enhancer.setThreads(threads);
+        enhancer.enhance();
+        return enhancer.getDefinedClasses();
+    }
+
+    /**
+     * @param definedClasses the given classes
+     * @return the names of the classes
+     */
+    private static List<String> getClassNames(final List<DefinedClass> definedClasses) {
+        List<String> classNames = new ArrayList<String>();
+        for (DefinedClass definedClass : definedClasses) {
+            classNames.add(definedClass.getClassName());
+        }
+        return classNames;
+    }
+
+    /**
+     * Enhancer recording the classes instead of defining them.
+     */
+    private static final class RecordingEnhancer extends Enhancer {
+
+        /**
+         * Classes defined by the enhancer.
+         */
+        private final List<DefinedClass> definedClasses = new ArrayList<DefinedClass>();
+
+        /**
+         * Creates an new enhancer.
+         * @param loader classloader where to define enhanced classes.
+         * @param ejbJarAnnotationMetadata object with references to the metadata.
+         * @param map a map allowing to give some objects to the enhancer.
+         */
+        private RecordingEnhancer(final ClassLoader loader, final EjbJarArchiveMetadata ejbJarAnnotationMetadata,
+                final Map<String, Object> map) {
+            super(loader, ejbJarAnnotationMetadata, map);
+        }
+
+        /**
+         * Sets the number of threads used to enhance independent classes.
+         * @param threads the number of threads
+         */
+        @Override
+        protected void setThreads(final int threads) {
+            super.setThreads(threads);
+        }
+
+        /**
+         * Records the class to define.
+         * @param loader classloader to use.
+         * @param className the name of the class
+         * @param b the bytecode of the class to define
+         */
+        @Override
+        protected synchronized void defineClass(final ClassLoader loader, final String className, final byte[] b) {
+            this.definedClasses.add(new DefinedClass(className, b));
+        }
+
+        /**
+         * @return the defined classes, in their definition order
+         */
+        private synchronized List<DefinedClass> getDefinedClasses() {
+            return this.definedClasses;
+        }
+    }
+
+}
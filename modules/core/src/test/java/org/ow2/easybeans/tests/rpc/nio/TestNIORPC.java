@@ -0,0 +1,417 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.rpc.nio;
+
+import static org.ow2.util.marshalling.Serialization.loadObject;
+import static org.ow2.util.marshalling.Serialization.storeObject;
+
+import java.io.Serializable;
+import java.net.URL;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ow2.easybeans.rpc.EJBRemoteRequestImpl;
+import org.ow2.easybeans.rpc.JEJBResponse;
+import org.ow2.easybeans.rpc.RPC;
+import org.ow2.easybeans.rpc.api.ClientRPC;
+import org.ow2.easybeans.rpc.api.EJBRemoteRequest;
+import org.ow2.easybeans.rpc.api.EJBResponse;
+import org.ow2.easybeans.rpc.api.RMIServerRPC;
+import org.ow2.easybeans.rpc.nio.NIOProtocol;
+import org.ow2.easybeans.rpc.nio.NIORequest;
+import org.ow2.easybeans.rpc.nio.client.NIOClientRPC;
+import org.ow2.easybeans.rpc.nio.client.NIOConnection;
+import org.ow2.easybeans.rpc.nio.server.NIOServerRPC;
+import org.ow2.easybeans.security.propagation.context.SecurityContext;
+import org.ow2.easybeans.security.propagation.context.SecurityCurrent;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Sends requests through the NIO RPC transport on the loopback interface.
+ * @author Florent Benoit
+ */
+public class TestNIORPC {
+
+    /**
+     * Number of concurrent clients.
+     */
+    private static final int CLIENTS = 16;
+
+    /**
+     * Number of calls for each client.
+     */
+    private static final int CALLS = 50;
+
+    /**
+     * Time (in ms) taken by the "sleep" method.
+     */
+    private static final long SLEEP_TIME = 2000L;
+
+    /**
+     * Timeout (in ms) used by the client calling the "sleep" method.
+     */
+    private static final long TIMEOUT = 200L;
+
+    /**
+     * Requests of a connection handled at the same time (less than the
+     * number of concurrent clients sharing the connection).
+     */
+    private static final int MAX_CONNECTION_REQUESTS = 4;
+
+    /**
+     * Server used by the tests.
+     */
+    private NIOServerRPC server = null;
+
+    /**
+     * Environment used by the clients.
+     */
+    private Hashtable<String, Object> environment = null;
+
+    /**
+     * Starts the server on a free port.
+     * @throws Exception if the server cannot be started
+     */
+    @BeforeClass
+    public void startServer() throws Exception {
+        System.setProperty(NIOProtocol.MAX_CONNECTION_REQUESTS, String.valueOf(MAX_CONNECTION_REQUESTS));
+        try {
+            this.server = new NIOServerRPC(new EchoServerRPC(), "localhost", 0);
+        } finally {
+            System.clearProperty(NIOProtocol.MAX_CONNECTION_REQUESTS);
+        }
+        this.server.start();
+        this.environment = buildEnvironment(this.server);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @AfterClass
+    public void stopServer() {
+        this.server.stop();
+    }
+
+    /**
+     * Checks that the NIO client is selected by the transport property.
+     */
+    @Test
+    public void testTransportSelection() {
+        Assert.assertTrue(RPC.getClient(this.environment) instanceof NIOClientRPC);
+    }
+
+    /**
+     * Checks that a value is sent and received back.
+     * @throws Exception if the call fails
+     */
+    @Test
+    public void testEcho() throws Exception {
+        EJBResponse response = RPC.getClient(this.environment).sendEJBRequest(buildRequest("echo", "hello"));
+        Assert.assertNull(response.getRPCException());
+        Assert.assertEquals(response.getValue(), "hello");
+    }
+
+    /**
+     * Checks that a failure on the remote side is given back in the response.
+     * @throws Exception if the call fails
+     */
+    @Test
+    public void testRemoteFailure() throws Exception {
+        EJBResponse response = RPC.getClient(this.environment).sendEJBRequest(buildRequest("fail", "hello"));
+        Assert.assertNotNull(response.getRPCException());
+        Assert.assertTrue(response.getRPCException().getCause() instanceof RemoteException);
+    }
+
+    /**
+     * Checks that concurrent calls sharing the same connection get their own
+     * response.
+     * @throws Exception if a call fails
+     */
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < CLIENTS; i++) {
+                final int client = i;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        ClientRPC clientRPC = RPC.getClient(TestNIORPC.this.environment);
+                        int done = 0;
+                        for (int j = 0; j < CALLS; j++) {
+                            String value = client + "-" + j;
+                            EJBResponse response = clientRPC.sendEJBRequest(buildRequest("echo", value));
+                            Assert.assertEquals(response.getValue(), value);
+                            done++;
+                        }
+                        return Integer.valueOf(done);
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                Assert.assertEquals(future.get().intValue(), CALLS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the security context sent by a caller is not used unless
+     * callers are trusted.
+     * @throws Exception if the call fails
+     */
+    @Test
+    public void testUntrustedSecurityContext() throws Exception {
+        SecurityCurrent.getCurrent().setSecurityContext(
+                new SecurityContext(SecurityContext.buildSubject("nioUser", new String[] {"role"})));
+        try {
+            EJBResponse response = RPC.getClient(this.environment).sendEJBRequest(buildRequest("caller", null));
+            Assert.assertNull(response.getRPCException());
+            Assert.assertEquals(response.getValue(), new SecurityContext().getCallerPrincipal(false).getName());
+        } finally {
+            SecurityCurrent.getCurrent().setSecurityContext(new SecurityContext());
+        }
+    }
+
+    /**
+     * Checks that the security context of a trusted caller is used on the
+     * remote side and that it is not kept by the worker thread.
+     * @throws Exception if the call fails
+     */
+    @Test
+    public void testTrustedSecurityContext() throws Exception {
+        NIOServerRPC trustingServer = null;
+        System.setProperty(NIOProtocol.TRUST_CALLER_CONTEXT, "true");
+        try {
+            trustingServer = new NIOServerRPC(new EchoServerRPC(), "localhost", 0);
+        } finally {
+            System.clearProperty(NIOProtocol.TRUST_CALLER_CONTEXT);
+        }
+        trustingServer.start();
+        try {
+            Hashtable<String, Object> trustingEnvironment = buildEnvironment(trustingServer);
+            SecurityCurrent.getCurrent().setSecurityContext(
+                    new SecurityContext(SecurityContext.buildSubject("nioUser", new String[] {"role"})));
+            try {
+                EJBResponse response = RPC.getClient(trustingEnvironment).sendEJBRequest(buildRequest("caller", null));
+                Assert.assertNull(response.getRPCException());
+                Assert.assertEquals(response.getValue(), "nioUser");
+            } finally {
+                SecurityCurrent.getCurrent().setSecurityContext(new SecurityContext());
+            }
+
+            // Anonymous caller
+            EJBResponse response = RPC.getClient(trustingEnvironment).sendEJBRequest(buildRequest("caller", null));
+            Assert.assertFalse("nioUser".equals(response.getValue()));
+        } finally {
+            trustingServer.stop();
+        }
+    }
+
+    /**
+     * Checks that a call fails if the response is not received in time.
+     */
+    @Test
+    public void testTimeout() {
+        Hashtable<String, Object> timeoutEnvironment = new Hashtable<String, Object>(this.environment);
+        timeoutEnvironment.put(NIOProtocol.TIMEOUT, String.valueOf(TIMEOUT));
+        long start = System.currentTimeMillis();
+        try {
+            RPC.getClient(timeoutEnvironment).sendEJBRequest(buildRequest("sleep", null));
+            Assert.fail("Call should have failed");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(System.currentTimeMillis() - start < SLEEP_TIME);
+        } catch (Exception e) {
+            Assert.fail("Unexpected exception", e);
+        }
+    }
+
+    /**
+     * Checks that a request containing a class which is not allowed is
+     * rejected before being handled.
+     * @throws Exception if the call fails
+     */
+    @Test
+    public void testRejectedClass() throws Exception {
+        NIORequest nioRequest = new NIORequest(new URLRequest(new URL("http://localhost")), null, null);
+        byte[] answer = NIOConnection.getConnection("localhost", this.server.getPort()).invoke(storeObject(nioRequest));
+        EJBResponse response = (EJBResponse) loadObject(answer);
+        Assert.assertNotNull(response.getRPCException());
+        Assert.assertNull(response.getValue());
+    }
+
+    /**
+     * Checks that arguments can be made of classes of the application but not
+     * of other classes.
+     * @throws Exception if the call fails
+     */
+    @Test
+    public void testArgumentClasses() throws Exception {
+        EJBResponse response = RPC.getClient(this.environment).sendEJBRequest(buildRequest("echo", new Value("v")));
+        Assert.assertNull(response.getRPCException());
+        Assert.assertEquals(((Value) response.getValue()).getName(), "v");
+
+        response = RPC.getClient(this.environment).sendEJBRequest(buildRequest("echo", new URL("http://localhost")));
+        Assert.assertNotNull(response.getRPCException());
+        Assert.assertNull(response.getValue());
+    }
+
+    /**
+     * Builds the environment of the clients of the given server.
+     * @param nioServer the server
+     * @return the environment
+     */
+    private static Hashtable<String, Object> buildEnvironment(final NIOServerRPC nioServer) {
+        Hashtable<String, Object> env = new Hashtable<String, Object>();
+        env.put(RPC.TRANSPORT, RPC.NIO_TRANSPORT);
+        env.put(NIOProtocol.HOST, "localhost");
+        env.put(NIOProtocol.PORT, String.valueOf(nioServer.getPort()));
+        return env;
+    }
+
+    /**
+     * Builds a request with a single argument.
+     * @param methodName the name of the method
+     * @param arg the argument
+     * @return the request
+     * @throws Exception if the request cannot be built
+     */
+    private static EJBRemoteRequest buildRequest(final String methodName, final Object arg) throws Exception {
+        return new EJBRemoteRequestImpl(methodName, Long.valueOf(0), new Object[] {arg}, "container", "factory", null, null);
+    }
+
+    /**
+     * Handler sending back the first argument of the request.
+     */
+    private static class EchoServerRPC implements RMIServerRPC {
+
+        /**
+         * Handle a request and send back a response.
+         * @param request the ejb request to handle.
+         * @return a response.
+         * @throws RemoteException if the request asks for a failure
+         */
+        public EJBResponse getEJBResponse(final EJBRemoteRequest request) throws RemoteException {
+            if ("fail".equals(request.getMethodName())) {
+                throw new RemoteException("Failure asked by the client");
+            }
+            JEJBResponse response = new JEJBResponse();
+            if ("caller".equals(request.getMethodName())) {
+                response.setValue(SecurityCurrent.getCurrent().getSecurityContext().getCallerPrincipal(false).getName());
+                return response;
+            }
+            if ("sleep".equals(request.getMethodName())) {
+                try {
+                    Thread.sleep(SLEEP_TIME);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return response;
+            }
+            if (request instanceof URLRequest) {
+                response.setValue(((URLRequest) request).getURL());
+                return response;
+            }
+            response.setValue(request.getMethodArgs()[0]);
+            return response;
+        }
+    }
+
+    /**
+     * Argument whose class is a class of the application.
+     */
+    private static class Value implements Serializable {
+
+        /**
+         * Id for serializable class.
+         */
+        private static final long serialVersionUID = -8096214455339727381L;
+
+        /**
+         * The name.
+         */
+        private final String name;
+
+        /**
+         * Builds a value.
+         * @param name the name
+         */
+        public Value(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name.
+         */
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    /**
+     * Request carrying an URL (a class which is not allowed in a request).
+     */
+    private static class URLRequest extends EJBRemoteRequestImpl {
+
+        /**
+         * Id for serializable class.
+         */
+        private static final long serialVersionUID = 5402279632400462452L;
+
+        /**
+         * The URL.
+         */
+        private final URL url;
+
+        /**
+         * Builds a request with the given URL.
+         * @param url the URL
+         * @throws Exception if the request cannot be built
+         */
+        public URLRequest(final URL url) throws Exception {
+            super("url", Long.valueOf(0), new Object[0], "container", "factory", null, null);
+            this.url = url;
+        }
+
+        /**
+         * @return the URL.
+         */
+        public URL getURL() {
+            return this.url;
+        }
+    }
+
+}
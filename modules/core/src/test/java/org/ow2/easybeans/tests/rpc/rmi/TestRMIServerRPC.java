@@ -0,0 +1,258 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+
+package org.ow2.easybeans.tests.rpc.rmi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.ow2.easybeans.api.EZBContainer;
+import org.ow2.easybeans.api.Factory;
+import org.ow2.easybeans.rpc.EJBRemoteRequestImpl;
+import org.ow2.easybeans.rpc.JEJBResponse;
+import org.ow2.easybeans.rpc.api.EJBRemoteRequest;
+import org.ow2.easybeans.rpc.api.EJBResponse;
+import org.ow2.easybeans.rpc.rmi.server.RMIServerRPCImpl;
+import org.ow2.easybeans.server.Embedded;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Sends requests to containers which are not yet started.
+ * @author Florent Benoit
+ */
+public class TestRMIServerRPC {
+
+    /**
+     * Id of the container.
+     */
+    private static final String CONTAINER_ID = "container";
+
+    /**
+     * Maximum time (in ms) to wait for a state in the tests.
+     */
+    private static final long WAIT_TIME = 10000L;
+
+    /**
+     * Handler of the container.
+     */
+    private ContainerHandler containerHandler = null;
+
+    /**
+     * Handler of the requests.
+     */
+    private RMIServerRPCImpl invoker = null;
+
+    /**
+     * Executor sending the requests.
+     */
+    private ExecutorService executor = null;
+
+    /**
+     * Builds the server with a container which is not started.
+     * @throws Exception if the invoker cannot be built
+     */
+    @BeforeMethod
+    public void buildServer() throws Exception {
+        Embedded server = new Embedded();
+        this.containerHandler = new ContainerHandler();
+        EZBContainer container = (EZBContainer) Proxy.newProxyInstance(TestRMIServerRPC.class.getClassLoader(),
+                new Class<?>[] {EZBContainer.class}, this.containerHandler);
+        server.getContainers().put(CONTAINER_ID, container);
+        this.invoker = new RMIServerRPCImpl(server);
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Stops the executor.
+     */
+    @AfterMethod
+    public void stopExecutor() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Requests wait without limit by default.
+     */
+    @Test
+    public void testDefaultTimeout() {
+        Assert.assertEquals(this.invoker.getContainerWaitTimeout(), 0L);
+    }
+
+    /**
+     * A request is parked until the container is started.
+     * @throws Exception if the request fails
+     */
+    @Test
+    public void testParkedUntilStarted() throws Exception {
+        Future<EJBResponse> future = this.executor.submit(new Request());
+        waitForWaitingRequests(1);
+        Assert.assertEquals(this.invoker.getParkedRequestsCount(), 1L);
+        Assert.assertFalse(future.isDone());
+
+        this.containerHandler.start();
+        Assert.assertNotNull(future.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(this.invoker.getWaitingRequestsCount(), 0);
+        Assert.assertEquals(this.invoker.getParkedRequestsCount(), 1L);
+
+        // The container is available, the next request is not parked
+        Assert.assertNotNull(this.executor.submit(new Request()).get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(this.invoker.getParkedRequestsCount(), 1L);
+    }
+
+    /**
+     * A request fails if the container is not started in time.
+     * @throws Exception if the request cannot be sent
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        this.invoker.setContainerWaitTimeout(100L);
+        try {
+            new Request().call();
+            Assert.fail("The request should fail");
+        } catch (RemoteException e) {
+            Assert.assertTrue(e.getMessage().contains("unavailable"), e.getMessage());
+        }
+        Assert.assertEquals(this.invoker.getWaitingRequestsCount(), 0);
+        Assert.assertEquals(this.invoker.getParkedRequestsCount(), 1L);
+    }
+
+    /**
+     * Waits until the given number of requests are waiting for the container.
+     * @param count the number of requests
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void waitForWaitingRequests(final int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIME;
+        while (this.invoker.getWaitingRequestsCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(this.invoker.getWaitingRequestsCount(), count);
+    }
+
+    /**
+     * Sends a request to the container.
+     */
+    private class Request implements Callable<EJBResponse> {
+
+        /**
+         * @return the response of the container
+         * @throws Exception if the request fails
+         */
+        public EJBResponse call() throws Exception {
+            EJBRemoteRequest request = new EJBRemoteRequestImpl("method", Long.valueOf(0), new Object[0], CONTAINER_ID,
+                    "factory", null, null);
+            return TestRMIServerRPC.this.invoker.getEJBResponse(request);
+        }
+    }
+
+    /**
+     * Container which is available once started and whose factories send back
+     * an empty response.
+     */
+    private static class ContainerHandler implements InvocationHandler {
+
+        /**
+         * Container available ?
+         */
+        private boolean available = false;
+
+        /**
+         * Starts the container and wakes up the threads waiting for it.
+         */
+        public synchronized void start() {
+            this.available = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the container is available.
+         * @param timeout the maximum time to wait in milliseconds (0 to wait without limit)
+         * @return true if the container is available
+         * @throws InterruptedException if the thread is interrupted
+         */
+        public synchronized boolean waitAvailable(final long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!this.available) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (timeout > 0 && remaining <= 0) {
+                    return false;
+                }
+                wait(timeout > 0 ? remaining : 0);
+            }
+            return true;
+        }
+
+        /**
+         * Handles the calls on the container.
+         * @param proxy the container
+         * @param method the called method
+         * @param args the arguments
+         * @return the result
+         * @throws Throwable if the call fails
+         */
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("isAvailable".equals(name)) {
+                synchronized (this) {
+                    return Boolean.valueOf(this.available);
+                }
+            }
+            if ("waitAvailable".equals(name)) {
+                return Boolean.valueOf(waitAvailable(((Long) args[0]).longValue()));
+            }
+            if ("getId".equals(name)) {
+                return CONTAINER_ID;
+            }
+            if ("getFactory".equals(name)) {
+                return Proxy.newProxyInstance(TestRMIServerRPC.class.getClassLoader(), new Class<?>[] {Factory.class},
+                        new InvocationHandler() {
+                            public Object invoke(final Object factory, final Method factoryMethod,
+                                    final Object[] factoryArgs) {
+                                if ("rpcInvoke".equals(factoryMethod.getName())) {
+                                    return new JEJBResponse();
+                                }
+                                throw new UnsupportedOperationException(factoryMethod.getName());
+                            }
+                        });
+            }
+            if ("toString".equals(name)) {
+                return "Container " + CONTAINER_ID;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.statistic;
+
+import org.ow2.easybeans.statistic.LatencyHistogram;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the latency histogram.
+ * @author Florent Benoit
+ */
+public class TestLatencyHistogram {
+
+    /**
+     * Maximum relative error of a reported value.
+     */
+    private static final double PRECISION = 0.032;
+
+    /**
+     * Percentiles of a uniform distribution are reported with the precision of the buckets.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getCount(), 100000L);
+        Assert.assertEquals(snapshot.getMax(), 100000L);
+        Assert.assertEquals(snapshot.getMin(), 1L);
+        Assert.assertEquals(snapshot.getMean(), 50000.5, 0.001);
+        assertClose(snapshot.getValueAtPercentile(50), 50000);
+        assertClose(snapshot.getValueAtPercentile(90), 90000);
+        assertClose(snapshot.getValueAtPercentile(99), 99000);
+        assertClose(snapshot.getValueAtPercentile(99.9), 99900);
+        Assert.assertEquals(snapshot.getValueAtPercentile(100), 100000L);
+    }
+
+    /**
+     * Small values are exact, values out of range are bounded.
+     */
+    @Test
+    public void testBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.snapshot().getValueAtPercentile(50), 0L);
+        histogram.record(-5);
+        histogram.record(7);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getValueAtPercentile(10), 0L);
+        Assert.assertEquals(snapshot.getValueAtPercentile(50), 7L);
+        Assert.assertEquals(snapshot.getMax(), LatencyHistogram.HIGHEST_TRACKABLE_VALUE);
+    }
+
+    /**
+     * Interval snapshots only contain the values recorded between the two snapshots.
+     */
+    @Test
+    public void testInterval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(10);
+        }
+        LatencyHistogram.Snapshot first = histogram.snapshot();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(5000);
+        }
+        LatencyHistogram.Snapshot interval = histogram.snapshot().minus(first);
+        Assert.assertEquals(interval.getCount(), 100L);
+        Assert.assertEquals(interval.getTotal(), 500000L);
+        assertClose(interval.getValueAtPercentile(50), 5000);
+        assertClose(interval.getMax(), 5000);
+        Assert.assertEquals(histogram.snapshot().minus(histogram.snapshot()).getCount(), 0L);
+    }
+
+    /**
+     * Values recorded concurrently are all counted.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threadCount = 8;
+        final int valueCount = 50000;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < valueCount; i++) {
+                        histogram.record(i % 1000);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getCount(), (long) threadCount * valueCount);
+        Assert.assertEquals(snapshot.getMax(), 999L);
+    }
+
+    /**
+     * Checks that the reported value is close to the expected one.
+     * @param value the reported value
+     * @param expected the expected value
+     */
+    private static void assertClose(final long value, final long expected) {
+        Assert.assertTrue(Math.abs(value - expected) <= expected * PRECISION, "Got " + value + " instead of " + expected);
+    }
+}
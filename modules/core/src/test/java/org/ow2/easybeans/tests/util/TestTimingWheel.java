@@ -0,0 +1,117 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+
+package org.ow2.easybeans.tests.util;
+
+import java.util.List;
+
+import org.ow2.easybeans.util.TimingWheel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the deadlines tracked by the timing wheel.
+ * @author Florent Benoit
+ */
+public class TestTimingWheel {
+
+    /**
+     * Keys expire once their deadline is reached, not before.
+     */
+    @Test
+    public void testExpiration() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 4);
+        long now = System.currentTimeMillis();
+        wheel.schedule(Long.valueOf(1), now + 25);
+        // More than one revolution of the wheel
+        wheel.schedule(Long.valueOf(2), now + 105);
+        Assert.assertEquals(wheel.size(), 2);
+
+        Assert.assertTrue(wheel.advance(now + 5).isEmpty());
+        List<Long> expired = wheel.advance(now + 50);
+        Assert.assertEquals(expired.size(), 1);
+        Assert.assertEquals(expired.get(0), Long.valueOf(1));
+        Assert.assertTrue(wheel.advance(now + 90).isEmpty());
+        expired = wheel.advance(now + 130);
+        Assert.assertEquals(expired.size(), 1);
+        Assert.assertEquals(expired.get(0), Long.valueOf(2));
+        Assert.assertEquals(wheel.size(), 0);
+    }
+
+    /**
+     * Cancelled or rescheduled keys don't expire at their old deadline.
+     */
+    @Test
+    public void testCancelAndReschedule() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 8);
+        long now = System.currentTimeMillis();
+        wheel.schedule(Long.valueOf(1), now + 20);
+        wheel.schedule(Long.valueOf(2), now + 20);
+        Assert.assertTrue(wheel.cancel(Long.valueOf(1)));
+        Assert.assertFalse(wheel.cancel(Long.valueOf(1)));
+        wheel.schedule(Long.valueOf(2), now + 200);
+
+        Assert.assertTrue(wheel.advance(now + 50).isEmpty());
+        Assert.assertEquals(wheel.advance(now + 230).size(), 1);
+    }
+
+    /**
+     * A key farther than one revolution expires at its tick even if the
+     * wheel skipped its bucket while it was not advanced.
+     */
+    @Test
+    public void testExpirationAfterSkippedTicks() {
+        long start = System.currentTimeMillis();
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1000, 4, start);
+        wheel.schedule(Long.valueOf(1), start + 14000);
+
+        Assert.assertTrue(wheel.advance(start + 11000).isEmpty());
+        Assert.assertTrue(wheel.advance(start + 13999).isEmpty());
+        List<Long> expired = wheel.advance(start + 14000);
+        Assert.assertEquals(expired.size(), 1);
+        Assert.assertEquals(expired.get(0), Long.valueOf(1));
+        Assert.assertEquals(wheel.size(), 0);
+    }
+
+    /**
+     * Keys whose bucket has been passed while the wheel was not advanced
+     * expire on the next advance.
+     */
+    @Test
+    public void testLateAdvance() {
+        long start = System.currentTimeMillis();
+        TimingWheel<Long> wheel = new TimingWheel<Long>(1000, 4, start);
+        wheel.schedule(Long.valueOf(1), start + 6000);
+        wheel.schedule(Long.valueOf(2), start + 30000);
+
+        Assert.assertTrue(wheel.advance(start + 1000).isEmpty());
+        List<Long> expired = wheel.advance(start + 9000);
+        Assert.assertEquals(expired.size(), 1);
+        Assert.assertEquals(expired.get(0), Long.valueOf(1));
+        Assert.assertTrue(wheel.advance(start + 29000).isEmpty());
+        Assert.assertEquals(wheel.advance(start + 31000).size(), 1);
+    }
+
+}
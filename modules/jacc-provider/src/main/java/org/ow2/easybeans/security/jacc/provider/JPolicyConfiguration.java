@@ -388,6 +388,7 @@ public class JPolicyConfiguration implements PolicyConfiguration {
 
         // Now state is in service
         state = State.IN_SERVICE;
+        JPolicyConfigurationKeeper.configurationChanged();
 
         // add the configuration of this object
         JPolicyConfigurationKeeper.addConfiguration(this);
@@ -420,6 +421,7 @@ public class JPolicyConfiguration implements PolicyConfiguration {
 
         // change state to DELETED
         state = State.DELETED;
+        JPolicyConfigurationKeeper.configurationChanged();
 
         // remove the configuration of this object
         JPolicyConfigurationKeeper.removeConfiguration(this);
@@ -672,6 +674,7 @@ public class JPolicyConfiguration implements PolicyConfiguration {
      */
     protected void resetState() {
         this.state = State.OPEN;
+        JPolicyConfigurationKeeper.configurationChanged();
     }
 
     /**
@@ -27,6 +27,7 @@ package org.ow2.easybeans.security.jacc.provider;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.security.jacc.PolicyContextException;
 
@@ -42,6 +43,13 @@ public final class JPolicyConfigurationKeeper {
      */
     private static Map<String, JPolicyConfiguration> policyConfigurations = new HashMap<String, JPolicyConfiguration>();
 
+    /**
+     * Version of the policy configurations. Changed each time a configuration
+     * is committed, deleted or reopened so that cached decisions can be
+     * discarded.
+     */
+    private static final AtomicLong VERSION = new AtomicLong();
+
     /**
      * Utility class, no constructor.
      */
@@ -93,4 +101,19 @@ public final class JPolicyConfigurationKeeper {
     public static JPolicyConfiguration getConfiguration(final String contextId) {
         return getPolicyConfigurations().get(contextId);
     }
+
+    /**
+     * Gets the current version of the policy configurations.
+     * @return a value that changes each time a configuration changes
+     */
+    public static long getVersion() {
+        return VERSION.get();
+    }
+
+    /**
+     * Notifies that a policy configuration has changed.
+     */
+    public static void configurationChanged() {
+        VERSION.incrementAndGet();
+    }
 }
@@ -360,4 +360,34 @@ public class StatisticComponentMBean extends BaseModelMBean {
         }
     }
 
+    /**
+     * Get the value at the given percentile for the given latency statistic.
+     * @param statisticId The statistic id.
+     * @param percentile The percentile (between 0 and 100).
+     * @return The value at the given percentile.
+     * @throws MBeanException If an error occurs.
+     */
+    public long getStatisticPercentile(final String statisticId, final double percentile) throws MBeanException {
+        try {
+            return getStatisticComponent().getStatisticPercentile(statisticId, percentile);
+        } catch (EZBComponentException e) {
+            throw new MBeanException(new Exception(e.getClass().getSimpleName() + " : " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get the statistic value for the values recorded since the previous call of this method for the given latency
+     * statistic.
+     * @param statisticId The statistic id.
+     * @return The statistic value for the last interval.
+     * @throws MBeanException If an error occurs.
+     */
+    public String getStatisticIntervalValue(final String statisticId) throws MBeanException {
+        try {
+            return getStatisticComponent().getStatisticIntervalValue(statisticId);
+        } catch (EZBComponentException e) {
+            throw new MBeanException(new Exception(e.getClass().getSimpleName() + " : " + e.getMessage()));
+        }
+    }
+
 }
@@ -28,6 +28,7 @@ package org.ow2.easybeans.jsr77;
 import javax.management.MBeanException;
 
 import org.ow2.easybeans.container.AbsFactory;
+import org.ow2.easybeans.event.bean.StackTraceCapturePolicy;
 
 /**
  * EJB JSR77 MBean.
@@ -88,4 +89,38 @@ public abstract class EJBMBean<F extends AbsFactory> extends J2EEManagedObjectMB
         return getManagedComponent().getPool().getPoolConfiguration().getSpare();
     }
 
+    /**
+     * @return the policy used to capture the stack trace of the callers.
+     */
+    public String getStackTraceCapturePolicy() {
+        return getManagedComponent().getStackTraceCapturePolicy().name();
+    }
+
+    /**
+     * Sets the policy used to capture the stack trace of the callers.
+     * @param policy one of NEVER, SAMPLED, ALWAYS or LAZY
+     */
+    public void setStackTraceCapturePolicy(final String policy) {
+        StackTraceCapturePolicy newPolicy = StackTraceCapturePolicy.fromName(policy, null);
+        if (newPolicy == null) {
+            throw new IllegalArgumentException("Unknown stack trace capture policy '" + policy + "'");
+        }
+        getManagedComponent().setStackTraceCapturePolicy(newPolicy);
+    }
+
+    /**
+     * @return the sampling rate used by the SAMPLED policy.
+     */
+    public int getStackTraceSamplingRate() {
+        return getManagedComponent().getStackTraceSamplingRate();
+    }
+
+    /**
+     * Sets the sampling rate used by the SAMPLED policy.
+     * @param rate capture the stack for one invocation out of this value
+     */
+    public void setStackTraceSamplingRate(final int rate) {
+        getManagedComponent().setStackTraceSamplingRate(rate);
+    }
+
 }
@@ -27,6 +27,7 @@ package org.ow2.easybeans.jsr77;
 
 import javax.management.MBeanException;
 
+import org.ow2.easybeans.container.mdb.MDBDeliveryBatching;
 import org.ow2.easybeans.container.mdb.MDBMessageEndPointFactory;
 
 /**
@@ -51,4 +52,110 @@ public abstract class MessageDrivenBeanMBean extends EJBMBean<MDBMessageEndPoint
     public String getClassName() {
         return getManagedComponent().getClassName();
     }
+
+    /**
+     * @return true if the messages are delivered in batches.
+     */
+    public boolean isBatchedDelivery() {
+        return getManagedComponent().getDeliveryBatching() != null;
+    }
+
+    /**
+     * @return the maximum number of messages of a batch (0 if the batched delivery is disabled).
+     */
+    public int getBatchSize() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getBatchSize();
+    }
+
+    /**
+     * @return the maximum time (in ms) of a batch (0 if the batched delivery is disabled).
+     */
+    public long getBatchTimeout() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getBatchTimeout();
+    }
+
+    /**
+     * @return the number of committed batches.
+     */
+    public long getCommittedBatches() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getCommittedBatches();
+    }
+
+    /**
+     * @return the number of messages of the committed batches.
+     */
+    public long getCommittedBatchMessages() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getCommittedMessages();
+    }
+
+    /**
+     * @return the number of rolled back batches.
+     */
+    public long getRolledBackBatches() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getRolledBackBatches();
+    }
+
+    /**
+     * @return the average number of messages of the committed batches.
+     */
+    public double getAverageBatchSize() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getAverageBatchSize();
+    }
+
+    /**
+     * @return the number of messages of the biggest committed batch.
+     */
+    public long getMaxBatchSize() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getMaxBatchSize();
+    }
+
+    /**
+     * @return the average time (in ms) spent to commit a batch.
+     */
+    public double getAverageBatchCommitTime() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getAverageCommitTime();
+    }
+
+    /**
+     * @return the longest time (in ms) spent to commit a batch.
+     */
+    public double getMaxBatchCommitTime() {
+        MDBDeliveryBatching batching = getManagedComponent().getDeliveryBatching();
+        if (batching == null) {
+            return 0;
+        }
+        return batching.getMaxCommitTime();
+    }
 }
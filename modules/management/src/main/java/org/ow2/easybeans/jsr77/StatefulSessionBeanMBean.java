@@ -42,4 +42,60 @@ public class StatefulSessionBeanMBean extends SessionBeanMBean<StatefulSessionFa
     public StatefulSessionBeanMBean() throws MBeanException {
         super();
     }
+
+    /**
+     * @return the number of passivations of instances.
+     */
+    public long getPassivationCount() {
+        return getManagedComponent().getPassivationCount();
+    }
+
+    /**
+     * @return the number of activations of instances.
+     */
+    public long getActivationCount() {
+        return getManagedComponent().getActivationCount();
+    }
+
+    /**
+     * @return the average time of an activation (in microseconds).
+     */
+    public long getAverageActivationTime() {
+        return getManagedComponent().getAverageActivationTime();
+    }
+
+    /**
+     * @return the number of instances currently passivated.
+     */
+    public int getPassivatedInstancesCount() {
+        return getManagedComponent().getPassivatedInstancesCount();
+    }
+
+    /**
+     * @return the size (in bytes) of the passivation store.
+     */
+    public long getPassivationStoreSize() {
+        return getManagedComponent().getPassivationStoreSize();
+    }
+
+    /**
+     * @return the number of calls that had to wait for the lock of an instance.
+     */
+    public long getLockContentionCount() {
+        return getManagedComponent().getLockRegistry().getContendedCount();
+    }
+
+    /**
+     * @return the number of calls denied as the lock of an instance was not available.
+     */
+    public long getLockDeniedCount() {
+        return getManagedComponent().getLockRegistry().getDeniedCount();
+    }
+
+    /**
+     * @return the average time spent waiting for the lock of an instance (in microseconds).
+     */
+    public long getAverageLockWaitTime() {
+        return getManagedComponent().getLockRegistry().getAverageWaitTime();
+    }
 }
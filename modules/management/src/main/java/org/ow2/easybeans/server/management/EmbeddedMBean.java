@@ -28,6 +28,9 @@ package org.ow2.easybeans.server.management;
 import javax.management.MBeanException;
 
 import org.ow2.easybeans.jsr77.J2EEServerMBean;
+import org.ow2.easybeans.rpc.api.RMIServerRPC;
+import org.ow2.easybeans.rpc.rmi.server.RMIServerRPCImpl;
+import org.ow2.easybeans.server.Embedded;
 
 /**
  * J2EEServer JSR77 MBean.
@@ -42,4 +45,62 @@ public class EmbeddedMBean extends J2EEServerMBean {
     public EmbeddedMBean() throws MBeanException {
         super();
     }
+
+    /**
+     * @return the maximum time (in ms) a remote request waits for an
+     *         unavailable container (0 if there is no limit).
+     */
+    public long getContainerWaitTimeout() {
+        RMIServerRPCImpl invoker = getInvoker();
+        if (invoker == null) {
+            return 0;
+        }
+        return invoker.getContainerWaitTimeout();
+    }
+
+    /**
+     * Sets the maximum time a remote request waits for an unavailable container.
+     * @param containerWaitTimeout the time in ms (0 to wait without limit)
+     */
+    public void setContainerWaitTimeout(final long containerWaitTimeout) {
+        RMIServerRPCImpl invoker = getInvoker();
+        if (invoker != null) {
+            invoker.setContainerWaitTimeout(containerWaitTimeout);
+        }
+    }
+
+    /**
+     * @return the number of remote requests that have waited for an
+     *         unavailable container.
+     */
+    public long getParkedRequestsCount() {
+        RMIServerRPCImpl invoker = getInvoker();
+        if (invoker == null) {
+            return 0;
+        }
+        return invoker.getParkedRequestsCount();
+    }
+
+    /**
+     * @return the number of remote requests currently waiting for an
+     *         unavailable container.
+     */
+    public int getWaitingRequestsCount() {
+        RMIServerRPCImpl invoker = getInvoker();
+        if (invoker == null) {
+            return 0;
+        }
+        return invoker.getWaitingRequestsCount();
+    }
+
+    /**
+     * @return the RPC invoker of the server (null if it is not started).
+     */
+    private RMIServerRPCImpl getInvoker() {
+        RMIServerRPC invoker = ((Embedded) getManagedComponent()).getInvoker();
+        if (invoker instanceof RMIServerRPCImpl) {
+            return (RMIServerRPCImpl) invoker;
+        }
+        return null;
+    }
 }
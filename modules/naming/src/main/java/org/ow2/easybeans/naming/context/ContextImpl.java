@@ -25,7 +25,11 @@
 
 package org.ow2.easybeans.naming.context;
 
+import java.lang.ref.WeakReference;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.Binding;
 import javax.naming.CompositeName;
@@ -44,6 +48,7 @@ import javax.naming.NotContextException;
 import javax.naming.OperationNotSupportedException;
 import javax.naming.RefAddr;
 import javax.naming.Reference;
+import javax.naming.spi.ObjectFactory;
 
 import org.ow2.util.log.Log;
 import org.ow2.util.log.LogFactory;
@@ -79,6 +84,24 @@ public class ContextImpl implements Context {
      */
     private String compId;
 
+    /**
+     * Counter of the modifications of all the contexts. Resolved names are
+     * only reused if no context has been modified since their resolution.
+     */
+    private static AtomicLong modifications = new AtomicLong();
+
+    /**
+     * Initial context used by the current thread to resolve the LinkRef
+     * objects (an initial context can't be shared between threads).
+     */
+    private static final ThreadLocal<LinkContext> LINK_CONTEXT = new ThreadLocal<LinkContext>();
+
+    /**
+     * Names already resolved from this context (name relative to this context
+     * <--> context and object bound to the last component of the name).
+     */
+    private Map<String, ResolvedName> resolvedNames = new ConcurrentHashMap<String, ResolvedName>();
+
     /**
      * Constructor.
      * @param id id of the context.
@@ -124,6 +147,57 @@ public class ContextImpl implements Context {
     public Object lookup(final String name) throws NamingException {
         logger.debug("lookup {0}", name);
 
+        long version = modifications.get();
+        ResolvedName resolvedName = this.resolvedNames.get(name);
+        if (resolvedName == null || resolvedName.version != version) {
+            String[] components = splitName(name);
+            if (components == null) {
+                // Name with quotes or escapes, use the JNDI parser
+                return lookupCompositeName(name);
+            }
+            if (components.length == 0) {
+                // Empty name means this context
+                logger.debug("Empty name");
+                return this;
+            }
+
+            // Walk through the sub contexts of the env tree
+            ContextImpl context = this;
+            int last = components.length - 1;
+            for (int i = 0; i < last; i++) {
+                Object obj = context.bindings.get(components[i]);
+                if (obj == null) {
+                    throw new NameNotFoundException();
+                }
+                if (!(obj instanceof ContextImpl)) {
+                    if (obj instanceof Context) {
+                        // Other context (like java:global), the lookup is delegated
+                        return ((Context) obj).lookup(joinName(components, i + 1));
+                    }
+                    throw new NameAlreadyBoundException(components[i]);
+                }
+                context = (ContextImpl) obj;
+            }
+
+            // leaf in the env tree
+            Object ret = context.bindings.get(components[last]);
+            if (ret == null) {
+                logger.debug(" {0} not found.", components[last]);
+                throw new NameNotFoundException(components[last]);
+            }
+            resolvedName = new ResolvedName(version, context, components[last], ret);
+            this.resolvedNames.put(name, resolvedName);
+        }
+        return resolvedName.context.getBoundObject(resolvedName);
+    }
+
+    /**
+     * Retrieves the named object by parsing the name as a composite name.
+     * @param name the name of the object to look up
+     * @return the object bound to name
+     * @throws NamingException if a naming exception is encountered
+     */
+    private Object lookupCompositeName(final String name) throws NamingException {
         Name n = new CompositeName(name);
         if (n.size() < 1) {
             // Empty name means this context
@@ -144,15 +218,26 @@ public class ContextImpl implements Context {
             logger.debug(" {0} not found.", name);
             throw new NameNotFoundException(name);
         }
+        return getBoundObject(new ResolvedName(modifications.get(), this, name, ret));
+    }
+
+    /**
+     * Gets the object to return for a bound object (the LinkRef and the
+     * Reference are resolved).
+     * @param resolvedName the name and the bound object of this context
+     * @return the object to return by the lookup
+     * @throws NamingException if the object can't be built
+     */
+    private Object getBoundObject(final ResolvedName resolvedName) throws NamingException {
+        Object ret = resolvedName.boundObject;
         if (ret instanceof LinkRef) {
             // Handle special case of the LinkRef since I think
             // it's not handled by std NamingManager.getObjectInstance().
             // The name hidden in linkref is in the initial context.
-
-            InitialContext ictx = new InitialContext();
+            // The target is not kept as it may be a new object for each lookup (stateful beans)
             RefAddr ra = ((Reference) ret).get(0);
             try {
-                ret = ictx.lookup((String) ra.getContent());
+                ret = getLinkContext().lookup((String) ra.getContent());
             } catch (Exception e) {
                 NamingException ne = new NamingException(e.getMessage());
                 ne.setRootCause(e);
@@ -162,8 +247,7 @@ public class ContextImpl implements Context {
         } else if (ret instanceof Reference) {
             // Use NamingManager to build an object
             try {
-                Object o = javax.naming.spi.NamingManager.getObjectInstance(ret, n, this, this.environment);
-                ret = o;
+                ret = getObjectInstance((Reference) ret, resolvedName);
             } catch (NamingException e) {
                 throw e;
             } catch (Exception e) {
@@ -172,12 +256,117 @@ public class ContextImpl implements Context {
                 throw ne;
             }
             if (ret == null) {
-                logger.error("Can not build an object with the reference {0}", name);
-                throw new NamingException("Can not build an object with the reference '" + name + "'");
+                logger.error("Can not build an object with the reference {0}", resolvedName.leafName);
+                throw new NamingException("Can not build an object with the reference '" + resolvedName.leafName + "'");
             }
         }
         return ret;
+    }
+
+    /**
+     * Builds the object of a reference.<br>
+     * The object factory of the reference is kept with the resolved name, this
+     * avoids to load and to build a new factory for each lookup. References
+     * without factory class (or with a factory location) are given to the JNDI
+     * NamingManager.
+     * @param reference the reference
+     * @param resolvedName the resolved name of the reference
+     * @return the object built by the factory of the reference
+     * @throws Exception if the object can't be built
+     */
+    private Object getObjectInstance(final Reference reference, final ResolvedName resolvedName) throws Exception {
+        Name n = resolvedName.compositeName;
+        if (n == null) {
+            n = new CompositeName(resolvedName.leafName);
+            resolvedName.compositeName = n;
+        }
+        String factoryClassName = reference.getFactoryClassName();
+        if (factoryClassName == null || reference.getFactoryClassLocation() != null) {
+            return javax.naming.spi.NamingManager.getObjectInstance(reference, n, this, this.environment);
+        }
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        LoadedFactory loadedFactory = resolvedName.factory;
+        if (loadedFactory == null || loadedFactory.classLoader != classLoader) {
+            ObjectFactory factory;
+            try {
+                factory = (ObjectFactory) Class.forName(factoryClassName, true, classLoader).newInstance();
+            } catch (ClassNotFoundException e) {
+                // Let the JNDI NamingManager handle the missing factories
+                return javax.naming.spi.NamingManager.getObjectInstance(reference, n, this, this.environment);
+            }
+            loadedFactory = new LoadedFactory(classLoader, factory);
+            resolvedName.factory = loadedFactory;
+        }
+        return loadedFactory.factory.getObjectInstance(reference, n, this, this.environment);
+    }
+
+    /**
+     * Gets the initial context of the current thread used to resolve the
+     * LinkRef objects. It is built again if the context classloader has
+     * changed, as the initial context factory depends on it.
+     * @return the initial context used to resolve the LinkRef objects.
+     * @throws NamingException if the initial context can't be built
+     */
+    private static InitialContext getLinkContext() throws NamingException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        LinkContext linkContext = LINK_CONTEXT.get();
+        if (linkContext == null || linkContext.classLoader.get() != classLoader) {
+            linkContext = new LinkContext(classLoader, new InitialContext());
+            LINK_CONTEXT.set(linkContext);
+        }
+        return linkContext.context;
+    }
+
+    /**
+     * Splits a name in its components without using the JNDI parser.
+     * @param name the name to split
+     * @return the components or null if the name needs to be parsed as a composite name (quotes, escapes, empty components)
+     */
+    private static String[] splitName(final String name) {
+        int length = name.length();
+        if (length == 0) {
+            return new String[0];
+        }
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c == '/') {
+                // Empty component
+                if (i == 0 || i == length - 1 || name.charAt(i - 1) == '/') {
+                    return null;
+                }
+                count++;
+            } else if (c == '\\' || c == '"' || c == '\'') {
+                return null;
+            }
+        }
+        String[] components = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = name.indexOf('/', start);
+            components[i] = name.substring(start, end);
+            start = end + 1;
+        }
+        components[count - 1] = name.substring(start);
+        return components;
+    }
 
+    /**
+     * Joins the components of a name.
+     * @param components the components of the name
+     * @param start the index of the first component to join
+     * @return the name made of the components from the start index
+     */
+    private static String joinName(final String[] components, final int start) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < components.length; i++) {
+            if (i > start) {
+                sb.append('/');
+            }
+            sb.append(components[i]);
+        }
+        return sb.toString();
     }
 
     /**
@@ -216,6 +405,7 @@ public class ContextImpl implements Context {
                 throw new NameAlreadyBoundException("CompNamingContext: Use rebind to bind over a name");
             }
             this.bindings.put(name, obj);
+            modifications.incrementAndGet();
         } else {
             // sub context in the env tree
             String suffix = n.getSuffix(1).toString();
@@ -261,6 +451,7 @@ public class ContextImpl implements Context {
         if (n.size() == 1) {
             // leaf in the env tree
             this.bindings.put(name, obj);
+            modifications.incrementAndGet();
         } else {
             // sub context in the env tree
             String suffix = n.getSuffix(1).toString();
@@ -310,6 +501,7 @@ public class ContextImpl implements Context {
                 throw new NameNotFoundException(name);
             }
             this.bindings.remove(name);
+            modifications.incrementAndGet();
         } else {
             // sub context in the env tree
             String suffix = n.getSuffix(1).toString();
@@ -478,6 +670,7 @@ public class ContextImpl implements Context {
             // leaf in the env tree: create ctx and bind it in parent.
             ctx = new ContextImpl(this.compId, this.environment);
             this.bindings.put(name, ctx);
+            modifications.incrementAndGet();
         } else {
             // as for bind, we must create first all the subcontexts
             // if they don't exist yet.
@@ -647,6 +840,7 @@ public class ContextImpl implements Context {
             throw new IllegalStateException("Binding named '" + bindingName + "' already exists.");
         }
         this.bindings.put(bindingName, context);
+        modifications.incrementAndGet();
     }
 
     /**
@@ -669,4 +863,108 @@ public class ContextImpl implements Context {
     }
 
 
+    /**
+     * Name resolved from a context.
+     */
+    private static final class ResolvedName {
+
+        /**
+         * Modifications counter when the name has been resolved.
+         */
+        private final long version;
+
+        /**
+         * Context in which the last component of the name is bound.
+         */
+        private final ContextImpl context;
+
+        /**
+         * Last component of the name.
+         */
+        private final String leafName;
+
+        /**
+         * Object bound to the name.
+         */
+        private final Object boundObject;
+
+        /**
+         * Last component of the name, as a name given to the factory of the bound reference.
+         */
+        private volatile Name compositeName = null;
+
+        /**
+         * Factory of the bound reference (if already loaded).
+         */
+        private volatile LoadedFactory factory = null;
+
+        /**
+         * Build a resolved name.
+         * @param version the modifications counter when the name has been resolved
+         * @param context the context in which the last component of the name is bound
+         * @param leafName the last component of the name
+         * @param boundObject the object bound to the name
+         */
+        private ResolvedName(final long version, final ContextImpl context, final String leafName,
+                final Object boundObject) {
+            this.version = version;
+            this.context = context;
+            this.leafName = leafName;
+            this.boundObject = boundObject;
+        }
+    }
+
+    /**
+     * Object factory loaded by a class loader.
+     */
+    private static final class LoadedFactory {
+
+        /**
+         * Class loader used to load the factory.
+         */
+        private final ClassLoader classLoader;
+
+        /**
+         * The factory.
+         */
+        private final ObjectFactory factory;
+
+        /**
+         * Build a loaded factory.
+         * @param classLoader the class loader used to load the factory
+         * @param factory the factory
+         */
+        private LoadedFactory(final ClassLoader classLoader, final ObjectFactory factory) {
+            this.classLoader = classLoader;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Initial context built with a class loader.
+     */
+    private static final class LinkContext {
+
+        /**
+         * Context class loader used to build the initial context (not kept
+         * alive by the threads).
+         */
+        private final WeakReference<ClassLoader> classLoader;
+
+        /**
+         * The initial context.
+         */
+        private final InitialContext context;
+
+        /**
+         * Build a link context.
+         * @param classLoader the context class loader used to build the initial context
+         * @param context the initial context
+         */
+        private LinkContext(final ClassLoader classLoader, final InitialContext context) {
+            this.classLoader = new WeakReference<ClassLoader>(classLoader);
+            this.context = context;
+        }
+    }
+
 }
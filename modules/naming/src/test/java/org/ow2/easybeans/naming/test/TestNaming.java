@@ -25,10 +25,16 @@
 
 package org.ow2.easybeans.naming.test;
 
+import java.util.Hashtable;
+
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import javax.naming.Name;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
+import javax.naming.Reference;
+import javax.naming.StringRefAddr;
+import javax.naming.spi.ObjectFactory;
 import javax.transaction.UserTransaction;
 
 import org.objectweb.jotm.Current;
@@ -229,4 +235,87 @@ public class TestNaming {
     }
 
 
+    /**
+     * Test that a name already looked up is resolved again after a rebind or an unbind.
+     * @throws NamingException if lookup fails
+     */
+    @Test
+    public void testLookupAfterRebind() throws NamingException {
+        Context context = new ContextImpl("rebind");
+        String key = "comp/env/rebind/value";
+        context.bind(key, "first");
+        Assert.assertEquals(context.lookup(key), "first");
+
+        context.rebind(key, "second");
+        Assert.assertEquals(context.lookup(key), "second");
+
+        // Change in a sub context
+        ((Context) context.lookup("comp/env")).rebind("rebind/value", "third");
+        Assert.assertEquals(context.lookup(key), "third");
+
+        context.unbind(key);
+        try {
+            context.lookup(key);
+            Assert.fail("Lookup should fail as it was unbind");
+        } catch (NameNotFoundException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    /**
+     * Test names which need to be parsed as composite names.
+     * @throws NamingException if lookup fails
+     */
+    @Test
+    public void testCompositeNames() throws NamingException {
+        Context context = new ContextImpl("composite");
+        context.bind("comp/env/value", "value");
+        Assert.assertEquals(context.lookup("\"comp\"/env/value"), "value");
+        Assert.assertSame(context.lookup(""), context);
+    }
+
+    /**
+     * Test that the references are resolved for each lookup.
+     * @throws NamingException if lookup fails
+     */
+    @Test
+    public void testReference() throws NamingException {
+        Context context = new ContextImpl("reference");
+        Reference reference = new Reference(String.class.getName(), CounterFactory.class.getName(), null);
+        reference.add(new StringRefAddr("prefix", "instance"));
+        context.bind("comp/env/reference", reference);
+
+        Object first = context.lookup("comp/env/reference");
+        Object second = context.lookup("comp/env/reference");
+        Assert.assertTrue(first.toString().startsWith("instance"));
+        Assert.assertFalse(first.equals(second));
+    }
+
+    /**
+     * Factory building a new string for each call.
+     */
+    public static class CounterFactory implements ObjectFactory {
+
+        /**
+         * Number of built objects.
+         */
+        private static int counter = 0;
+
+        /**
+         * Builds a new string with the prefix of the reference.
+         * @param obj the reference
+         * @param name the name of the reference
+         * @param nameCtx the context of the reference
+         * @param environment the environment of the context
+         * @return a new string
+         */
+        public Object getObjectInstance(final Object obj, final Name name, final Context nameCtx,
+                final Hashtable<?, ?> environment) {
+            String prefix = (String) ((Reference) obj).get("prefix").getContent();
+            synchronized (CounterFactory.class) {
+                return prefix + (counter++);
+            }
+        }
+    }
+
 }
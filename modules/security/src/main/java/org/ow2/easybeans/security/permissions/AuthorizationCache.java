@@ -0,0 +1,270 @@
+/**
+ * EasyBeans
+ * Copyright (C) 2012 Bull S.A.S.
+ * Contact: easybeans@ow2.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ * USA
+ *
+ * --------------------------------------------------------------------------
+ * $Id$
+ * --------------------------------------------------------------------------
+ */
+package org.ow2.easybeans.security.permissions;
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.jacc.EJBMethodPermission;
+
+import org.ow2.easybeans.security.jacc.provider.JPolicyConfigurationKeeper;
+
+/**
+ * Cache of the authorization decisions of the EJB methods. For each bean and
+ * business method, the EJBMethodPermission is built once and the decisions are
+ * kept by set of caller roles. Decisions are discarded each time a policy
+ * configuration is changed.
+ * @author Florent Benoit
+ */
+public class AuthorizationCache {
+
+    /**
+     * Maximum number of different sets of roles that are kept.
+     */
+    private static final int MAX_ROLE_SETS = 1024;
+
+    /**
+     * Permissions and decisions for each method of each bean (by name).
+     */
+    private final ConcurrentMap<String, ConcurrentMap<Method, MethodAuthorization>> beans =
+        new ConcurrentHashMap<String, ConcurrentMap<Method, MethodAuthorization>>();
+
+    /**
+     * Interned sets of roles.
+     */
+    private final ConcurrentMap<RoleSet, RoleSet> roleSets = new ConcurrentHashMap<RoleSet, RoleSet>();
+
+    /**
+     * Gets the authorization data of a business method.
+     * @param ejbName the name of the bean
+     * @param method the business method
+     * @return the authorization data of the method
+     */
+    public MethodAuthorization getMethodAuthorization(final String ejbName, final Method method) {
+        ConcurrentMap<Method, MethodAuthorization> methods = this.beans.get(ejbName);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<Method, MethodAuthorization>();
+            ConcurrentMap<Method, MethodAuthorization> existing = this.beans.putIfAbsent(ejbName, methods);
+            if (existing != null) {
+                methods = existing;
+            }
+        }
+        MethodAuthorization methodAuthorization = methods.get(method);
+        if (methodAuthorization == null) {
+            // TODO: Fix Remote/Local method-itf parameter. (set to "" for now)
+            methodAuthorization = new MethodAuthorization(new EJBMethodPermission(ejbName, "", method));
+            MethodAuthorization existing = methods.putIfAbsent(method, methodAuthorization);
+            if (existing != null) {
+                methodAuthorization = existing;
+            }
+        }
+        return methodAuthorization;
+    }
+
+    /**
+     * Gets the interned set of roles for the given role principals.
+     * @param principals the roles of the caller
+     * @return the set of roles or null if too many sets are already known
+     */
+    public RoleSet getRoleSet(final Principal[] principals) {
+        RoleSet roleSet = new RoleSet(principals);
+        RoleSet interned = this.roleSets.get(roleSet);
+        if (interned != null) {
+            return interned;
+        }
+        if (this.roleSets.size() >= MAX_ROLE_SETS) {
+            return null;
+        }
+        interned = this.roleSets.putIfAbsent(roleSet, roleSet);
+        if (interned != null) {
+            return interned;
+        }
+        return roleSet;
+    }
+
+    /**
+     * Removes all the data of this cache.
+     */
+    public void clear() {
+        this.beans.clear();
+        this.roleSets.clear();
+    }
+
+    /**
+     * Permission of a business method with the decisions already taken.
+     */
+    public static final class MethodAuthorization {
+
+        /**
+         * Permission of the method.
+         */
+        private final EJBMethodPermission permission;
+
+        /**
+         * Decisions for the current version of the policy configurations.
+         */
+        private volatile Decisions decisions = new Decisions(JPolicyConfigurationKeeper.getVersion());
+
+        /**
+         * Builds the authorization data of a method.
+         * @param permission the permission of the method
+         */
+        private MethodAuthorization(final EJBMethodPermission permission) {
+            this.permission = permission;
+        }
+
+        /**
+         * @return the permission of the method.
+         */
+        public EJBMethodPermission getPermission() {
+            return this.permission;
+        }
+
+        /**
+         * Gets the decisions matching the current version of the policy
+         * configurations.
+         * @param version the current version
+         * @return the decisions for this version
+         */
+        private Decisions getDecisions(final long version) {
+            Decisions current = this.decisions;
+            if (current.version != version) {
+                current = new Decisions(version);
+                this.decisions = current;
+            }
+            return current;
+        }
+
+        /**
+         * Gets the decision taken for the given roles.
+         * @param roleSet the roles of the caller
+         * @param version the current version of the policy configurations
+         * @return the decision or null if not yet known
+         */
+        public Boolean getDecision(final RoleSet roleSet, final long version) {
+            return getDecisions(version).values.get(roleSet);
+        }
+
+        /**
+         * Keeps the decision taken for the given roles.
+         * @param roleSet the roles of the caller
+         * @param version the version of the policy configurations used to
+         *        take the decision
+         * @param decision the decision
+         */
+        public void setDecision(final RoleSet roleSet, final long version, final boolean decision) {
+            getDecisions(version).values.put(roleSet, Boolean.valueOf(decision));
+        }
+    }
+
+    /**
+     * Decisions taken for a given version of the policy configurations.
+     */
+    private static final class Decisions {
+
+        /**
+         * Version of the policy configurations.
+         */
+        private final long version;
+
+        /**
+         * Decision by set of roles.
+         */
+        private final ConcurrentMap<RoleSet, Boolean> values = new ConcurrentHashMap<RoleSet, Boolean>();
+
+        /**
+         * Builds decisions for a version.
+         * @param version the version of the policy configurations
+         */
+        private Decisions(final long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Sorted set of role names.
+     */
+    public static final class RoleSet {
+
+        /**
+         * Sorted names of the roles.
+         */
+        private final String[] names;
+
+        /**
+         * Hashcode computed in constructor.
+         */
+        private final int hashCode;
+
+        /**
+         * Builds a set with the names of the given roles.
+         * @param principals the roles
+         */
+        private RoleSet(final Principal[] principals) {
+            this.names = new String[principals.length];
+            for (int i = 0; i < principals.length; i++) {
+                this.names[i] = principals[i].getName();
+            }
+            Arrays.sort(this.names);
+            this.hashCode = Arrays.hashCode(this.names);
+        }
+
+        /**
+         * @return hashcode of the object
+         */
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        /**
+         * @param obj given object for comparing it
+         * @return true if given object has the same roles
+         */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RoleSet)) {
+                return false;
+            }
+            RoleSet other = (RoleSet) obj;
+            return this.hashCode == other.hashCode && Arrays.equals(this.names, other.names);
+        }
+
+        /**
+         * @return string representation of the roles.
+         */
+        @Override
+        public String toString() {
+            return Arrays.toString(this.names);
+        }
+    }
+
+}
@@ -32,7 +32,6 @@ import java.security.ProtectionDomain;
 import java.security.cert.Certificate;
 import java.util.List;
 
-import javax.security.jacc.EJBMethodPermission;
 import javax.security.jacc.EJBRoleRefPermission;
 import javax.security.jacc.PolicyContext;
 import javax.security.jacc.PolicyContextException;
@@ -44,6 +43,10 @@ import org.ow2.easybeans.api.bean.info.IBeanInfo;
 import org.ow2.easybeans.api.bean.info.IEJBJarInfo;
 import org.ow2.easybeans.api.bean.info.IMethodSecurityInfo;
 import org.ow2.easybeans.api.bean.info.ISecurityInfo;
+import org.ow2.easybeans.security.jacc.provider.JPolicy;
+import org.ow2.easybeans.security.jacc.provider.JPolicyConfigurationKeeper;
+import org.ow2.easybeans.security.permissions.AuthorizationCache.MethodAuthorization;
+import org.ow2.easybeans.security.permissions.AuthorizationCache.RoleSet;
 import org.ow2.easybeans.security.propagation.context.SecurityCurrent;
 import org.ow2.util.ee.metadata.common.api.xml.struct.ISecurityRoleRef;
 import org.ow2.util.log.Log;
@@ -70,6 +73,11 @@ public class PermissionManager extends AbsPermissionManager implements EZBPermis
      */
     private IEJBJarInfo ejbJarInfo;
 
+    /**
+     * Cache of the authorization decisions of the business methods.
+     */
+    private AuthorizationCache authorizationCache = new AuthorizationCache();
+
     /**
      * Default Constructor.
      * @param contextIdURL context ID used for PolicyContext
@@ -247,34 +255,48 @@ public class PermissionManager extends AbsPermissionManager implements EZBPermis
     public boolean checkSecurity(final EasyBeansInvocationContext invocationContext, final boolean runAsBean) {
         PolicyContext.setContextID(getContextId());
 
-        // Build Protection Domain with a codesource and array of principal
         // Get roles.
         Principal[] principals = SecurityCurrent.getCurrent().getSecurityContext().getCallerRoles(runAsBean);
+
+        // Permission of the method, built once (See JACC 4.12)
+        MethodAuthorization methodAuthorization = this.authorizationCache.getMethodAuthorization(invocationContext
+                .getFactory().getBeanInfo().getName(), invocationContext.getMethod());
+
+        // Decisions of the EasyBeans policy only depend on the roles and on
+        // the policy configurations, reuse them until a configuration changes
+        RoleSet roleSet = null;
+        long version = JPolicyConfigurationKeeper.getVersion();
+        if (getPolicy() instanceof JPolicy) {
+            roleSet = this.authorizationCache.getRoleSet(principals);
+            if (roleSet != null) {
+                Boolean decision = methodAuthorization.getDecision(roleSet, version);
+                if (decision != null) {
+                    return decision.booleanValue();
+                }
+            }
+        }
+
+        // Build Protection Domain with a codesource and array of principal
         ProtectionDomain protectionDomain = new ProtectionDomain(this.codeSource, null, null, principals);
 
-        boolean accessOK = getPolicy().implies(protectionDomain, invocationContextToMethodPermission(invocationContext));
+        boolean accessOK = getPolicy().implies(protectionDomain, methodAuthorization.getPermission());
         if (this.logger.isDebugEnabled()) {
             this.logger.debug("Policy.implies result = {0} ", Boolean.valueOf(accessOK));
         }
+        if (roleSet != null) {
+            methodAuthorization.setDecision(roleSet, version, accessOK);
+        }
         return accessOK;
     }
 
     /**
-     * Gets a EJBMethodPermission from an invocation context.
-     * @param invocationContext the context containing data on the current
-     *        invocation.
-     * @return a Method Permission for the current method.
+     * Delete this object.
+     * @throws PermissionManagerException if the configuration can't be deleted
      */
-    private static EJBMethodPermission invocationContextToMethodPermission(final EasyBeansInvocationContext invocationContext) {
-        // TODO : cache ejbName/methodSignature to avoid creation of a new
-        // EJBMethodPermission each time
-        // See JACC 4.12
-
-        // TODO: Fix Remote/Local method-itf parameter. (set to "" for now)
-        EJBMethodPermission ejbMethodPermission = new EJBMethodPermission(invocationContext.getFactory().getBeanInfo().getName(),
-                "", invocationContext.getMethod());
-
-        return ejbMethodPermission;
+    @Override
+    public void delete() throws PermissionManagerException {
+        super.delete();
+        this.authorizationCache.clear();
     }
 
     /**